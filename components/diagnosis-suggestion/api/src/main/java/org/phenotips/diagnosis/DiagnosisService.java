@@ -22,7 +22,9 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service that suggests plausible diagnoses for a set of features.
@@ -44,4 +46,15 @@
      * @return a list of suggested diagnoses
      */
     List<VocabularyTerm> getDiagnosis(List<String> phenotypes, List<String> nonstandardPhenotypes, int limit);
+
+    /**
+     * Get statistics about the cache of recent suggestions, such as its size and hit ratio.
+     *
+     * @return a map of counter names to their current values, empty if this service doesn't cache suggestions
+     * @since 1.4
+     */
+    default Map<String, Long> getCacheStatistics()
+    {
+        return Collections.emptyMap();
+    }
 }
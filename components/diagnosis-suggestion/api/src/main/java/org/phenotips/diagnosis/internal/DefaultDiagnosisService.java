@@ -18,13 +18,18 @@
 package org.phenotips.diagnosis.internal;
 
 import org.phenotips.diagnosis.DiagnosisService;
+import org.phenotips.vocabulary.ResultCache;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.environment.Environment;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -38,6 +43,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
@@ -60,9 +66,12 @@
  * @version $Id$
  */
 @Singleton
-@Component
-public class DefaultDiagnosisService implements DiagnosisService, Initializable
+@Component(roles = DiagnosisService.class)
+public class DefaultDiagnosisService implements DiagnosisService, EventListener, Initializable
 {
+    /** How many different suggestion lists are cached. */
+    private static final int CACHE_CAPACITY = 500;
+
     @Inject
     private Logger logger;
 
@@ -79,6 +88,13 @@ public class DefaultDiagnosisService implements DiagnosisService, Initializable
     @Inject
     private Utils utils;
 
+    /** Allows registering this object as an event listener. */
+    @Inject
+    private ObservationManager observationManager;
+
+    /** The suggestions are resolved in the OMIM vocabulary, so they are forgotten when it is reindexed. */
+    private final ResultCache<List<VocabularyTerm>> cache = new ResultCache<>(CACHE_CAPACITY);
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -122,13 +138,53 @@ public void initialize() throws InitializationException
         for (Map.Entry<ByteString, Integer> item : omimtonum) {
             this.omimMap.put(item.getValue(), item.getKey());
         }
+
+        this.observationManager.addListener(this);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "diagnosis-suggestions-cache";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Collections.<Event>singletonList(new VocabularyReindexedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (source != null && source == this.vocabulary.getVocabulary("omim")) {
+            this.cache.clear();
+        }
     }
 
     @Override
     public List<VocabularyTerm> getDiagnosis(List<String> phenotypes, List<String> nonstandardPhenotypes, int limit)
     {
-        // TODO: use the `nonstandardPhenotypes` argument
+        // Non-standard phenotypes are free text, which BOQA can't score, so they are ignored and not part of the key.
+        // The order and duplicates of the phenotypes don't influence the results either.
+        String key = new TreeSet<>(phenotypes) + "|" + limit;
+        try {
+            return this.cache.get(key, () -> Collections.unmodifiableList(computeDiagnosis(phenotypes, limit)));
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to compute diagnosis suggestions", ex);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCacheStatistics()
+    {
+        return this.cache.getStatistics();
+    }
 
+    private List<VocabularyTerm> computeDiagnosis(List<String> phenotypes, int limit)
+    {
         Observations o = new Observations();
         o.observations = new boolean[this.boqa.getOntology().getNumberOfTerms()];
         boolean searchIsEmpty = true;
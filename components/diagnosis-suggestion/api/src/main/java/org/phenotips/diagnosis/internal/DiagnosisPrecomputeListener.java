@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.events.PatientChangedEvent;
+import org.phenotips.data.events.PatientEvent;
+import org.phenotips.diagnosis.DiagnosisService;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+/**
+ * Computes the diagnosis suggestions for a patient in the background whenever the patient is changed, so that they are
+ * already cached when the patient form asks for them.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("diagnosis-precompute")
+@Singleton
+public class DiagnosisPrecomputeListener extends AbstractEventListener implements Disposable
+{
+    /** The number of suggestions requested by the patient form. */
+    private static final int DEFAULT_LIMIT = 20;
+
+    /** How many patients can wait for their suggestions to be computed; older requests are dropped. */
+    private static final int QUEUE_CAPACITY = 100;
+
+    @Inject
+    private Logger logger;
+
+    /** Looked up lazily, since initializing the diagnosis service takes a while. */
+    @Inject
+    private Provider<DiagnosisService> service;
+
+    private ExecutorService executor;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public DiagnosisPrecomputeListener()
+    {
+        super("diagnosis-precompute", new PatientChangedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        Patient patient = ((PatientEvent) event).getPatient();
+        if (patient == null) {
+            return;
+        }
+        // Same as the patient form: the suggestions are based on the observed HPO phenotypes
+        final List<String> phenotypes = new ArrayList<>();
+        for (Feature feature : patient.getFeatures()) {
+            if (feature.isPresent() && StringUtils.startsWith(feature.getId(), "HP:")) {
+                phenotypes.add(feature.getId());
+            }
+        }
+        if (phenotypes.isEmpty()) {
+            return;
+        }
+        getExecutor().execute(() -> {
+            try {
+                this.service.get().getDiagnosis(phenotypes, Collections.<String>emptyList(), DEFAULT_LIMIT);
+            } catch (RuntimeException ex) {
+                this.logger.warn("Failed to precompute diagnosis suggestions: {}", ex.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public synchronized void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    private synchronized ExecutorService getExecutor()
+    {
+        if (this.executor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), r -> {
+                    Thread thread = new Thread(r, "Diagnosis precompute");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardOldestPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        }
+        return this.executor;
+    }
+}
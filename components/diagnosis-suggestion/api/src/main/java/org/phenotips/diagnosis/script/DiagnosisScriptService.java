@@ -24,6 +24,7 @@
 import org.xwiki.script.service.ScriptService;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -57,4 +58,15 @@ public List<VocabularyTerm> get(List<String> phenotypes, List<String> nonstandar
     {
         return this.service.getDiagnosis(phenotypes, nonstandardPhenotypes, limit);
     }
+
+    /**
+     * Get statistics about the cache of recent suggestions, such as its size and hit ratio.
+     *
+     * @return a map of counter names to their current values
+     * @since 1.4
+     */
+    public Map<String, Long> getCacheStatistics()
+    {
+        return this.service.getCacheStatistics();
+    }
 }
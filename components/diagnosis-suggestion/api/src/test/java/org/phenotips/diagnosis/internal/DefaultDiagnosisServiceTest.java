@@ -18,11 +18,15 @@
 package org.phenotips.diagnosis.internal;
 
 import org.phenotips.diagnosis.DiagnosisService;
+import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.environment.Environment;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.File;
@@ -30,6 +34,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -41,6 +46,7 @@
 
 import sonumina.boqa.calculation.BOQA;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
@@ -146,7 +152,24 @@ public VocabularyTerm answer(InvocationOnMock invocationOnMock) throws Throwable
             assertTrue(diagnosisIds.containsAll(disorderIds.get(i)));
             i++;
         }
+        // Repeated requests, even with the phenotypes in a different order, are answered from the cache
+        List<String> reordered = new LinkedList<>(phenotypes.get(1));
+        Collections.reverse(reordered);
+        diagnosisService.getDiagnosis(reordered, nonstandardPhenotypeSet, limit);
         verify(vocabulary, times(limit * (i - invalidPhenotypes))).resolveTerm(anyString());
+
+        // Reindexing OMIM discards the cached suggestions, reindexing other vocabularies doesn't
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        verify(observationManager).addListener((EventListener) diagnosisService);
+        Vocabulary omim = mock(Vocabulary.class);
+        doReturn(omim).when(vocabulary).getVocabulary("omim");
+        ((EventListener) diagnosisService).onEvent(new VocabularyReindexedEvent("hpo"), mock(Vocabulary.class), null);
+        diagnosisService.getDiagnosis(reordered, nonstandardPhenotypeSet, limit);
+        verify(vocabulary, times(limit * (i - invalidPhenotypes))).resolveTerm(anyString());
+        ((EventListener) diagnosisService).onEvent(new VocabularyReindexedEvent("omim"), omim, null);
+        diagnosisService.getDiagnosis(reordered, nonstandardPhenotypeSet, limit);
+        verify(vocabulary, times(limit * (i - invalidPhenotypes + 1))).resolveTerm(anyString());
+        assertEquals(2L, (long) diagnosisService.getCacheStatistics().get("hits"));
     }
 
     private File stream2file(InputStream in) throws IOException
@@ -23,8 +23,6 @@
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.stability.Unstable;
 
-import java.util.Collection;
-
 /**
  * A group of {@link PrimaryEntity primary entities}, which in turn is another type of entity. For example, a Project is
  * also a collection of patient records, and a Workgroup is a collection of both users and patient records.
@@ -51,20 +49,20 @@
     EntityReference getMemberType();
 
     /**
-     * Lists all the members (entities) that are part of this group.
+     * Lists all the members (entities) that are part of this group. Members are only loaded when accessed.
      *
-     * @return a collection of Entities, may be empty
+     * @return a lazy collection of Entities, may be empty
      */
-    Collection<E> getMembers();
+    PrimaryEntityGroupMembers<E> getMembers();
 
     /**
      * Lists all the members (entities) of a given type that are part of this group.
      *
      * @param type a reference to an XClass to filter members by; if {@code null}, all members are returned, regardless
      *            of type
-     * @return a collection of Entities, may be empty
+     * @return a lazy collection of Entities, may be empty
      */
-    Collection<E> getMembersOfType(EntityReference type);
+    PrimaryEntityGroupMembers<E> getMembersOfType(EntityReference type);
 
     /**
      * Adds a new member to the group.
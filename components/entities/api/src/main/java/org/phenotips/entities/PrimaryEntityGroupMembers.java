@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A read-only, lazy view on the members of a {@link PrimaryEntityGroup}. The identifiers of the members are retrieved
+ * once, when first needed, and member entities are only loaded when they are actually accessed, so checking the size
+ * of a group or whether an entity is a member doesn't load any member document.
+ *
+ * @param <E> the type of entities belonging to the group
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable("New API introduced in 1.4")
+public interface PrimaryEntityGroupMembers<E extends PrimaryEntity> extends Collection<E>
+{
+    /**
+     * Lists the identifiers of the members, without loading them.
+     *
+     * @return an unmodifiable list of identifiers, in the same order as the members are iterated, may be empty
+     */
+    List<String> getIds();
+
+    /**
+     * Checks if an entity is a member, without loading any members.
+     *
+     * @param id the identifier of the entity to check, as returned by {@link #getIds()}
+     * @return {@code true} if the entity is a member, {@code false} otherwise
+     */
+    boolean containsId(String id);
+
+    /**
+     * Loads a page of members.
+     *
+     * @param offset the index of the first member to return, {@code 0} for the first page
+     * @param limit the maximum number of members to return
+     * @return a list of at most {@code limit} members, may be empty if {@code offset} is past the last member
+     */
+    List<E> getPage(int offset, int limit);
+
+    /**
+     * Returns a view on the same members that loads the next few members in advance, in parallel, while the current
+     * one is being processed by the caller.
+     *
+     * @param batchSize how many members to load in advance
+     * @return a view on the same members
+     */
+    PrimaryEntityGroupMembers<E> withPrefetch(int batchSize);
+}
@@ -24,14 +24,8 @@
 
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.EntityReference;
-import org.xwiki.query.Query;
-import org.xwiki.query.QueryException;
 import org.xwiki.stability.Unstable;
 
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 
@@ -76,39 +70,6 @@ protected AbstractContainerPrimaryEntityGroup(XWikiDocument document)
         super(document);
     }
 
-    @Override
-    public Collection<E> getMembersOfType(EntityReference type)
-    {
-        Collection<E> result = new LinkedList<>();
-        try {
-            StringBuilder hql = new StringBuilder();
-            hql.append("select distinct binding.name from BaseObject binding, StringProperty groupReference");
-            if (type != null) {
-                hql.append(", BaseObject entity");
-            }
-            hql.append(" where binding.className = :memberClass")
-                .append(" and groupReference.id.id = binding.id and groupReference.id.name = :referenceProperty")
-                .append(" and groupReference.value = :selfReference");
-            if (type != null) {
-                hql.append(" and entity.name = binding.name and entity.className = :entityType");
-            }
-
-            Query q = getQueryManager().createQuery(hql.toString(), Query.HQL);
-
-            q.bindValue("memberClass", getLocalSerializer().serialize(getMembershipClass()));
-            q.bindValue("referenceProperty", getMembershipProperty());
-            q.bindValue("selfReference", getFullSerializer().serialize(getDocumentReference()));
-            q.bindValue("entityType", getLocalSerializer().serialize(type));
-            List<String> memberIds = q.execute();
-            for (String memberId : memberIds) {
-                result.add(this.membersManager.get(memberId));
-            }
-        } catch (QueryException ex) {
-            this.logger.warn("Failed to query members: {}", ex.getMessage());
-        }
-        return result;
-    }
-
     @Override
     public boolean addMember(E member)
     {
@@ -20,6 +20,7 @@
 import org.phenotips.components.ComponentManagerRegistry;
 import org.phenotips.entities.PrimaryEntity;
 import org.phenotips.entities.PrimaryEntityGroup;
+import org.phenotips.entities.PrimaryEntityGroupMembers;
 import org.phenotips.entities.PrimaryEntityManager;
 
 import org.xwiki.bridge.DocumentAccessBridge;
@@ -31,9 +32,9 @@
 import org.xwiki.query.QueryManager;
 import org.xwiki.stability.Unstable;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -100,15 +101,28 @@ protected AbstractPrimaryEntityGroup(XWikiDocument document)
     }
 
     @Override
-    public Collection<E> getMembers()
+    public PrimaryEntityGroupMembers<E> getMembers()
     {
         return getMembersOfType(getMemberType());
     }
 
     @Override
-    public Collection<E> getMembersOfType(EntityReference type)
+    public PrimaryEntityGroupMembers<E> getMembersOfType(final EntityReference type)
+    {
+        return new LazyPrimaryEntityGroupMembers<>(() -> queryMemberIds(type), this.membersManager,
+            member -> getLocalSerializer().serialize(member.getDocumentReference()), getReadAheadExecutor());
+    }
+
+    /**
+     * Retrieves the identifiers of the members of this group, without loading them.
+     *
+     * @param type a reference to an XClass to filter members by; if {@code null}, all members are returned, regardless
+     *            of type
+     * @return the local references of the member documents, may be empty
+     * @since 1.4
+     */
+    protected List<String> queryMemberIds(EntityReference type)
     {
-        Collection<E> result = new LinkedList<>();
         try {
             StringBuilder hql = new StringBuilder();
             hql.append("select distinct binding.name from BaseObject binding, StringProperty groupReference");
@@ -130,14 +144,11 @@ public Collection<E> getMembersOfType(EntityReference type)
             if (type != null) {
                 q.bindValue("entityType", getLocalSerializer().serialize(type));
             }
-            List<String> memberIds = q.execute();
-            for (String memberId : memberIds) {
-                result.add(this.membersManager.get(memberId));
-            }
+            return q.execute();
         } catch (QueryException ex) {
             this.logger.warn("Failed to query members: {}", ex.getMessage());
         }
-        return result;
+        return Collections.emptyList();
     }
 
     @Override
@@ -194,6 +205,22 @@ protected QueryManager getQueryManager()
         return null;
     }
 
+    /**
+     * Creates an executor for loading members in advance, in the context of the current request.
+     *
+     * @return an executor, or {@code null} if members can only be loaded in the current thread
+     */
+    protected Executor getReadAheadExecutor()
+    {
+        try {
+            return ComponentManagerRegistry.getContextComponentManager().getInstance(EntityReadAheadPool.class)
+                .getExecutor();
+        } catch (ComponentLookupException ex) {
+            this.logger.debug("Members will not be loaded in advance: {}", ex.getMessage());
+        }
+        return null;
+    }
+
     protected EntityReference getMembershipClass()
     {
         return GROUP_MEMBERSHIP_CLASS;
@@ -23,6 +23,7 @@
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
@@ -80,6 +81,12 @@
 @Unstable("New class and interface added in 1.3")
 public abstract class AbstractPrimaryEntityManager<E extends PrimaryEntity> implements PrimaryEntityManager<E>
 {
+    /** How many identifiers are retrieved at once by {@link #getAll()}. */
+    private static final int GET_ALL_PAGE_SIZE = 500;
+
+    /** The configuration property holding how many entities {@link #getAll()} loads in advance. */
+    private static final String READ_AHEAD_CONFIGURATION = "phenotips.entities.readAhead";
+
     /** Logging helper object. */
     @Inject
     protected Logger logger;
@@ -111,6 +118,19 @@
     @Named("local")
     protected EntityReferenceSerializer<String> localSerializer;
 
+    /** Hands out the sequence numbers used for naming new entities. */
+    @Inject
+    protected PrimaryEntityIdentifierAllocator identifierAllocator;
+
+    /** Used for loading entities in advance in other threads. */
+    @Inject
+    private EntityReadAheadPool readAheadPool;
+
+    /** Provides the read-ahead configuration. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
     /** The concrete {@link PrimaryEntity} instance class being managed. */
     private Class<? extends E> eclass;
 
@@ -124,7 +144,7 @@ public E create()
     }
 
     @Override
-    public synchronized E create(DocumentReference creator)
+    public E create(DocumentReference creator)
     {
         try {
             XWikiContext context = this.xcontextProvider.get();
@@ -200,24 +220,56 @@ public E getByName(String name)
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The identifiers are retrieved from the database one page at a time. If the
+     * {@code phenotips.entities.readAhead} configuration property is set to a positive number, that many entities are
+     * loaded in advance on a shared thread pool while the caller processes the current one.
+     * </p>
+     * <p>
+     * Entities are returned in the order of their document's full name. Pages are requested starting after the last
+     * returned document, which needs a unique sort key, and the document name alone isn't unique across spaces. Since
+     * the entities of a type are all stored in {@link #getDataSpace() the same space}, this is the same order as
+     * sorting by the document name.
+     * </p>
+     * <p>
+     * If the entities can't be queried, an empty iterator is returned; if retrieving a later page fails, the iterator
+     * throws an {@link IllegalStateException} instead of silently stopping early.
+     * </p>
+     */
     @Override
     public Iterator<E> getAll()
     {
-        try {
-            Query q = this.qm.createQuery(
-                "select doc.fullName from Document as doc, doc.object("
-                    + this.localSerializer.serialize(getEntityXClassReference())
-                    + ") as entity where doc.name not in (:template1, :template2) order by doc.name asc",
-                Query.XWQL).bindValue("template1", this.getEntityXClassReference().getName() + "Template")
-                .bindValue("template2",
-                    StringUtils.removeEnd(this.getEntityXClassReference().getName(), "Class") + "Template");
-            List<String> docNames = q.execute();
-            return new LazyPrimaryEntityIterator<>(docNames, this);
-        } catch (QueryException ex) {
-            this.logger.warn("Failed to query all entities of type [{}]: {}", getEntityXClassReference(),
-                ex.getMessage());
+        final String xclass = this.localSerializer.serialize(getEntityXClassReference());
+        final String template1 = this.getEntityXClassReference().getName() + "Template";
+        final String template2 = StringUtils.removeEnd(this.getEntityXClassReference().getName(), "Class") + "Template";
+        Iterator<String> docNames = new PagedIdentifierIterator((after, limit) -> {
+            try {
+                Query q = this.qm.createQuery(
+                    "select doc.fullName from Document as doc, doc.object(" + xclass
+                        + ") as entity where doc.name not in (:template1, :template2) and doc.fullName > :after"
+                        + " order by doc.fullName asc",
+                    Query.XWQL).bindValue("template1", template1).bindValue("template2", template2)
+                    .bindValue("after", after).setLimit(limit);
+                return q.execute();
+            } catch (QueryException ex) {
+                if (StringUtils.isEmpty(after)) {
+                    this.logger.warn("Failed to query all entities of type [{}]: {}", xclass, ex.getMessage());
+                    return Collections.emptyList();
+                }
+                // Returning an empty page would silently truncate the results
+                this.logger.error("Failed to query entities of type [{}] after [{}]: {}", xclass, after,
+                    ex.getMessage());
+                throw new IllegalStateException("Failed to query entities of type " + xclass + " after " + after, ex);
+            }
+        }, GET_ALL_PAGE_SIZE);
+
+        Integer readAhead = this.configuration.getProperty(READ_AHEAD_CONFIGURATION, Integer.class);
+        if (readAhead == null || readAhead <= 0) {
+            return new LazyPrimaryEntityIterator<>(docNames, this, null, 0);
         }
-        return Collections.emptyIterator();
+        return new LazyPrimaryEntityIterator<>(docNames, this, this.readAheadPool.getExecutor(), readAhead);
     }
 
     @Override
@@ -251,19 +303,21 @@ public E load(DocumentModelBridge document) throws IllegalArgumentException
 
     /**
      * Gets a reference to the next document that can be used for a newly created entity. It uses {@link #getIdPrefix()
-     * a short prefix} and {@link #getLastUsedId() a sequence number} for the document name, and {@link #getDataSpace()
-     * a space that can be configured by subclases}.
+     * a short prefix} and {@link PrimaryEntityIdentifierAllocator a sequence number} for the document name, and
+     * {@link #getDataSpace() a space that can be configured by subclases}. Each call returns a different document, so
+     * this can be called concurrently.
      *
      * @return a reference for a new document
      */
     protected DocumentReference getNextDocument()
     {
         String prefix = getIdPrefix();
-        long id = getLastUsedId();
+        EntityReference space = getDataSpace();
         DocumentReference newDoc;
         do {
+            long id = this.identifierAllocator.allocate(space, prefix, this::getLastUsedId);
             newDoc = this.referenceResolver.resolve(new EntityReference(
-                prefix + String.format("%07d", ++id), EntityType.DOCUMENT, getDataSpace()));
+                prefix + String.format("%07d", id), EntityType.DOCUMENT, space));
         } while (this.bridge.exists(newDoc));
         return newDoc;
     }
@@ -276,6 +330,12 @@ public String getIdPrefix()
         return name.replaceAll("\\p{Lower}++", "");
     }
 
+    /**
+     * Finds the largest sequence number used so far, used for initializing the {@link PrimaryEntityIdentifierAllocator
+     * identifier counter} when it is first used.
+     *
+     * @return the largest sequence number found, or {@code 0} if there are no entities yet
+     */
     protected long getLastUsedId()
     {
         long crtMaxID = 0;
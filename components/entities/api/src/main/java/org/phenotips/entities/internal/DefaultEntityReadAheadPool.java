@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.context.ContextPropagator;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of the {@link EntityReadAheadPool} component. The pool threads are only created when needed,
+ * and expire after a minute of inactivity.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultEntityReadAheadPool implements EntityReadAheadPool, Disposable
+{
+    /** How many tasks can wait for a free thread before being rejected. */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /** Runs the tasks in a copy of the context of the request that submitted them. */
+    @Inject
+    private ContextPropagator contextPropagator;
+
+    /** Lazily created, {@code null} before the first use and after disposal. */
+    private ThreadPoolExecutor pool;
+
+    private boolean disposed;
+
+    @Override
+    public Executor getExecutor()
+    {
+        ThreadPoolExecutor threads = getPool();
+        return threads == null ? null : task -> threads.execute(this.contextPropagator.wrap(task));
+    }
+
+    @Override
+    public synchronized void dispose()
+    {
+        this.disposed = true;
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+            this.pool = null;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getPool()
+    {
+        if (this.pool == null && !this.disposed) {
+            AtomicInteger counter = new AtomicInteger();
+            int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+            this.pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "Entity read-ahead " + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+        return this.pool;
+    }
+}
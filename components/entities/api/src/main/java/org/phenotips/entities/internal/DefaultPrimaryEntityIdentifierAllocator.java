@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.Constants;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Default implementation of the {@link PrimaryEntityIdentifierAllocator} component. The counters are stored as
+ * {@code PhenoTips.EntityIdentifierCounterClass} objects in the {@code PhenoTips.EntityIdentifierCounters} document of
+ * each wiki, holding the highest number reserved so far. Numbers are reserved in blocks of {@link #BLOCK_SIZE}, and
+ * within a block they are handed out without locking. A block is only used once the advanced counter is saved, so
+ * that its numbers can't be handed out again after a restart.
+ * <p>
+ * The numbers of a block are only kept in memory: the ones still unused when the server is stopped are skipped, since
+ * after a restart a new block is reserved after the stored counter. Each restart can thus leave a gap of up to
+ * {@code BLOCK_SIZE - 1} numbers in each sequence.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultPrimaryEntityIdentifierAllocator implements PrimaryEntityIdentifierAllocator
+{
+    /** How many numbers are reserved at once. */
+    static final int BLOCK_SIZE = 50;
+
+    /** The document holding the persistent counters. */
+    static final EntityReference COUNTERS_DOCUMENT =
+        new EntityReference("EntityIdentifierCounters", EntityType.DOCUMENT, Constants.CODE_SPACE_REFERENCE);
+
+    /** The XClass of the counter objects. */
+    static final EntityReference COUNTER_CLASS =
+        new EntityReference("EntityIdentifierCounterClass", EntityType.DOCUMENT, Constants.CODE_SPACE_REFERENCE);
+
+    /** The property holding the name of the counter, {@code <data space>.<prefix>}. */
+    static final String NAME_PROPERTY = "counter";
+
+    /** The property holding the highest number reserved so far. */
+    static final String RESERVED_PROPERTY = "reserved";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /** The in-memory state of the counters used so far, keyed by wiki and counter name. */
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /** All the counters of a wiki are stored in the same document, so updating it must be serialized. */
+    private final Object storageLock = new Object();
+
+    @Override
+    public long allocate(EntityReference dataSpace, String prefix, LongSupplier lastUsedId)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        String name = dataSpace.getName() + '.' + prefix;
+        Counter counter = this.counters.computeIfAbsent(xcontext.getWikiId() + ':' + name, key -> new Counter());
+        while (true) {
+            Block block = counter.block.get();
+            if (block.next <= block.last) {
+                if (counter.block.compareAndSet(block, new Block(block.next + 1, block.last))) {
+                    return block.next;
+                }
+                // Another thread took this number, try again
+                continue;
+            }
+            synchronized (counter) {
+                // Only one thread reserves a new block, the others will use it once it's available
+                if (counter.block.get() == block) {
+                    counter.block.set(reserve(name, block, lastUsedId, xcontext));
+                }
+            }
+        }
+    }
+
+    private Block reserve(String name, Block exhausted, LongSupplier lastUsedId, XWikiContext xcontext)
+    {
+        // The first block after a restart also takes into account the existing entities, in case the counter was lost
+        long start = exhausted == Block.EMPTY ? Math.max(lastUsedId.getAsLong(), 0) : exhausted.last;
+        synchronized (this.storageLock) {
+            try {
+                XWikiDocument doc = xcontext.getWiki().getDocument(COUNTERS_DOCUMENT, xcontext);
+                BaseObject counter = doc.getXObject(COUNTER_CLASS, NAME_PROPERTY, name, false);
+                if (counter == null) {
+                    counter = doc.newXObject(COUNTER_CLASS, xcontext);
+                    counter.setStringValue(NAME_PROPERTY, name);
+                }
+                start = Math.max(start, counter.getLongValue(RESERVED_PROPERTY));
+                counter.setLongValue(RESERVED_PROPERTY, start + BLOCK_SIZE);
+                doc.setHidden(true);
+                xcontext.getWiki().saveDocument(doc, "Reserved identifiers for " + name, true, xcontext);
+            } catch (Exception ex) {
+                // Without a stored counter the same block could be reserved again after a restart
+                this.logger.warn("Failed to store the identifier counter [{}]: {}", name, ex.getMessage());
+                throw new IllegalStateException("Failed to reserve identifiers for " + name, ex);
+            }
+        }
+        return new Block(start + 1, start + BLOCK_SIZE);
+    }
+
+    /** The in-memory state of a counter. */
+    private static final class Counter
+    {
+        private final AtomicReference<Block> block = new AtomicReference<>(Block.EMPTY);
+    }
+
+    /** An immutable range of reserved numbers, from {@code next} to {@code last} inclusive, still available. */
+    private static final class Block
+    {
+        private static final Block EMPTY = new Block(1, 0);
+
+        private final long next;
+
+        private final long last;
+
+        Block(long next, long last)
+        {
+            this.next = next;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Owns the small thread pool used for loading entities in advance, shared by all the entity managers and groups, and
+ * shuts it down when the component manager is disposed.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Role
+public interface EntityReadAheadPool
+{
+    /**
+     * Creates an executor for loading entities in advance, in the context of the current request. Each task runs in a
+     * new execution context holding a copy of the current XWiki context. When the pool is saturated, tasks are
+     * rejected, and callers are expected to run them themselves.
+     *
+     * @return an executor, or {@code null} if the pool was already shut down and entities can only be loaded in the
+     *         current thread
+     */
+    Executor getExecutor();
+}
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.entities.PrimaryEntity;
+import org.phenotips.entities.PrimaryEntityGroupMembers;
+import org.phenotips.entities.PrimaryEntityManager;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Default implementation for {@link PrimaryEntityGroupMembers}, which retrieves the member identifiers from a supplier,
+ * usually a query, and loads the members through their {@link PrimaryEntityManager entity manager} only when they are
+ * accessed.
+ *
+ * @param <E> the type of entities belonging to the group
+ * @version $Id$
+ * @since 1.4
+ */
+public class LazyPrimaryEntityGroupMembers<E extends PrimaryEntity> extends AbstractCollection<E>
+    implements PrimaryEntityGroupMembers<E>
+{
+    private final Supplier<List<String>> idsSupplier;
+
+    private final PrimaryEntityManager<E> membersManager;
+
+    private final Function<PrimaryEntity, String> identifier;
+
+    private final Executor executor;
+
+    private final int prefetch;
+
+    private volatile List<String> ids;
+
+    private volatile Set<String> idSet;
+
+    /**
+     * Default constructor.
+     *
+     * @param ids retrieves the identifiers of the members; only called once, when the identifiers are first needed
+     * @param membersManager the entity manager responsible for actually loading the members
+     * @param identifier computes the identifier of an entity, in the same format as the one returned by {@code ids}
+     * @param executor the executor where members are loaded in advance when {@link #withPrefetch prefetching} is
+     *            requested; it must be able to run {@link PrimaryEntityManager#get(String)} outside the current thread;
+     *            if {@code null}, members are always loaded in the current thread, when requested
+     */
+    public LazyPrimaryEntityGroupMembers(Supplier<List<String>> ids, PrimaryEntityManager<E> membersManager,
+        Function<PrimaryEntity, String> identifier, Executor executor)
+    {
+        this(ids, membersManager, identifier, executor, 0);
+    }
+
+    private LazyPrimaryEntityGroupMembers(Supplier<List<String>> ids, PrimaryEntityManager<E> membersManager,
+        Function<PrimaryEntity, String> identifier, Executor executor, int prefetch)
+    {
+        this.idsSupplier = ids;
+        this.membersManager = membersManager;
+        this.identifier = identifier;
+        this.executor = executor;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public List<String> getIds()
+    {
+        if (this.ids == null) {
+            synchronized (this) {
+                if (this.ids == null) {
+                    List<String> result = this.idsSupplier.get();
+                    this.ids = result == null ? Collections.<String>emptyList()
+                        : Collections.unmodifiableList(new ArrayList<>(result));
+                }
+            }
+        }
+        return this.ids;
+    }
+
+    @Override
+    public boolean containsId(String id)
+    {
+        if (this.idSet == null) {
+            this.idSet = new HashSet<>(getIds());
+        }
+        return this.idSet.contains(id);
+    }
+
+    @Override
+    public int size()
+    {
+        return getIds().size();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return getIds().isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entities are compared using their identifier, so no member is loaded.
+     * </p>
+     */
+    @Override
+    public boolean contains(Object o)
+    {
+        return o instanceof PrimaryEntity && containsId(this.identifier.apply((PrimaryEntity) o));
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        return new LazyPrimaryEntityIterator<>(getIds().iterator(), this.membersManager, this.executor, this.prefetch);
+    }
+
+    @Override
+    public List<E> getPage(int offset, int limit)
+    {
+        List<String> all = getIds();
+        int from = Math.max(0, Math.min(offset, all.size()));
+        int to = Math.max(from, (int) Math.min((long) from + Math.max(limit, 0), all.size()));
+        List<E> result = new ArrayList<>(to - from);
+        new LazyPrimaryEntityIterator<>(all.subList(from, to).iterator(), this.membersManager, this.executor,
+            this.prefetch).forEachRemaining(result::add);
+        return result;
+    }
+
+    @Override
+    public PrimaryEntityGroupMembers<E> withPrefetch(int batchSize)
+    {
+        return new LazyPrimaryEntityGroupMembers<>(this::getIds, this.membersManager, this.identifier, this.executor,
+            batchSize);
+    }
+}
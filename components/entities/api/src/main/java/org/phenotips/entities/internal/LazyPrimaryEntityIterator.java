@@ -20,12 +20,25 @@
 import org.phenotips.entities.PrimaryEntity;
 import org.phenotips.entities.PrimaryEntityManager;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A lazy iterator on an immutable collection of primary entities, which only loads an entity when it is actually
  * requested out of the iterator.
+ * <p>
+ * Optionally, the next few entities can be loaded ahead of time on a separate executor, while the current entity is
+ * being processed by the caller. Entities are still returned in the order of the identifiers, and at most
+ * {@code readAhead} entities are loaded in advance, so a slow consumer doesn't cause the whole collection to be loaded
+ * in memory.
+ * </p>
  *
  * @param <E> the type of entities handled by this iterator
  * @version $Id$
@@ -37,6 +50,13 @@
 
     private Iterator<String> iterator;
 
+    private final Executor executor;
+
+    private final int readAhead;
+
+    /** The entities being loaded in advance, in iteration order. */
+    private final Deque<FutureTask<E>> pending;
+
     /**
      * Default constructor.
      *
@@ -45,21 +65,51 @@
      */
     public LazyPrimaryEntityIterator(List<String> identifiers, PrimaryEntityManager<E> entityManager)
     {
-        this.iterator = identifiers.iterator();
+        this(identifiers.iterator(), entityManager, null, 0);
+    }
+
+    /**
+     * Constructor that allows loading entities in advance.
+     *
+     * @param identifiers the identifiers of the entities to be contained in the lazy collection, consumed lazily
+     * @param entityManager the entity manager responsible for actually loading the entities
+     * @param executor the executor where entities are loaded in advance; it must be able to run
+     *            {@link PrimaryEntityManager#get(String)} outside the current thread; if {@code null}, entities are
+     *            only loaded when requested
+     * @param readAhead how many entities to load in advance, {@code 0} to only load entities when requested
+     * @since 1.4
+     */
+    public LazyPrimaryEntityIterator(Iterator<String> identifiers, PrimaryEntityManager<E> entityManager,
+        Executor executor, int readAhead)
+    {
+        this.iterator = identifiers;
         this.entityManager = entityManager;
+        this.executor = executor;
+        this.readAhead = executor == null ? 0 : Math.max(readAhead, 0);
+        this.pending = new ArrayDeque<>(this.readAhead);
     }
 
     @Override
     public boolean hasNext()
     {
-        return this.iterator.hasNext();
+        return !this.pending.isEmpty() || this.iterator.hasNext();
     }
 
     @Override
     public E next()
     {
-        String id = this.iterator.next();
-        return this.entityManager.get(id);
+        if (this.readAhead == 0) {
+            String id = this.iterator.next();
+            return this.entityManager.get(id);
+        }
+        fill();
+        FutureTask<E> next = this.pending.poll();
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        // Keep the read-ahead window full while the caller processes this entity
+        fill();
+        return waitFor(next);
     }
 
     @Override
@@ -67,4 +117,36 @@ public void remove()
     {
         throw new UnsupportedOperationException();
     }
+
+    private void fill()
+    {
+        while (this.pending.size() < this.readAhead && this.iterator.hasNext()) {
+            final String id = this.iterator.next();
+            FutureTask<E> task = new FutureTask<>(() -> this.entityManager.get(id));
+            this.pending.add(task);
+            try {
+                this.executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                // The executor is saturated or shut down, the entity will be loaded when it's requested
+                break;
+            }
+        }
+    }
+
+    private E waitFor(FutureTask<E> task)
+    {
+        // If the task was never started, run it in the current thread
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
 }
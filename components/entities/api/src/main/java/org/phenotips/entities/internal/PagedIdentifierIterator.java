@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over a sorted list of identifiers, retrieved from the storage one page at a time, so that the full list
+ * never has to be held in memory. Pages are requested using the last identifier already returned, as opposed to an
+ * offset, so that entities added or removed during iteration don't cause identifiers to be skipped or repeated.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class PagedIdentifierIterator implements Iterator<String>
+{
+    /**
+     * Retrieves a page of identifiers.
+     */
+    @FunctionalInterface
+    public interface PageLoader
+    {
+        /**
+         * Retrieves the identifiers that come after {@code after}, in ascending order.
+         *
+         * @param after the last identifier already returned, or an empty string for the first page
+         * @param limit the maximum number of identifiers to return
+         * @return a list of at most {@code limit} identifiers, empty if there are no more identifiers or if the
+         *         identifiers cannot be retrieved
+         */
+        List<String> getPage(String after, int limit);
+    }
+
+    private final PageLoader loader;
+
+    private final int pageSize;
+
+    private Iterator<String> page = Collections.emptyIterator();
+
+    private String last = "";
+
+    private boolean exhausted;
+
+    /**
+     * Default constructor.
+     *
+     * @param loader retrieves the pages of identifiers
+     * @param pageSize how many identifiers to retrieve at once
+     */
+    public PagedIdentifierIterator(PageLoader loader, int pageSize)
+    {
+        this.loader = loader;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (!this.page.hasNext() && !this.exhausted) {
+            List<String> identifiers = this.loader.getPage(this.last, this.pageSize);
+            // A short page means that there's nothing more to retrieve
+            this.exhausted = identifiers.size() < this.pageSize;
+            this.page = identifiers.iterator();
+        }
+        return this.page.hasNext();
+    }
+
+    @Override
+    public String next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        this.last = this.page.next();
+        return this.last;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.entities.PrimaryEntityManager;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out the sequence numbers used in the names of newly created primary entities, such as {@code P0000042}. Each
+ * entity type, identified by its data space and identifier prefix, has its own persistent counter, from which blocks
+ * of numbers are reserved at once, so that most allocations don't need to access the storage or wait for other
+ * threads creating entities at the same time.
+ * <p>
+ * Numbers are never handed out twice by the same instance, but the numbers that were reserved and not used before a
+ * restart are skipped, so the sequence may have gaps. Callers must still check that the document they are about to
+ * create doesn't already exist.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Role
+public interface PrimaryEntityIdentifierAllocator
+{
+    /**
+     * Allocates the next sequence number for a type of entities.
+     *
+     * @param dataSpace the space where the entities are stored, as returned by
+     *            {@link PrimaryEntityManager#getDataSpace()}
+     * @param prefix the prefix used for the names of the entities, as returned by
+     *            {@link PrimaryEntityManager#getIdPrefix()}
+     * @param lastUsedId computes the largest sequence number already used, only called when the counter for this type
+     *            of entities is first used after a restart
+     * @return a positive number, never returned before for the same type of entities
+     * @throws IllegalStateException if a new block of numbers is needed, but the advanced counter can't be stored
+     */
+    long allocate(EntityReference dataSpace, String prefix, LongSupplier lastUsedId);
+}
@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.context.ContextPropagator;
+
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.when;
+
+public class DefaultEntityReadAheadPoolTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EntityReadAheadPool> mocker =
+        new MockitoComponentMockingRule<>(DefaultEntityReadAheadPool.class);
+
+    private final AtomicReference<Thread> wrappingThread = new AtomicReference<>();
+
+    private final AtomicReference<Thread> contextThread = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ContextPropagator contextPropagator = this.mocker.getInstance(ContextPropagator.class);
+        when(contextPropagator.wrap(Matchers.any(Runnable.class))).then(invocation -> {
+            this.wrappingThread.set(Thread.currentThread());
+            Runnable task = (Runnable) invocation.getArguments()[0];
+            return (Runnable) () -> {
+                this.contextThread.set(Thread.currentThread());
+                task.run();
+            };
+        });
+    }
+
+    @Test
+    public void tasksRunOnThePoolInACopyOfTheCallerContext() throws Exception
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Thread> worker = new AtomicReference<>();
+        this.mocker.getComponentUnderTest().getExecutor().execute(() -> {
+            worker.set(Thread.currentThread());
+            done.countDown();
+        });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertNotSame(Thread.currentThread(), worker.get());
+        // The context is captured by the caller, and entered by the pool thread
+        Assert.assertSame(Thread.currentThread(), this.wrappingThread.get());
+        Assert.assertSame(worker.get(), this.contextThread.get());
+    }
+
+    @Test
+    public void disposeShutsDownThePool() throws Exception
+    {
+        Executor executor = this.mocker.getComponentUnderTest().getExecutor();
+        ((DefaultEntityReadAheadPool) this.mocker.getComponentUnderTest()).dispose();
+
+        try {
+            executor.execute(() -> Assert.fail("Tasks must not run after the pool is shut down"));
+            Assert.fail("Tasks must be rejected after the pool is shut down");
+        } catch (RejectedExecutionException ex) {
+            // Expected, the caller loads the entity itself
+        }
+        Assert.assertNull(this.mocker.getComponentUnderTest().getExecutor());
+        Mockito.verify(this.mocker.getInstance(ContextPropagator.class)).wrap(Matchers.any(Runnable.class));
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DefaultPrimaryEntityIdentifierAllocator}.
+ *
+ * @version $Id$
+ */
+public class DefaultPrimaryEntityIdentifierAllocatorTest
+{
+    private static final EntityReference DATA = new EntityReference("data", EntityType.SPACE);
+
+    private static final String PATIENT_PREFIX = "P";
+
+    private static final String FAMILY_PREFIX = "FAM";
+
+    @Rule
+    public final MockitoComponentMockingRule<PrimaryEntityIdentifierAllocator> mocker =
+        new MockitoComponentMockingRule<>(DefaultPrimaryEntityIdentifierAllocator.class);
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private XWiki xwiki;
+
+    @Mock
+    private XWikiDocument countersDocument;
+
+    private PrimaryEntityIdentifierAllocator allocator;
+
+    private List<BaseObject> storedCounters = new ArrayList<>();
+
+    private AtomicInteger saves = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+        this.allocator = this.mocker.getComponentUnderTest();
+
+        Provider<XWikiContext> provider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(provider.get()).thenReturn(this.context);
+        when(this.context.getWiki()).thenReturn(this.xwiki);
+        when(this.context.getWikiId()).thenReturn("xwiki");
+        when(this.xwiki.getDocument(DefaultPrimaryEntityIdentifierAllocator.COUNTERS_DOCUMENT, this.context))
+            .thenReturn(this.countersDocument);
+
+        when(this.countersDocument.getXObject(eq(DefaultPrimaryEntityIdentifierAllocator.COUNTER_CLASS),
+            eq(DefaultPrimaryEntityIdentifierAllocator.NAME_PROPERTY), anyString(), eq(false))).then(invocation -> {
+                for (BaseObject counter : this.storedCounters) {
+                    if (invocation.getArguments()[2].equals(
+                        counter.getStringValue(DefaultPrimaryEntityIdentifierAllocator.NAME_PROPERTY))) {
+                        return counter;
+                    }
+                }
+                return null;
+            });
+        when(this.countersDocument.newXObject(DefaultPrimaryEntityIdentifierAllocator.COUNTER_CLASS, this.context))
+            .then(invocation -> newCounter(null, 0));
+        doAnswer(invocation -> this.saves.incrementAndGet()).when(this.xwiki)
+            .saveDocument(eq(this.countersDocument), anyString(), eq(true), eq(this.context));
+    }
+
+    @Test
+    public void numbersAreSequentialAndExistingEntitiesAreCheckedOnce()
+    {
+        CountingSupplier lastUsedId = new CountingSupplier(41);
+        for (long expected = 42; expected < 162; ++expected) {
+            Assert.assertEquals(expected, this.allocator.allocate(DATA, PATIENT_PREFIX, lastUsedId));
+        }
+        Assert.assertEquals(1, lastUsedId.calls.get());
+        Assert.assertEquals(3, this.saves.get());
+        Assert.assertEquals(1, this.storedCounters.size());
+        Assert.assertEquals("data.P",
+            this.storedCounters.get(0).getStringValue(DefaultPrimaryEntityIdentifierAllocator.NAME_PROPERTY));
+        Assert.assertEquals(41 + 3 * DefaultPrimaryEntityIdentifierAllocator.BLOCK_SIZE,
+            this.storedCounters.get(0).getLongValue(DefaultPrimaryEntityIdentifierAllocator.RESERVED_PROPERTY));
+    }
+
+    @Test
+    public void storedCounterIsResumedAfterRestart()
+    {
+        newCounter("data.P", 200);
+        Assert.assertEquals(201, this.allocator.allocate(DATA, PATIENT_PREFIX, new CountingSupplier(10)));
+        Assert.assertEquals(202, this.allocator.allocate(DATA, PATIENT_PREFIX, new CountingSupplier(10)));
+    }
+
+    @Test
+    public void existingEntitiesAheadOfTheStoredCounterAreSkipped()
+    {
+        newCounter("data.P", 200);
+        Assert.assertEquals(301, this.allocator.allocate(DATA, PATIENT_PREFIX, new CountingSupplier(300)));
+    }
+
+    @Test
+    public void entityTypesHaveSeparateCounters()
+    {
+        Assert.assertEquals(1, this.allocator.allocate(DATA, PATIENT_PREFIX, new CountingSupplier(0)));
+        Assert.assertEquals(1, this.allocator.allocate(DATA, FAMILY_PREFIX, new CountingSupplier(0)));
+        Assert.assertEquals(2, this.allocator.allocate(DATA, PATIENT_PREFIX, new CountingSupplier(0)));
+        Assert.assertEquals(2, this.storedCounters.size());
+    }
+
+    @Test
+    public void allocationFailsWhenTheCounterCannotBeStored() throws XWikiException
+    {
+        doThrow(new XWikiException()).doAnswer(invocation -> this.saves.incrementAndGet()).when(this.xwiki)
+            .saveDocument(eq(this.countersDocument), anyString(), eq(true), eq(this.context));
+        try {
+            this.allocator.allocate(DATA, PATIENT_PREFIX, new CountingSupplier(0));
+            Assert.fail("Numbers from a block which wasn't stored must not be handed out");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        // Once the counter can be stored again, allocation resumes
+        Assert.assertTrue(this.allocator.allocate(DATA, PATIENT_PREFIX, new CountingSupplier(0)) > 0);
+        Assert.assertEquals(1, this.saves.get());
+    }
+
+    /** Benchmark-style check that many threads creating entities at once get distinct numbers without waiting. */
+    @Test(timeout = 30000)
+    public void concurrentAllocationsAreUniqueAndRarelyStored() throws Exception
+    {
+        // Simulate a slow storage, which used to be accessed for each new entity while holding a global lock
+        doAnswer(invocation -> {
+            Thread.sleep(1);
+            return this.saves.incrementAndGet();
+        }).when(this.xwiki).saveDocument(eq(this.countersDocument), anyString(), eq(true), eq(this.context));
+
+        int threads = 8;
+        int perThread = 5000;
+        CountingSupplier lastUsedId = new CountingSupplier(0);
+        Set<Long> allocated = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < perThread; ++j) {
+                        Assert.assertTrue(allocated.add(this.allocator.allocate(DATA, PATIENT_PREFIX, lastUsedId)));
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            Assert.assertTrue("Allocation took " + elapsed + "ms", elapsed < 20000);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(threads * perThread, allocated.size());
+        for (long i = 1; i <= threads * perThread; ++i) {
+            Assert.assertTrue(allocated.contains(i));
+        }
+        Assert.assertEquals(1, lastUsedId.calls.get());
+        Assert.assertEquals(threads * perThread / DefaultPrimaryEntityIdentifierAllocator.BLOCK_SIZE, this.saves.get());
+        verify(this.countersDocument, times(1)).newXObject(DefaultPrimaryEntityIdentifierAllocator.COUNTER_CLASS,
+            this.context);
+    }
+
+    private BaseObject newCounter(String name, long reserved)
+    {
+        BaseObject counter = new BaseObject();
+        if (name != null) {
+            counter.setStringValue(DefaultPrimaryEntityIdentifierAllocator.NAME_PROPERTY, name);
+        }
+        counter.setLongValue(DefaultPrimaryEntityIdentifierAllocator.RESERVED_PROPERTY, reserved);
+        this.storedCounters.add(counter);
+        return counter;
+    }
+
+    private static final class CountingSupplier implements LongSupplier
+    {
+        private final long value;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        CountingSupplier(long value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public long getAsLong()
+        {
+            this.calls.incrementAndGet();
+            return this.value;
+        }
+    }
+}
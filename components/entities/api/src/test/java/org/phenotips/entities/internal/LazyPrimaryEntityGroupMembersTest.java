@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.entities.PrimaryEntity;
+import org.phenotips.entities.PrimaryEntityGroupMembers;
+import org.phenotips.entities.PrimaryEntityManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link LazyPrimaryEntityGroupMembers}.
+ *
+ * @version $Id$
+ */
+public class LazyPrimaryEntityGroupMembersTest
+{
+    private static final List<String> IDS = Arrays.asList("data.P01", "data.P02", "data.P03", "data.P04");
+
+    @Mock
+    private PrimaryEntityManager<PrimaryEntity> manager;
+
+    @Mock
+    private PrimaryEntity p1;
+
+    @Mock
+    private PrimaryEntity p2;
+
+    @Mock
+    private PrimaryEntity p3;
+
+    @Mock
+    private PrimaryEntity p4;
+
+    @Mock
+    private PrimaryEntity other;
+
+    private AtomicInteger queries = new AtomicInteger();
+
+    private PrimaryEntityGroupMembers<PrimaryEntity> members;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        when(this.manager.get("data.P01")).thenReturn(this.p1);
+        when(this.manager.get("data.P02")).thenReturn(this.p2);
+        when(this.manager.get("data.P03")).thenReturn(this.p3);
+        when(this.manager.get("data.P04")).thenReturn(this.p4);
+        when(this.p1.getId()).thenReturn("P01");
+        when(this.other.getId()).thenReturn("P05");
+
+        this.members = new LazyPrimaryEntityGroupMembers<>(() -> {
+            this.queries.incrementAndGet();
+            return IDS;
+        }, this.manager, entity -> "data." + entity.getId(), null);
+    }
+
+    @Test
+    public void idsSizeAndMembershipDontLoadMembers()
+    {
+        Assert.assertEquals(IDS, this.members.getIds());
+        Assert.assertEquals(4, this.members.size());
+        Assert.assertFalse(this.members.isEmpty());
+        Assert.assertTrue(this.members.containsId("data.P03"));
+        Assert.assertFalse(this.members.containsId("data.P05"));
+        Assert.assertTrue(this.members.contains(this.p1));
+        Assert.assertFalse(this.members.contains(this.other));
+        Assert.assertFalse(this.members.contains("data.P01"));
+
+        Assert.assertEquals(1, this.queries.get());
+        verify(this.manager, never()).get(anyString());
+    }
+
+    @Test
+    public void membersAreLoadedInOrderWhenAccessed()
+    {
+        Assert.assertEquals(Arrays.asList(this.p1, this.p2, this.p3, this.p4), new ArrayList<>(this.members));
+        Assert.assertEquals(1, this.queries.get());
+    }
+
+    @Test
+    public void pagesOnlyLoadTheirMembers()
+    {
+        Assert.assertEquals(Arrays.asList(this.p2, this.p3), this.members.getPage(1, 2));
+        Assert.assertEquals(Collections.singletonList(this.p4), this.members.getPage(3, 10));
+        Assert.assertTrue(this.members.getPage(10, 10).isEmpty());
+        Assert.assertTrue(this.members.getPage(0, 0).isEmpty());
+
+        verify(this.manager, never()).get("data.P01");
+        verify(this.manager, times(1)).get("data.P02");
+        Assert.assertEquals(1, this.queries.get());
+    }
+
+    @Test
+    public void prefetchingViewReturnsTheSameMembers()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrimaryEntityGroupMembers<PrimaryEntity> prefetching = new LazyPrimaryEntityGroupMembers<>(() -> IDS,
+                this.manager, entity -> "data." + entity.getId(), executor).withPrefetch(2);
+            Assert.assertEquals(Arrays.asList(this.p1, this.p2, this.p3, this.p4), new ArrayList<>(prefetching));
+            Assert.assertEquals(Arrays.asList(this.p3, this.p4), prefetching.getPage(2, 2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void missingIdsGiveEmptyCollection()
+    {
+        PrimaryEntityGroupMembers<PrimaryEntity> empty = new LazyPrimaryEntityGroupMembers<>(() -> null,
+            this.manager, PrimaryEntity::getId, null);
+        Assert.assertTrue(empty.isEmpty());
+        Assert.assertFalse(empty.iterator().hasNext());
+    }
+}
@@ -22,9 +22,14 @@
 
 import org.xwiki.component.manager.ComponentLookupException;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -32,6 +37,8 @@
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 public class LazyPrimaryEntityIteratorTest
@@ -86,4 +93,62 @@ public void removeThrowsUnsupportedOperationException() throws UnsupportedOperat
         LazyPrimaryEntityIterator<PrimaryEntity> iterator = new LazyPrimaryEntityIterator<>(input, this.manager);
         iterator.remove();
     }
+
+    @Test
+    public void readAheadPreservesOrderAndBoundsLoadedEntities()
+    {
+        List<String> input = new ArrayList<>();
+        List<PrimaryEntity> expected = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            input.add("P" + i);
+            expected.add(mock(PrimaryEntity.class));
+        }
+        AtomicInteger loads = new AtomicInteger();
+        when(this.manager.get(anyString())).then(invocation -> {
+            loads.incrementAndGet();
+            // Simulate a slow storage
+            Thread.sleep(2);
+            return expected.get(input.indexOf(invocation.getArguments()[0]));
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            LazyPrimaryEntityIterator<PrimaryEntity> iterator =
+                new LazyPrimaryEntityIterator<>(input.iterator(), this.manager, executor, 5);
+            List<PrimaryEntity> result = new ArrayList<>();
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+                // At most 5 entities are loaded ahead of the ones already consumed
+                Assert.assertTrue(loads.get() <= result.size() + 5);
+            }
+            Assert.assertEquals(expected, result);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectedReadAheadLoadsInCurrentThread()
+    {
+        List<String> input = new LinkedList<>();
+        input.add("Entity01");
+        input.add("Entity02");
+
+        LazyPrimaryEntityIterator<PrimaryEntity> iterator = new LazyPrimaryEntityIterator<>(input.iterator(),
+            this.manager, task -> {
+                throw new RejectedExecutionException();
+            }, 3);
+        Assert.assertEquals(this.e1, iterator.next());
+        Assert.assertEquals(this.e2, iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void readAheadNextOnExhaustedIteratorThrowsException()
+    {
+        LazyPrimaryEntityIterator<PrimaryEntity> iterator =
+            new LazyPrimaryEntityIterator<>(new LinkedList<String>().iterator(), this.manager, Runnable::run, 3);
+        Assert.assertFalse(iterator.hasNext());
+        iterator.next();
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PagedIdentifierIterator}.
+ *
+ * @version $Id$
+ */
+public class PagedIdentifierIteratorTest
+{
+    private final List<String> requestedAfter = new ArrayList<>();
+
+    @Test
+    public void allPagesAreRetrievedInOrder()
+    {
+        List<String> all = Arrays.asList("data.P0000001", "data.P0000002", "data.P0000003", "data.P0000004",
+            "data.P0000005");
+        PagedIdentifierIterator iterator = new PagedIdentifierIterator(pages(all), 2);
+        List<String> result = new ArrayList<>();
+        iterator.forEachRemaining(result::add);
+        Assert.assertEquals(all, result);
+        Assert.assertEquals(Arrays.asList("", "data.P0000002", "data.P0000004"), this.requestedAfter);
+    }
+
+    @Test
+    public void fullLastPageNeedsOneMoreRequest()
+    {
+        List<String> all = Arrays.asList("data.P0000001", "data.P0000002");
+        PagedIdentifierIterator iterator = new PagedIdentifierIterator(pages(all), 2);
+        Assert.assertEquals("data.P0000001", iterator.next());
+        Assert.assertEquals("data.P0000002", iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(Arrays.asList("", "data.P0000002"), this.requestedAfter);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void emptyResultsGiveEmptyIterator()
+    {
+        PagedIdentifierIterator iterator = new PagedIdentifierIterator(pages(Collections.<String>emptyList()), 10);
+        Assert.assertFalse(iterator.hasNext());
+        iterator.next();
+    }
+
+    private PagedIdentifierIterator.PageLoader pages(List<String> all)
+    {
+        return (after, limit) -> {
+            this.requestedAfter.add(after);
+            List<String> page = new ArrayList<>();
+            for (String identifier : all) {
+                if (identifier.compareTo(after) > 0 && page.size() < limit) {
+                    page.add(identifier);
+                }
+            }
+            return page;
+        };
+    }
+}
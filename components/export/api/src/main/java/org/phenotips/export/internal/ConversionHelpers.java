@@ -173,22 +173,39 @@ public List<Feature> sortFeaturesSimple(@Nonnull Set<? extends Feature> features
     public List<Feature> sortFeaturesWithSections(Set<? extends Feature> features)
     {
         this.sectionFeatureTree = new HashMap<>();
-        List<Feature> positiveList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, true));
-        List<Feature> negativeList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, false));
+        return sortFeaturesWithSections(features, this.sectionFeatureTree);
+    }
+
+    /**
+     * Same as {@link #sortFeaturesWithSections(Set)}, but the mapping of features to their section is put in the
+     * passed map instead of {@link #sectionFeatureTree}, so that this helper can be used by several threads at once.
+     *
+     * @param features set of features to sort. Cannot be null
+     * @param sectionLookup where to put the section of each feature, as a feature id to section title mapping
+     * @return a subset of the passed in features in a specific order
+     * @since 1.4
+     */
+    public List<Feature> sortFeaturesWithSections(Set<? extends Feature> features, Map<String, String> sectionLookup)
+    {
+        List<Feature> positiveList =
+            sortFeaturesBySection(filterFeaturesByPresentStatus(features, true), sectionLookup);
+        List<Feature> negativeList =
+            sortFeaturesBySection(filterFeaturesByPresentStatus(features, false), sectionLookup);
 
         positiveList.addAll(negativeList);
         return positiveList;
     }
 
     /**
-     * Fills {@link #sectionFeatureTree} with feature ids mapped to section names. This function is used internally only
-     * in {@link #sortFeaturesWithSections(java.util.Set)}; if changing that, keep in mind the mutation of
-     * {@link #sectionFeatureTree}.
+     * Fills {@code sectionLookup} with feature ids mapped to section names. This function is used internally only
+     * in {@link #sortFeaturesWithSections(java.util.Set, Map)}; if changing that, keep in mind the mutation of
+     * {@code sectionLookup}.
      *
      * @param features list of features to be sorted. Cannot be null
+     * @param sectionLookup where to put the section of each feature
      * @return list of features sorted in the same order as {@link #categoryMapping}
      */
-    private List<Feature> sortFeaturesBySection(List<Feature> features)
+    private List<Feature> sortFeaturesBySection(List<Feature> features, Map<String, String> sectionLookup)
     {
         List<Feature> sortedFeatures = new LinkedList<>();
 
@@ -204,7 +221,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
                 while (iter.hasNext()) {
                     Feature feature = iter.next();
                     if (getCategoriesFromOntology(feature.getId()).contains(category)) {
-                        this.sectionFeatureTree.put(feature.getId(), section);
+                        sectionLookup.put(feature.getId(), section);
                         sortedFeatures.add(feature);
                         iter.remove();
                     }
@@ -212,7 +229,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
             }
         }
         for (Feature feature : features) {
-            this.sectionFeatureTree.put(feature.getId(), "No category");
+            sectionLookup.put(feature.getId(), "No category");
         }
         sortedFeatures.addAll(features);
         return sortedFeatures;
@@ -38,16 +38,16 @@
     private DataCell[][] matrix;
 
     /** The size of the matrix along x axis. */
-    private Integer matrixX = 0;
+    private int matrixX;
 
     /** @see #matrixX */
-    private Integer matrixY = 0;
+    private int matrixY;
 
     /** Used for creating the {@link #matrix}. */
-    private Integer maxX = 0;
+    private int maxX;
 
     /** @see #maxX */
-    private Integer maxY = 0;
+    private int maxY;
 
     /**
      * Adds a new cell to the {@link #cellList} and attempts to include it into the {@link #matrix}.
@@ -57,19 +57,21 @@
      */
     public void addCell(DataCell cell)
     {
+        int x = cell.getX();
+        int y = cell.getY();
         /* Add to matrix only if the cell fits within the boundaries and the current spot is empty */
         if (this.matrix != null) {
-            if (cell.getX() < this.matrixX && cell.getY() < this.matrixY) {
-                if (this.matrix[cell.getX()][cell.getY()] == null) {
-                    this.matrix[cell.getX()][cell.getY()] = cell;
+            if (x < this.matrixX && y < this.matrixY) {
+                if (this.matrix[x][y] == null) {
+                    this.matrix[x][y] = cell;
                 }
             }
         }
-        if (cell.getX() > this.maxX) {
-            this.maxX = cell.getX();
+        if (x > this.maxX) {
+            this.maxX = x;
         }
-        if (cell.getY() > this.maxY) {
-            this.maxY = cell.getY();
+        if (y > this.maxY) {
+            this.maxY = y;
         }
         this.cellList.add(cell);
     }
@@ -77,15 +79,9 @@ public void addCell(DataCell cell)
     /**
      * Fills the {@link #matrix} with the cells from {@link #cellList}, putting each cell into the {@link #matrix}
      * according to the cell's coordinates.
-     *
-     * @throws Exception if {@link #maxX} or {@link #maxY} are null
      */
-    public void finalizeToMatrix() throws Exception
+    public void finalizeToMatrix()
     {
-        if (this.maxX == null || this.maxY == null) {
-            throw new Exception("The maximum values should be initialized");
-        }
-
         // From now on the cell positioning can be read from the 2D array's points, rather then the positioning stored
         // within the cell.
         this.matrixX = this.maxX + 1;
@@ -113,14 +109,14 @@ public void mergeX() throws Exception
         if (this.matrix == null) {
             throw new Exception("The section has not been converted to a matrix");
         }
-        for (Integer y = 0; y <= getMaxY(); y++) {
-            for (Integer x = 0; x <= getMaxX(); x++) {
+        for (int y = 0; y <= this.maxY; y++) {
+            for (int x = 0; x <= this.maxX; x++) {
                 DataCell cell = this.matrix[x][y];
                 if (cell == null) {
                     continue;
                 }
-                Integer nextX = x + 1;
-                while (nextX <= getMaxX() && this.matrix[nextX][y] == null) {
+                int nextX = x + 1;
+                while (nextX <= this.maxX && this.matrix[nextX][y] == null) {
                     cell.addMergeX();
                     nextX++;
                 }
@@ -141,8 +141,7 @@ public DataSection phenotypeBody(Patient patient) throws Exception
         if (!categoriesEnabled) {
             sortedFeatures = this.phenotypeHelper.sortFeaturesSimple(features);
         } else {
-            sortedFeatures = this.phenotypeHelper.sortFeaturesWithSections(features);
-            sectionFeatureLookup = this.phenotypeHelper.getSectionFeatureTree();
+            sortedFeatures = this.phenotypeHelper.sortFeaturesWithSections(features, sectionFeatureLookup);
         }
 
         Boolean lastStatus = null;
@@ -17,13 +17,24 @@
  */
 package org.phenotips.export.internal;
 
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.context.ContextPropagator;
 import org.phenotips.data.Patient;
 
+import org.xwiki.component.manager.ComponentLookupException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Assembles the various DataSections.
@@ -33,6 +44,18 @@
  */
 public class SheetAssembler
 {
+    /** The maximum number of threads converting patients into cells, limited also by the available processors. */
+    private static final int MAX_CONVERSION_THREADS = 4;
+
+    /**
+     * How many patients can be waiting for or undergoing conversion for each thread. Converted patients are assembled
+     * in order, so this bounds the memory used by the patients converted ahead of a slow one.
+     */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /** Exports with fewer patients are converted on the calling thread, since they gain nothing from parallelism. */
+    private static final int PARALLEL_THRESHOLD = 20;
+
     /** The global section meant to eventually contain all {@link org.phenotips.export.internal.DataCell}s. */
     private DataSection oneSection = new DataSection();
 
@@ -49,8 +72,22 @@
      */
     public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws Exception
     {
-        DataToCellConverter converter = new DataToCellConverter();
+        this(enabledFields, patients, new DataToCellConverter(), getConversionThreads(patients.size()));
+    }
 
+    /**
+     * Same as {@link #SheetAssembler(Set, List)}, with the number of threads used for converting patients given.
+     *
+     * @param enabledFields set of fields for which data should be exported
+     * @param patients list of patients from whom data should exported
+     * @param converter the converter to use
+     * @param threads how many threads should convert patients in parallel; with 1, patients are converted on the
+     *            calling thread
+     * @throws java.lang.Exception half of the functions used throw exceptions
+     */
+    SheetAssembler(Set<String> enabledFields, List<Patient> patients, DataToCellConverter converter, int threads)
+        throws Exception
+    {
         /* Some sections require setup, which need to be run here. */
         converter.phenotypeSetup(enabledFields);
         converter.prenatalPhenotypeSetup(enabledFields);
@@ -59,21 +96,8 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
 
         /* Headers MUST be generated first. Some of them contain setup code for the body */
         List<DataSection> headers = generateHeader(converter, enabledFields);
-        List<List<DataSection>> bodySections = generateBody(converter, patients);
-
-        List<DataSection> patientsCombined = new LinkedList<>();
-        for (List<DataSection> patientSections : bodySections) {
-            for (DataSection section : patientSections) {
-                section.finalizeToMatrix();
-                Styler.disallowBodyStyles(section);
-                Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
-                Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
-            }
-
-            DataSection assembled = assembleSectionsX(patientSections, true);
-            Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
-            patientsCombined.add(assembled);
-        }
+        List<DataSection> patientsCombined = threads > 1
+            ? generateBodyInParallel(converter, patients, threads) : generateBody(converter, patients);
 
         /* Inserting styling calls here is fairly unavoidable. Also don't forget to merge BEFORE styling. */
         for (DataSection header : headers) {
@@ -96,91 +120,149 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
             .extendStyleVertically(this.oneSection, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
     }
 
+    private static int getConversionThreads(int patientCount)
+    {
+        if (patientCount < PARALLEL_THRESHOLD) {
+            return 1;
+        }
+        return Math.min(MAX_CONVERSION_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
     /**
-     * Instruction list of which {@link org.phenotips.export.internal.DataToCellConverter}'s functions to call with a
-     * null {@link org.phenotips.export.internal.DataSection} filter.
+     * Converts each patient into one styled {@link org.phenotips.export.internal.DataSection}, on the calling thread.
      *
-     * @return list of generated, not null {@link org.phenotips.export.internal.DataSection}s
+     * @return list of converted patients, in the same order as the passed patients, skipping null patients
      */
-    private List<List<DataSection>> generateBody(DataToCellConverter converter, List<Patient> patients)
-        throws Exception
+    private List<DataSection> generateBody(DataToCellConverter converter, List<Patient> patients) throws Exception
     {
-        List<List<DataSection>> allSections = new LinkedList<>();
+        List<DataSection> allSections = new ArrayList<>(patients.size());
         for (Patient patient : patients) {
-            if (patient == null) {
-                continue;
+            if (patient != null) {
+                allSections.add(convertPatient(converter, patient));
             }
-            List<DataSection> patientSections = new LinkedList<>();
-            patientSections.add(converter.idBody(patient));
-            patientSections.add(converter.documentInfoBody(patient));
-            patientSections.add(converter.patientInfoBody(patient));
-            patientSections.add(converter.familyHistoryBody(patient));
-            patientSections.add(converter.prenatalPerinatalHistoryBody(patient));
-            patientSections.add(converter.prenatalPhenotypeBody(patient));
-            patientSections.add(converter.medicalHistoryBody(patient));
-            patientSections.add(converter.isNormalBody(patient));
-            patientSections.add(converter.phenotypeBody(patient));
-            patientSections.add(converter.genesBody(patient));
-            patientSections.add(converter.variantsBody(patient));
-            patientSections.add(converter.geneticNotesBody(patient));
-            patientSections.add(converter.clinicalDiagnosisBody(patient));
-            patientSections.add(converter.disordersBody(patient));
-            patientSections.add(converter.diagnosisNotesBody(patient));
-            patientSections.add(converter.isSolvedBody(patient));
-
-            /* Null section filter */
-            Iterator<DataSection> it = patientSections.iterator();
-            while (it.hasNext()) {
-                DataSection i = it.next();
-                if (i == null) {
-                    it.remove();
+        }
+        return allSections;
+    }
+
+    /**
+     * Same as {@link #generateBody(DataToCellConverter, List)}, but patients are converted by a fixed pool of threads.
+     * Only a limited number of patients are submitted ahead of the oldest one that is still being converted, and the
+     * results are collected in the original order.
+     */
+    private List<DataSection> generateBodyInParallel(DataToCellConverter converter, List<Patient> patients,
+        int threads) throws Exception
+    {
+        ContextPropagator contextPropagator = getContextPropagator();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Spreadsheet export " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<DataSection> allSections = new ArrayList<>(patients.size());
+        Deque<Future<DataSection>> inFlight = new ArrayDeque<>();
+        int window = threads * IN_FLIGHT_PER_THREAD;
+        try {
+            for (Patient patient : patients) {
+                if (patient == null) {
+                    continue;
+                }
+                if (inFlight.size() >= window) {
+                    allSections.add(getResult(inFlight.poll()));
                 }
+                Callable<DataSection> task = () -> convertPatient(converter, patient);
+                inFlight.add(pool.submit(contextPropagator == null ? task : contextPropagator.wrap(task)));
             }
-            allSections.add(patientSections);
+            while (!inFlight.isEmpty()) {
+                allSections.add(getResult(inFlight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
         }
         return allSections;
     }
 
     /**
-     * Same as {@link #generateBody(DataToCellConverter, java.util.List)} but for header sections. Most of header
+     * Instruction list of which {@link org.phenotips.export.internal.DataToCellConverter}'s functions to call with a
+     * null {@link org.phenotips.export.internal.DataSection} filter. The resulting sections are styled and combined
+     * into one section per patient. Only reads the state of the converter, so it can be called for several patients
+     * at once.
+     *
+     * @return the generated, not null {@link org.phenotips.export.internal.DataSection} for the patient
+     */
+    private DataSection convertPatient(DataToCellConverter converter, Patient patient) throws Exception
+    {
+        List<DataSection> patientSections = new ArrayList<>();
+        addSection(patientSections, converter.idBody(patient));
+        addSection(patientSections, converter.documentInfoBody(patient));
+        addSection(patientSections, converter.patientInfoBody(patient));
+        addSection(patientSections, converter.familyHistoryBody(patient));
+        addSection(patientSections, converter.prenatalPerinatalHistoryBody(patient));
+        addSection(patientSections, converter.prenatalPhenotypeBody(patient));
+        addSection(patientSections, converter.medicalHistoryBody(patient));
+        addSection(patientSections, converter.isNormalBody(patient));
+        addSection(patientSections, converter.phenotypeBody(patient));
+        addSection(patientSections, converter.genesBody(patient));
+        addSection(patientSections, converter.variantsBody(patient));
+        addSection(patientSections, converter.geneticNotesBody(patient));
+        addSection(patientSections, converter.clinicalDiagnosisBody(patient));
+        addSection(patientSections, converter.disordersBody(patient));
+        addSection(patientSections, converter.diagnosisNotesBody(patient));
+        addSection(patientSections, converter.isSolvedBody(patient));
+
+        for (DataSection section : patientSections) {
+            section.finalizeToMatrix();
+            Styler.disallowBodyStyles(section);
+            Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
+            Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+        }
+
+        DataSection assembled = assembleSectionsX(patientSections, true);
+        Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
+        return assembled;
+    }
+
+    /** Null section filter. */
+    private static void addSection(List<DataSection> sections, DataSection section)
+    {
+        if (section != null) {
+            sections.add(section);
+        }
+    }
+
+    /**
+     * Same as {@link #convertPatient(DataToCellConverter, Patient)} but for header sections. Most of header
      * functions from {@link org.phenotips.export.internal.DataToCellConverter} contain some set up code.
      */
     private List<DataSection> generateHeader(DataToCellConverter converter, Set<String> enabledFields) throws Exception
     {
-        List<DataSection> headerSections = new LinkedList<>();
-        headerSections.add(converter.idHeader(enabledFields));
-        headerSections.add(converter.documentInfoHeader(enabledFields));
-        headerSections.add(converter.patientInfoHeader(enabledFields));
-        headerSections.add(converter.familyHistoryHeader(enabledFields));
-        headerSections.add(converter.prenatalPerinatalHistoryHeader(enabledFields));
-        headerSections.add(converter.prenatalPhenotypeHeader());
-        headerSections.add(converter.medicalHistoryHeader(enabledFields));
-        headerSections.add(converter.isNormalHeader(enabledFields));
-        headerSections.add(converter.phenotypeHeader());
-        headerSections.add(converter.genesHeader());
-        headerSections.add(converter.variantsHeader());
-        headerSections.add(converter.geneticNotesHeader(enabledFields));
-        headerSections.add(converter.clinicalDiagnosisHeaders(enabledFields));
-        headerSections.add(converter.disordersHeaders(enabledFields));
-        headerSections.add(converter.diagnosisNotesHeader(enabledFields));
-        headerSections.add(converter.isSolvedHeader(enabledFields));
-
-        Iterator<DataSection> it = headerSections.iterator();
-        while (it.hasNext()) {
-            DataSection i = it.next();
-            if (i == null) {
-                it.remove();
-            }
-        }
+        List<DataSection> headerSections = new ArrayList<>();
+        addSection(headerSections, converter.idHeader(enabledFields));
+        addSection(headerSections, converter.documentInfoHeader(enabledFields));
+        addSection(headerSections, converter.patientInfoHeader(enabledFields));
+        addSection(headerSections, converter.familyHistoryHeader(enabledFields));
+        addSection(headerSections, converter.prenatalPerinatalHistoryHeader(enabledFields));
+        addSection(headerSections, converter.prenatalPhenotypeHeader());
+        addSection(headerSections, converter.medicalHistoryHeader(enabledFields));
+        addSection(headerSections, converter.isNormalHeader(enabledFields));
+        addSection(headerSections, converter.phenotypeHeader());
+        addSection(headerSections, converter.genesHeader());
+        addSection(headerSections, converter.variantsHeader());
+        addSection(headerSections, converter.geneticNotesHeader(enabledFields));
+        addSection(headerSections, converter.clinicalDiagnosisHeaders(enabledFields));
+        addSection(headerSections, converter.disordersHeaders(enabledFields));
+        addSection(headerSections, converter.diagnosisNotesHeader(enabledFields));
+        addSection(headerSections, converter.isSolvedHeader(enabledFields));
         return headerSections;
     }
 
     /** Combines the passed in sections into one large section, keeping track of positioning along the x axis. */
-    private DataSection assembleSectionsX(List<DataSection> sections, Boolean finalize) throws Exception
+    private DataSection assembleSectionsX(List<DataSection> sections, boolean finalize)
     {
         DataSection combinedSection = new DataSection();
 
-        Integer offset = 0;
+        int offset = 0;
         for (DataSection section : sections) {
             Set<DataCell> cells = section.getCellList();
 
@@ -199,11 +281,11 @@ private DataSection assembleSectionsX(List<DataSection> sections, Boolean finali
     }
 
     /** Combines the passed in sections into one large section, keeping track of positioning along the y axis. */
-    private DataSection assembleSectionsY(List<DataSection> sections, Boolean finalize) throws Exception
+    private DataSection assembleSectionsY(List<DataSection> sections, boolean finalize)
     {
         DataSection combinedSection = new DataSection();
 
-        Integer offset = 0;
+        int offset = 0;
         for (DataSection section : sections) {
             Set<DataCell> cells = section.getCellList();
 
@@ -220,6 +302,34 @@ private DataSection assembleSectionsY(List<DataSection> sections, Boolean finali
         return combinedSection;
     }
 
+    private static DataSection getResult(Future<DataSection> result) throws Exception
+    {
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Converting patients needs the caller's context, for accessing documents and translations, so each conversion
+     * runs in a copy of it.
+     */
+    private static ContextPropagator getContextPropagator()
+    {
+        try {
+            return ComponentManagerRegistry.getContextComponentManager().getInstance(ContextPropagator.class);
+        } catch (ComponentLookupException ex) {
+            return null;
+        }
+    }
+
     /**
      * @return a {@link org.phenotips.export.internal.DataSection} that contains all
      *         {@link org.phenotips.export.internal.DataCell}s
@@ -18,7 +18,7 @@
 package org.phenotips.export.internal;
 
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -47,14 +47,21 @@
 {
     private static final String NO_MATRIX_ERR_MSG = "The section has not been converted to a matrix";
 
+    /** The style options that affect the font of a cell. */
+    private static final Set<StyleOption> FONT_OPTIONS =
+        EnumSet.of(StyleOption.HEADER, StyleOption.LARGE_HEADER, StyleOption.YES, StyleOption.NO);
+
     /**
      * The {@link org.apache.poi.ss.usermodel.Workbook} can have only a limited number of styles. The cache prevents
-     * creation of duplicates.
+     * creation of duplicates, so that each distinct combination of style options is created only once per workbook.
      */
     private Map<Set<StyleOption>, CellStyle> styleCache = new HashMap<Set<StyleOption>, CellStyle>();
 
-    /** Cached font. */
-    private Font defaultFont;
+    /** Cached fonts, keyed by the {@link #FONT_OPTIONS font options} they were created for. */
+    private Map<Set<StyleOption>, Font> fontCache = new HashMap<Set<StyleOption>, Font>();
+
+    /** The workbook that the cached styles and fonts belong to. */
+    private Workbook workbook;
 
     /**
      * In some corner cases, some styles should be removed from cells to prevent conflicts with styles in other cells.
@@ -258,87 +265,95 @@ public static void extendStyleVertically(DataSection section, StyleOption... sty
      */
     public void style(DataCell dataCell, Cell cell, Workbook wBook)
     {
+        if (wBook != this.workbook) {
+            /* Styles and fonts belong to a workbook, and cannot be used in another one. */
+            this.styleCache.clear();
+            this.fontCache.clear();
+            this.workbook = wBook;
+        }
+
         Set<StyleOption> styles = dataCell.getStyles();
+        /* The cell's styles may still change, so the key must be a copy. Cells may be created with a null style. */
+        Set<StyleOption> key = EnumSet.noneOf(StyleOption.class);
+        if (styles != null) {
+            for (StyleOption style : styles) {
+                if (style != null) {
+                    key.add(style);
+                }
+            }
+        }
+        CellStyle cellStyle = this.styleCache.get(key);
+        if (cellStyle == null) {
+            cellStyle = createStyle(key, wBook);
+            this.styleCache.put(key, cellStyle);
+        }
+        cell.setCellStyle(cellStyle);
+    }
+
+    private CellStyle createStyle(Set<StyleOption> styles, Workbook wBook)
+    {
         CellStyle cellStyle = wBook.createCellStyle();
         /* For \n to work properly set to true */
         cellStyle.setWrapText(true);
-        if (this.defaultFont == null) {
-            this.defaultFont = createDefaultFont(wBook);
-        }
-        cellStyle.setFont(this.defaultFont);
+        cellStyle.setFont(getFont(styles, wBook));
         cellStyle.setVerticalAlignment(CellStyle.VERTICAL_TOP);
 
-        /* If the DataCell's styles is not set, gives default style, and indicates that this function should return. */
-        if (this.setDefaultStyle(styles, cell, cellStyle)) {
-            return;
-        }
-        if (this.styleCache.containsKey(styles)) {
-            cell.setCellStyle(this.styleCache.get(styles));
-            return;
-        }
-
         /* Priority of styles can be coded in by placing the if statement lower within the corresponding function. */
-        this.setFontStyles(styles, cell, cellStyle, wBook);
-        this.setBorderStyles(styles, cell, cellStyle, wBook);
-
-        /* Keep this as the last statement. */
-        this.styleCache.put(styles, cellStyle);
+        this.setAlignmentStyles(styles, cellStyle);
+        this.setBorderStyles(styles, cellStyle);
+        return cellStyle;
     }
 
     /**
-     * In case a {@link org.phenotips.export.internal.DataCell} does not have its styles set, applies the default
-     * style.
+     * Returns the font for a combination of style options, creating it only if no other style used the same font.
      */
-    private boolean setDefaultStyle(Set<StyleOption> styles, Cell cell, CellStyle cellStyle)
+    private Font getFont(Set<StyleOption> styles, Workbook wBook)
     {
-        if (styles == null) {
-            if (this.styleCache.containsKey(Collections.<StyleOption>emptySet())) {
-                cell.setCellStyle(this.styleCache.get(Collections.<StyleOption>emptySet()));
-                return true;
+        Set<StyleOption> key = EnumSet.noneOf(StyleOption.class);
+        for (StyleOption option : FONT_OPTIONS) {
+            if (styles.contains(option)) {
+                key.add(option);
             }
-            cell.setCellStyle(cellStyle);
-            this.styleCache.put(Collections.<StyleOption>emptySet(), cellStyle);
-            return true;
         }
-        return false;
+        Font font = this.fontCache.get(key);
+        if (font == null) {
+            font = this.createFont(key, wBook);
+            this.fontCache.put(key, font);
+        }
+        return font;
     }
 
     /**
      * Creates new {@link org.apache.poi.ss.usermodel.Font}s. Priority can be coded in by placing the if statement
      * lower, for higher priority.
      */
-    private void setFontStyles(Set<StyleOption> styles, Cell cell, CellStyle cellStyle, Workbook wBook)
+    private Font createFont(Set<StyleOption> styles, Workbook wBook)
     {
-        Font headerFont = null;
-        if (styles.contains(StyleOption.HEADER)) {
-            headerFont = wBook.createFont();
-            headerFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
-            cellStyle.setFont(headerFont);
-            cellStyle.setAlignment(CellStyle.ALIGN_CENTER);
-            cellStyle.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-            cell.setCellStyle(cellStyle);
-        }
-        if (styles.contains(StyleOption.LARGE_HEADER)) {
-            if (headerFont == null) {
-                headerFont = wBook.createFont();
-                headerFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
+        Font font = null;
+        if (styles.contains(StyleOption.HEADER) || styles.contains(StyleOption.LARGE_HEADER)) {
+            font = wBook.createFont();
+            font.setBoldweight(Font.BOLDWEIGHT_BOLD);
+            if (styles.contains(StyleOption.LARGE_HEADER)) {
+                font.setFontHeightInPoints((short) 12);
             }
-            headerFont.setFontHeightInPoints((short) 12);
-            cellStyle.setFont(headerFont);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.YES)) {
-            Font font = createDefaultFont(wBook);
+            font = createDefaultFont(wBook);
             font.setColor(HSSFColor.GREEN.index);
-            cellStyle.setFont(font);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.NO)) {
-            Font font = createDefaultFont(wBook);
+            font = createDefaultFont(wBook);
             font.setColor(HSSFColor.DARK_RED.index);
             font.setBoldweight(Font.BOLDWEIGHT_BOLD);
-            cellStyle.setFont(font);
-            cell.setCellStyle(cellStyle);
+        }
+        return font != null ? font : createDefaultFont(wBook);
+    }
+
+    private void setAlignmentStyles(Set<StyleOption> styles, CellStyle cellStyle)
+    {
+        if (styles.contains(StyleOption.HEADER)) {
+            cellStyle.setAlignment(CellStyle.ALIGN_CENTER);
+            cellStyle.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
         }
     }
 
@@ -346,33 +361,27 @@ private void setFontStyles(Set<StyleOption> styles, Cell cell, CellStyle cellSty
      * Converts {@link org.phenotips.export.internal.StyleOption} enum to {@link org.apache.poi.ss.usermodel.CellStyle}
      * enum. Priority can be coded in by placing the if statement lower, for higher priority.
      */
-    private void setBorderStyles(Set<StyleOption> styles, Cell cell, CellStyle cellStyle, Workbook wBook)
+    private void setBorderStyles(Set<StyleOption> styles, CellStyle cellStyle)
     {
         if (styles.contains(StyleOption.HEADER_BOTTOM)) {
             cellStyle.setBorderBottom(CellStyle.BORDER_MEDIUM);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.SECTION_BORDER_LEFT)) {
             cellStyle.setBorderLeft(CellStyle.BORDER_MEDIUM);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.SECTION_BORDER_RIGHT)) {
             cellStyle.setBorderRight(CellStyle.BORDER_MEDIUM);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.PATIENT_BORDER)) {
             cellStyle.setBorderBottom(CellStyle.BORDER_THIN);
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.FEATURE_SEPARATOR)) {
             cellStyle.setBorderTop(CellStyle.BORDER_THIN);
             cellStyle.setTopBorderColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            cell.setCellStyle(cellStyle);
         }
         if (styles.contains(StyleOption.YES_NO_SEPARATOR)) {
             cellStyle.setBorderTop(CellStyle.BORDER_DASHED);
             cellStyle.setTopBorderColor(IndexedColors.GREY_50_PERCENT.getIndex());
-            cell.setCellStyle(cellStyle);
         }
     }
 
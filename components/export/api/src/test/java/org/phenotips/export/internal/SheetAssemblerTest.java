@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.context.ContextPropagator;
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.translation.TranslationManager;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Matchers;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the {@link SheetAssembler}, and in particular for the parallel conversion of patients.
+ *
+ * @version $Id$
+ */
+public class SheetAssemblerTest
+{
+    private static final int FEATURES_PER_PATIENT = 4;
+
+    private List<Feature> features = new ArrayList<>();
+
+    private ContextPropagator contextPropagator;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception
+    {
+        final ComponentManager cm = mock(ComponentManager.class);
+        doReturn(mock(TranslationManager.class)).when(cm).getInstance(TranslationManager.class);
+        this.contextPropagator = mock(ContextPropagator.class);
+        doAnswer(AdditionalAnswers.returnsFirstArg()).when(this.contextPropagator)
+            .wrap(Matchers.any(Callable.class));
+        doReturn(this.contextPropagator).when(cm).getInstance(ContextPropagator.class);
+        Field cmp = ReflectionUtils.getField(ComponentManagerRegistry.class, "cmProvider");
+        cmp.setAccessible(true);
+        cmp.set(null, new Provider<ComponentManager>()
+        {
+            @Override
+            public ComponentManager get()
+            {
+                return cm;
+            }
+        });
+
+        for (int i = 0; i < FEATURES_PER_PATIENT; ++i) {
+            Feature feature = mock(Feature.class);
+            doReturn(String.format("HP:%07d", i)).when(feature).getId();
+            doReturn("Phenotype " + i).when(feature).getName();
+            doReturn(i % 2 == 0).when(feature).isPresent();
+            this.features.add(feature);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void parallelConversionKeepsPatientOrder() throws Exception
+    {
+        List<Patient> patients = createPatients(200);
+        patients.add(50, null);
+
+        DataSection sequential =
+            new SheetAssembler(getFields(), patients, new DataToCellConverter(), 1).getAssembled();
+        verify(this.contextPropagator, never()).wrap(Matchers.any(Callable.class));
+        SheetAssembler assembler = new SheetAssembler(getFields(), patients, new DataToCellConverter(), 4);
+        DataSection parallel = assembler.getAssembled();
+        // Each patient is converted in a copy of the caller context
+        verify(this.contextPropagator, times(200)).wrap(Matchers.any(Callable.class));
+
+        Assert.assertEquals(sequential.getMaxX(), parallel.getMaxX());
+        Assert.assertEquals(sequential.getMaxY(), parallel.getMaxY());
+        for (int y = 0; y <= sequential.getMaxY(); ++y) {
+            for (int x = 0; x <= sequential.getMaxX(); ++x) {
+                DataCell expected = sequential.getMatrix()[x][y];
+                DataCell actual = parallel.getMatrix()[x][y];
+                Assert.assertEquals(expected == null, actual == null);
+                if (expected != null) {
+                    Assert.assertEquals(expected.getValue(), actual.getValue());
+                    Assert.assertEquals(expected.getStyles(), actual.getStyles());
+                }
+            }
+        }
+
+        int firstRow = assembler.getHeaderHeight();
+        Assert.assertEquals("P0000000", parallel.getMatrix()[0][firstRow].getValue());
+        Assert.assertEquals("P0000199",
+            parallel.getMatrix()[0][firstRow + 199 * FEATURES_PER_PATIENT].getValue());
+    }
+
+    /** Benchmark-style check that a multi-thousand-patient export is converted quickly, with bounded memory. */
+    @Test(timeout = 60000)
+    public void largeExportsAreConvertedQuickly() throws Exception
+    {
+        int count = 3000;
+        SheetAssembler assembler =
+            new SheetAssembler(getFields(), createPatients(count), new DataToCellConverter(), 4);
+
+        DataSection assembled = assembler.getAssembled();
+        Assert.assertEquals(assembler.getHeaderHeight() + count * FEATURES_PER_PATIENT, assembled.getMaxY() + 1);
+        Assert.assertEquals("P0002999",
+            assembled.getMatrix()[0][assembled.getMaxY() - FEATURES_PER_PATIENT + 1].getValue());
+    }
+
+    private Set<String> getFields()
+    {
+        return new HashSet<>(Arrays.asList("doc.name", "external_id", "phenotype"));
+    }
+
+    private List<Patient> createPatients(int count)
+    {
+        List<Patient> patients = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            Patient patient = mock(Patient.class);
+            doReturn(String.format("P%07d", i)).when(patient).getId();
+            doReturn("External " + i).when(patient).getExternalId();
+            doReturn(new LinkedHashSet<>(this.features)).when(patient).getFeatures();
+            patients.add(patient);
+        }
+        return patients;
+    }
+}
@@ -17,13 +17,18 @@
  */
 package org.phenotips.export.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -286,4 +291,114 @@ public void extendVerticallyNullMatrix() throws Exception
 
         verifyNoMoreInteractions(section);
     }
+
+    @Test
+    public void stylesAreCreatedOncePerCombination()
+    {
+        Styler styler = new Styler();
+        Workbook workbook = mock(Workbook.class);
+        doReturn(mock(CellStyle.class), mock(CellStyle.class)).when(workbook).createCellStyle();
+        doReturn(mock(Font.class)).when(workbook).createFont();
+
+        Cell first = mock(Cell.class);
+        Cell second = mock(Cell.class);
+        styler.style(new DataCell("", 0, 0, StyleOption.YES), first, workbook);
+        styler.style(new DataCell("", 1, 0, StyleOption.YES), second, workbook);
+        styler.style(new DataCell("", 2, 0, StyleOption.NO), mock(Cell.class), workbook);
+
+        verify(workbook, times(2)).createCellStyle();
+        verify(workbook, times(2)).createFont();
+        verify(first).setCellStyle(any(CellStyle.class));
+        verify(second).setCellStyle(any(CellStyle.class));
+    }
+
+    @Test
+    public void stylesAreNotSharedBetweenWorkbooks()
+    {
+        Styler styler = new Styler();
+        Workbook workbook = new XSSFWorkbook();
+        Workbook other = new XSSFWorkbook();
+        Cell cell = workbook.createSheet().createRow(0).createCell(0);
+        Cell otherCell = other.createSheet().createRow(0).createCell(0);
+
+        styler.style(new DataCell("", 0, 0, StyleOption.HEADER), cell, workbook);
+        styler.style(new DataCell("", 0, 0, StyleOption.HEADER), otherCell, other);
+
+        Assert.assertSame(workbook.getCellStyleAt(cell.getCellStyle().getIndex()), cell.getCellStyle());
+        Assert.assertSame(other.getCellStyleAt(otherCell.getCellStyle().getIndex()), otherCell.getCellStyle());
+        Assert.assertEquals(2, other.getNumCellStyles());
+    }
+
+    @Test
+    public void nullStylesAreIgnored()
+    {
+        Styler styler = new Styler();
+        Workbook workbook = new XSSFWorkbook();
+        Row row = workbook.createSheet().createRow(0);
+        Cell nullStyle = row.createCell(0);
+        Cell noStyle = row.createCell(1);
+        Cell yesStyle = row.createCell(2);
+        Cell yesAndNullStyle = row.createCell(3);
+
+        styler.style(new DataCell("", 0, 0, null), nullStyle, workbook);
+        styler.style(new DataCell("", 1, 0), noStyle, workbook);
+        styler.style(new DataCell("", 2, 0, StyleOption.YES), yesStyle, workbook);
+        DataCell yesAndNull = new DataCell("", 3, 0, StyleOption.YES);
+        yesAndNull.addStyle(null);
+        styler.style(yesAndNull, yesAndNullStyle, workbook);
+
+        Assert.assertSame(noStyle.getCellStyle(), nullStyle.getCellStyle());
+        Assert.assertSame(yesStyle.getCellStyle(), yesAndNullStyle.getCellStyle());
+        // The default style of the workbook, plus one without and one with the YES style
+        Assert.assertEquals(3, workbook.getNumCellStyles());
+    }
+
+    /** Benchmark-style check that a large cohort gets a bounded number of styles, and is written quickly. */
+    @Test(timeout = 30000)
+    public void largeExportsUseABoundedNumberOfStyles() throws IOException
+    {
+        StyleOption[] valueStyles = { null, StyleOption.YES, StyleOption.NO };
+        int patients = 2000;
+        int rowsPerPatient = 3;
+        int columns = 20;
+
+        Styler styler = new Styler();
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet();
+        Set<Set<StyleOption>> combinations = new HashSet<>();
+
+        Row header = sheet.createRow(0);
+        for (int x = 0; x < columns; ++x) {
+            DataCell dataCell = new DataCell("Column " + x, x, 0, StyleOption.HEADER);
+            dataCell.addStyle(StyleOption.HEADER_BOTTOM);
+            combinations.add(new HashSet<>(dataCell.getStyles()));
+            styler.style(dataCell, header.createCell(x), workbook);
+        }
+        for (int y = 1; y <= patients * rowsPerPatient; ++y) {
+            Row row = sheet.createRow(y);
+            for (int x = 0; x < columns; ++x) {
+                DataCell dataCell = new DataCell("Value " + y + ":" + x, x, y, valueStyles[(x + y) % 3]);
+                if (y % rowsPerPatient == 0) {
+                    dataCell.addStyle(StyleOption.PATIENT_BORDER);
+                } else if (x % 4 == 1) {
+                    dataCell.addStyle(StyleOption.FEATURE_SEPARATOR);
+                }
+                if (x % 5 == 0) {
+                    dataCell.addStyle(StyleOption.SECTION_BORDER_LEFT);
+                }
+                if (dataCell.getStyles() != null) {
+                    combinations.add(new HashSet<>(dataCell.getStyles()));
+                }
+                styler.style(dataCell, row.createCell(x), workbook);
+            }
+        }
+
+        // The workbook starts with one default style and one default font
+        Assert.assertTrue(workbook.getNumCellStyles() <= combinations.size() + 2);
+        Assert.assertTrue(workbook.getNumberOfFonts() <= 5);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        Assert.assertTrue(out.size() > 0);
+    }
 }
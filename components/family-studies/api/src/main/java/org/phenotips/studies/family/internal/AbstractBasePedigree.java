@@ -37,6 +37,15 @@ public abstract class AbstractBasePedigree implements Pedigree
 
     protected String image = "";
 
+    /**
+     * Identifies the stored version of the image, used for caching rendered variants of the image. {@code null} if the
+     * image isn't a stored one, or if it was modified since it was loaded, in which case no caching is done.
+     */
+    protected String imageVersion;
+
+    /** Holds rendered variants of stored images, {@code null} if no caching is done. */
+    protected PedigreeImageCache imageCache;
+
     /**
      * Create a new pedigree using given data and image.
      *
@@ -44,12 +53,30 @@ public abstract class AbstractBasePedigree implements Pedigree
      * @param image SVG 'image'
      */
     public AbstractBasePedigree(JSONObject data, String image)
+    {
+        this(data, image, null, null);
+    }
+
+    /**
+     * Create a new pedigree using given data and a stored image.
+     *
+     * @param data pedigree data
+     * @param image SVG 'image'
+     * @param imageVersion identifies the stored version of the image, for example the reference and version of the
+     *            document holding the pedigree; may be {@code null} if the image isn't stored
+     * @param imageCache the cache holding rendered variants of stored images; may be {@code null} if no caching should
+     *            be done
+     * @since 1.4
+     */
+    public AbstractBasePedigree(JSONObject data, String image, String imageVersion, PedigreeImageCache imageCache)
     {
         if (data == null || data.length() == 0) {
             throw new IllegalArgumentException();
         }
         this.data = data;
         this.image = image;
+        this.imageVersion = imageVersion;
+        this.imageCache = imageCache;
     }
 
     @Override
@@ -67,16 +94,23 @@ public String getImage(String highlightCurrentPatientId)
     @Override
     public String getImage(String highlightCurrentPatientId, int width, int height)
     {
-        String svg = SvgUpdater.setCurrentPatientStylesInSvg(this.image, highlightCurrentPatientId);
-        if (width > 0) {
-            svg = SvgUpdater.setSVGWidth(svg, width);
+        if (this.imageCache == null || this.imageVersion == null || this.image == null) {
+            return renderImage(highlightCurrentPatientId, width, height);
         }
-        if (height > 0) {
-            svg = SvgUpdater.setSVGHeight(svg, height);
+        String key = PedigreeImageCache.getKey(this.imageVersion, highlightCurrentPatientId, width, height);
+        String svg = this.imageCache.get(key, this.image);
+        if (svg == null) {
+            svg = renderImage(highlightCurrentPatientId, width, height);
+            this.imageCache.put(key, this.image, svg);
         }
         return svg;
     }
 
+    private String renderImage(String highlightCurrentPatientId, int width, int height)
+    {
+        return new PedigreeSvgRewriter().highlight(highlightCurrentPatientId).resize(width, height).rewrite(this.image);
+    }
+
     @Override
     public String getProbandId()
     {
@@ -96,8 +130,9 @@ public String getProbandPatientLastName()
     @Override
     public void removeLink(String linkedPatientId)
     {
-        // update SVG
+        // update SVG; the image no longer matches the stored version
         this.image = SvgUpdater.removeLink(this.image, linkedPatientId);
+        this.imageVersion = null;
 
         // update JSON
         removeLinkFromPedigreeJSON(linkedPatientId);
@@ -21,6 +21,7 @@
 import org.phenotips.data.permissions.AccessLevel;
 import org.phenotips.data.permissions.internal.EntityAccessManager;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
 import org.phenotips.studies.family.Family;
 import org.phenotips.studies.family.FamilyRepository;
 
@@ -55,6 +56,10 @@ public class AccessThroughFamilyMemberAuthorisationModule implements Authorizati
     @Inject
     private EntityAccessManager manager;
 
+    /** Avoids reloading the family and its members for each right checked. */
+    @Inject
+    private AuthorizationRequestContext requestContext;
+
     @Override
     public int getPriority()
     {
@@ -68,7 +73,8 @@ public Boolean hasAccess(User user, Right access, EntityReference entity)
             return null;
         }
 
-        Family family = this.familyRepository.get(entity.toString());
+        Family family = this.requestContext.get(entity, Family.class,
+            reference -> this.familyRepository.get(reference.toString()));
         if (family == null) {
             return null;
         }
@@ -0,0 +1,242 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.Family;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link FamilyMembershipIndex}, holding the family memberships in concurrent maps.
+ * Reads are lock-free, while the rare modifications are serialized so that the two maps stay in sync.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultFamilyMembershipIndex implements FamilyMembershipIndex
+{
+    private static final String MEMBERSHIP_QUERY = "select doc.name, familyReference.reference from Document doc, "
+        + "doc.object(PhenoTips.FamilyReferenceClass) as familyReference";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private QueryManager qm;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> stringResolver;
+
+    private final Map<String, String> familyByPatient = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> membersByFamily = new ConcurrentHashMap<>();
+
+    private volatile boolean initialized;
+
+    @Override
+    public boolean isAvailable()
+    {
+        if (!this.initialized) {
+            synchronized (this) {
+                if (!this.initialized) {
+                    Map<String, String> stored = readStoredMemberships();
+                    if (stored != null) {
+                        replaceContents(stored);
+                        this.initialized = true;
+                        this.logger.debug("Indexed [{}] family members", stored.size());
+                    }
+                }
+            }
+        }
+        return this.initialized;
+    }
+
+    @Override
+    public String getFamilyId(String patientId)
+    {
+        if (!isAvailable() || patientId == null) {
+            return null;
+        }
+        return this.familyByPatient.get(patientId);
+    }
+
+    @Override
+    public Set<String> getMemberIds(String familyId)
+    {
+        Set<String> members = isAvailable() && familyId != null ? this.membersByFamily.get(familyId) : null;
+        if (members == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new HashSet<>(members));
+    }
+
+    @Override
+    public synchronized void setFamily(String patientId, String familyReference)
+    {
+        if (!this.initialized || patientId == null) {
+            // The change will be picked up when the index is built
+            return;
+        }
+        String familyId = toFamilyId(familyReference);
+        String previousFamilyId = familyId == null
+            ? this.familyByPatient.remove(patientId)
+            : this.familyByPatient.put(patientId, familyId);
+        if (previousFamilyId != null && !previousFamilyId.equals(familyId)) {
+            removeMember(previousFamilyId, patientId);
+        }
+        if (familyId != null) {
+            this.membersByFamily.computeIfAbsent(familyId, k -> ConcurrentHashMap.newKeySet()).add(patientId);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String id)
+    {
+        if (!this.initialized || id == null) {
+            return;
+        }
+        String familyId = this.familyByPatient.remove(id);
+        if (familyId != null) {
+            removeMember(familyId, id);
+        }
+        Set<String> members = this.membersByFamily.remove(id);
+        if (members != null) {
+            for (String member : members) {
+                this.familyByPatient.remove(member, id);
+            }
+        }
+    }
+
+    @Override
+    public Set<String> checkConsistency(boolean repair)
+    {
+        Map<String, String> stored = readStoredMemberships();
+        if (stored == null) {
+            return Collections.emptySet();
+        }
+        synchronized (this) {
+            Set<String> inconsistent = new HashSet<>();
+            if (!this.initialized) {
+                inconsistent.addAll(stored.keySet());
+            } else {
+                for (Map.Entry<String, String> entry : stored.entrySet()) {
+                    if (!entry.getValue().equals(this.familyByPatient.get(entry.getKey()))) {
+                        inconsistent.add(entry.getKey());
+                    }
+                }
+                for (Map.Entry<String, String> entry : this.familyByPatient.entrySet()) {
+                    Set<String> members = this.membersByFamily.get(entry.getValue());
+                    if (!stored.containsKey(entry.getKey()) || members == null || !members.contains(entry.getKey())) {
+                        inconsistent.add(entry.getKey());
+                    }
+                }
+                for (Map.Entry<String, Set<String>> entry : this.membersByFamily.entrySet()) {
+                    for (String member : entry.getValue()) {
+                        if (!entry.getKey().equals(this.familyByPatient.get(member))) {
+                            inconsistent.add(member);
+                        }
+                    }
+                }
+            }
+            if (!inconsistent.isEmpty()) {
+                this.logger.warn("Found [{}] patients with inconsistently indexed families: {}", inconsistent.size(),
+                    inconsistent);
+                if (repair) {
+                    replaceContents(stored);
+                    this.initialized = true;
+                }
+            }
+            return inconsistent;
+        }
+    }
+
+    /**
+     * Reads all the family references stored in patient records with a single query.
+     *
+     * @return a map from patient identifiers to family identifiers, or {@code null} if the query failed
+     */
+    private Map<String, String> readStoredMemberships()
+    {
+        try {
+            Query q = this.qm.createQuery(MEMBERSHIP_QUERY, Query.XWQL);
+            // The results aren't accessed concurrently, a regular map is enough
+            Map<String, String> result = new HashMap<>();
+            for (Object[] row : q.<Object[]>execute()) {
+                String familyId = toFamilyId((String) row[1]);
+                if (row[0] != null && familyId != null) {
+                    result.put((String) row[0], familyId);
+                }
+            }
+            return result;
+        } catch (QueryException | RuntimeException ex) {
+            this.logger.warn("Failed to read family memberships: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private void replaceContents(Map<String, String> stored)
+    {
+        this.familyByPatient.clear();
+        this.membersByFamily.clear();
+        for (Map.Entry<String, String> entry : stored.entrySet()) {
+            this.familyByPatient.put(entry.getKey(), entry.getValue());
+            this.membersByFamily.computeIfAbsent(entry.getValue(), k -> ConcurrentHashMap.newKeySet())
+                .add(entry.getKey());
+        }
+    }
+
+    private void removeMember(String familyId, String patientId)
+    {
+        Set<String> members = this.membersByFamily.get(familyId);
+        if (members != null) {
+            members.remove(patientId);
+            if (members.isEmpty()) {
+                this.membersByFamily.remove(familyId);
+            }
+        }
+    }
+
+    private String toFamilyId(String familyReference)
+    {
+        if (StringUtils.isBlank(familyReference)) {
+            return null;
+        }
+        return this.stringResolver.resolve(familyReference, Family.DATA_SPACE).getName();
+    }
+}
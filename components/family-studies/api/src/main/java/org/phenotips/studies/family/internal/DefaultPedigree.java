@@ -59,6 +59,20 @@ public DefaultPedigree(JSONObject data, String image)
         super(data, image);
     }
 
+    /**
+     * Create a new default pedigree from data (in "old internal" format) and a stored image (a text representing SVG).
+     *
+     * @param data pedigree data
+     * @param image SVG 'image'
+     * @param imageVersion identifies the stored version of the image, used for caching rendered variants of the image
+     * @param imageCache the cache holding rendered variants of stored images
+     * @since 1.4
+     */
+    public DefaultPedigree(JSONObject data, String image, String imageVersion, PedigreeImageCache imageCache)
+    {
+        super(data, image, imageVersion, imageCache);
+    }
+
     /**
      * Checks that the provided JSON objects represents a pedigree in the supported format.
      *
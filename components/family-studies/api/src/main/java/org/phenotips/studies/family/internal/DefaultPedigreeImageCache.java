@@ -0,0 +1,132 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.xwiki.component.annotation.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of the {@link PedigreeImageCache}, a least-recently-used map bounded by the total number of
+ * characters held, so that a few very large pedigrees can't exhaust the available memory. Since a pedigree may be
+ * modified in memory without changing the version of its document, each entry also remembers the length and hash of
+ * the original image, and a cached image is only returned if the original still matches.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultPedigreeImageCache implements PedigreeImageCache
+{
+    /** The default maximum number of image characters to hold. */
+    private static final long DEFAULT_MAX_CHARACTERS = 32 * 1024 * 1024;
+
+    private final long maxCharacters;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long characters;
+
+    /** Creates a new, empty cache, with the default size limit. */
+    public DefaultPedigreeImageCache()
+    {
+        this(DEFAULT_MAX_CHARACTERS);
+    }
+
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param maxCharacters the maximum number of image characters to hold
+     */
+    DefaultPedigreeImageCache(long maxCharacters)
+    {
+        this.maxCharacters = maxCharacters;
+    }
+
+    @Override
+    public synchronized String get(String key, String original)
+    {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.originalLength != original.length() || entry.originalHash != original.hashCode()) {
+            remove(key);
+            return null;
+        }
+        return entry.image;
+    }
+
+    @Override
+    public synchronized void put(String key, String original, String image)
+    {
+        if (image.length() > this.maxCharacters) {
+            return;
+        }
+        remove(key);
+        this.entries.put(key, new Entry(original, image));
+        this.characters += image.length();
+        Iterator<Entry> eldest = this.entries.values().iterator();
+        while (this.characters > this.maxCharacters && eldest.hasNext()) {
+            this.characters -= eldest.next().image.length();
+            eldest.remove();
+        }
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        this.entries.clear();
+        this.characters = 0;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    private void remove(String key)
+    {
+        Entry previous = this.entries.remove(key);
+        if (previous != null) {
+            this.characters -= previous.image.length();
+        }
+    }
+
+    private static final class Entry
+    {
+        private final int originalLength;
+
+        private final int originalHash;
+
+        private final String image;
+
+        Entry(String original, String image)
+        {
+            this.originalLength = original.length();
+            this.originalHash = original.hashCode();
+            this.image = image;
+        }
+    }
+}
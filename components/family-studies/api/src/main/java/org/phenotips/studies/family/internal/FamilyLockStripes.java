@@ -0,0 +1,182 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks used for serializing modifications of families and of the patients that belong to them. Each
+ * family or patient identifier is mapped to one of the stripes, so that operations on unrelated families can proceed
+ * in parallel, while operations touching the same family, or the same patient, are serialized. When several
+ * identifiers are locked at once, the corresponding stripes are always acquired in ascending order, which guarantees
+ * that two concurrent multi-family operations can't deadlock.
+ * <p>
+ * The locks are reentrant, so a thread already holding a set of stripes may safely re-acquire any subset of them.
+ * Acquiring new stripes while already holding others is not safe, since it breaks the global ordering.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class FamilyLockStripes
+{
+    /** The default number of stripes, large enough to make collisions between unrelated families unlikely. */
+    static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] stripes;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    private final AtomicLong contendedAcquisitions = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a new set of lock stripes.
+     *
+     * @param count the number of stripes to use, must be positive
+     */
+    FamilyLockStripes(int count)
+    {
+        if (count <= 0) {
+            throw new IllegalArgumentException("The number of lock stripes must be positive");
+        }
+        this.stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; ++i) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks all the stripes corresponding to the given identifiers, blocking until all of them are obtained.
+     * {@code null} identifiers are ignored.
+     *
+     * @param keys the identifiers of the families and patients that are going to be modified
+     * @return a handle which must be {@link Held#close() closed} to release the locks, best used in a
+     *         try-with-resources block
+     */
+    Held lock(Collection<String> keys)
+    {
+        int[] indices = new int[keys.size()];
+        int count = 0;
+        for (String key : keys) {
+            if (key != null) {
+                indices[count++] = stripeFor(key);
+            }
+        }
+        Arrays.sort(indices, 0, count);
+
+        ReentrantLock[] acquired = new ReentrantLock[count];
+        int acquiredCount = 0;
+        int previous = -1;
+        for (int i = 0; i < count; ++i) {
+            if (indices[i] == previous) {
+                continue;
+            }
+            previous = indices[i];
+            acquired[acquiredCount++] = acquire(this.stripes[previous]);
+        }
+        return new Held(acquired, acquiredCount);
+    }
+
+    /**
+     * Locks all the stripes corresponding to the given identifiers.
+     *
+     * @param keys the identifiers of the families and patients that are going to be modified
+     * @return a handle which must be {@link Held#close() closed} to release the locks
+     * @see #lock(Collection)
+     */
+    Held lock(String... keys)
+    {
+        return lock(Arrays.asList(keys));
+    }
+
+    /**
+     * Returns the lock-wait metrics collected so far: the total number of stripe acquisitions, how many of these had
+     * to wait for another thread, and the total and maximum time spent waiting, in milliseconds.
+     *
+     * @return a map with the metric names as keys, in a stable order
+     */
+    Map<String, Long> getStatistics()
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("acquisitions", this.acquisitions.get());
+        result.put("contendedAcquisitions", this.contendedAcquisitions.get());
+        result.put("totalWaitMillis", this.totalWaitNanos.get() / 1000000L);
+        result.put("maxWaitMillis", this.maxWaitNanos.get() / 1000000L);
+        return result;
+    }
+
+    private int stripeFor(String key)
+    {
+        // Spread the hash bits, since family and patient identifiers only differ in their last few characters
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % this.stripes.length;
+    }
+
+    private ReentrantLock acquire(ReentrantLock lock)
+    {
+        this.acquisitions.incrementAndGet();
+        if (lock.tryLock()) {
+            return lock;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        long waited = System.nanoTime() - start;
+        this.contendedAcquisitions.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waited);
+        long max = this.maxWaitNanos.get();
+        while (waited > max && !this.maxWaitNanos.compareAndSet(max, waited)) {
+            max = this.maxWaitNanos.get();
+        }
+        return lock;
+    }
+
+    /**
+     * A set of stripes held by the current thread.
+     */
+    static final class Held implements AutoCloseable
+    {
+        private final ReentrantLock[] locks;
+
+        private int count;
+
+        private Held(ReentrantLock[] locks, int count)
+        {
+            this.locks = locks;
+            this.count = count;
+        }
+
+        /** Releases the held stripes in the reverse order of their acquisition. Calling this twice has no effect. */
+        @Override
+        public void close()
+        {
+            while (this.count > 0) {
+                this.locks[--this.count].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.Set;
+
+/**
+ * An in-memory index of family memberships, mapping patients to their family and families to their members, so that
+ * the family of a patient can be found without reading any documents. The index is built from a single query the
+ * first time it is needed, and is kept up to date as patient records are modified.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Role
+public interface FamilyMembershipIndex
+{
+    /**
+     * Checks if the index could be built. If the initial query failed, the index can't be trusted, and the information
+     * must be read from the documents instead.
+     *
+     * @return {@code true} if the index is up and running, {@code false} otherwise
+     */
+    boolean isAvailable();
+
+    /**
+     * Finds the family that a patient belongs to.
+     *
+     * @param patientId the identifier of a patient, e.g. {@code P0000001}
+     * @return the identifier of the patient's family, e.g. {@code FAM0000001}, or {@code null} if the patient doesn't
+     *         belong to a family
+     */
+    String getFamilyId(String patientId);
+
+    /**
+     * Lists the members of a family.
+     *
+     * @param familyId the identifier of a family, e.g. {@code FAM0000001}
+     * @return an unmodifiable set of patient identifiers, empty if the family is unknown or has no members
+     */
+    Set<String> getMemberIds(String familyId);
+
+    /**
+     * Records the family that a patient belongs to.
+     *
+     * @param patientId the identifier of a patient
+     * @param familyReference the serialized reference to the patient's family document, as stored in the patient's
+     *            {@code PhenoTips.FamilyReferenceClass} object, or {@code null} if the patient no longer belongs to a
+     *            family
+     */
+    void setFamily(String patientId, String familyReference);
+
+    /**
+     * Forgets a deleted patient or family.
+     *
+     * @param id the identifier of a deleted patient or family
+     */
+    void remove(String id);
+
+    /**
+     * Compares the index with the family references actually stored in the patient records, optionally fixing any
+     * discrepancies found.
+     *
+     * @param repair whether to replace the index contents with the stored data in case of discrepancies
+     * @return the identifiers of the patients whose family membership is not correctly indexed, empty if the index is
+     *         consistent
+     */
+    Set<String> checkConsistency(boolean repair);
+}
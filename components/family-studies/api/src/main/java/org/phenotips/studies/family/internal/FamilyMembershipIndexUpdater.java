@@ -0,0 +1,94 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.studies.family.Family;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Keeps the {@link FamilyMembershipIndex} up to date when patient records are created, modified or deleted, and when
+ * families are deleted.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("familyMembershipIndexUpdater")
+@Singleton
+public class FamilyMembershipIndexUpdater implements EventListener
+{
+    private static final String FAMILY_REFERENCE_FIELD = "reference";
+
+    @Inject
+    private FamilyMembershipIndex index;
+
+    @Override
+    public String getName()
+    {
+        return "familyMembershipIndexUpdater";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.<Event>asList(new DocumentCreatedEvent(), new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument doc = (XWikiDocument) source;
+        if (doc == null) {
+            return;
+        }
+        String id = doc.getDocumentReference().getName();
+        if (event instanceof DocumentDeletedEvent) {
+            // The deleted document is empty, its previous content is available as the original document
+            XWikiDocument deleted = doc.getOriginalDocument();
+            if (deleted != null && (deleted.getXObject(Patient.CLASS_REFERENCE) != null
+                || deleted.getXObject(Family.CLASS_REFERENCE) != null)) {
+                this.index.remove(id);
+            }
+            return;
+        }
+        if (doc.getXObject(Patient.CLASS_REFERENCE) == null) {
+            return;
+        }
+        BaseObject familyReference = doc.getXObject(Family.REFERENCE_CLASS_REFERENCE);
+        this.index.setFamily(id,
+            familyReference == null ? null : familyReference.getStringValue(FAMILY_REFERENCE_FIELD));
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.Pedigree;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.json.JSONObject;
+
+import com.xpn.xwiki.api.Document;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * A family found through the {@link FamilyMembershipIndex}. The identity of the family is known without reading any
+ * documents, and the family document is only loaded when something else is needed.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class IndexedFamily implements Family
+{
+    private final DocumentReference reference;
+
+    private final Function<DocumentReference, Family> loader;
+
+    private Family family;
+
+    /**
+     * Simple constructor.
+     *
+     * @param reference the reference to the family document
+     * @param loader loads the family document, returning {@code null} if it doesn't exist
+     */
+    public IndexedFamily(DocumentReference reference, Function<DocumentReference, Family> loader)
+    {
+        if (reference == null || loader == null) {
+            throw new IllegalArgumentException();
+        }
+        this.reference = reference;
+        this.loader = loader;
+    }
+
+    @Override
+    public String getId()
+    {
+        return this.reference.getName();
+    }
+
+    @Override
+    public DocumentReference getDocumentReference()
+    {
+        return this.reference;
+    }
+
+    @Override
+    public DocumentReference getDocument()
+    {
+        return this.reference;
+    }
+
+    @Override
+    public EntityReference getType()
+    {
+        return Family.CLASS_REFERENCE;
+    }
+
+    @Override
+    public XWikiDocument getXDocument()
+    {
+        return getFamily().getXDocument();
+    }
+
+    @Override
+    public List<String> getMembersIds()
+    {
+        return getFamily().getMembersIds();
+    }
+
+    @Override
+    public List<Patient> getMembers()
+    {
+        return getFamily().getMembers();
+    }
+
+    @Override
+    public String getProbandId()
+    {
+        return getFamily().getProbandId();
+    }
+
+    @Override
+    public boolean isMember(Patient patient)
+    {
+        return getFamily().isMember(patient);
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        return getFamily().toJSON();
+    }
+
+    @Override
+    public void updateFromJSON(JSONObject json)
+    {
+        getFamily().updateFromJSON(json);
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getMedicalReports()
+    {
+        return getFamily().getMedicalReports();
+    }
+
+    @Override
+    public String getExternalId()
+    {
+        return getFamily().getExternalId();
+    }
+
+    @Override
+    public String getURL(String actions)
+    {
+        return getFamily().getURL(actions);
+    }
+
+    @Override
+    public String getWarningMessage()
+    {
+        return getFamily().getWarningMessage();
+    }
+
+    @Override
+    public Pedigree getPedigree()
+    {
+        return getFamily().getPedigree();
+    }
+
+    @Override
+    public Document getSecureDocument()
+    {
+        return getFamily().getSecureDocument();
+    }
+
+    @Override
+    public String getName()
+    {
+        return getFamily().getName();
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return getFamily().getDescription();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof IndexedFamily)) {
+            return false;
+        }
+        return this.reference.equals(((IndexedFamily) obj).reference);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return getId().hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return getId() + "[" + getType().getName() + "]";
+    }
+
+    private synchronized Family getFamily()
+    {
+        if (this.family == null) {
+            this.family = this.loader.apply(this.reference);
+            if (this.family == null) {
+                throw new IllegalStateException("The family document [" + this.reference + "] doesn't exist");
+            }
+        }
+        return this.family;
+    }
+}
@@ -19,6 +19,7 @@
 
 import org.phenotips.data.permissions.Owner;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
 import org.phenotips.security.authorization.AuthorizationService;
 import org.phenotips.studies.family.Family;
 import org.phenotips.studies.family.FamilyRepository;
@@ -69,6 +70,10 @@ public class OwnerAccessAuthorizationModule implements AuthorizationModule
     @Inject
     private AuthorizationService auth;
 
+    /** Reuses the family loaded by the other family access modules. */
+    @Inject
+    private AuthorizationRequestContext requestContext;
+
     @Override
     public int getPriority()
     {
@@ -83,7 +88,8 @@ public Boolean hasAccess(User user, Right access, EntityReference entity)
             return null;
         }
 
-        Family family = this.familyRepository.get(entity.toString());
+        Family family = this.requestContext.get(entity, Family.class,
+            reference -> this.familyRepository.get(reference.toString()));
         if (family == null) {
             return null;
         }
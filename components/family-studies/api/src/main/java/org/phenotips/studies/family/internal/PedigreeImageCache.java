@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * A bounded cache of rendered pedigree images, so that the same highlighted variant of a stored pedigree isn't
+ * recomputed on every page view. Entries are keyed by the version of the stored pedigree, the highlighted patient and
+ * the requested size.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Role
+public interface PedigreeImageCache
+{
+    /**
+     * Builds a cache key for a rendered variant of a stored pedigree.
+     *
+     * @param version identifies the stored pedigree and its version, for example the family document reference and
+     *            version
+     * @param patientId the highlighted patient, may be {@code null}
+     * @param width the requested width
+     * @param height the requested height
+     * @return a cache key
+     */
+    static String getKey(String version, String patientId, int width, int height)
+    {
+        return version + '/' + patientId + '/' + Math.max(width, 0) + 'x' + Math.max(height, 0);
+    }
+
+    /**
+     * Retrieves a cached rendered image.
+     *
+     * @param key the {@link #getKey cache key}
+     * @param original the original image, used to validate that the cached variant is still up to date
+     * @return the cached image, or {@code null} if no valid image is cached
+     */
+    String get(String key, String original);
+
+    /**
+     * Stores a rendered image, evicting the least recently used images if needed.
+     *
+     * @param key the {@link #getKey cache key}
+     * @param original the original image
+     * @param image the rendered image
+     */
+    void put(String key, String original, String image);
+
+    /**
+     * Empties the cache.
+     */
+    void clear();
+
+    /**
+     * @return the number of cached images
+     */
+    int size();
+}
@@ -0,0 +1,425 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies all the supported modifications of a pedigree SVG in a single sweep over the original text, without building
+ * a DOM and without creating intermediate copies of the whole image. The only extra memory used, besides the output,
+ * is proportional to the number of patient links in the pedigree.
+ * <p>
+ * Three kinds of modifications are supported, and any combination of them can be requested:
+ * </p>
+ * <ul>
+ * <li>{@link #removeLinksTo(String) removing the links} to a patient record, along with shifting up the labels of the
+ * unlinked pedigree node</li>
+ * <li>{@link #highlight(String) highlighting} the proband and the current patient by setting the stroke width of their
+ * node shapes, and resetting the stroke width of all the other node shapes</li>
+ * <li>{@link #resize(int, int) setting the width and height} of the image</li>
+ * </ul>
+ * <p>
+ * Instances are not thread safe, but they are cheap and are meant to be used only once.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class PedigreeSvgRewriter
+{
+    /** Matches SVG links to patients, such as {@code href="/bin/data/P0000001"}. */
+    private static final Pattern PATIENT_PAGE_LINK_PATTERN = Pattern.compile("href=\"[\\w\\/]*?/(P\\d+)");
+
+    private static final String NODE_ID_ATTR_TOKEN = "pedigreeNodeID=\"";
+
+    private static final String NODE_SHAPE_TOKEN = "node-shape-";
+
+    private static final String PROBAND_TOKEN = "isProband=\"true\"";
+
+    private static final String STROKE_ATTR_TOKEN = "stroke-width=\"";
+
+    private static final String Y_ATTR_TOKEN = " y=\"";
+
+    private static final String LINK_TAG = "a";
+
+    private static final String TEXT_TAG = "text";
+
+    private static final double PROBAND_STROKE_WIDTH = 2;
+
+    private static final double CURRENT_PATIENT_STROKE_WIDTH = 5;
+
+    /** The number of pixels to shift text when a link is removed. */
+    private static final int SVG_LINK_HEIGHT_IN_PIXELS = 22;
+
+    private boolean removeLinks;
+
+    private String removedPatientId;
+
+    private boolean highlight;
+
+    private String currentPatientId;
+
+    private int width;
+
+    private int height;
+
+    /**
+     * Requests the removal of all the links to a patient record, and shifting up the labels of the nodes which were
+     * linked to that patient.
+     *
+     * @param patientId the identifier of the unlinked patient; if {@code null}, all patient links are removed
+     * @return this object, for chaining calls
+     */
+    PedigreeSvgRewriter removeLinksTo(String patientId)
+    {
+        this.removeLinks = true;
+        this.removedPatientId = patientId;
+        return this;
+    }
+
+    /**
+     * Requests that the proband and the current patient are visually marked.
+     *
+     * @param patientId the identifier of the current patient, may be {@code null} if only the proband is to be marked
+     * @return this object, for chaining calls
+     */
+    PedigreeSvgRewriter highlight(String patientId)
+    {
+        this.highlight = true;
+        this.currentPatientId = patientId;
+        return this;
+    }
+
+    /**
+     * Requests a new size for the image. Values that are zero or negative leave the corresponding dimension unchanged.
+     *
+     * @param newWidth the target width in pixels
+     * @param newHeight the target height in pixels
+     * @return this object, for chaining calls
+     */
+    PedigreeSvgRewriter resize(int newWidth, int newHeight)
+    {
+        this.width = newWidth;
+        this.height = newHeight;
+        return this;
+    }
+
+    /**
+     * Applies the requested modifications to an SVG.
+     *
+     * @param svg the original SVG, may be {@code null}
+     * @return the modified SVG, or the original string if no modifications were requested or the input is {@code null}
+     */
+    String rewrite(String svg)
+    {
+        if (svg == null || !this.removeLinks && !this.highlight && this.width <= 0 && this.height <= 0) {
+            return svg;
+        }
+        StringBuilder out = new StringBuilder(svg.length() + 64);
+        rewrite(svg, out);
+        return out.toString();
+    }
+
+    /**
+     * Applies the requested modifications to an SVG, writing the result into the provided output.
+     *
+     * @param svg the original SVG, must not be {@code null}
+     * @param out where to write the modified SVG
+     */
+    void rewrite(String svg, StringBuilder out)
+    {
+        // Links may come after the shapes and labels they affect, so they must be identified beforehand;
+        // this is a cheap scan which doesn't copy anything
+        Set<String> unlinkedNodes = new HashSet<>();
+        String currentNode = findLinkedNodes(svg, unlinkedNodes);
+
+        boolean resizePending = this.width > 0 || this.height > 0;
+        boolean probandMarked = false;
+        boolean currentMarked = false;
+
+        Matcher linkMatcher = PATIENT_PAGE_LINK_PATTERN.matcher(svg);
+        int copied = 0;
+        int position = svg.indexOf('<');
+        while (position != -1) {
+            int elementEnd = -1;
+            if (resizePending && isTag(svg, position, "svg")) {
+                elementEnd = svg.indexOf('>', position);
+                if (elementEnd == -1) {
+                    break;
+                }
+                out.append(svg, copied, position);
+                writeSvgTag(svg, position, ++elementEnd, out);
+                resizePending = false;
+            } else if (this.removeLinks && isTag(svg, position, LINK_TAG)) {
+                elementEnd = findElementEnd(svg, position, LINK_TAG);
+                if (elementEnd != -1 && isRemovedLink(svg, position, elementEnd, linkMatcher)) {
+                    out.append(svg, copied, position);
+                } else {
+                    // Not removed, the contents of the link must still be processed
+                    elementEnd = -1;
+                }
+            } else if (this.highlight && (isTag(svg, position, "rect") || isTag(svg, position, "circle"))) {
+                String tag = svg.charAt(position + 1) == 'r' ? "rect" : "circle";
+                elementEnd = findElementEnd(svg, position, tag);
+                if (elementEnd != -1 && indexOf(svg, NODE_SHAPE_TOKEN, position, elementEnd) != -1) {
+                    double strokeWidth = 0;
+                    if (!probandMarked && indexOf(svg, PROBAND_TOKEN, position, elementEnd) != -1) {
+                        probandMarked = true;
+                        strokeWidth = PROBAND_STROKE_WIDTH;
+                    }
+                    if (!currentMarked && currentNode != null
+                        && currentNode.equals(parseNodeId(svg, position, elementEnd, NODE_SHAPE_TOKEN))) {
+                        currentMarked = true;
+                        strokeWidth = CURRENT_PATIENT_STROKE_WIDTH;
+                    }
+                    out.append(svg, copied, position);
+                    writeShape(svg, position, elementEnd, strokeWidth, out);
+                } else {
+                    elementEnd = -1;
+                }
+            } else if (!unlinkedNodes.isEmpty() && isTag(svg, position, TEXT_TAG)) {
+                elementEnd = findElementEnd(svg, position, TEXT_TAG);
+                if (elementEnd != -1
+                    && unlinkedNodes.contains(parseNodeId(svg, position, elementEnd, NODE_ID_ATTR_TOKEN))) {
+                    out.append(svg, copied, position);
+                    writeShiftedText(svg, position, elementEnd, out);
+                } else {
+                    elementEnd = -1;
+                }
+            }
+
+            if (elementEnd != -1) {
+                copied = elementEnd;
+                position = svg.indexOf('<', elementEnd);
+            } else {
+                position = svg.indexOf('<', position + 1);
+            }
+        }
+        out.append(svg, copied, svg.length());
+    }
+
+    /**
+     * Scans all the patient links in the SVG, collecting the nodes whose links are going to be removed, and
+     * identifying the node of the current patient.
+     *
+     * @param svg the SVG to scan
+     * @param unlinkedNodes where to collect the identifiers of the nodes whose links are removed
+     * @return the node identifier of the current patient, if exactly one node links to the current patient, or
+     *         {@code null} otherwise
+     */
+    private String findLinkedNodes(String svg, Set<String> unlinkedNodes)
+    {
+        boolean findCurrent = this.highlight && this.currentPatientId != null;
+        if (!this.removeLinks && !findCurrent) {
+            return null;
+        }
+        String currentNode = null;
+        int currentLinks = 0;
+        Matcher linkMatcher = PATIENT_PAGE_LINK_PATTERN.matcher(svg);
+        int position = svg.indexOf("<a");
+        while (position != -1) {
+            int end = isTag(svg, position, LINK_TAG) ? findElementEnd(svg, position, LINK_TAG) : -1;
+            if (end != -1 && indexOf(svg, NODE_ID_ATTR_TOKEN, position, end) != -1) {
+                String nodeId = parseNodeId(svg, position, end, NODE_ID_ATTR_TOKEN);
+                String patientId = getLinkedPatientId(svg, position, end, linkMatcher);
+                if (this.removeLinks && nodeId != null
+                    && (this.removedPatientId == null || this.removedPatientId.equalsIgnoreCase(patientId))) {
+                    unlinkedNodes.add(nodeId);
+                }
+                if (findCurrent && this.currentPatientId.equalsIgnoreCase(patientId)) {
+                    currentNode = nodeId;
+                    ++currentLinks;
+                }
+            }
+            position = svg.indexOf("<a", end == -1 ? position + 1 : end);
+        }
+        // Not sure which node to mark if more than one links to the same patient, so don't mark any
+        return currentLinks == 1 ? currentNode : null;
+    }
+
+    private boolean isRemovedLink(String svg, int start, int end, Matcher linkMatcher)
+    {
+        if (indexOf(svg, NODE_ID_ATTR_TOKEN, start, end) == -1) {
+            return false;
+        }
+        return this.removedPatientId == null
+            || this.removedPatientId.equalsIgnoreCase(getLinkedPatientId(svg, start, end, linkMatcher));
+    }
+
+    private String getLinkedPatientId(String svg, int start, int end, Matcher linkMatcher)
+    {
+        linkMatcher.region(start, end);
+        return linkMatcher.find() ? linkMatcher.group(1) : "";
+    }
+
+    /**
+     * Writes the opening {@code svg} tag, replacing the numeric {@code width} and {@code height} attributes with the
+     * requested values.
+     */
+    private void writeSvgTag(String svg, int start, int end, StringBuilder out)
+    {
+        int copied = start;
+        for (int i = start; i < end; ++i) {
+            if (!Character.isWhitespace(svg.charAt(i))) {
+                continue;
+            }
+            int newValue = 0;
+            String attribute = null;
+            if (this.width > 0 && svg.startsWith("width=\"", i + 1)) {
+                attribute = "width=\"";
+                newValue = this.width;
+            } else if (this.height > 0 && svg.startsWith("height=\"", i + 1)) {
+                attribute = "height=\"";
+                newValue = this.height;
+            }
+            if (attribute == null) {
+                continue;
+            }
+            int valueStart = i + 1 + attribute.length();
+            int valueEnd = valueStart;
+            while (valueEnd < end && Character.isDigit(svg.charAt(valueEnd))) {
+                ++valueEnd;
+            }
+            if (valueEnd > valueStart && valueEnd < end && svg.charAt(valueEnd) == '"') {
+                out.append(svg, copied, valueStart).append(newValue);
+                copied = valueEnd;
+                i = valueEnd;
+            }
+        }
+        out.append(svg, copied, end);
+    }
+
+    /**
+     * Writes a node shape, removing its stroke width, and optionally setting a new one.
+     *
+     * @param strokeWidth the new stroke width, or {@code 0} if no stroke width should be set
+     */
+    private void writeShape(String svg, int start, int end, double strokeWidth, StringBuilder out)
+    {
+        int tagEnd = svg.indexOf('>', start);
+        if (svg.charAt(tagEnd - 1) == '/') {
+            --tagEnd;
+        }
+        int copied = start;
+        int stroke = indexOf(svg, STROKE_ATTR_TOKEN, start, tagEnd);
+        while (stroke != -1) {
+            int strokeEnd = svg.indexOf('"', stroke + STROKE_ATTR_TOKEN.length());
+            if (strokeEnd == -1 || strokeEnd >= tagEnd) {
+                break;
+            }
+            out.append(svg, copied, stroke);
+            copied = strokeEnd + 1;
+            stroke = indexOf(svg, STROKE_ATTR_TOKEN, copied, tagEnd);
+        }
+        out.append(svg, copied, tagEnd);
+        if (strokeWidth > 0) {
+            out.append(' ').append(STROKE_ATTR_TOKEN).append(strokeWidth).append('"');
+        }
+        out.append(svg, tagEnd, end);
+    }
+
+    /**
+     * Writes a text element, shifting its vertical position up to take the place of a removed link.
+     */
+    private void writeShiftedText(String svg, int start, int end, StringBuilder out)
+    {
+        int valueStart = indexOf(svg, Y_ATTR_TOKEN, start, end);
+        int valueEnd = valueStart == -1 ? -1 : svg.indexOf('"', valueStart + Y_ATTR_TOKEN.length());
+        if (valueEnd == -1 || valueEnd >= end) {
+            out.append(svg, start, end);
+            return;
+        }
+        valueStart += Y_ATTR_TOKEN.length();
+        try {
+            double position = Double.parseDouble(svg.substring(valueStart, valueEnd));
+            out.append(svg, start, valueStart).append(position - SVG_LINK_HEIGHT_IN_PIXELS)
+                .append(svg, valueEnd, end);
+        } catch (NumberFormatException ex) {
+            out.append(svg, start, end);
+        }
+    }
+
+    /**
+     * Checks if an element with the given name starts at the given position.
+     */
+    private static boolean isTag(String svg, int position, String tag)
+    {
+        int afterName = position + 1 + tag.length();
+        return svg.startsWith(tag, position + 1) && afterName < svg.length()
+            && (Character.isWhitespace(svg.charAt(afterName)) || svg.charAt(afterName) == '>'
+                || svg.charAt(afterName) == '/');
+    }
+
+    /**
+     * Finds where an element ends, including its closing tag.
+     *
+     * @return the position right after the end of the element, or {@code -1} if the element is not closed
+     */
+    private static int findElementEnd(String svg, int start, String tag)
+    {
+        int tagEnd = svg.indexOf('>', start);
+        if (tagEnd == -1) {
+            return -1;
+        }
+        if (svg.charAt(tagEnd - 1) == '/') {
+            return tagEnd + 1;
+        }
+        String closingTag = "</" + tag + '>';
+        int closing = svg.indexOf(closingTag, tagEnd);
+        return closing == -1 ? -1 : closing + closingTag.length();
+    }
+
+    /**
+     * Reads the numeric node identifier following the first occurrence of a token inside an element.
+     *
+     * @return the node identifier, or {@code null} if the token isn't found or isn't followed by digits
+     */
+    private static String parseNodeId(String svg, int start, int end, String token)
+    {
+        int idStart = indexOf(svg, token, start, end);
+        if (idStart == -1) {
+            return null;
+        }
+        idStart += token.length();
+        int idEnd = idStart;
+        while (idEnd < end && Character.isDigit(svg.charAt(idEnd))) {
+            ++idEnd;
+        }
+        return idEnd > idStart ? svg.substring(idStart, idEnd) : null;
+    }
+
+    /**
+     * Looks for a token inside a region of the SVG, without looking past the end of the region.
+     *
+     * @return the position of the token, or {@code -1} if the region doesn't contain the token
+     */
+    private static int indexOf(String svg, String token, int start, int end)
+    {
+        int last = end - token.length();
+        char first = token.charAt(0);
+        for (int i = start; i <= last; ++i) {
+            if (svg.charAt(i) == first && svg.startsWith(token, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
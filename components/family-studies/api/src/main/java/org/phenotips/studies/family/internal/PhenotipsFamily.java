@@ -66,6 +66,8 @@ public class PhenotipsFamily extends AbstractPrimaryEntity implements Family
 
     private static PhenotipsFamilyExport familyExport;
 
+    private static PedigreeImageCache pedigreeImageCache;
+
     /** Logging helper object. */
     private Logger logger = LoggerFactory.getLogger(PhenoTipsPatient.class);
 
@@ -75,6 +77,8 @@ public class PhenotipsFamily extends AbstractPrimaryEntity implements Family
                 ComponentManagerRegistry.getContextComponentManager().getInstance(PatientRepository.class);
             PhenotipsFamily.familyExport =
                 ComponentManagerRegistry.getContextComponentManager().getInstance(PhenotipsFamilyExport.class);
+            PhenotipsFamily.pedigreeImageCache =
+                ComponentManagerRegistry.getContextComponentManager().getInstance(PedigreeImageCache.class);
         } catch (ComponentLookupException e) {
             e.printStackTrace();
         }
@@ -239,7 +243,8 @@ public Pedigree getPedigree()
                     JSONObject pedigreeJSON = new JSONObject(data.toText());
                     // Do a basic data format check before attempting to initialize a pedigree
                     if (DefaultPedigree.isSupportedPedigreeFormat(pedigreeJSON)) {
-                        return new DefaultPedigree(pedigreeJSON, image.toText());
+                        return new DefaultPedigree(pedigreeJSON, image.toText(),
+                            getDocumentReference() + "@" + getXDocument().getVersion(), pedigreeImageCache);
                     }
                 }
             } catch (XWikiException e) {
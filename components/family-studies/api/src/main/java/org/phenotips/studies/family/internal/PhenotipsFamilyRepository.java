@@ -45,8 +45,13 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -92,6 +97,16 @@ public class PhenotipsFamilyRepository extends FamilyEntityManager implements Fa
     @Inject
     private EntityReferenceSerializer<String> entitySerializer;
 
+    /** Allows finding the family of a patient without reading the patient document. */
+    @Inject
+    private FamilyMembershipIndex membershipIndex;
+
+    /**
+     * Serializes modifications of the same family or of the same patients, while allowing unrelated families to be
+     * edited in parallel.
+     */
+    private final FamilyLockStripes locks = new FamilyLockStripes(FamilyLockStripes.DEFAULT_STRIPES);
+
     @Override
     public Family createFamily(User creator)
     {
@@ -99,11 +114,15 @@ public Family createFamily(User creator)
     }
 
     @Override
-    public synchronized Family create(final DocumentReference creator)
+    public Family create(final DocumentReference creator)
     {
-        try {
+        // The parent method is responsible for allocating a unique identifier, only the new family needs locking
+        final Family family = super.create(creator);
+        if (family == null) {
+            return null;
+        }
+        try (FamilyLockStripes.Held held = this.locks.lock(family.getId())) {
             final XWikiContext context = this.xcontextProvider.get();
-            final Family family = super.create(creator);
             final XWikiDocument doc = family.getXDocument();
 
             // Adding owner reference to family
@@ -121,19 +140,19 @@ public synchronized Family create(final DocumentReference creator)
     }
 
     @Override
-    public synchronized boolean deleteFamily(Family family, User updatingUser, boolean deleteAllMembers)
+    public boolean deleteFamily(Family family, User updatingUser, boolean deleteAllMembers)
     {
         return delete(family, deleteAllMembers);
     }
 
     @Override
-    public synchronized boolean delete(final Family family)
+    public boolean delete(final Family family)
     {
         return delete(family, false);
     }
 
     @Override
-    public synchronized boolean delete(final Family family, boolean deleteAllMembers)
+    public boolean delete(final Family family, boolean deleteAllMembers)
     {
         // TODO: Should there be a SecureFamilyRepository to perform these checks (similar to SecurePatientRepository)?
         final User currentUser = this.userManager.getCurrentUser();
@@ -141,6 +160,13 @@ public synchronized boolean delete(final Family family, boolean deleteAllMembers
             return false;
         }
 
+        try (FamilyLockStripes.Held held = lockFamily(family, Collections.<String>emptyList())) {
+            return deleteLocked(reload(family), deleteAllMembers, currentUser);
+        }
+    }
+
+    private boolean deleteLocked(final Family family, boolean deleteAllMembers, final User currentUser)
+    {
         if (deleteAllMembers) {
             for (Patient patient : family.getMembers()) {
                 if (!this.patientRepository.delete(patient)) {
@@ -162,11 +188,12 @@ public boolean forceRemoveAllMembers(Family family, User updatingUser)
         if (!this.authorizationService.hasAccess(updatingUser, Right.EDIT, family.getDocumentReference())) {
             return false;
         }
-        try {
-            for (Patient patient : family.getMembers()) {
+        try (FamilyLockStripes.Held held = lockFamily(family, Collections.<String>emptyList())) {
+            Family current = reload(family);
+            for (Patient patient : current.getMembers()) {
                 // remove the member without updating family document (use "batch mode")
                 // since we don't care about it as it will be removed anyway
-                this.removeMember(family, patient, updatingUser, true);
+                this.removeMember(current, patient, updatingUser, true);
             }
             return true;
         } catch (PTException ex) {
@@ -182,8 +209,9 @@ public Family getFamilyById(String id)
     }
 
     /**
-     * Returns a Family object for patient. If there's an XWiki family document but no PhenotipsFamily object associated
-     * with it in the cache, a new PhenotipsFamily object will be created.
+     * Returns a Family object for patient. The family is looked up in the {@link FamilyMembershipIndex}, and its
+     * document is only loaded when more than its identity is needed. Only if the index isn't available the family
+     * reference is read from the patient document.
      *
      * @param patient for which to look for a family
      * @return Family if there's an XWiki family document, otherwise null
@@ -195,6 +223,15 @@ public Family getFamilyForPatient(Patient patient)
             return null;
         }
         String patientId = patient.getId();
+        if (this.membershipIndex.isAvailable()) {
+            String familyId = this.membershipIndex.getFamilyId(patientId);
+            if (familyId == null) {
+                this.logger.debug("Family not found for patient [{}]", patientId);
+                return null;
+            }
+            return new IndexedFamily(this.stringResolver.resolve(familyId, Family.DATA_SPACE), this::get);
+        }
+
         XWikiDocument patientDocument = patient.getXDocument();
         if (patientDocument == null) {
             return null;
@@ -216,9 +253,11 @@ public Family getFamilyForPatient(Patient patient)
     }
 
     @Override
-    public synchronized void addMember(Family family, Patient patient, User updatingUser) throws PTException
+    public void addMember(Family family, Patient patient, User updatingUser) throws PTException
     {
-        this.addMember(family, patient, updatingUser, false);
+        try (FamilyLockStripes.Held held = this.locks.lock(lockKey(family), lockKey(patient))) {
+            this.addMember(family, patient, updatingUser, false);
+        }
     }
 
     /**
@@ -259,6 +298,7 @@ private void addMember(Family family, Patient patient, User updatingUser, boolea
         if (!savePatientDocument(patientDocument, "added to family " + family.getId(), context)) {
             throw new PTInternalErrorException();
         }
+        this.membershipIndex.setFamily(patientId, family.getXDocument().getDocumentReference().toString());
 
         // Add member to the list of family members
         members.add(patientLinkString(patient));
@@ -274,9 +314,11 @@ private void addMember(Family family, Patient patient, User updatingUser, boolea
     }
 
     @Override
-    public synchronized void removeMember(Family family, Patient patient, User updatingUser) throws PTException
+    public void removeMember(Family family, Patient patient, User updatingUser) throws PTException
     {
-        this.removeMember(family, patient, updatingUser, false);
+        try (FamilyLockStripes.Held held = this.locks.lock(lockKey(family), lockKey(patient))) {
+            this.removeMember(family, patient, updatingUser, false);
+        }
     }
 
     private void removeMember(Family family, Patient patient, User updatingUser, boolean batchUpdate)
@@ -315,6 +357,7 @@ private void removeMember(Family family, Patient patient, User updatingUser, boo
         if (!savePatientDocument(patientDocument, "removed from family", context)) {
             throw new PTInternalErrorException();
         }
+        this.membershipIndex.setFamily(patientId, null);
 
         // Remove patient from the pedigree
         Pedigree pedigree = family.getPedigree();
@@ -339,6 +382,77 @@ private void removeMember(Family family, Patient patient, User updatingUser, boo
         }
     }
 
+    /**
+     * Returns the lock-wait metrics for family modifications: how many family and patient locks were acquired, how
+     * many of them had to wait for a concurrent modification, and the total and maximum wait time in milliseconds.
+     *
+     * @return a map with the metric names as keys
+     */
+    public Map<String, Long> getLockStatistics()
+    {
+        return this.locks.getStatistics();
+    }
+
+    private String lockKey(Family family)
+    {
+        return family == null ? null : family.getId();
+    }
+
+    private String lockKey(Patient patient)
+    {
+        return patient == null ? null : patientLinkString(patient);
+    }
+
+    /**
+     * Locks everything that must be locked when modifying a family: the family itself, and all the patients that are
+     * or will become its members. The members known before locking may already be stale, since another thread may have
+     * added a member in the meantime, so once the locks are held the current members are read again; if some of them
+     * aren't covered yet, the locks are released and acquired again for the larger set of patients.
+     *
+     * @param family the family to lock
+     * @param otherKeys other patients that will become members of the family
+     * @return the held locks, which must be closed
+     */
+    private FamilyLockStripes.Held lockFamily(Family family, Collection<String> otherKeys)
+    {
+        Set<String> keys = new HashSet<>();
+        keys.add(lockKey(family));
+        keys.addAll(family.getMembersIds());
+        keys.addAll(otherKeys);
+        while (true) {
+            FamilyLockStripes.Held held = this.locks.lock(keys);
+            Collection<String> currentMembers = getCurrentMemberIds(family);
+            if (keys.containsAll(currentMembers)) {
+                return held;
+            }
+            held.close();
+            keys.addAll(currentMembers);
+        }
+    }
+
+    /**
+     * Reads the latest known members of a family, which may differ from the members listed in the family object if it
+     * was loaded before a concurrent modification.
+     */
+    private Collection<String> getCurrentMemberIds(Family family)
+    {
+        if (this.membershipIndex.isAvailable()) {
+            return this.membershipIndex.getMemberIds(family.getId());
+        }
+        Family current = get(family.getId());
+        return current == null ? Collections.<String>emptyList() : current.getMembersIds();
+    }
+
+    /**
+     * Reads the family again once its members are locked, since the given object may have been loaded before a
+     * concurrent modification. Falls back to the given object if the family document can't be read.
+     */
+    private Family reload(Family family)
+    {
+        Family current = get(family.getId());
+        return current == null ? family : current;
+    }
+
     /**
      * Returns string as stored in the family members list.
      */
@@ -435,7 +549,15 @@ private void checkIfPatientCanBeRemovedFromFamily(Family family, Patient patient
     }
 
     @Override
-    public synchronized void setPedigree(Family family, Pedigree pedigree, User updatingUser) throws PTException
+    public void setPedigree(Family family, Pedigree pedigree, User updatingUser) throws PTException
+    {
+        // lock both the old and the new members, since all of them may be modified
+        try (FamilyLockStripes.Held held = lockFamily(family, pedigree.extractIds())) {
+            this.setPedigreeLocked(family, pedigree, updatingUser);
+        }
+    }
+
+    private void setPedigreeLocked(Family family, Pedigree pedigree, User updatingUser) throws PTException
     {
         // note: whenever available, internal versions of helper methods are used which modify the
         // family document but do not save it to disk
@@ -595,7 +717,7 @@ private boolean savePatientDocument(XWikiDocument patientDocument, String docume
         return true;
     }
 
-    private synchronized boolean saveFamilyDocument(Family family, String documentHistoryComment, XWikiContext context)
+    private boolean saveFamilyDocument(Family family, String documentHistoryComment, XWikiContext context)
     {
         try {
             family.getXDocument().setAuthorReference(context.getUserReference());
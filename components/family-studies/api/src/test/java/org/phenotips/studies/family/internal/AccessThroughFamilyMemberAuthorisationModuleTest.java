@@ -21,6 +21,8 @@
 import org.phenotips.data.permissions.AccessLevel;
 import org.phenotips.data.permissions.internal.EntityAccessManager;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
+import org.phenotips.security.authorization.AuthorizationRequestContextMocks;
 import org.phenotips.studies.family.Family;
 import org.phenotips.studies.family.FamilyRepository;
 
@@ -84,6 +86,7 @@
     public void setupMocks() throws Exception
     {
         MockitoAnnotations.initMocks(this);
+        AuthorizationRequestContextMocks.computeEachTime(this.mocker.getInstance(AuthorizationRequestContext.class));
 
         this.repo = this.mocker.getInstance(FamilyRepository.class);
         when(this.repo.get("xwiki:Families.FAM01")).thenReturn(this.family);
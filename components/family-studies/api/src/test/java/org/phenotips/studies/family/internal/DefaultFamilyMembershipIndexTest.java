@@ -0,0 +1,173 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.Family;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultFamilyMembershipIndex} component.
+ *
+ * @version $Id$
+ */
+public class DefaultFamilyMembershipIndexTest
+{
+    private static final String FAMILY1 = "FAM0000001";
+
+    private static final String FAMILY2 = "FAM0000002";
+
+    private static final String FAMILY1_REFERENCE = "xwiki:Families." + FAMILY1;
+
+    private static final String FAMILY2_REFERENCE = "xwiki:Families." + FAMILY2;
+
+    @Rule
+    public final MockitoComponentMockingRule<FamilyMembershipIndex> mocker =
+        new MockitoComponentMockingRule<>(DefaultFamilyMembershipIndex.class);
+
+    @Mock
+    private Query query;
+
+    private QueryManager qm;
+
+    private FamilyMembershipIndex index;
+
+    private List<Object[]> storedMemberships = new ArrayList<>();
+
+    @Before
+    public void setup() throws ComponentLookupException, QueryException
+    {
+        MockitoAnnotations.initMocks(this);
+        this.index = this.mocker.getComponentUnderTest();
+
+        this.qm = this.mocker.getInstance(QueryManager.class);
+        when(this.qm.createQuery(Matchers.anyString(), Matchers.eq(Query.XWQL))).thenReturn(this.query);
+        when(this.query.<Object[]>execute()).thenReturn(this.storedMemberships);
+
+        DocumentReferenceResolver<String> resolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        when(resolver.resolve(FAMILY1_REFERENCE, Family.DATA_SPACE))
+            .thenReturn(new DocumentReference("xwiki", "Families", FAMILY1));
+        when(resolver.resolve(FAMILY2_REFERENCE, Family.DATA_SPACE))
+            .thenReturn(new DocumentReference("xwiki", "Families", FAMILY2));
+
+        this.storedMemberships.add(new Object[] { "P0000001", FAMILY1_REFERENCE });
+        this.storedMemberships.add(new Object[] { "P0000002", FAMILY1_REFERENCE });
+        this.storedMemberships.add(new Object[] { "P0000003", FAMILY2_REFERENCE });
+        this.storedMemberships.add(new Object[] { "P0000004", "" });
+    }
+
+    @Test
+    public void indexIsBuiltOnceFromASingleQuery() throws QueryException
+    {
+        Assert.assertTrue(this.index.isAvailable());
+        Assert.assertEquals(FAMILY1, this.index.getFamilyId("P0000001"));
+        Assert.assertEquals(FAMILY1, this.index.getFamilyId("P0000002"));
+        Assert.assertEquals(FAMILY2, this.index.getFamilyId("P0000003"));
+        Assert.assertNull(this.index.getFamilyId("P0000004"));
+        Assert.assertNull(this.index.getFamilyId("P0000005"));
+        Assert.assertNull(this.index.getFamilyId(null));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P0000001", "P0000002")), this.index.getMemberIds(FAMILY1));
+        Assert.assertEquals(Collections.singleton("P0000003"), this.index.getMemberIds(FAMILY2));
+        Assert.assertTrue(this.index.getMemberIds("FAM0000003").isEmpty());
+        verify(this.query, times(1)).execute();
+    }
+
+    @Test
+    public void indexIsUnavailableWhenQueryFails() throws QueryException
+    {
+        when(this.query.execute()).thenThrow(new QueryException("failed", this.query, null));
+        Assert.assertFalse(this.index.isAvailable());
+        Assert.assertNull(this.index.getFamilyId("P0000001"));
+    }
+
+    @Test
+    public void membershipChangesAreTracked()
+    {
+        Assert.assertTrue(this.index.isAvailable());
+
+        this.index.setFamily("P0000002", FAMILY2_REFERENCE);
+        Assert.assertEquals(FAMILY2, this.index.getFamilyId("P0000002"));
+        Assert.assertEquals(Collections.singleton("P0000001"), this.index.getMemberIds(FAMILY1));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P0000002", "P0000003")), this.index.getMemberIds(FAMILY2));
+
+        this.index.setFamily("P0000001", null);
+        Assert.assertNull(this.index.getFamilyId("P0000001"));
+        Assert.assertTrue(this.index.getMemberIds(FAMILY1).isEmpty());
+
+        this.index.setFamily("P0000004", FAMILY1_REFERENCE);
+        Assert.assertEquals(FAMILY1, this.index.getFamilyId("P0000004"));
+    }
+
+    @Test
+    public void deletedPatientsAndFamiliesAreRemoved()
+    {
+        Assert.assertTrue(this.index.isAvailable());
+
+        this.index.remove("P0000001");
+        Assert.assertNull(this.index.getFamilyId("P0000001"));
+        Assert.assertEquals(Collections.singleton("P0000002"), this.index.getMemberIds(FAMILY1));
+
+        this.index.remove(FAMILY2);
+        Assert.assertNull(this.index.getFamilyId("P0000003"));
+        Assert.assertTrue(this.index.getMemberIds(FAMILY2).isEmpty());
+    }
+
+    @Test
+    public void consistencyCheckDetectsAndRepairsDifferences()
+    {
+        Assert.assertTrue(this.index.isAvailable());
+        Assert.assertTrue(this.index.checkConsistency(false).isEmpty());
+
+        // Simulate changes that were not notified
+        this.storedMemberships.remove(2);
+        this.storedMemberships.add(new Object[] { "P0000005", FAMILY2_REFERENCE });
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P0000003", "P0000005")), this.index.checkConsistency(false));
+        Assert.assertEquals(FAMILY2, this.index.getFamilyId("P0000003"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P0000003", "P0000005")), this.index.checkConsistency(true));
+        Assert.assertNull(this.index.getFamilyId("P0000003"));
+        Assert.assertEquals(FAMILY2, this.index.getFamilyId("P0000005"));
+        Assert.assertTrue(this.index.checkConsistency(false).isEmpty());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FamilyLockStripes}, including a concurrency stress test.
+ *
+ * @version $Id$
+ */
+public class FamilyLockStripesTest
+{
+    private static final int THREADS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void independentFamiliesAreEditedInParallel() throws Exception
+    {
+        // Use many more stripes than keys; the identifiers below are known to map to distinct stripes
+        final FamilyLockStripes locks = new FamilyLockStripes(1024);
+        final CountDownLatch allInside = new CountDownLatch(THREADS);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; ++i) {
+            final String family = "FAM000000" + i;
+            final String patient = "P000000" + i;
+            results.add(this.executor.submit(() -> {
+                try (FamilyLockStripes.Held held = locks.lock(family, patient)) {
+                    allInside.countDown();
+                    // All threads must be able to hold their locks at the same time
+                    return allInside.await(10, TimeUnit.SECONDS);
+                }
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get());
+        }
+    }
+
+    @Test
+    public void sameFamilyIsSerialized() throws Exception
+    {
+        final FamilyLockStripes locks = new FamilyLockStripes(FamilyLockStripes.DEFAULT_STRIPES);
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger maxInside = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS * 10; ++i) {
+            final String patient = "P00000" + (10 + i);
+            tasks.add(() -> {
+                try (FamilyLockStripes.Held held = locks.lock("FAM0000001", patient)) {
+                    maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                    Thread.sleep(1);
+                    inside.decrementAndGet();
+                }
+                return null;
+            });
+        }
+        for (Future<Void> result : this.executor.invokeAll(tasks)) {
+            result.get();
+        }
+        Assert.assertEquals(1, maxInside.get());
+        Assert.assertTrue(locks.getStatistics().get("acquisitions") >= THREADS * 10);
+        Assert.assertTrue(locks.getStatistics().get("contendedAcquisitions") > 0);
+    }
+
+    @Test
+    public void overlappingMultiFamilyOperationsDoNotDeadlock() throws Exception
+    {
+        final FamilyLockStripes locks = new FamilyLockStripes(16);
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            keys.add("FAM00000" + (10 + i));
+            keys.add("P00000" + (10 + i));
+        }
+        final AtomicInteger completed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS * 50; ++i) {
+            final int seed = i;
+            tasks.add(() -> {
+                // Each task locks a different random subset of keys, in a random order
+                List<String> shuffled = new ArrayList<>(keys);
+                Collections.shuffle(shuffled, new Random(seed));
+                try (FamilyLockStripes.Held held = locks.lock(shuffled.subList(0, 1 + seed % 10))) {
+                    // Re-acquiring a subset of the held locks must not block
+                    try (FamilyLockStripes.Held nested = locks.lock(shuffled.get(0))) {
+                        completed.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        List<Future<Void>> results = this.executor.invokeAll(tasks, 30, TimeUnit.SECONDS);
+        for (Future<Void> result : results) {
+            Assert.assertFalse("Lock acquisition deadlocked", result.isCancelled());
+            result.get();
+        }
+        Assert.assertEquals(THREADS * 50, completed.get());
+    }
+
+    @Test
+    public void nullKeysAreIgnoredAndLocksAreReleased() throws Exception
+    {
+        final FamilyLockStripes locks = new FamilyLockStripes(4);
+        try (FamilyLockStripes.Held held = locks.lock(Arrays.asList("FAM0000001", null, "FAM0000001"))) {
+            Assert.assertEquals(Long.valueOf(1), locks.getStatistics().get("acquisitions"));
+        }
+        // Another thread must be able to acquire the same stripe once it was released
+        Future<Boolean> other = this.executor.submit(() -> {
+            try (FamilyLockStripes.Held held = locks.lock("FAM0000001")) {
+                return true;
+            }
+        });
+        Assert.assertTrue(other.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidStripeCountIsRejected()
+    {
+        new FamilyLockStripes(0);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.studies.family.Family;
+
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link FamilyMembershipIndexUpdater} listener.
+ *
+ * @version $Id$
+ */
+public class FamilyMembershipIndexUpdaterTest
+{
+    private static final String PATIENT = "P0000001";
+
+    private static final String FAMILY = "FAM0000001";
+
+    private static final String FAMILY_REFERENCE = "xwiki:Families." + FAMILY;
+
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<>(FamilyMembershipIndexUpdater.class);
+
+    private FamilyMembershipIndex index;
+
+    private XWikiDocument document = mock(XWikiDocument.class);
+
+    private XWikiDocument original = mock(XWikiDocument.class);
+
+    @Before
+    public void setup() throws Exception
+    {
+        this.index = this.mocker.getInstance(FamilyMembershipIndex.class);
+        when(this.document.getDocumentReference()).thenReturn(new DocumentReference("xwiki", "data", PATIENT));
+        when(this.document.getOriginalDocument()).thenReturn(this.original);
+    }
+
+    @Test
+    public void familyReferenceIsIndexedWhenPatientsAreSaved() throws Exception
+    {
+        when(this.document.getXObject(Patient.CLASS_REFERENCE)).thenReturn(mock(BaseObject.class));
+        BaseObject familyReference = mock(BaseObject.class);
+        when(familyReference.getStringValue("reference")).thenReturn(FAMILY_REFERENCE);
+        when(this.document.getXObject(Family.REFERENCE_CLASS_REFERENCE)).thenReturn(familyReference);
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), this.document, null);
+        verify(this.index).setFamily(PATIENT, FAMILY_REFERENCE);
+    }
+
+    @Test
+    public void otherDocumentsAreIgnored() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), this.document, null);
+        verify(this.index, never()).setFamily(anyString(), anyString());
+    }
+
+    @Test
+    public void deletedPatientsAreRemoved() throws Exception
+    {
+        when(this.original.getXObject(Patient.CLASS_REFERENCE)).thenReturn(mock(BaseObject.class));
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), this.document, null);
+        verify(this.index).remove(PATIENT);
+    }
+
+    @Test
+    public void deletedFamiliesAreRemoved() throws Exception
+    {
+        when(this.document.getDocumentReference()).thenReturn(new DocumentReference("xwiki", "Families", FAMILY));
+        when(this.original.getXObject(Family.CLASS_REFERENCE)).thenReturn(mock(BaseObject.class));
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), this.document, null);
+        verify(this.index).remove(FAMILY);
+    }
+
+    @Test
+    public void deletionOfOtherDocumentsIsIgnored() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), this.document, null);
+        verify(this.index, never()).remove(anyString());
+    }
+}
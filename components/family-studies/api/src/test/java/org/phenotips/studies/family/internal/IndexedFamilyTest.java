@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.studies.family.Family;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link IndexedFamily} class.
+ *
+ * @version $Id$
+ */
+public class IndexedFamilyTest
+{
+    private static final DocumentReference REFERENCE = new DocumentReference("xwiki", "Families", "FAM0000001");
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void identityDoesNotLoadTheDocument()
+    {
+        Family family = new IndexedFamily(REFERENCE, reference -> {
+            this.loads.incrementAndGet();
+            return null;
+        });
+
+        Assert.assertEquals("FAM0000001", family.getId());
+        Assert.assertEquals(REFERENCE, family.getDocumentReference());
+        Assert.assertEquals(REFERENCE, family.getDocument());
+        Assert.assertEquals(Family.CLASS_REFERENCE, family.getType());
+        Assert.assertEquals(0, this.loads.get());
+    }
+
+    @Test
+    public void documentIsLoadedOnceWhenNeeded()
+    {
+        Family loaded = mock(Family.class);
+        when(loaded.getMembersIds()).thenReturn(Arrays.asList("P0000001"));
+        when(loaded.getProbandId()).thenReturn("P0000001");
+        Family family = new IndexedFamily(REFERENCE, reference -> {
+            this.loads.incrementAndGet();
+            return loaded;
+        });
+
+        Assert.assertEquals(Arrays.asList("P0000001"), family.getMembersIds());
+        Assert.assertEquals("P0000001", family.getProbandId());
+        Assert.assertEquals(1, this.loads.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingDocumentIsReported()
+    {
+        new IndexedFamily(REFERENCE, reference -> null).getMembersIds();
+    }
+}
@@ -19,6 +19,8 @@
 
 import org.phenotips.data.permissions.Owner;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
+import org.phenotips.security.authorization.AuthorizationRequestContextMocks;
 import org.phenotips.security.authorization.AuthorizationService;
 import org.phenotips.studies.family.Family;
 import org.phenotips.studies.family.FamilyRepository;
@@ -79,6 +81,7 @@
     public void setupMocks() throws Exception
     {
         MockitoAnnotations.initMocks(this);
+        AuthorizationRequestContextMocks.computeEachTime(this.mocker.getInstance(AuthorizationRequestContext.class));
 
         this.repo = this.mocker.getInstance(FamilyRepository.class);
         when(this.repo.get("xwiki:Families.FAM01")).thenReturn(this.family);
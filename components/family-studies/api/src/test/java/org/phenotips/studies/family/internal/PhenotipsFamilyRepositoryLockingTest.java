@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyRepository;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that {@link PhenotipsFamilyRepository} locks the current members of a family, even when the family object it
+ * receives is stale.
+ *
+ * @version $Id$
+ */
+public class PhenotipsFamilyRepositoryLockingTest
+{
+    private static final String FAMILY_ID = "FAM0000001";
+
+    // The identifiers below are known to map to distinct stripes
+    private static final String KNOWN_MEMBER = "P0000001";
+
+    private static final String NEW_MEMBER = "P0000002";
+
+    @Rule
+    public final MockitoComponentMockingRule<FamilyRepository> mocker =
+        new MockitoComponentMockingRule<>(PhenotipsFamilyRepository.class);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Family family = mock(Family.class);
+
+    private final User user = mock(User.class);
+
+    private FamilyLockStripes locks;
+
+    private FamilyMembershipIndex index;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.locks = (FamilyLockStripes) ReflectionUtils.getFieldValue(this.mocker.getComponentUnderTest(), "locks");
+
+        AuthorizationService authorization = this.mocker.getInstance(AuthorizationService.class);
+        when(authorization.hasAccess(any(User.class), any(Right.class), any(EntityReference.class))).thenReturn(true);
+
+        when(this.family.getId()).thenReturn(FAMILY_ID);
+        // The family object was loaded before the new member was added
+        when(this.family.getMembersIds()).thenReturn(Arrays.asList(KNOWN_MEMBER));
+
+        this.index = this.mocker.getInstance(FamilyMembershipIndex.class);
+        when(this.index.isAvailable()).thenReturn(true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void membersAddedBeforeLockingAreAlsoLocked() throws Exception
+    {
+        when(this.index.getMemberIds(FAMILY_ID))
+            .thenReturn(new HashSet<>(Arrays.asList(KNOWN_MEMBER, NEW_MEMBER)));
+        when(this.family.getMembers()).then(invocation -> {
+            // While the family is being modified, the new member must not be modifiable by other threads
+            Future<?> other = this.executor.submit(() -> this.locks.lock(NEW_MEMBER).close());
+            try {
+                other.get(200, TimeUnit.MILLISECONDS);
+                Assert.fail("The new member of the family wasn't locked");
+            } catch (TimeoutException ex) {
+                // Expected
+            }
+            return Collections.<Patient>emptyList();
+        });
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().forceRemoveAllMembers(this.family, this.user));
+        verify(this.family).getMembers();
+        // The first attempt didn't cover the new member, so the locks were acquired a second time
+        verify(this.index, times(2)).getMemberIds(FAMILY_ID);
+    }
+
+    @Test
+    public void locksAreAcquiredOnceWhenMembersAreCurrent() throws Exception
+    {
+        when(this.index.getMemberIds(FAMILY_ID)).thenReturn(Collections.singleton(KNOWN_MEMBER));
+        when(this.family.getMembers()).thenReturn(Collections.<Patient>emptyList());
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().forceRemoveAllMembers(this.family, this.user));
+        verify(this.index, times(1)).getMemberIds(FAMILY_ID);
+        // One stripe for the family, and one for its member
+        Assert.assertEquals(2L, (long) this.locks.getStatistics().get("acquisitions"));
+    }
+
+    @Test
+    public void familyIsReadAgainOnceMembersAreLocked() throws Exception
+    {
+        when(this.index.getMemberIds(FAMILY_ID))
+            .thenReturn(new HashSet<>(Arrays.asList(KNOWN_MEMBER, NEW_MEMBER)));
+        when(this.family.getMembers()).thenReturn(Collections.<Patient>emptyList());
+        DocumentReference familyReference = new DocumentReference("wiki", "Families", FAMILY_ID);
+        DocumentReferenceResolver<String> resolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        when(resolver.resolve(FAMILY_ID, Family.DATA_SPACE)).thenReturn(familyReference);
+        DocumentAccessBridge bridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        when(bridge.getDocument(familyReference)).then(invocation -> {
+            // The members must be read while the new member is locked
+            Future<?> other = this.executor.submit(() -> this.locks.lock(NEW_MEMBER).close());
+            try {
+                other.get(200, TimeUnit.MILLISECONDS);
+                Assert.fail("The family was read before locking its members");
+            } catch (TimeoutException ex) {
+                // Expected
+            }
+            return null;
+        });
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().forceRemoveAllMembers(this.family, this.user));
+        verify(bridge).getDocument(familyReference);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SvgUpdater}, {@link PedigreeSvgRewriter} and the caching of rendered pedigree images.
+ *
+ * @version $Id$
+ */
+public class SvgUpdaterTest
+{
+    private static final String SVG_START =
+        "<svg height=\"600\" version=\"1.1\" width=\"800\" xmlns=\"http://www.w3.org/2000/svg\">";
+
+    private static final String PROBAND_SHAPE =
+        "<rect class=\"node-shape-1\" stroke-width=\"1\" isProband=\"true\"></rect>";
+
+    private static final String LINKED_SHAPE = "<circle class=\"node-shape-2\" stroke-width=\"1\"></circle>";
+
+    private static final String LINK =
+        "<a xlink:href=\"/bin/data/P0000002\"><text y=\"5\" pedigreeNodeID=\"2\">P0000002</text></a>";
+
+    private static final String LABEL = "<text x=\"10\" y=\"100\" pedigreeNodeID=\"2\">Name</text>";
+
+    private static final String OTHER_LABEL = "<text x=\"10\" y=\"100\" pedigreeNodeID=\"1\">Name</text>";
+
+    private static final String SVG = SVG_START + PROBAND_SHAPE + LINKED_SHAPE + LINK + LABEL + OTHER_LABEL + "</svg>";
+
+    private final PedigreeImageCache imageCache = new DefaultPedigreeImageCache();
+
+    @Test
+    public void probandAndCurrentPatientAreHighlighted()
+    {
+        Assert.assertEquals(SVG_START
+            + "<rect class=\"node-shape-1\"  isProband=\"true\" stroke-width=\"2.0\"></rect>"
+            + "<circle class=\"node-shape-2\"  stroke-width=\"5.0\"></circle>"
+            + LINK + LABEL + OTHER_LABEL + "</svg>",
+            SvgUpdater.setCurrentPatientStylesInSvg(SVG, "P0000002"));
+    }
+
+    @Test
+    public void onlyProbandIsHighlightedWithoutCurrentPatient()
+    {
+        Assert.assertEquals(SVG_START
+            + "<rect class=\"node-shape-1\"  isProband=\"true\" stroke-width=\"2.0\"></rect>"
+            + "<circle class=\"node-shape-2\" ></circle>"
+            + LINK + LABEL + OTHER_LABEL + "</svg>",
+            SvgUpdater.setCurrentPatientStylesInSvg(SVG, null));
+    }
+
+    @Test
+    public void selfClosingShapesAreHighlighted()
+    {
+        Assert.assertEquals("<svg><circle class=\"node-shape-2\"  stroke-width=\"5.0\"/>" + LINK + "</svg>",
+            SvgUpdater.setCurrentPatientStylesInSvg(
+                "<svg><circle class=\"node-shape-2\" stroke-width=\"1\"/>" + LINK + "</svg>", "P0000002"));
+    }
+
+    /**
+     * Pins the output of highlighting: the stroke width of every node shape is removed, including repeated attributes,
+     * and the highlighted shapes get a new stroke width appended at the end of their start tag, before the {@code /}
+     * of self-closing shapes. Shapes that aren't node shapes are left untouched.
+     */
+    @Test
+    public void strokeWidthsOfAllNodeShapesAreReset()
+    {
+        Assert.assertEquals("<svg>"
+            + "<rect class=\"node-shape-1\" isProband=\"true\"  stroke-width=\"2.0\"/>"
+            + "<circle class=\"node-shape-2\"  fill=\"red\"  stroke-width=\"5.0\"></circle>"
+            + "<rect class=\"node-shape-3\" />"
+            + "<rect class=\"node-shape-4\" fill=\"blue\"></rect>"
+            + "<rect class=\"outline\" stroke-width=\"3\"/>"
+            + LINK + "</svg>",
+            SvgUpdater.setCurrentPatientStylesInSvg("<svg>"
+                + "<rect class=\"node-shape-1\" isProband=\"true\" stroke-width=\"1\"/>"
+                + "<circle class=\"node-shape-2\" stroke-width=\"1\" fill=\"red\" stroke-width=\"4\"></circle>"
+                + "<rect class=\"node-shape-3\" stroke-width=\"1\"/>"
+                + "<rect class=\"node-shape-4\" fill=\"blue\"></rect>"
+                + "<rect class=\"outline\" stroke-width=\"3\"/>"
+                + LINK + "</svg>", "P0000002"));
+    }
+
+    @Test
+    public void removeLinkRemovesLinkAndShiftsLabels()
+    {
+        Assert.assertEquals(SVG_START + PROBAND_SHAPE + LINKED_SHAPE
+            + "<text x=\"10\" y=\"78.0\" pedigreeNodeID=\"2\">Name</text>" + OTHER_LABEL + "</svg>",
+            SvgUpdater.removeLink(SVG, "P0000002"));
+    }
+
+    @Test
+    public void removeLinkToOtherPatientDoesNothing()
+    {
+        Assert.assertEquals(SVG, SvgUpdater.removeLink(SVG, "P0000003"));
+    }
+
+    @Test
+    public void sizeIsChanged()
+    {
+        Assert.assertEquals(SVG.replace("width=\"800\"", "width=\"200\""), SvgUpdater.setSVGWidth(SVG, 200));
+        Assert.assertEquals(SVG.replace("height=\"600\"", "height=\"100\""), SvgUpdater.setSVGHeight(SVG, 100));
+        Assert.assertSame(SVG, SvgUpdater.setSVGWidth(SVG, 0));
+        Assert.assertNull(SvgUpdater.setSVGHeight(null, 100));
+    }
+
+    @Test
+    public void combinedRewriteMatchesSeparateOperations()
+    {
+        String expected = SvgUpdater.setSVGHeight(
+            SvgUpdater.setSVGWidth(SvgUpdater.setCurrentPatientStylesInSvg(SVG, "P0000002"), 300), 200);
+        Assert.assertEquals(expected, new PedigreeSvgRewriter().highlight("P0000002").resize(300, 200).rewrite(SVG));
+    }
+
+    @Test
+    public void highlightedImagesAreCachedPerVersionAndPatient()
+    {
+        DefaultPedigree pedigree =
+            new DefaultPedigree(getPedigreeData(), SVG, "xwiki:Families.FAM0000001@1.1", this.imageCache);
+        String highlighted = pedigree.getImage("P0000002");
+        Assert.assertSame(highlighted, pedigree.getImage("P0000002"));
+        Assert.assertSame(highlighted,
+            new DefaultPedigree(getPedigreeData(), SVG, "xwiki:Families.FAM0000001@1.1", this.imageCache)
+                .getImage("P0000002"));
+        Assert.assertNotEquals(highlighted, pedigree.getImage(null));
+        Assert.assertEquals(2, this.imageCache.size());
+
+        // A pedigree with the same version but a different image must not get the cached image
+        DefaultPedigree modified = new DefaultPedigree(getPedigreeData(), SVG.replace("Name", "Other"),
+            "xwiki:Families.FAM0000001@1.1", this.imageCache);
+        Assert.assertTrue(modified.getImage("P0000002").contains("Other"));
+    }
+
+    @Test
+    public void cacheIsBoundedByImageSize()
+    {
+        PedigreeImageCache cache = new DefaultPedigreeImageCache(2 * SVG.length());
+        cache.put("a", SVG, SVG);
+        cache.put("b", SVG, SVG);
+        Assert.assertNotNull(cache.get("a", SVG));
+        cache.put("c", SVG, SVG);
+        Assert.assertEquals(2, cache.size());
+        // "b" was the least recently used
+        Assert.assertNull(cache.get("b", SVG));
+        Assert.assertNotNull(cache.get("a", SVG));
+        Assert.assertNotNull(cache.get("c", SVG));
+    }
+
+    /** Benchmark-style check that a multi-megabyte pedigree is processed quickly, in a single pass. */
+    @Test(timeout = 10000)
+    public void largePedigreesAreProcessedQuickly()
+    {
+        StringBuilder svg = new StringBuilder(SVG_START);
+        int nodes = 20000;
+        for (int i = 0; i < nodes; ++i) {
+            svg.append("<rect class=\"node-shape-").append(i).append("\" stroke=\"#595959\" stroke-width=\"1\"")
+                .append(i == 7 ? " isProband=\"true\"" : "").append("></rect>")
+                .append("<path d=\"M0,0L1,1\" stroke-width=\"2\"></path>")
+                .append("<text x=\"10\" y=\"").append(100 + i).append("\" pedigreeNodeID=\"").append(i)
+                .append("\"><tspan>Name ").append(i).append("</tspan></text>");
+            if (i % 3 == 0) {
+                svg.append("<a xlink:href=\"/bin/data/P").append(String.format("%07d", i))
+                    .append("\"><text y=\"5\" pedigreeNodeID=\"").append(i).append("\">P</text></a>");
+            }
+        }
+        String image = svg.append("</svg>").toString();
+
+        for (int i = 0; i < 10; ++i) {
+            String result = new PedigreeSvgRewriter().highlight("P0000009").resize(300, 300).rewrite(image);
+            Assert.assertTrue(result.contains(
+                "<rect class=\"node-shape-9\" stroke=\"#595959\"  stroke-width=\"5.0\"></rect>"));
+            Assert.assertTrue(result.contains(
+                "<rect class=\"node-shape-7\" stroke=\"#595959\"  isProband=\"true\" stroke-width=\"2.0\"></rect>"));
+            Assert.assertTrue(result.startsWith("<svg height=\"300\" version=\"1.1\" width=\"300\""));
+        }
+    }
+
+    private JSONObject getPedigreeData()
+    {
+        return new JSONObject().put("members", new JSONArray());
+    }
+}
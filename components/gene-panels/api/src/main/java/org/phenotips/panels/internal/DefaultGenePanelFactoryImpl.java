@@ -24,8 +24,11 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.observation.ObservationManager;
 
 import java.util.Collection;
+import java.util.Collections;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
@@ -41,12 +44,26 @@
  */
 @Component
 @Singleton
-public class DefaultGenePanelFactoryImpl implements GenePanelFactory
+public class DefaultGenePanelFactoryImpl implements GenePanelFactory, Initializable
 {
     /** The vocabulary manager required for accessing the available vocabularies. */
     @Inject
     private VocabularyManager vocabularyManager;
 
+    /** Used for discarding the {@link #geneIndex} when the vocabularies are reindexed. */
+    @Inject
+    private ObservationManager observationManager;
+
+    /** The genes associated with each phenotype, shared by all the panels built by this factory. */
+    private PhenotypeGeneIndex geneIndex;
+
+    @Override
+    public void initialize()
+    {
+        this.geneIndex = new PhenotypeGeneIndex(this.vocabularyManager);
+        this.observationManager.addListener(this.geneIndex);
+    }
+
     @Override
     public GenePanel build(
         @Nonnull final Collection<VocabularyTerm> presentTerms,
@@ -54,7 +71,7 @@ public GenePanel build(
     {
         Validate.notNull(presentTerms);
         Validate.notNull(absentTerms);
-        return new DefaultGenePanelImpl(presentTerms, absentTerms, this.vocabularyManager);
+        return new DefaultGenePanelImpl(presentTerms, absentTerms, Collections.emptySet(), this.geneIndex);
     }
 
     @Override
@@ -66,7 +83,7 @@ public GenePanel build(
         Validate.notNull(presentTerms);
         Validate.notNull(absentTerms);
         Validate.notNull(rejectedGenes);
-        return new DefaultGenePanelImpl(presentTerms, absentTerms, rejectedGenes, this.vocabularyManager);
+        return new DefaultGenePanelImpl(presentTerms, absentTerms, rejectedGenes, this.geneIndex);
     }
 
     @Override
@@ -83,6 +100,6 @@ public GenePanel build(@Nonnull final Patient patient, final boolean excludeReje
             ? new PatientDataAdapter.AdapterBuilder(patient, this.vocabularyManager).withRejectedGenes().build()
             : new PatientDataAdapter.AdapterBuilder(patient, this.vocabularyManager).build();
         return new DefaultGenePanelImpl(dataAdapter.getPresentTerms(), dataAdapter.getAbsentTerms(),
-            dataAdapter.getRejectedGenes(), this.vocabularyManager);
+            dataAdapter.getRejectedGenes(), this.geneIndex);
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.panels.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
+
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * An inverted index from phenotypes to the canonical genes associated with them. Gene symbols listed by a phenotype
+ * may be aliases or previous symbols, so each one is looked up in the HGNC vocabulary to get the current symbol and
+ * Ensembl ID; this lookup is done only once for each symbol, and the resulting genes are shared by all the phenotypes
+ * that list them. The index is filled in lazily, one phenotype at a time, so a panel with one more phenotype than a
+ * previous one only needs to look up the genes of the new phenotype. The index is discarded when either the HPO or the
+ * HGNC vocabulary is reindexed; the owner of the index must register it as an event listener, so that it is notified
+ * when that happens. Safe for concurrent use.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class PhenotypeGeneIndex implements EventListener
+{
+    /** Internal label for associated genes. */
+    private static final String ASSOCIATED_GENES = "associated_genes";
+
+    /** The "ensembl_gene_id" label. */
+    private static final String ENSEMBL_ID_LABEL = "ensembl_gene_id";
+
+    /** The gene "symbol" label. */
+    private static final String SYMBOL_LABEL = "symbol";
+
+    /** HGNC vocabulary label. */
+    private static final String HGNC_LABEL = "hgnc";
+
+    /** HPO vocabulary label. */
+    private static final String HPO_LABEL = "hpo";
+
+    private final VocabularyManager vocabularyManager;
+
+    private volatile Index index = new Index();
+
+    /**
+     * Simple constructor.
+     *
+     * @param vocabularyManager the {@link VocabularyManager} for accessing the HPO and HGNC vocabularies
+     */
+    PhenotypeGeneIndex(@Nonnull final VocabularyManager vocabularyManager)
+    {
+        this.vocabularyManager = vocabularyManager;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "phenotype-gene-index";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Collections.<Event>singletonList(new VocabularyReindexedEvent());
+    }
+
+    @Override
+    public void onEvent(final Event event, final Object source, final Object data)
+    {
+        if (source != null && (source == this.vocabularyManager.getVocabulary(HPO_LABEL)
+            || source == this.vocabularyManager.getVocabulary(HGNC_LABEL))) {
+            this.index = new Index();
+        }
+    }
+
+    /**
+     * Returns the canonical genes associated with a phenotype.
+     *
+     * @param phenotype an HPO {@link VocabularyTerm}
+     * @return an unmodifiable list of genes, without duplicates, possibly empty
+     */
+    List<Gene> getGenes(@Nonnull final VocabularyTerm phenotype)
+    {
+        final Index current = this.index;
+        final String id = phenotype.getId();
+        if (id == null) {
+            return computeGenes(phenotype, current);
+        }
+        List<Gene> result = current.phenotypes.get(id);
+        if (result == null) {
+            result = computeGenes(phenotype, current);
+            current.phenotypes.putIfAbsent(id, result);
+        }
+        return result;
+    }
+
+    private List<Gene> computeGenes(@Nonnull final VocabularyTerm phenotype, @Nonnull final Index current)
+    {
+        @SuppressWarnings("unchecked")
+        final List<String> symbols = (List<String>) phenotype.get(ASSOCIATED_GENES);
+        if (CollectionUtils.isEmpty(symbols)) {
+            return Collections.emptyList();
+        }
+        final Set<Gene> genes = new LinkedHashSet<>();
+        for (final String symbol : symbols) {
+            genes.add(getGene(symbol, current));
+        }
+        return Collections.unmodifiableList(new ArrayList<>(genes));
+    }
+
+    private Gene getGene(@Nonnull final String enteredSymbol, @Nonnull final Index current)
+    {
+        Gene result = current.symbols.get(enteredSymbol);
+        if (result == null) {
+            // Since entered gene may be an alias, get the current gene symbol and gene ID.
+            final Vocabulary hgnc = this.vocabularyManager.getVocabulary(HGNC_LABEL);
+            final VocabularyTerm geneTerm = hgnc == null ? null : hgnc.getTerm(enteredSymbol);
+            final String symbol = getGeneSymbol(enteredSymbol, geneTerm);
+            final Gene gene = new Gene(symbol, getGeneId(symbol, geneTerm));
+            // Intern the gene, so that all its aliases share the same object
+            result = current.genes.putIfAbsent(gene, gene);
+            if (result == null) {
+                result = gene;
+            }
+            current.symbols.putIfAbsent(enteredSymbol, result);
+        }
+        return result;
+    }
+
+    /**
+     * Tries to obtain the preferred gene symbol, given entered {@code symbol}, and {@code geneTerm} vocabulary term.
+     *
+     * @param symbol the provided gene symbol
+     * @param geneTerm the {@link VocabularyTerm} gene vocabulary term
+     * @return the preferred gene symbol, or entered {@code symbol} if no symbol is recorded
+     */
+    private String getGeneSymbol(@Nonnull final String symbol, @Nullable final VocabularyTerm geneTerm)
+    {
+        return geneTerm != null ? StringUtils.defaultIfBlank((String) geneTerm.get(SYMBOL_LABEL), symbol) : symbol;
+    }
+
+    /**
+     * Tries to obtain the preferred gene ID, given {@code symbol}.
+     *
+     * @param symbol the GeneCards gene symbol
+     * @param geneTerm the {@link VocabularyTerm} gene vocabulary term
+     * @return the preferred gene ID, or {@code symbol} if no preferred ID is recorded
+     */
+    private String getGeneId(@Nonnull final String symbol, @Nullable final VocabularyTerm geneTerm)
+    {
+        if (geneTerm != null) {
+            @SuppressWarnings("unchecked")
+            final List<String> geneIdList = (List<String>) geneTerm.get(ENSEMBL_ID_LABEL);
+            return CollectionUtils.isEmpty(geneIdList) ? symbol : geneIdList.get(0);
+        }
+        return symbol;
+    }
+
+    /** A gene, identified by its current symbol and preferred ID. */
+    static final class Gene
+    {
+        private final String symbol;
+
+        private final String id;
+
+        Gene(@Nonnull final String symbol, @Nonnull final String id)
+        {
+            this.symbol = symbol;
+            this.id = id;
+        }
+
+        /**
+         * @return the current gene symbol
+         */
+        String getSymbol()
+        {
+            return this.symbol;
+        }
+
+        /**
+         * @return the preferred gene ID, usually the Ensembl ID, or the symbol if no ID is known
+         */
+        String getId()
+        {
+            return this.id;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Gene gene = (Gene) o;
+            return this.symbol.equals(gene.symbol) && this.id.equals(gene.id);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.symbol, this.id);
+        }
+    }
+
+    /** The index built from the current vocabulary indexes. */
+    private static final class Index
+    {
+        /** Maps HPO term IDs to their canonical genes. */
+        private final ConcurrentMap<String, List<Gene>> phenotypes = new ConcurrentHashMap<>();
+
+        /** Maps entered gene symbols, including aliases, to their canonical genes. */
+        private final ConcurrentMap<String, Gene> symbols = new ConcurrentHashMap<>();
+
+        /** Interned genes. */
+        private final ConcurrentMap<Gene, Gene> genes = new ConcurrentHashMap<>();
+    }
+}
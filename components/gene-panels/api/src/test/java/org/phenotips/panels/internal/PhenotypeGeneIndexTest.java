@@ -0,0 +1,151 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.panels.internal;
+
+import org.phenotips.panels.GenePanel;
+import org.phenotips.panels.internal.PhenotypeGeneIndex.Gene;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PhenotypeGeneIndex} class.
+ *
+ * @version $Id$
+ */
+public class PhenotypeGeneIndexTest
+{
+    private static final String ASSOCIATED_GENES = "associated_genes";
+
+    @Mock
+    private VocabularyManager vocabularyManager;
+
+    @Mock
+    private Vocabulary hgnc;
+
+    private PhenotypeGeneIndex index;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        when(this.vocabularyManager.getVocabulary("hgnc")).thenReturn(this.hgnc);
+        this.index = new PhenotypeGeneIndex(this.vocabularyManager);
+
+        final VocabularyTerm fgfr3 = mock(VocabularyTerm.class);
+        when(fgfr3.get("symbol")).thenReturn("FGFR3");
+        when(fgfr3.get("ensembl_gene_id")).thenReturn(Collections.singletonList("ENSG00000068078"));
+        when(this.hgnc.getTerm("FGFR3")).thenReturn(fgfr3);
+        // An alias of FGFR3
+        when(this.hgnc.getTerm("ACH")).thenReturn(fgfr3);
+    }
+
+    @Test
+    public void genesAreCanonicalizedAndShared()
+    {
+        final VocabularyTerm shortStature = mockPhenotype("HP:0004322", "FGFR3", "UNKNOWN1");
+        final VocabularyTerm rhizomelia = mockPhenotype("HP:0008905", "ACH", "FGFR3");
+
+        final List<Gene> genes = this.index.getGenes(shortStature);
+        assertEquals(2, genes.size());
+        assertEquals("FGFR3", genes.get(0).getSymbol());
+        assertEquals("ENSG00000068078", genes.get(0).getId());
+        // Unknown genes keep the entered symbol as their ID
+        assertEquals("UNKNOWN1", genes.get(1).getSymbol());
+        assertEquals("UNKNOWN1", genes.get(1).getId());
+
+        // The alias and the current symbol resolve to the same gene, listed only once
+        final List<Gene> otherGenes = this.index.getGenes(rhizomelia);
+        assertEquals(1, otherGenes.size());
+        assertSame(genes.get(0), otherGenes.get(0));
+
+        // Repeated requests reuse the index
+        assertSame(genes, this.index.getGenes(shortStature));
+        verify(this.hgnc, times(1)).getTerm("FGFR3");
+        verify(this.hgnc, times(1)).getTerm("ACH");
+        verify(this.hgnc, times(1)).getTerm("UNKNOWN1");
+    }
+
+    @Test
+    public void phenotypesWithoutGenesHaveEmptyLists()
+    {
+        final VocabularyTerm phenotype = mock(VocabularyTerm.class);
+        when(phenotype.getId()).thenReturn("HP:0000001");
+        assertTrue(this.index.getGenes(phenotype).isEmpty());
+    }
+
+    @Test
+    public void panelsShareTheIndex()
+    {
+        final VocabularyTerm shortStature = mockPhenotype("HP:0004322", "FGFR3");
+        final VocabularyTerm rhizomelia = mockPhenotype("HP:0008905", "ACH");
+
+        final GenePanel first = new DefaultGenePanelImpl(Collections.singletonList(shortStature),
+            Collections.emptyList(), Collections.emptyList(), this.index);
+        assertEquals(1, first.size());
+        final GenePanel second = new DefaultGenePanelImpl(Arrays.asList(shortStature, rhizomelia),
+            Collections.emptyList(), Collections.emptyList(), this.index);
+        assertEquals(1, second.size());
+        assertEquals(2, second.getTermsForGeneList().get(0).getCount());
+        verify(this.hgnc, times(1)).getTerm("FGFR3");
+    }
+
+    @Test
+    public void indexIsDiscardedWhenTheVocabulariesAreReindexed()
+    {
+        final VocabularyTerm shortStature = mockPhenotype("HP:0004322", "FGFR3");
+        final List<Gene> genes = this.index.getGenes(shortStature);
+        assertTrue(this.index.getEvents().get(0).matches(new VocabularyReindexedEvent("hgnc")));
+
+        this.index.onEvent(new VocabularyReindexedEvent("omim"), mock(Vocabulary.class), null);
+        assertSame(genes, this.index.getGenes(shortStature));
+
+        this.index.onEvent(new VocabularyReindexedEvent("hgnc"), this.hgnc, null);
+        final List<Gene> reindexed = this.index.getGenes(shortStature);
+        assertNotSame(genes, reindexed);
+        assertEquals(genes, reindexed);
+        verify(this.hgnc, times(2)).getTerm("FGFR3");
+    }
+
+    private VocabularyTerm mockPhenotype(final String id, final String... genes)
+    {
+        final VocabularyTerm phenotype = mock(VocabularyTerm.class);
+        when(phenotype.getId()).thenReturn(id);
+        when(phenotype.get(ASSOCIATED_GENES)).thenReturn(Arrays.asList(genes));
+        return phenotype;
+    }
+}
@@ -137,9 +137,6 @@ private void loadField(String name, String value)
 
     private void propagateAncestors()
     {
-        for (String id : this.data.keySet()) {
-            TermData term = this.data.get(id);
-            term.expandTermCategories(this.data);
-        }
+        TermAncestors.expandTermCategories(this.data);
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the full set of ancestors of all the terms in an ontology at once. Term identifiers are mapped to dense
+ * integers, and the ancestors of each term are computed only once, as the union of the memoized ancestors of its
+ * parents, instead of walking up the whole hierarchy again for every term.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class TermAncestors
+{
+    /** Marks a term whose ancestors are being computed, to avoid looping forever in case of cycles. */
+    private static final int[] IN_PROGRESS = new int[0];
+
+    private final Map<String, Integer> index = new HashMap<>();
+
+    private final List<String> ids = new ArrayList<>();
+
+    private final int[][] parents;
+
+    private final int[][] closures;
+
+    /** Reused for computing the union of the ancestors of each term's parents. */
+    private final BitSet scratch = new BitSet();
+
+    private TermAncestors(Map<String, TermData> data)
+    {
+        for (String id : data.keySet()) {
+            intern(id);
+        }
+        List<int[]> parentIndexes = new ArrayList<>(data.size());
+        for (TermData term : data.values()) {
+            Collection<String> termParents = term.get(TermData.PARENT_FIELD_NAME);
+            int[] indexes = new int[termParents == null ? 0 : termParents.size()];
+            int i = 0;
+            if (termParents != null) {
+                for (String parent : termParents) {
+                    indexes[i++] = intern(TermData.getParentId(parent));
+                }
+            }
+            parentIndexes.add(indexes);
+        }
+        // Parents missing from the ontology were interned as well, they have no parents of their own
+        this.parents = new int[this.ids.size()][];
+        for (int i = 0; i < this.parents.length; ++i) {
+            this.parents[i] = i < parentIndexes.size() ? parentIndexes.get(i) : IN_PROGRESS;
+        }
+        this.closures = new int[this.ids.size()][];
+    }
+
+    /**
+     * Replaces the {@link TermData#TERM_CATEGORY_FIELD_NAME categories} of each term with the term itself and all its
+     * ancestors.
+     *
+     * @param data the parsed ontology, mapping term identifiers to term data
+     */
+    static void expandTermCategories(Map<String, TermData> data)
+    {
+        TermAncestors ancestors = new TermAncestors(data);
+        int term = 0;
+        for (Map.Entry<String, TermData> entry : data.entrySet()) {
+            Set<String> categories = new LinkedHashSet<>();
+            categories.add(entry.getKey());
+            for (int ancestor : ancestors.getClosure(term++)) {
+                categories.add(ancestors.ids.get(ancestor));
+            }
+            entry.getValue().put(TermData.TERM_CATEGORY_FIELD_NAME, categories);
+        }
+    }
+
+    private int intern(String id)
+    {
+        Integer result = this.index.get(id);
+        if (result == null) {
+            result = this.ids.size();
+            this.index.put(id, result);
+            this.ids.add(id);
+        }
+        return result;
+    }
+
+    private int[] getClosure(int term)
+    {
+        int[] closure = this.closures[term];
+        if (closure != null) {
+            return closure;
+        }
+        this.closures[term] = IN_PROGRESS;
+        int[] termParents = this.parents[term];
+        int[][] parentClosures = new int[termParents.length][];
+        for (int i = 0; i < termParents.length; ++i) {
+            parentClosures[i] = getClosure(termParents[i]);
+        }
+        this.scratch.clear();
+        this.scratch.set(term);
+        for (int i = 0; i < termParents.length; ++i) {
+            this.scratch.set(termParents[i]);
+            for (int ancestor : parentClosures[i]) {
+                this.scratch.set(ancestor);
+            }
+        }
+        closure = this.scratch.stream().toArray();
+        this.closures[term] = closure;
+        return closure;
+    }
+}
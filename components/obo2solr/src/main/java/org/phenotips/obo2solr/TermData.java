@@ -20,11 +20,14 @@
 import org.phenotips.obo2solr.maps.SetMap;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class TermData extends SetMap<String, String>
 {
@@ -38,6 +41,8 @@ public class TermData extends SetMap<String, String>
 
     public static final String PARENT_ID_REGEX = "^(HP\\:[0-9]{7})\\s*!\\s*.*";
 
+    private static final Pattern PARENT_ID_PATTERN = Pattern.compile(PARENT_ID_REGEX);
+
     private String id;
 
     @Override
@@ -52,13 +57,26 @@ String getId()
         return this.id;
     }
 
+    /**
+     * Extracts the identifier from an {@code is_a} value, which may also include the name of the parent term.
+     *
+     * @param parent a value of the {@link #PARENT_FIELD_NAME} field, such as
+     *            {@code HP:0000118 ! Phenotypic abnormality}
+     * @return the parent identifier, such as {@code HP:0000118}
+     */
+    static String getParentId(String parent)
+    {
+        Matcher matcher = PARENT_ID_PATTERN.matcher(parent);
+        return matcher.matches() ? matcher.group(1) : parent;
+    }
+
     @Override
     public boolean addTo(String key, String value)
     {
         if (ID_FIELD_NAME.equals(key)) {
             this.id = value;
         } else if (PARENT_FIELD_NAME.equals(key)) {
-            this.addTo(TERM_CATEGORY_FIELD_NAME, value.replaceAll(PARENT_ID_REGEX, "$1"));
+            this.addTo(TERM_CATEGORY_FIELD_NAME, getParentId(value));
         }
         return super.addTo(key, value);
     }
@@ -73,10 +91,18 @@ public boolean addTo(String key, Collection<String> values)
         return result;
     }
 
+    /**
+     * Replaces the categories of this term with the term itself and all its ancestors. When all the terms of an
+     * ontology must be expanded, {@link SolrUpdateGenerator} computes the ancestors of all terms at once, which is much
+     * faster than calling this method for each term.
+     *
+     * @param data the parsed ontology, mapping term identifiers to term data
+     */
     public void expandTermCategories(Map<String, TermData> data)
     {
         Set<String> result = new LinkedHashSet<>();
         Queue<String> front = new LinkedList<>();
+        Set<String> queued = new HashSet<>();
 
         if (this.get(TERM_CATEGORY_FIELD_NAME) == null) {
             this.put(TERM_CATEGORY_FIELD_NAME, super.getEmptyCollection());
@@ -84,6 +110,7 @@ public void expandTermCategories(Map<String, TermData> data)
 
         result.add(this.id);
         front.addAll(this.get(TERM_CATEGORY_FIELD_NAME));
+        queued.addAll(front);
         String nextTermId;
         while ((nextTermId = front.poll()) != null) {
             result.add(nextTermId);
@@ -91,9 +118,9 @@ public void expandTermCategories(Map<String, TermData> data)
                 continue;
             }
             for (String parentTermId : data.get(nextTermId).get(PARENT_FIELD_NAME)) {
-                parentTermId = parentTermId.replaceAll(PARENT_ID_REGEX, "$1");
-                if (!result.contains(parentTermId) && !front.contains(parentTermId)) {
-                    front.add(parentTermId);
+                String parentId = getParentId(parentTermId);
+                if (!result.contains(parentId) && queued.add(parentId)) {
+                    front.add(parentId);
                 }
             }
         }
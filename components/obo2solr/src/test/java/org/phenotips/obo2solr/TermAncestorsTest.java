@@ -0,0 +1,202 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TermAncestors}.
+ *
+ * @version $Id$
+ */
+public class TermAncestorsTest
+{
+    private static final String ROOT = "HP:0000001";
+
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private static final String HEAD = "HP:0000152";
+
+    private static final String EYE = "HP:0000478";
+
+    private static final String FACE = "HP:0000271";
+
+    private static final String EYEBROW = "HP:0000534";
+
+    private static final String SYNOPHRYS = "HP:0000664";
+
+    @Test
+    public void rootTermOnlyHasItself()
+    {
+        Map<String, TermData> data = buildDiamond();
+        TermAncestors.expandTermCategories(data);
+        assertCategories(data, ROOT, ROOT);
+    }
+
+    @Test
+    public void singleParentChainIsFollowed()
+    {
+        Map<String, TermData> data = buildDiamond();
+        TermAncestors.expandTermCategories(data);
+        assertCategories(data, HEAD, HEAD, ABNORMALITY, ROOT);
+    }
+
+    @Test
+    public void multipleParentsAreAllIncludedOnlyOnce()
+    {
+        Map<String, TermData> data = buildDiamond();
+        TermAncestors.expandTermCategories(data);
+        assertCategories(data, EYEBROW, EYEBROW, EYE, FACE, HEAD, ABNORMALITY, ROOT);
+        assertCategories(data, SYNOPHRYS, SYNOPHRYS, EYEBROW, EYE, FACE, HEAD, ABNORMALITY, ROOT);
+        Assert.assertEquals(7, data.get(SYNOPHRYS).get(TermData.TERM_CATEGORY_FIELD_NAME).size());
+    }
+
+    @Test
+    public void termIsListedFirst()
+    {
+        Map<String, TermData> data = buildDiamond();
+        TermAncestors.expandTermCategories(data);
+        for (Map.Entry<String, TermData> term : data.entrySet()) {
+            Assert.assertEquals(term.getKey(),
+                term.getValue().get(TermData.TERM_CATEGORY_FIELD_NAME).iterator().next());
+        }
+    }
+
+    @Test
+    public void resultsMatchTheSingleTermExpansion()
+    {
+        Map<String, TermData> expected = buildDiamond();
+        for (TermData term : expected.values()) {
+            term.expandTermCategories(expected);
+        }
+        Map<String, TermData> actual = buildDiamond();
+        TermAncestors.expandTermCategories(actual);
+
+        for (String id : expected.keySet()) {
+            Assert.assertEquals(new HashSet<>(expected.get(id).get(TermData.TERM_CATEGORY_FIELD_NAME)),
+                new HashSet<>(actual.get(id).get(TermData.TERM_CATEGORY_FIELD_NAME)));
+        }
+    }
+
+    @Test
+    public void termsListedBeforeTheirParentsAreExpanded()
+    {
+        Map<String, TermData> data = new LinkedHashMap<>();
+        addTerm(data, SYNOPHRYS, EYEBROW);
+        addTerm(data, EYEBROW, EYE, FACE);
+        addTerm(data, EYE, HEAD);
+        addTerm(data, FACE, HEAD);
+        addTerm(data, HEAD);
+
+        TermAncestors.expandTermCategories(data);
+
+        assertCategories(data, SYNOPHRYS, SYNOPHRYS, EYEBROW, EYE, FACE, HEAD);
+    }
+
+    @Test
+    public void parentsMissingFromTheOntologyAreIncluded()
+    {
+        Map<String, TermData> data = new LinkedHashMap<>();
+        addTerm(data, EYEBROW, EYE, FACE);
+        addTerm(data, EYE, HEAD);
+
+        TermAncestors.expandTermCategories(data);
+
+        assertCategories(data, EYEBROW, EYEBROW, EYE, FACE, HEAD);
+        assertCategories(data, EYE, EYE, HEAD);
+        Assert.assertEquals(2, data.size());
+    }
+
+    @Test
+    public void existingCategoriesAreReplaced()
+    {
+        Map<String, TermData> data = buildDiamond();
+        data.get(HEAD).addTo(TermData.TERM_CATEGORY_FIELD_NAME, "HP:9999999");
+
+        TermAncestors.expandTermCategories(data);
+
+        assertCategories(data, HEAD, HEAD, ABNORMALITY, ROOT);
+    }
+
+    @Test
+    public void cyclesDoNotLoopForever()
+    {
+        Map<String, TermData> data = new LinkedHashMap<>();
+        addTerm(data, EYE, FACE);
+        addTerm(data, FACE, HEAD);
+        addTerm(data, HEAD, EYE);
+
+        TermAncestors.expandTermCategories(data);
+
+        Assert.assertTrue(data.get(EYE).get(TermData.TERM_CATEGORY_FIELD_NAME).containsAll(
+            Arrays.asList(EYE, FACE, HEAD)));
+    }
+
+    @Test
+    public void emptyOntologyIsAccepted()
+    {
+        Map<String, TermData> data = Collections.emptyMap();
+        TermAncestors.expandTermCategories(data);
+        Assert.assertTrue(data.isEmpty());
+    }
+
+    /**
+     * Builds a small hierarchy where {@code EYEBROW} has two parents, {@code EYE} and {@code FACE}, which share the
+     * same {@code HEAD} ancestor.
+     */
+    private Map<String, TermData> buildDiamond()
+    {
+        Map<String, TermData> data = new LinkedHashMap<>();
+        addTerm(data, ROOT);
+        addTerm(data, ABNORMALITY, ROOT);
+        addTerm(data, HEAD, ABNORMALITY);
+        addTerm(data, EYE, HEAD);
+        addTerm(data, FACE, HEAD);
+        addTerm(data, EYEBROW, EYE, FACE);
+        addTerm(data, SYNOPHRYS, EYEBROW);
+        return data;
+    }
+
+    private void addTerm(Map<String, TermData> data, String id, String... parents)
+    {
+        TermData term = new TermData();
+        term.addTo(TermData.ID_FIELD_NAME, id);
+        for (String parent : parents) {
+            term.addTo(TermData.PARENT_FIELD_NAME, parent + " ! Some name");
+        }
+        data.put(id, term);
+    }
+
+    private void assertCategories(Map<String, TermData> data, String id, String... expected)
+    {
+        Collection<String> categories = data.get(id).get(TermData.TERM_CATEGORY_FIELD_NAME);
+        List<String> actual = new ArrayList<>(categories);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(actual));
+        Assert.assertEquals(expected.length, actual.size());
+    }
+}
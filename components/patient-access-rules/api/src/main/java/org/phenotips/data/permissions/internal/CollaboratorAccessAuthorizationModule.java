@@ -21,6 +21,7 @@
 import org.phenotips.entities.PrimaryEntity;
 import org.phenotips.entities.PrimaryEntityResolver;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.EntityType;
@@ -54,6 +55,9 @@ public class CollaboratorAccessAuthorizationModule implements AuthorizationModul
     @Inject
     private EntityAccessManager accessHelper;
 
+    @Inject
+    private AuthorizationRequestContext requestContext;
+
     @Override
     public int getPriority()
     {
@@ -69,7 +73,8 @@ public Boolean hasAccess(User user, Right access, EntityReference entity)
         }
 
         // This converts the document to an entity.
-        PrimaryEntity primaryEntity = this.resolver.resolveEntity(entity.toString());
+        PrimaryEntity primaryEntity = this.requestContext.get(entity, PrimaryEntity.class,
+            reference -> this.resolver.resolveEntity(reference.toString()));
         if (primaryEntity == null) {
             return null;
         }
@@ -22,6 +22,7 @@
 import org.phenotips.data.permissions.AccessLevel;
 import org.phenotips.data.permissions.EntityPermissionsManager;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.EntityType;
@@ -59,6 +60,10 @@ public class OwnerAccessAuthorizationModule implements AuthorizationModule
     @Named("owner")
     private AccessLevel ownerAccess;
 
+    /** Reuses the patient already loaded by the other access modules. */
+    @Inject
+    private AuthorizationRequestContext requestContext;
+
     @Override
     public int getPriority()
     {
@@ -74,7 +79,8 @@ public Boolean hasAccess(User user, Right access, EntityReference entity)
         }
 
         // This converts the document to a patient.
-        Patient patient = this.patientRepository.get(entity.toString());
+        Patient patient = this.requestContext.get(entity, Patient.class,
+            reference -> this.patientRepository.get(reference.toString()));
         if (patient == null) {
             return null;
         }
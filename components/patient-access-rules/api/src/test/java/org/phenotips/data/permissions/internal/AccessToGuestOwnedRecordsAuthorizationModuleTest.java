@@ -23,6 +23,8 @@
 import org.phenotips.data.permissions.Owner;
 import org.phenotips.entities.PrimaryEntityResolver;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
+import org.phenotips.security.authorization.AuthorizationRequestContextMocks;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.model.reference.DocumentReference;
@@ -76,6 +78,7 @@
     public void setupMocks() throws Exception
     {
         MockitoAnnotations.initMocks(this);
+        AuthorizationRequestContextMocks.computeEachTime(this.mocker.getInstance(AuthorizationRequestContext.class));
 
         this.resolver = this.mocker.getInstance(PrimaryEntityResolver.class);
         when(this.resolver.resolveEntity("xwiki:data.P01")).thenReturn(this.patient);
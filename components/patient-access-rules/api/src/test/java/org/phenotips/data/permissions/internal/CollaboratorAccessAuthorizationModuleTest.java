@@ -22,6 +22,8 @@
 import org.phenotips.data.permissions.EntityAccess;
 import org.phenotips.entities.PrimaryEntityResolver;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
+import org.phenotips.security.authorization.AuthorizationRequestContextMocks;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.model.reference.DocumentReference;
@@ -85,6 +87,7 @@
     public void setupMocks() throws ComponentLookupException
     {
         MockitoAnnotations.initMocks(this);
+        AuthorizationRequestContextMocks.computeEachTime(this.mocker.getInstance(AuthorizationRequestContext.class));
         this.helper = this.mocker.getInstance(EntityAccessManager.class);
 
         when(this.noAccess.getGrantedRight()).thenReturn(Right.ILLEGAL);
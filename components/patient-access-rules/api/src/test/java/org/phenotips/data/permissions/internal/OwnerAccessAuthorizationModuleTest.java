@@ -23,6 +23,8 @@
 import org.phenotips.data.permissions.EntityAccess;
 import org.phenotips.data.permissions.EntityPermissionsManager;
 import org.phenotips.security.authorization.AuthorizationModule;
+import org.phenotips.security.authorization.AuthorizationRequestContext;
+import org.phenotips.security.authorization.AuthorizationRequestContextMocks;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.model.reference.DocumentReference;
@@ -84,6 +86,7 @@
     public void setupMocks() throws Exception
     {
         MockitoAnnotations.initMocks(this);
+        AuthorizationRequestContextMocks.computeEachTime(this.mocker.getInstance(AuthorizationRequestContext.class));
 
         this.repo = this.mocker.getInstance(PatientRepository.class);
         when(this.repo.get("xwiki:data.P01")).thenReturn(this.patient);
@@ -23,7 +23,9 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import org.json.JSONObject;
 
@@ -92,6 +94,30 @@ PushServerSendPatientResponse sendPatient(Patient patient, Set<String> exportFie
         String groupName, String remoteGUID, String remoteServerIdentifier, String userName, String password,
         String user_token);
 
+    /**
+     * Submits the specified subset of patient data to the specified remote server, without waiting for the remote
+     * server to respond. The patient is serialized before this method returns, in the calling thread, while the
+     * request itself is sent by a bounded pool of worker threads. This allows pushing many patients, to many servers,
+     * in parallel. See {@link #sendPatient} for the meaning of the parameters and of the response.
+     *
+     * @param patient local patient to be pushed to the remove server
+     * @param exportFields patient fields to be pushed. All other fields will be omitted.
+     * @param patientState JSON containing different categories of patient state, such as granted consents
+     * @param groupName group name (optional, can be {@code null})
+     * @param remoteGUID the GUID of the remote patient to update (optional, can be {@code null})
+     * @param remoteServerIdentifier the {@code name} of one of the {@code PhenoTips.PushPatientServer} objects attached
+     *            to {@code XWiki.XWikiPreferences}, configured in the administration
+     * @param userName user name on the remote server
+     * @param password user password on the remote server. Ignored if user_token is not null.
+     * @param userToken passwordless-login token provided by the remote server on the last successful login (optional,
+     *            can be {@code null})
+     * @return the future server response; the response is {@code null} if no response was received from the server
+     * @since 1.4
+     */
+    Future<PushServerSendPatientResponse> sendPatientAsync(Patient patient, Set<String> exportFields,
+        JSONObject patientState, String groupName, String remoteGUID, String remoteServerIdentifier, String userName,
+        String password, String userToken);
+
     /**
      * Gets the remote patient ID and URL for viewing the remote patient.
      * <p>
@@ -113,4 +139,14 @@ PushServerSendPatientResponse sendPatient(Patient patient, Set<String> exportFie
      */
     PushServerGetPatientIDResponse getPatientURL(String remoteServerIdentifier, String remoteGUID,
         String userName, String password, String userToken);
+
+    /**
+     * Statistics about the requests sent to each remote server since startup: the number of {@code requests},
+     * {@code failures} and {@code retries}, {@code bytesSent} and {@code bytesReceived}, {@code totalLatencyMillis},
+     * {@code averageLatencyMillis} and {@code maxLatencyMillis}, and the throughput in {@code bytesSentPerSecond}.
+     *
+     * @return a map from remote server identifier to the statistics for that server
+     * @since 1.4
+     */
+    Map<String, Map<String, Long>> getStatistics();
 }
@@ -21,6 +21,7 @@
 import org.xwiki.component.annotation.Role;
 import org.xwiki.stability.Unstable;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -151,6 +152,29 @@ PushServerSendPatientResponse sendPatient(String patientID, String exportFieldLi
     PushServerSendPatientResponse sendPatient(String patientID, String exportFieldListJSON, String patientState,
         String groupName, String remoteGUID, String remoteServerIdentifier);
 
+    /**
+     * Pushes several patients to several remote servers at once, using the previously stored remote user names and
+     * login tokens to authenticate on each remote server. The requests are sent in parallel, reusing connections to
+     * the same server. Patients which were previously pushed to a server update the existing remote patient, using the
+     * remote GUID stored in the push history.
+     *
+     * @param patientIDs the local patients to be pushed
+     * @param exportFieldListJSON patient fields to be pushed, as a string representing a JSON array; when {@code null},
+     *            all available data fields will be pushed
+     * @param patientState a JSON encoded as a {@link String}, containing (meta) information about the state of the
+     *            patients' records
+     * @param groupName remote group name, must exist on all the target servers (optional, can be {@code null})
+     * @param remoteServerIdentifiers the target servers
+     * @return for each target server, the response received for each patient, in the requested order; a response is
+     *         {@code null} if no response was received from the server, equivalent to the "incorrect password"
+     *         response if there is no token stored for the server, and a failed action response if the patient cannot
+     *         be pushed by the current user
+     * @since 1.4
+     */
+    Map<String, Map<String, PushServerSendPatientResponse>> sendPatients(Collection<String> patientIDs,
+        String exportFieldListJSON, String patientState, String groupName,
+        Collection<String> remoteServerIdentifiers);
+
     /**
      * @param remoteServerIdentifier
      * @param remotePatientGUID
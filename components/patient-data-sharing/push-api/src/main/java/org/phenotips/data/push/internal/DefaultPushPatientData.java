@@ -28,14 +28,35 @@
 import org.phenotips.data.shareprotocol.ShareProtocol.Incompatibility;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.model.reference.DocumentReference;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -45,11 +66,19 @@
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Consts;
 import org.apache.http.NameValuePair;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -62,13 +91,21 @@
 
 /**
  * Default implementation for the {@link PushPatientData} component.
+ * <p>
+ * All requests go through a single pooled HTTP client which keeps connections to the remote servers alive, so that
+ * pushing many patients doesn't pay for a new TCP and TLS handshake each time. Asynchronous pushes are dispatched to a
+ * small bounded pool of worker threads; when the pool's queue is full, the caller sends the request itself, which keeps
+ * the number of prepared but not yet sent requests, and thus the memory used, bounded. Requests which could not have
+ * been processed by the remote server (refused connections, {@code 503} and {@code 429} responses) are retried with an
+ * exponential backoff.
+ * </p>
  *
  * @version $Id$
  * @since 1.0M11
  */
 @Component
 @Singleton
-public class DefaultPushPatientData implements PushPatientData
+public class DefaultPushPatientData implements PushPatientData, Disposable
 {
     /** Server configuration ID property name within the PushPatientServer class. */
     public static final String PUSH_SERVER_CONFIG_ID_PROPERTY_NAME = "name";
@@ -82,6 +119,12 @@ public class DefaultPushPatientData implements PushPatientData
     /** Server configuration Description property name within the PushPatientServer class. */
     public static final String PUSH_SERVER_CONFIG_DESC_PROPERTY_NAME = "description";
 
+    /**
+     * Server configuration property name within the PushPatientServer class, specifying whether request bodies should
+     * be gzip-compressed. Only enable for servers which accept compressed requests.
+     */
+    public static final String PUSH_SERVER_CONFIG_COMPRESS_PROPERTY_NAME = "compress_requests";
+
     /** Destination page. */
     private static final String PATIENT_DATA_SHARING_PAGE = "/bin/receivePatientData";
 
@@ -93,6 +136,35 @@ public class DefaultPushPatientData implements PushPatientData
 
     private static final String XWIKI_RAW_OUTPUT_VALUE = "plain";
 
+    /** The maximum number of pushes being sent at the same time. */
+    private static final int PARALLELISM = 8;
+
+    /** The maximum number of open connections to the same remote server. */
+    private static final int MAX_CONNECTIONS_PER_SERVER = 4;
+
+    /** The maximum number of prepared pushes waiting for a free worker. */
+    private static final int QUEUE_CAPACITY = 64;
+
+    /** How many times a request is sent before giving up. */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /** Response status codes which indicate that the request was not processed and can safely be sent again. */
+    private static final Set<Integer> RETRIABLE_STATUS_CODES = new HashSet<>(Arrays.asList(429, 503));
+
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    private static final int SOCKET_TIMEOUT = 120000;
+
+    /** The headers used instead of the form parameters for sending credentials in requests with a JSON body. */
+    private static final Map<String, String> CREDENTIAL_HEADERS = new HashMap<>();
+
+    static {
+        CREDENTIAL_HEADERS.put(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME, ShareProtocol.CLIENT_HEADER_NAME_USERNAME);
+        CREDENTIAL_HEADERS.put(ShareProtocol.CLIENT_POST_KEY_NAME_PASSWORD, ShareProtocol.CLIENT_HEADER_NAME_PASSWORD);
+        CREDENTIAL_HEADERS.put(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN,
+            ShareProtocol.CLIENT_HEADER_NAME_USER_TOKEN);
+    }
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -101,10 +173,44 @@ public class DefaultPushPatientData implements PushPatientData
     private Provider<XWikiContext> xcontextProvider;
 
     /** HTTP client used for communicating with the remote server. */
-    private final CloseableHttpClient client = HttpClients.createSystem();
+    private final CloseableHttpClient client = createClient();
 
     /** A cache of known protocol versions for various server */
-    private Map<String, String> protocolVersionsCache = new HashMap<>();
+    private Map<String, String> protocolVersionsCache = new ConcurrentHashMap<>();
+
+    /** Throughput and latency statistics for each remote server. */
+    private final Map<String, PushTargetStatistics> statistics = new ConcurrentHashMap<>();
+
+    /** The delay before the first retry, in milliseconds; doubled for each subsequent retry. */
+    private long retryBackoff = 500;
+
+    /** Runs asynchronous pushes, lazily created. */
+    private ExecutorService dispatcher;
+
+    private static CloseableHttpClient createClient()
+    {
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        connections.setMaxTotal(PARALLELISM * 2);
+        connections.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_SERVER);
+        // Connections kept alive may have been closed by the remote server in the meantime
+        connections.setValidateAfterInactivity(2000);
+
+        RequestConfig config = RequestConfig.custom()
+            .setConnectTimeout(CONNECT_TIMEOUT)
+            .setConnectionRequestTimeout(SOCKET_TIMEOUT)
+            .setSocketTimeout(SOCKET_TIMEOUT)
+            .build();
+
+        return HttpClients.custom()
+            .useSystemProperties()
+            .setConnectionManager(connections)
+            .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+            .setDefaultRequestConfig(config)
+            // Retries are handled explicitly, only for requests which are known not to have been processed
+            .disableAutomaticRetries()
+            .evictIdleConnections(1, TimeUnit.MINUTES)
+            .build();
+    }
 
     /**
      * Return the the URL of the specified remote PhenoTips instance.
@@ -146,6 +252,57 @@ private HttpPost generateRequest(String remoteServerIdentifier, List<NameValuePa
         return method;
     }
 
+    /**
+     * Builds a request with a gzip-compressed JSON body. The servlet container of the remote server can't decode such
+     * a body as a form, so the protocol parameters are sent in the query string, where the server can dispatch on the
+     * requested action, while the credentials are sent in headers, so that they don't end up in URLs and access logs.
+     * The compressed body is kept in memory so that its size is known and the request can be retried.
+     *
+     * @param remoteServerIdentifier the target server
+     * @param data the protocol parameters and credentials
+     * @param payload the JSON body to compress
+     * @return the request, or {@code null} if the target server isn't configured
+     * @throws IOException if compressing the body fails
+     */
+    private HttpPost generateCompressedRequest(String remoteServerIdentifier, List<NameValuePair> data,
+        JSONObject payload) throws IOException
+    {
+        String submitURL = getBaseURL(this.getPushServerConfiguration(remoteServerIdentifier));
+        if (submitURL == null) {
+            return null;
+        }
+
+        HttpPost method = new HttpPost();
+        List<NameValuePair> query = new LinkedList<>();
+        for (NameValuePair parameter : data) {
+            String header = CREDENTIAL_HEADERS.get(parameter.getName());
+            if (header == null) {
+                query.add(parameter);
+            } else if (parameter.getValue() != null) {
+                method.setHeader(header, URLEncoder.encode(parameter.getValue(), XWiki.DEFAULT_ENCODING));
+            }
+        }
+        method.setURI(URI.create(submitURL + '?' + URLEncodedUtils.format(query, Consts.UTF_8)));
+        this.logger.trace("POST URL: {}", method.getURI());
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(buffer), StandardCharsets.UTF_8)) {
+            payload.write(out);
+        }
+        ByteArrayEntity compressed = new ByteArrayEntity(buffer.toByteArray(), ContentType.APPLICATION_JSON);
+        compressed.setContentEncoding("gzip");
+        method.setEntity(compressed);
+
+        return method;
+    }
+
+    private boolean isCompressionEnabled(String remoteServerIdentifier)
+    {
+        BaseObject serverConfiguration = this.getPushServerConfiguration(remoteServerIdentifier);
+        return serverConfiguration != null
+            && serverConfiguration.getIntValue(PUSH_SERVER_CONFIG_COMPRESS_PROPERTY_NAME) == 1;
+    }
+
     private List<NameValuePair> generateRequestData(String actionName, String userName, String password,
         String userToken, String protocolVersion)
     {
@@ -183,6 +340,62 @@ private BaseObject getPushServerConfiguration(String serverName)
         }
     }
 
+    /**
+     * Sends a request to a remote server, retrying it if the server certainly didn't process it, and returns the
+     * response body.
+     *
+     * @param remoteServerIdentifier the target server, used for statistics
+     * @param method the request to send
+     * @param idempotent whether the request can also be retried when the connection was lost before a response was
+     *            received, in which case the server may or may not have processed it
+     * @return the body of the response
+     * @throws IOException if no response could be received
+     */
+    private String execute(String remoteServerIdentifier, HttpPost method, boolean idempotent) throws IOException
+    {
+        PushTargetStatistics stats = getTargetStatistics(remoteServerIdentifier);
+        long sent = method.getEntity() == null ? 0 : method.getEntity().getContentLength();
+        long backoff = this.retryBackoff;
+        for (int attempt = 1;; ++attempt) {
+            long start = System.nanoTime();
+            try (CloseableHttpResponse httpResponse = this.client.execute(method)) {
+                int returnCode = httpResponse.getStatusLine().getStatusCode();
+                this.logger.trace("HTTP return code: {}", returnCode);
+
+                String response = httpResponse.getEntity() == null ? StringUtils.EMPTY
+                    : IOUtils.toString(httpResponse.getEntity().getContent(), Consts.UTF_8);
+                stats.recordExchange(System.nanoTime() - start, sent, response.length(), returnCode < 500);
+                if (!RETRIABLE_STATUS_CODES.contains(returnCode) || attempt >= MAX_ATTEMPTS) {
+                    return response;
+                }
+                this.logger.debug("Server [{}] is busy, retrying", remoteServerIdentifier);
+            } catch (ConnectException | ConnectTimeoutException | NoHttpResponseException ex) {
+                stats.recordExchange(System.nanoTime() - start, 0, 0, false);
+                if (attempt >= MAX_ATTEMPTS || (ex instanceof NoHttpResponseException && !idempotent)) {
+                    throw ex;
+                }
+                this.logger.debug("Failed to contact server [{}], retrying: {}", remoteServerIdentifier,
+                    ex.getMessage());
+            } finally {
+                method.releaseConnection();
+            }
+            stats.recordRetry();
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry");
+            }
+            backoff *= 2;
+        }
+    }
+
+    private PushTargetStatistics getTargetStatistics(String remoteServerIdentifier)
+    {
+        return this.statistics.computeIfAbsent(String.valueOf(remoteServerIdentifier),
+            k -> new PushTargetStatistics());
+    }
+
     @Override
     public PushServerConfigurationResponse getRemoteConfiguration(String remoteServerIdentifier, String userName,
         String password, String userToken)
@@ -223,46 +436,35 @@ private PushServerConfigurationResponse sendRemoteConfigurationRequest(String re
     {
         this.logger.debug("===> Getting server configuration for: [{}]", remoteServerIdentifier);
 
-        HttpPost method = null;
-
         try {
-            method = generateRequest(remoteServerIdentifier,
+            HttpPost method = generateRequest(remoteServerIdentifier,
                 generateRequestData(ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_INFO,
                     userName, password, userToken, useProtocolVersion));
             if (method == null) {
                 return null;
             }
 
-            try (CloseableHttpResponse httpResponse = this.client.execute(method)) {
-                int returnCode = httpResponse.getStatusLine().getStatusCode();
-                this.logger.trace("GetConfig HTTP return code: {}", returnCode);
-
-                String response = IOUtils.toString(httpResponse.getEntity().getContent(), Consts.UTF_8);
+            String response = execute(remoteServerIdentifier, method, true);
 
-                this.logger.debug("===> Push server response: [{}]", response);
+            this.logger.debug("===> Push server response: [{}]", response);
 
-                // Can't be valid JSON with less than 2 characters: most likely empty response from an un-accepting
-                // server
-                if (response.length() < 2) {
-                    return null;
-                }
+            // Can't be valid JSON with less than 2 characters: most likely empty response from an un-accepting
+            // server
+            if (response.length() < 2) {
+                return null;
+            }
 
-                try {
-                    JSONObject responseJSON = new JSONObject(response);
+            try {
+                JSONObject responseJSON = new JSONObject(response);
 
-                    return new DefaultPushServerConfigurationResponse(responseJSON);
-                } catch (Exception ex) {
-                    this.logger.error("Received invalid JSON reply from remote server: {}...",
-                        response.substring(0, 50));
-                    return null;
-                }
+                return new DefaultPushServerConfigurationResponse(responseJSON);
+            } catch (Exception ex) {
+                this.logger.error("Received invalid JSON reply from remote server: {}...",
+                    StringUtils.left(response, 50));
+                return null;
             }
         } catch (Exception ex) {
             this.logger.error("Failed to login: {}", ex.getMessage(), ex);
-        } finally {
-            if (method != null) {
-                method.releaseConnection();
-            }
         }
         return null;
     }
@@ -273,80 +475,130 @@ public PushServerSendPatientResponse sendPatient(Patient patient, Set<String> ex
         String groupName, String remoteGUID, String remoteServerIdentifier, String userName, String password,
         String userToken)
     {
-        this.logger.info("Pushing data to server: [{}]", remoteServerIdentifier);
+        try {
+            HttpPost method = preparePush(patient, exportFields, patientState, groupName, remoteGUID,
+                remoteServerIdentifier, userName, password, userToken);
+            if (method == null) {
+                return null;
+            }
+            return exchangePush(remoteServerIdentifier, method);
+        } catch (Exception ex) {
+            this.logger.error("Failed to push patient: {}", ex.getMessage(), ex);
+        }
+        return null;
+    }
 
+    @Override
+    public Future<PushServerSendPatientResponse> sendPatientAsync(Patient patient, Set<String> exportFields,
+        JSONObject patientState, String groupName, String remoteGUID, String remoteServerIdentifier, String userName,
+        String password, String userToken)
+    {
+        // The request is prepared in the calling thread, since it needs the current request context
         HttpPost method = null;
-
         try {
-            String serverProtocolVersion = this.getProtocolVersionForPushingToServer(remoteServerIdentifier);
+            method = preparePush(patient, exportFields, patientState, groupName, remoteGUID,
+                remoteServerIdentifier, userName, password, userToken);
+        } catch (Exception ex) {
+            this.logger.error("Failed to push patient: {}", ex.getMessage(), ex);
+        }
+        if (method == null) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            List<NameValuePair> data =
-                generateRequestData(ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_PUSH, userName, password, userToken,
-                    serverProtocolVersion);
-            if (exportFields != null) {
-                // Version information is required in the JSON; when exportFields is null everything is included anyway
-                exportFields.add(VersionsController.getEnablingFieldName());
+        final HttpPost request = method;
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return exchangePush(remoteServerIdentifier, request);
+            } catch (Exception ex) {
+                this.logger.error("Failed to push patient: {}", ex.getMessage(), ex);
+                return null;
             }
+        }, getDispatcher());
+    }
+
+    /**
+     * Builds the request for pushing a patient. This must be called in a thread with access to the request context.
+     *
+     * @return the request, or {@code null} if the target server isn't configured
+     */
+    private HttpPost preparePush(Patient patient, Set<String> requestedFields, JSONObject patientState,
+        String groupName, String remoteGUID, String remoteServerIdentifier, String userName, String password,
+        String userToken) throws IOException
+    {
+        this.logger.info("Pushing data to server: [{}]", remoteServerIdentifier);
+
+        String serverProtocolVersion = this.getProtocolVersionForPushingToServer(remoteServerIdentifier);
+
+        List<NameValuePair> data =
+            generateRequestData(ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_PUSH, userName, password, userToken,
+                serverProtocolVersion);
 
-            // for compatibility with servers running older versions of PhenoTips:
-            //
-            // if the target server is known to support only old versions of push protocol, replace
-            // those fields which are not compatible with compatible alternatives (to trigger old serializers)
-            if (this.protocolVersionsCache.containsKey(remoteServerIdentifier)) {
-                if (ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.containsKey(serverProtocolVersion)) {
-                    this.logger.warn("Using old serializers for protocol version [{}] to push data to server [{}]",
-                        serverProtocolVersion, remoteServerIdentifier);
-                    List<ShareProtocol.Incompatibility> incompatibilitiesList =
-                        ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.get(serverProtocolVersion);
-                    for (Incompatibility incompat : incompatibilitiesList) {
-                        if (exportFields.contains(incompat.getCurrentFieldName())) {
-                            exportFields.remove(incompat.getCurrentFieldName());
-                            if (!StringUtils.isEmpty(incompat.getDeprecatedFieldName())) {
-                                exportFields.add(incompat.getDeprecatedFieldName());
-                            }
+        // The same set of fields may be used for pushing to several servers at the same time, work on a copy
+        Set<String> exportFields = requestedFields == null ? null : new HashSet<>(requestedFields);
+        if (exportFields != null) {
+            // Version information is required in the JSON; when exportFields is null everything is included anyway
+            exportFields.add(VersionsController.getEnablingFieldName());
+        }
+
+        // for compatibility with servers running older versions of PhenoTips:
+        //
+        // if the target server is known to support only old versions of push protocol, replace
+        // those fields which are not compatible with compatible alternatives (to trigger old serializers)
+        if (exportFields != null && this.protocolVersionsCache.containsKey(remoteServerIdentifier)) {
+            if (ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.containsKey(serverProtocolVersion)) {
+                this.logger.warn("Using old serializers for protocol version [{}] to push data to server [{}]",
+                    serverProtocolVersion, remoteServerIdentifier);
+                List<ShareProtocol.Incompatibility> incompatibilitiesList =
+                    ShareProtocol.INCOMPATIBILITIES_IN_OLD_PROTOCOL_VERSIONS.get(serverProtocolVersion);
+                for (Incompatibility incompat : incompatibilitiesList) {
+                    if (exportFields.contains(incompat.getCurrentFieldName())) {
+                        exportFields.remove(incompat.getCurrentFieldName());
+                        if (!StringUtils.isEmpty(incompat.getDeprecatedFieldName())) {
+                            exportFields.add(incompat.getDeprecatedFieldName());
                         }
                     }
                 }
             }
+        }
 
-            String patientJSON = patient.toJSON(exportFields).toString();
-            this.logger.debug("Sending patient JSON: [{}]", patientJSON);
-
-            data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON,
-                URLEncoder.encode(patientJSON, XWiki.DEFAULT_ENCODING)));
+        JSONObject patientData = patient.toJSON(exportFields);
+        this.logger.debug("Sending patient JSON: [{}]", patientData);
 
-            data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE,
-                URLEncoder.encode(patientState.toString(), XWiki.DEFAULT_ENCODING)));
+        if (groupName != null) {
+            data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME, groupName));
+        }
 
-            if (groupName != null) {
-                data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME, groupName));
-            }
-            if (remoteGUID != null) {
-                data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, remoteGUID));
-            }
+        if (isCompressionEnabled(remoteServerIdentifier)) {
+            JSONObject payload = new JSONObject();
+            payload.put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON, patientData);
+            payload.put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE, patientState);
+            payload.putOpt(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, remoteGUID);
+            return generateCompressedRequest(remoteServerIdentifier, data, payload);
+        }
 
-            method = generateRequest(remoteServerIdentifier, data);
-            if (method == null) {
-                return null;
-            }
-            try (CloseableHttpResponse httpResponse = this.client.execute(method)) {
-                int returnCode = httpResponse.getStatusLine().getStatusCode();
-                this.logger.trace("Push HTTP return code: {}", returnCode);
+        String patientJSON = patientData.toString();
+        data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON,
+            URLEncoder.encode(patientJSON, XWiki.DEFAULT_ENCODING)));
 
-                String response = IOUtils.toString(httpResponse.getEntity().getContent(), Consts.UTF_8);
-                this.logger.trace("RESPONSE FROM SERVER: {}", response);
-                JSONObject responseJSON = new JSONObject(response);
+        data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE,
+            URLEncoder.encode(patientState.toString(), XWiki.DEFAULT_ENCODING)));
 
-                return new DefaultPushServerSendPatientResponse(responseJSON);
-            }
-        } catch (Exception ex) {
-            this.logger.error("Failed to push patient: {}", ex.getMessage(), ex);
-        } finally {
-            if (method != null) {
-                method.releaseConnection();
-            }
+        if (remoteGUID != null) {
+            data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, remoteGUID));
         }
-        return null;
+
+        return generateRequest(remoteServerIdentifier, data);
+    }
+
+    private PushServerSendPatientResponse exchangePush(String remoteServerIdentifier, HttpPost method)
+        throws IOException
+    {
+        // Pushing without a GUID creates a new remote patient, so only retry when the server certainly didn't get it
+        String response = execute(remoteServerIdentifier, method, false);
+        this.logger.trace("RESPONSE FROM SERVER: {}", response);
+        JSONObject responseJSON = new JSONObject(response);
+
+        return new DefaultPushServerSendPatientResponse(responseJSON);
     }
 
     @Override
@@ -355,39 +607,65 @@ public PushServerGetPatientIDResponse getPatientURL(String remoteServerIdentifie
     {
         this.logger.debug("===> Contacting server: [{}]", remoteServerIdentifier);
 
-        HttpPost method = null;
-
         try {
             List<NameValuePair> data =
                 generateRequestData(ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_GETID, userName, password, userToken,
                     this.getProtocolVersionForPushingToServer(remoteServerIdentifier));
             data.add(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, remoteGUID));
 
-            method = generateRequest(remoteServerIdentifier, data);
+            HttpPost method = generateRequest(remoteServerIdentifier, data);
             if (method == null) {
                 return null;
             }
 
-            try (CloseableHttpResponse httpResponse = this.client.execute(method)) {
-                int returnCode = httpResponse.getStatusLine().getStatusCode();
-                this.logger.trace("Push HTTP return code: {}", returnCode);
-
-                String response = IOUtils.toString(httpResponse.getEntity().getContent(), Consts.UTF_8);
-                this.logger.trace("RESPONSE FROM SERVER: {}", response);
-                JSONObject responseJSON = new JSONObject(response);
+            String response = execute(remoteServerIdentifier, method, true);
+            this.logger.trace("RESPONSE FROM SERVER: {}", response);
+            JSONObject responseJSON = new JSONObject(response);
 
-                return new DefaultPushServerGetPatientIDResponse(responseJSON);
-            }
+            return new DefaultPushServerGetPatientIDResponse(responseJSON);
         } catch (Exception ex) {
             this.logger.error("Failed to get patient URL: {}", ex.getMessage(), ex);
-        } finally {
-            if (method != null) {
-                method.releaseConnection();
-            }
         }
         return null;
     }
 
+    @Override
+    public Map<String, Map<String, Long>> getStatistics()
+    {
+        Map<String, Map<String, Long>> result = new TreeMap<>();
+        for (Map.Entry<String, PushTargetStatistics> target : this.statistics.entrySet()) {
+            result.put(target.getKey(), target.getValue().toMap());
+        }
+        return result;
+    }
+
+    @Override
+    public void dispose()
+    {
+        synchronized (this) {
+            if (this.dispatcher != null) {
+                this.dispatcher.shutdownNow();
+            }
+        }
+        IOUtils.closeQuietly(this.client);
+    }
+
+    private synchronized ExecutorService getDispatcher()
+    {
+        if (this.dispatcher == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), r -> {
+                    Thread thread = new Thread(r, "Patient push " + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            this.dispatcher = executor;
+        }
+        return this.dispatcher;
+    }
+
     private String getProtocolVersionForPushingToServer(String remoteServerIdentifier)
     {
         return this.protocolVersionsCache.containsKey(remoteServerIdentifier)
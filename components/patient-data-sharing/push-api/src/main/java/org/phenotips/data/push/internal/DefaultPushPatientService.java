@@ -38,12 +38,16 @@
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.UserManager;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -351,6 +355,81 @@ public PushServerSendPatientResponse sendPatient(String patientID, String export
         return response;
     }
 
+    @Override
+    public Map<String, Map<String, PushServerSendPatientResponse>> sendPatients(Collection<String> patientIDs,
+        String exportFieldListJSON, String patientState, String groupName,
+        Collection<String> remoteServerIdentifiers)
+    {
+        Set<String> exportFields = parseJSONArrayIntoSet(exportFieldListJSON);
+        JSONObject patientStateJSON = this.parsePatientStateToJSON(patientState);
+
+        Map<String, RemoteLoginData> credentials = new LinkedHashMap<>();
+        Map<String, String> localIds = new LinkedHashMap<>();
+        Map<String, Map<String, PushServerSendPatientResponse>> result = new LinkedHashMap<>();
+        Map<String, Map<String, Future<PushServerSendPatientResponse>>> pending = new LinkedHashMap<>();
+        for (String server : remoteServerIdentifiers) {
+            RemoteLoginData storedData = getStoredData(server);
+            if (storedData != null && storedData.getRemoteUserName() != null && storedData.getLoginToken() != null) {
+                credentials.put(server, storedData);
+            }
+            result.put(server, new LinkedHashMap<String, PushServerSendPatientResponse>());
+            pending.put(server, new LinkedHashMap<String, Future<PushServerSendPatientResponse>>());
+        }
+
+        // Patients are serialized here, in the request thread, one at a time; iterating over the servers for each
+        // patient spreads the requests, which are sent in parallel, across all the target servers
+        for (String patientID : patientIDs) {
+            Patient patient = getPatientByID(patientID, "push");
+            if (patient != null) {
+                localIds.put(patientID, patient.getId());
+            }
+            for (String server : remoteServerIdentifiers) {
+                RemoteLoginData storedData = credentials.get(server);
+                if (patient == null) {
+                    result.get(server).put(patientID, new DefaultPushServerSendPatientResponse(
+                        DefaultPushServerResponse.generateActionFailedJSON()));
+                } else if (storedData == null) {
+                    result.get(server).put(patientID, new DefaultPushServerSendPatientResponse(
+                        DefaultPushServerResponse.generateIncorrectCredentialsJSON()));
+                } else {
+                    PatientPushedToInfo history = this.storageManager.getPatientPushInfo(patient.getId(), server);
+                    String remoteGUID = history == null ? null : history.getRemotePatientGUID();
+                    // Reserve the position of the patient in the response
+                    result.get(server).put(patientID, null);
+                    pending.get(server).put(patientID, this.internalService.sendPatientAsync(patient, exportFields,
+                        patientStateJSON, groupName, remoteGUID, server, storedData.getRemoteUserName(), null,
+                        storedData.getLoginToken()));
+                }
+            }
+        }
+
+        for (Map.Entry<String, Map<String, Future<PushServerSendPatientResponse>>> server : pending.entrySet()) {
+            for (Map.Entry<String, Future<PushServerSendPatientResponse>> push : server.getValue().entrySet()) {
+                PushServerSendPatientResponse response = waitForResponse(push.getValue());
+                result.get(server.getKey()).put(push.getKey(), response);
+                if (response != null && response.isSuccessful()) {
+                    this.storageManager.storePatientPushInfo(localIds.get(push.getKey()), server.getKey(),
+                        response.getRemotePatientGUID(), response.getRemotePatientID(),
+                        response.getRemotePatientURL());
+                }
+            }
+        }
+        return result;
+    }
+
+    private PushServerSendPatientResponse waitForResponse(Future<PushServerSendPatientResponse> future)
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        } catch (ExecutionException ex) {
+            this.logger.error("Failed to push patient: {}", ex.getMessage(), ex);
+        }
+        return null;
+    }
+
     @Override
     public String getRemoteUsername(String remoteServerIdentifier)
     {
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.push.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency counters for the requests sent to one remote server. Safe for concurrent use.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class PushTargetStatistics
+{
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private final LongAdder totalLatency = new LongAdder();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * Records one HTTP exchange with the remote server.
+     *
+     * @param latencyNanos how long the exchange took, in nanoseconds
+     * @param sent the number of bytes sent in the request body, as they were put on the wire
+     * @param received the number of characters received in the response body
+     * @param successful whether a response was received
+     */
+    void recordExchange(long latencyNanos, long sent, long received, boolean successful)
+    {
+        this.requests.increment();
+        if (!successful) {
+            this.failures.increment();
+        }
+        this.bytesSent.add(Math.max(sent, 0));
+        this.bytesReceived.add(Math.max(received, 0));
+        this.totalLatency.add(latencyNanos);
+        this.maxLatency.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    /** Records that a failed exchange is going to be retried. */
+    void recordRetry()
+    {
+        this.retries.increment();
+    }
+
+    /**
+     * @return a snapshot of the counters; latencies are in milliseconds, and throughput is in bytes sent per second of
+     *         time spent waiting for the remote server
+     */
+    Map<String, Long> toMap()
+    {
+        long count = this.requests.sum();
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(this.totalLatency.sum());
+        long sent = this.bytesSent.sum();
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("requests", count);
+        result.put("failures", this.failures.sum());
+        result.put("retries", this.retries.sum());
+        result.put("bytesSent", sent);
+        result.put("bytesReceived", this.bytesReceived.sum());
+        result.put("totalLatencyMillis", latencyMillis);
+        result.put("averageLatencyMillis", count == 0 ? 0 : latencyMillis / count);
+        result.put("maxLatencyMillis", TimeUnit.NANOSECONDS.toMillis(this.maxLatency.get()));
+        result.put("bytesSentPerSecond", latencyMillis == 0 ? 0 : sent * 1000 / latencyMillis);
+        return result;
+    }
+}
@@ -28,6 +28,7 @@
 import org.xwiki.script.service.ScriptService;
 import org.xwiki.stability.Unstable;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -110,6 +111,14 @@ public PushServerSendPatientResponse sendPatient(String patientID, String export
             remoteGUID, remoteServerIdentifier, remoteUserName, password);
     }
 
+    public Map<String, Map<String, PushServerSendPatientResponse>> sendPatients(Collection<String> patientIDs,
+        String exportFieldListJSON, String patientState, String groupName,
+        Collection<String> remoteServerIdentifiers)
+    {
+        return this.internalService.sendPatients(patientIDs, exportFieldListJSON, patientState, groupName,
+            remoteServerIdentifiers);
+    }
+
     public PushServerGetPatientIDResponse getPatientURL(String remoteServerIdentifier, String remotePatientGUID)
     {
         return this.internalService.getPatientURL(remoteServerIdentifier, remotePatientGUID);
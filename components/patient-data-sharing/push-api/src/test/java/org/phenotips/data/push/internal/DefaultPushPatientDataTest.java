@@ -18,7 +18,9 @@
 package org.phenotips.data.push.internal;
 
 import org.phenotips.Constants;
+import org.phenotips.data.Patient;
 import org.phenotips.data.push.PushPatientData;
+import org.phenotips.data.push.PushServerSendPatientResponse;
 import org.phenotips.data.shareprotocol.ShareProtocol;
 
 import org.xwiki.component.manager.ComponentLookupException;
@@ -27,10 +29,25 @@
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import javax.inject.Provider;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
@@ -41,6 +58,8 @@
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.message.BasicStatusLine;
+import org.json.JSONObject;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -57,6 +76,8 @@
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
 
 import static org.mockito.Mockito.when;
 
@@ -93,6 +114,31 @@
     @Mock
     private CloseableHttpResponse response;
 
+    @Mock
+    private Patient patient;
+
+    /** A local stub of a remote PhenoTips server receiving patients. */
+    private HttpServer receiver;
+
+    /** The status codes which the stub receiver should respond with, one for each request, then {@code 200}. */
+    private List<Integer> receiverStatusCodes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /** The decoded bodies of the requests received by the stub receiver. */
+    private List<String> receivedBodies = Collections.synchronizedList(new ArrayList<String>());
+
+    /** The query strings of the requests received by the stub receiver. */
+    private List<String> receivedQueries = Collections.synchronizedList(new ArrayList<String>());
+
+    /** The headers of the requests received by the stub receiver. */
+    private List<Headers> receivedHeaders = Collections.synchronizedList(new ArrayList<Headers>());
+
+    /** The client ports used by the requests received by the stub receiver, one for each distinct connection. */
+    private Set<Integer> receiverConnections = Collections.synchronizedSet(new HashSet<Integer>());
+
+    private AtomicInteger receivedCount = new AtomicInteger();
+
+    private ExecutorService receiverThreads = Executors.newFixedThreadPool(8);
+
     @Before
     public void setUp() throws ComponentLookupException, XWikiException, ClientProtocolException, IOException
     {
@@ -196,4 +242,136 @@ public void getRemoteConfigurationReturnsNullWhenServerConfiguredWithBlankBaseUR
             this.mocker.getComponentUnderTest().getRemoteConfiguration("RemoteServer1", "name", "pass", ""));
         Mockito.verify(this.client, Mockito.never()).execute(Matchers.any(HttpPost.class));
     }
+
+    @After
+    public void tearDown()
+    {
+        if (this.receiver != null) {
+            this.receiver.stop(0);
+        }
+        this.receiverThreads.shutdownNow();
+    }
+
+    @Test
+    public void parallelPushesToLocalReceiverReuseConnections() throws Exception
+    {
+        useLocalReceiver();
+        PushPatientData component = this.mocker.getComponentUnderTest();
+        List<Future<PushServerSendPatientResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            responses.add(component.sendPatientAsync(this.patient, null, new JSONObject(), null, null,
+                "RemoteServer1", "name", null, "token"));
+        }
+        for (Future<PushServerSendPatientResponse> response : responses) {
+            Assert.assertTrue(response.get().isSuccessful());
+        }
+        Assert.assertEquals(40, this.receivedCount.get());
+        // Connections are kept alive and reused, and at most 4 are open to the same server
+        Assert.assertTrue(this.receiverConnections.size() <= 4);
+
+        Map<String, Long> stats = component.getStatistics().get("RemoteServer1");
+        Assert.assertEquals(Long.valueOf(40), stats.get("requests"));
+        Assert.assertEquals(Long.valueOf(0), stats.get("failures"));
+        Assert.assertTrue(stats.get("bytesSent") > 0);
+        ((DefaultPushPatientData) component).dispose();
+    }
+
+    @Test
+    public void busyReceiverIsRetried() throws Exception
+    {
+        useLocalReceiver();
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "retryBackoff", 1L);
+        this.receiverStatusCodes.add(503);
+        this.receiverStatusCodes.add(429);
+        PushServerSendPatientResponse result = this.mocker.getComponentUnderTest().sendPatient(this.patient, null,
+            new JSONObject(), null, null, "RemoteServer1", "name", null, "token");
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertEquals(3, this.receivedCount.get());
+        Map<String, Long> stats = this.mocker.getComponentUnderTest().getStatistics().get("RemoteServer1");
+        Assert.assertEquals(Long.valueOf(3), stats.get("requests"));
+        Assert.assertEquals(Long.valueOf(2), stats.get("retries"));
+    }
+
+    @Test
+    public void requestsAreCompressedWhenConfigured() throws Exception
+    {
+        useLocalReceiver();
+        when(this.configObject.getIntValue("compress_requests")).thenReturn(1);
+        PushServerSendPatientResponse result = this.mocker.getComponentUnderTest().sendPatient(this.patient, null,
+            new JSONObject(), "group", "guid", "RemoteServer1", "name", "pass w?rd", null);
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertEquals(1, this.receivedBodies.size());
+
+        // The protocol parameters stay readable in the query string, so that the server can dispatch the request
+        List<NameValuePair> query = URLEncodedUtils.parse(this.receivedQueries.get(0), StandardCharsets.UTF_8);
+        Assert.assertTrue(query.contains(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_ACTION,
+            ShareProtocol.CLIENT_POST_ACTIONKEY_VALUE_PUSH)));
+        Assert.assertTrue(query.contains(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER,
+            ShareProtocol.CURRENT_PUSH_PROTOCOL_VERSION)));
+        Assert.assertTrue(query.contains(new BasicNameValuePair("xpage", "plain")));
+        Assert.assertTrue(query.contains(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME,
+            "group")));
+
+        // Credentials are never sent in the URL
+        Assert.assertFalse(this.receivedQueries.get(0).contains(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME + '='));
+        Assert.assertFalse(this.receivedQueries.get(0).contains("pass"));
+        Assert.assertEquals("name", this.receivedHeaders.get(0).getFirst(ShareProtocol.CLIENT_HEADER_NAME_USERNAME));
+        Assert.assertEquals("pass+w%3Frd",
+            this.receivedHeaders.get(0).getFirst(ShareProtocol.CLIENT_HEADER_NAME_PASSWORD));
+        Assert.assertNull(this.receivedHeaders.get(0).getFirst(ShareProtocol.CLIENT_HEADER_NAME_USER_TOKEN));
+        Assert.assertTrue(this.receivedHeaders.get(0).getFirst("Content-Type").startsWith("application/json"));
+
+        // Only the patient data is compressed
+        JSONObject body = new JSONObject(this.receivedBodies.get(0));
+        Assert.assertEquals("P0000001",
+            body.getJSONObject(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON).getString("id"));
+        Assert.assertEquals(0, body.getJSONObject(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE).length());
+        Assert.assertEquals("guid", body.getString(ShareProtocol.CLIENT_POST_KEY_NAME_GUID));
+    }
+
+    @Test
+    public void requestsAreNotCompressedByDefault() throws Exception
+    {
+        useLocalReceiver();
+        PushServerSendPatientResponse result = this.mocker.getComponentUnderTest().sendPatient(this.patient, null,
+            new JSONObject(), null, null, "RemoteServer1", "name", null, "token");
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertNull(this.receivedHeaders.get(0).getFirst("Content-Encoding"));
+        Assert.assertNull(this.receivedQueries.get(0));
+        List<NameValuePair> form = URLEncodedUtils.parse(this.receivedBodies.get(0), StandardCharsets.UTF_8);
+        Assert.assertTrue(form.contains(new BasicNameValuePair(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN,
+            "token")));
+        Assert.assertTrue(this.receivedBodies.get(0).contains(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON + '='));
+    }
+
+    private void useLocalReceiver() throws Exception
+    {
+        when(this.patient.toJSON(Matchers.<Set<String>>any())).thenReturn(new JSONObject().put("id", "P0000001"));
+
+        this.receiver = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.receiver.createContext("/bin/receivePatientData", exchange -> {
+            this.receivedCount.incrementAndGet();
+            this.receiverConnections.add(exchange.getRemoteAddress().getPort());
+            InputStream body = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                body = new GZIPInputStream(body);
+            }
+            this.receivedBodies.add(IOUtils.toString(body, StandardCharsets.UTF_8));
+            this.receivedQueries.add(exchange.getRequestURI().getRawQuery());
+            this.receivedHeaders.add(exchange.getRequestHeaders());
+            int status = this.receiverStatusCodes.isEmpty() ? 200 : this.receiverStatusCodes.remove(0);
+            byte[] response = (status == 200 ? "{\"success\":true}" : "").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        this.receiver.setExecutor(this.receiverThreads);
+        this.receiver.start();
+
+        when(this.configObject.getStringValue("url"))
+            .thenReturn("http://localhost:" + this.receiver.getAddress().getPort());
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "client",
+            ReflectionUtils.getFieldValue(new DefaultPushPatientData(), "client"));
+    }
 }
@@ -79,6 +79,10 @@
      * Requires a valid username and credentials to be supplied in the request, which are validated the same way
      * {@code getConfiguration()} does, and returns the same {@code JSONObject} in case of any problems.
      * <p>
+     * The patient data is either sent as form parameters, or as a JSON body, optionally gzip-compressed, in which case
+     * the credentials are read from the request headers, as described in
+     * {@link org.phenotips.data.shareprotocol.ShareProtocol}.
+     * <p>
      * If credentials are valid, checks if "remote_guid" parameter is supplied in the request:
      * <ol>
      * <li>if it is supplied, but updating existing patients is disabled on the server, returns a {@code JSONObject}
@@ -116,6 +120,31 @@
      */
     JSONObject receivePatient();
 
+    /**
+     * Receives many patients at once, each of which either updates an existing patient or creates a new patient.
+     * <p>
+     * The group and the protocol version are sent in the query string, and the credentials in the request headers,
+     * never in the URL. They are validated only once for the whole batch, the same way {@link #receivePatient()}
+     * does, returning the same {@code JSONObject} in case of any problems. The body of the request is a JSON array
+     * with one object for each patient, holding the {@code patient_json} object and the optional
+     * {@code patient_state} object and {@code patient_guid}, which have the same meaning as the parameters of
+     * {@link #receivePatient()}. The body may be gzip-compressed. It is parsed and imported incrementally, so that
+     * large batches don't need to fit in memory.
+     * <p>
+     * A failure to import one patient doesn't stop the import of the following patients. The response holds, in
+     * {@code bulk_results}, the response for each patient, in the order they were received, as
+     * {@link #receivePatient()} would have returned it, and in {@code bulk_imported} the number of successfully
+     * imported patients. If the body
+     * can't be parsed, or holds too many patients, {@code success} is {@code false}, {@code action_failed} is set along
+     * with either {@code malformed_bulk_data} or {@code bulk_too_large}, and {@code bulk_results} lists the patients
+     * processed so far.
+     *
+     * @return {@code JSONObject} with {@code success} set to {@code true} if the whole batch was read, and set to
+     *         {@code false} otherwise (see above for details)
+     * @since 1.4
+     */
+    JSONObject receivePatients();
+
     /**
      * Returns the URL of the patient object with the given GUID. Requires a valid username and credentials to be
      * supplied in the request, which are validated the same way {@code getConfiguration()} does, and returns the same
@@ -45,13 +45,24 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.URLDecoder;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -60,6 +71,7 @@
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.slf4j.Logger;
 
 import com.xpn.xwiki.XWiki;
@@ -94,6 +106,18 @@ public class DefaultReceivePatientData implements ReceivePatientData
 
     private final static String SERVER_CONFIG_USER_TOKEN_EXPIRE_PROPERTY_NAME = "user_token_life_in_days";
 
+    /** The number of patients from a bulk push which are parsed and looked up together before being imported. */
+    private static final int BULK_CHUNK_SIZE = 50;
+
+    /** The number of parsed chunks from a bulk push which may wait to be imported. */
+    private static final int BULK_CHUNKS_AHEAD = 2;
+
+    /** Marks the end of the parsed chunks of a bulk push. */
+    private static final List<JSONObject> END_OF_BULK = Collections.emptyList();
+
+    /** The maximum number of patients accepted in a bulk push. */
+    private static final int MAX_BULK_SIZE = 10000;
+
     /** used for secure user login token generation */
     private SecureRandom secureRandomGenerator = new SecureRandom();
 
@@ -453,114 +477,347 @@ public JSONObject receivePatient()
     {
         try {
             XWikiContext context = getXContext();
-            XWikiRequest request = context.getRequest();
+            XWikiRequest request = getRequest(context);
 
             this.logger.warn("Push patient request from remote [{}]", request.getRemoteAddr());
 
-            JSONObject loginError = validateLogin(request, context);
-            if (loginError != null) {
-                return loginError;
+            ImportSettings settings = prepareImport(request, context);
+            if (settings.error != null) {
+                return settings.error;
             }
 
-            String userName = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME);
-            String groupName = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME);
-            if (groupName != null && !isValidUserGroup(userName, groupName)) {
-                this.logger.warn("Incorrect group name provided by {}", request.getRemoteAddr());
-                return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_INCORRECTGROUP);
+            if (request instanceof JSONPushRequest) {
+                JSONObject entry = new JSONObject(JSONPushRequest.getBody(request));
+                String guid = entry.optString(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, null);
+                return importEntry(settings, entry,
+                    getPatientsByGUID(guid == null ? Collections.<String>emptySet() : Collections.singleton(guid)));
             }
 
-            String patientJSONRaw = context.getRequest().getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON);
+            String patientJSONRaw = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON);
             if (patientJSONRaw == null) {
                 this.logger.error("No patient data provided by {})", request.getRemoteAddr());
                 return generateFailedActionResponse();
             }
 
-            Set<String> consentIds = null;
             String patientStateRaw = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE);
-            if (patientStateRaw != null) {
-                consentIds = extractConsents(patientStateRaw);
-                // there should not be any consent updates if consents are not enabled
-                if (!consentIds.isEmpty() && !this.consentAuthorizer.consentsGloballyEnabled()) {
-                    // reject, as a non-malicious user would never arrive to this execution point
-                    return this.generateFailedActionResponse();
-                }
-            }
-
-            boolean requireConsents =
-                areConsentsRequired(request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER));
-            if (requireConsents) {
-                boolean consentAuthorized = this.consentAuthorizer.authorizeInteraction(consentIds);
-                if (!consentAuthorized) {
-                    this.logger.error("Rejecting patient data from {} - not all required consents have been given",
-                        request.getRemoteAddr());
-                    return this.generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MISSINGCONSENT);
-                }
-            }
+            Set<String> consentIds = patientStateRaw == null ? null
+                : extractConsents(this.patientStateToJson(patientStateRaw));
 
             String patientJSON = URLDecoder.decode(patientJSONRaw, XWiki.DEFAULT_ENCODING);
             this.logger.debug("Received patient JSON: [{}]", patientJSON);
 
-            Patient affectedPatient;
-
             // if GUID is present in the request attempt to update an existing patient
             // (or fail if GUID is invalid or the patient is not created/authored by the user)
             String guid = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_GUID);
-            User user = this.userManager.getUser(userName);
-            context.setUserReference(user.getProfileDocument());
+            Patient existingPatient = guid == null ? null : getPatientByGUID(guid);
 
-            if (guid != null) {
-                affectedPatient = getPatientByGUID(guid);
-                if (affectedPatient == null) {
-                    return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_INCORRECTGUID);
-                }
-                if (!userCanAccessPatient(userName, affectedPatient)) {
-                    return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_GUIDACCESSDENIED);
-                }
-                this.logger.warn("Loaded existing patient [{}] successfully", affectedPatient.getId());
-            } else {
+            return importPatient(settings, new JSONObject(patientJSON), consentIds, guid, existingPatient);
+        } catch (Exception ex) {
+            this.logger.error("Error importing patient [{}] {}", ex.getMessage(), ex);
+            return this.generateFailedActionResponse();
+        }
+    }
+
+    @Override
+    public JSONObject receivePatients()
+    {
+        JSONArray results = new JSONArray();
+        int imported = 0;
+        try {
+            XWikiContext context = getXContext();
+            XWikiRequest request = getRequest(context);
+
+            this.logger.warn("Bulk push request from remote [{}]", request.getRemoteAddr());
+
+            // Credentials are only accepted in the request headers, the query string may end up in access logs
+            if (!(request instanceof JSONPushRequest)) {
+                this.logger.error("Bulk push from [{}] is not a JSON request", request.getRemoteAddr());
+                return bulkResponse(
+                    generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MALFORMEDBULK), results, 0);
+            }
+
+            ImportSettings settings = prepareImport(request, context);
+            if (settings.error != null) {
+                return settings.error;
+            }
 
-                affectedPatient = this.patientRepository.create(user.getProfileDocument());
-                if (affectedPatient == null) {
-                    this.logger.error("Can not create new patient");
-                    return generateFailedActionResponse();
+            // The body is parsed by a separate thread while the previous chunks are imported, and only a few
+            // chunks are parsed ahead, so that memory use doesn't depend on the size of the batch
+            JSONTokener tokener = JSONPushRequest.getBody(request);
+            BlockingQueue<List<JSONObject>> chunks = new ArrayBlockingQueue<>(BULK_CHUNKS_AHEAD);
+            ExecutorService parser = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Bulk push parser");
+                thread.setDaemon(true);
+                return thread;
+            });
+            boolean complete;
+            try {
+                Future<Boolean> parsing = parser.submit(() -> parseBulk(tokener, chunks));
+                for (List<JSONObject> chunk = chunks.take(); chunk != END_OF_BULK; chunk = chunks.take()) {
+                    imported += importChunk(settings, chunk, results);
                 }
+                complete = getParsingResult(parsing);
+            } finally {
+                parser.shutdownNow();
+            }
+            if (!complete) {
+                return bulkResponse(generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_BULKTOOLARGE),
+                    results, imported);
+            }
+            this.logger.warn("Imported [{}] of [{}] patients pushed by [{}]", imported, results.length(),
+                request.getRemoteAddr());
+            return bulkResponse(generateSuccessfulResponse(), results, imported);
+        } catch (JSONException ex) {
+            this.logger.error("Malformed bulk push after [{}] patients: {}", results.length(), ex.getMessage());
+            return bulkResponse(generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MALFORMEDBULK),
+                results, imported);
+        } catch (Exception ex) {
+            this.logger.error("Error importing patients [{}] {}", ex.getMessage(), ex);
+            return bulkResponse(this.generateFailedActionResponse(), results, imported);
+        }
+    }
 
-                XWikiDocument doc = affectedPatient.getXDocument();
-                doc.setAuthorReference(user.getProfileDocument());
-
-                // assign ownership to group (if provided) or to the user, and set access rights
-                if (groupName != null) {
-                    Group group = this.groupManager.getGroup(groupName);
-                    this.permissionManager.getEntityAccess(affectedPatient).setOwner(group.getReference());
-                    this.permissionManager.getEntityAccess(affectedPatient).addCollaborator(user.getProfileDocument(),
-                        this.permissionManager.resolveAccessLevel("manage"));
-                } else {
-                    this.permissionManager.getEntityAccess(affectedPatient).setOwner(user.getProfileDocument());
+    /**
+     * Parses the patients of a bulk push, handing them over in chunks to the thread importing them. Patients parsed
+     * before a syntax error are discarded, but the patients before the size limit are imported.
+     *
+     * @param tokener the request body
+     * @param chunks where parsed chunks are added, followed by {@link #END_OF_BULK} once parsing stops
+     * @return {@code true} if the whole batch was parsed, {@code false} if it holds too many patients
+     * @throws InterruptedException if the import was aborted while waiting for chunks to be consumed
+     */
+    private boolean parseBulk(JSONTokener tokener, BlockingQueue<List<JSONObject>> chunks)
+        throws InterruptedException
+    {
+        try {
+            if (tokener.nextClean() != '[') {
+                throw tokener.syntaxError("Expected a JSON array");
+            }
+            List<JSONObject> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+            boolean done = tokener.nextClean() == ']';
+            if (!done) {
+                tokener.back();
+            }
+            int parsed = 0;
+            while (!done) {
+                if (parsed >= MAX_BULK_SIZE) {
+                    if (!chunk.isEmpty()) {
+                        chunks.put(chunk);
+                    }
+                    return false;
+                }
+                chunk.add(new JSONObject(tokener));
+                ++parsed;
+                char separator = tokener.nextClean();
+                done = separator == ']';
+                if (!done && separator != ',') {
+                    throw tokener.syntaxError("Expected a ',' or ']'");
                 }
+                if (done || chunk.size() == BULK_CHUNK_SIZE) {
+                    chunks.put(chunk);
+                    chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+                }
+            }
+            return true;
+        } finally {
+            chunks.put(END_OF_BULK);
+        }
+    }
 
-                this.logger.warn("Created new patient successfully");
+    private boolean getParsingResult(Future<Boolean> parsing) throws Exception
+    {
+        try {
+            return parsing.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof JSONException) {
+                throw (JSONException) ex.getCause();
             }
+            throw ex;
+        }
+    }
 
-            JSONObject patientData = new JSONObject(patientJSON);
-            affectedPatient.updateFromJSON(patientData);
+    private JSONObject bulkResponse(JSONObject response, JSONArray results, int imported)
+    {
+        response.put(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_RESULTS, results);
+        response.put(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_IMPORTED, imported);
+        return response;
+    }
 
-            if (consentIds != null) {
-                this.consentManager.setPatientConsents(affectedPatient, consentIds);
+    /**
+     * Imports a chunk of patients from a bulk push. Existing patients referenced by the chunk are looked up with a
+     * single query.
+     *
+     * @param settings the settings shared by all the patients in the batch
+     * @param chunk the received patients
+     * @param results where the status of each patient is appended
+     * @return the number of successfully imported patients
+     */
+    private int importChunk(ImportSettings settings, List<JSONObject> chunk, JSONArray results)
+    {
+        Set<String> guids = new HashSet<>();
+        for (JSONObject entry : chunk) {
+            String guid = entry.optString(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, null);
+            if (guid != null) {
+                guids.add(guid);
             }
+        }
+        Map<String, Patient> existingPatients = getPatientsByGUID(guids);
 
-            this.logger.warn("Updated patient successfully");
+        int imported = 0;
+        for (JSONObject entry : chunk) {
+            JSONObject result;
+            try {
+                result = importEntry(settings, entry, existingPatients);
+            } catch (Exception ex) {
+                this.logger.error("Error importing patient [{}] {}", ex.getMessage(), ex);
+                result = generateFailedActionResponse();
+            }
+            if (result.optBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS)) {
+                ++imported;
+            }
+            results.put(result);
+        }
+        return imported;
+    }
 
-            // store separately from the patient object
-            BaseObject serverConfig = getSourceServerConfiguration(request.getRemoteAddr(), context);
-            String sourceServerName = getRemoteServerName(serverConfig, request);
-            String patientGUID = getPatientGUID(affectedPatient);
-            this.storageManager.storePatientSourceServerInfo(patientGUID, sourceServerName);
+    /**
+     * Imports one patient sent as a JSON object, either as an element of a bulk push, or as the body of a single push.
+     *
+     * @param settings the settings of the push request
+     * @param entry the received JSON object, holding the patient data, and optionally its state and the GUID of the
+     *            patient to update
+     * @param existingPatients the patients with the GUIDs referenced by the request, indexed by their GUID
+     * @return the response for this patient
+     */
+    private JSONObject importEntry(ImportSettings settings, JSONObject entry, Map<String, Patient> existingPatients)
+        throws Exception
+    {
+        JSONObject patientData = entry.optJSONObject(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON);
+        if (patientData == null) {
+            return generateFailedActionResponse();
+        }
+        String guid = entry.optString(ShareProtocol.CLIENT_POST_KEY_NAME_GUID, null);
+        Set<String> consentIds = entry.has(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE)
+            ? extractConsents(entry.optJSONObject(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE))
+            : null;
+        return importPatient(settings, patientData, consentIds, guid,
+            guid == null ? null : existingPatients.get(guid));
+    }
 
-            return generateSuccessfulResponseWithPatientIDs(affectedPatient, context);
-        } catch (Exception ex) {
-            this.logger.error("Error importing patient [{}] {}", ex.getMessage(), ex);
+    /**
+     * Validates the credentials, group and consent requirements of a push request, and resolves everything which is
+     * shared by all the patients pushed in the same request.
+     *
+     * @param request the push request
+     * @param context the current request context
+     * @return the import settings, holding an error response if the request was not valid
+     */
+    private ImportSettings prepareImport(XWikiRequest request, XWikiContext context)
+    {
+        ImportSettings settings = new ImportSettings();
+        settings.context = context;
+
+        JSONObject loginError = validateLogin(request, context);
+        if (loginError != null) {
+            settings.error = loginError;
+            return settings;
+        }
+
+        settings.userName = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME);
+        String groupName = request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_GROUPNAME);
+        if (groupName != null && !isValidUserGroup(settings.userName, groupName)) {
+            this.logger.warn("Incorrect group name provided by {}", request.getRemoteAddr());
+            settings.error = generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_INCORRECTGROUP);
+            return settings;
+        }
+        settings.groupName = groupName;
+        settings.requireConsents =
+            areConsentsRequired(request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER));
+
+        BaseObject serverConfig = getSourceServerConfiguration(request.getRemoteAddr(), context);
+        settings.sourceServerName = getRemoteServerName(serverConfig, request);
+        settings.remoteAddress = request.getRemoteAddr();
+        return settings;
+    }
+
+    /**
+     * Creates or updates one received patient.
+     *
+     * @param settings the settings of the push request
+     * @param patientData the received patient data
+     * @param consentIds the consents granted in the received patient state, {@code null} if no state was received
+     * @param guid the GUID of the patient to update, {@code null} if a new patient should be created
+     * @param existingPatient the patient with the requested GUID, if any
+     * @return the response for this patient
+     */
+    private JSONObject importPatient(ImportSettings settings, JSONObject patientData, Set<String> consentIds,
+        String guid, Patient existingPatient) throws Exception
+    {
+        // there should not be any consent updates if consents are not enabled
+        if (consentIds != null && !consentIds.isEmpty() && !settings.consentsGloballyEnabled()) {
+            // reject, as a non-malicious user would never arrive to this execution point
             return this.generateFailedActionResponse();
         }
+
+        if (settings.requireConsents) {
+            boolean consentAuthorized = this.consentAuthorizer.authorizeInteraction(consentIds);
+            if (!consentAuthorized) {
+                this.logger.error("Rejecting patient data from {} - not all required consents have been given",
+                    settings.remoteAddress);
+                return this.generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MISSINGCONSENT);
+            }
+        }
+
+        Patient affectedPatient;
+        User user = settings.getUser();
+        settings.context.setUserReference(user.getProfileDocument());
+
+        if (guid != null) {
+            affectedPatient = existingPatient;
+            if (affectedPatient == null) {
+                return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_INCORRECTGUID);
+            }
+            if (!userCanAccessPatient(settings.userName, affectedPatient)) {
+                return generateFailedActionResponse(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_GUIDACCESSDENIED);
+            }
+            this.logger.warn("Loaded existing patient [{}] successfully", affectedPatient.getId());
+        } else {
+
+            affectedPatient = this.patientRepository.create(user.getProfileDocument());
+            if (affectedPatient == null) {
+                this.logger.error("Can not create new patient");
+                return generateFailedActionResponse();
+            }
+
+            XWikiDocument doc = affectedPatient.getXDocument();
+            doc.setAuthorReference(user.getProfileDocument());
+
+            // assign ownership to group (if provided) or to the user, and set access rights
+            if (settings.groupName != null) {
+                Group group = settings.getGroup();
+                this.permissionManager.getEntityAccess(affectedPatient).setOwner(group.getReference());
+                this.permissionManager.getEntityAccess(affectedPatient).addCollaborator(user.getProfileDocument(),
+                    this.permissionManager.resolveAccessLevel("manage"));
+            } else {
+                this.permissionManager.getEntityAccess(affectedPatient).setOwner(user.getProfileDocument());
+            }
+
+            this.logger.warn("Created new patient successfully");
+        }
+
+        affectedPatient.updateFromJSON(patientData);
+
+        if (consentIds != null) {
+            this.consentManager.setPatientConsents(affectedPatient, consentIds);
+        }
+
+        this.logger.warn("Updated patient successfully");
+
+        // store separately from the patient object
+        String patientGUID = getPatientGUID(affectedPatient);
+        this.storageManager.storePatientSourceServerInfo(patientGUID, settings.sourceServerName);
+
+        return generateSuccessfulResponseWithPatientIDs(affectedPatient, settings.context);
     }
 
     private boolean areConsentsRequired(String clientProtocolVersion)
@@ -578,14 +835,13 @@ private boolean areConsentsRequired(String clientProtocolVersion)
     }
 
     /**
-     * Exctacts the list of granted consents from a request
+     * Exctacts the list of granted consents from a patient state.
      *
-     * @param rawPatientState patient state JSON string directly from the {@link Request} object
+     * @param patientState patient state JSON, may be {@code null}
      */
-    private Set<String> extractConsents(String rawPatientState)
+    private Set<String> extractConsents(JSONObject patientState)
     {
         Set<String> consents = new HashSet<>();
-        JSONObject patientState = this.patientStateToJson(rawPatientState);
         if (patientState != null) {
             try {
                 JSONArray consentsJson =
@@ -624,7 +880,7 @@ public JSONObject getConfiguration()
     {
         try {
             XWikiContext context = getXContext();
-            XWikiRequest request = context.getRequest();
+            XWikiRequest request = getRequest(context);
 
             this.logger.warn("Get config request from remote [{}]", request.getRemoteAddr());
 
@@ -647,6 +903,7 @@ public JSONObject getConfiguration()
             response.put(ShareProtocol.SERVER_JSON_GETINFO_KEY_NAME_USERGROUPS, groupList);
             response.put(ShareProtocol.SERVER_JSON_GETINFO_KEY_NAME_ACCEPTEDFIELDS, acceptedFields);
             response.put(ShareProtocol.SERVER_JSON_GETINFO_KEY_NAME_UPDATESENABLED, true);
+            response.put(ShareProtocol.SERVER_JSON_GETINFO_KEY_NAME_BULKSUPPORTED, true);
             response.put(ShareProtocol.SERVER_JSON_GETINFO_KEY_NAME_CONSENTS,
                 this.consentManager.toJSON(this.consentManager.getSystemConsents()));
 
@@ -680,7 +937,7 @@ public JSONObject getPatientURL()
     {
         try {
             XWikiContext context = getXContext();
-            XWikiRequest request = context.getRequest();
+            XWikiRequest request = getRequest(context);
 
             this.logger.warn("Get patient URL request from remote [{}]", request.getRemoteAddr());
 
@@ -735,6 +992,36 @@ protected Patient getPatientByGUID(String guid)
         return null;
     }
 
+    /**
+     * Looks up several patients by their GUID with a single query.
+     *
+     * @param guids the GUIDs to look for
+     * @return the patients found, indexed by their GUID
+     */
+    protected Map<String, Patient> getPatientsByGUID(Set<String> guids)
+    {
+        if (guids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Patient> result = new HashMap<>();
+        try {
+            Query q = this.queryManager.createQuery(
+                "select doc.fullName, o.guid from Document doc, doc.object(PhenoTips.PatientClass) as o"
+                    + " where o.guid in (:guids)",
+                Query.XWQL).bindValue("guids", new ArrayList<>(guids));
+
+            for (Object[] row : q.<Object[]>execute()) {
+                DocumentReference reference = this.stringResolver.resolve(String.valueOf(row[0]),
+                    Patient.DEFAULT_DATA_SPACE);
+                result.put(String.valueOf(row[1]),
+                    new PhenoTipsPatient((XWikiDocument) this.bridge.getDocument(reference)));
+            }
+        } catch (Exception ex) {
+            this.logger.warn("Failed to get patients by GUID: [{}] {}", ex.getMessage(), ex);
+        }
+        return result;
+    }
+
     private boolean userCanAccessPatient(String userName, Patient patient)
     {
         try {
@@ -764,6 +1051,22 @@ private XWikiContext getXContext()
         return (XWikiContext) this.execution.getContext().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
     }
 
+    /**
+     * Returns the current request, reading the credentials from the request headers if the data is sent as a JSON body.
+     *
+     * @param context the current request context
+     * @return the current request
+     * @throws IOException if decoding the credentials fails
+     */
+    private XWikiRequest getRequest(XWikiContext context) throws IOException
+    {
+        XWikiRequest request = context.getRequest();
+        if (JSONPushRequest.isJSONRequest(request)) {
+            return new JSONPushRequest(request);
+        }
+        return request;
+    }
+
     /**
      * Get the source push server configuration given its IP.
      *
@@ -819,4 +1122,55 @@ private BaseObject getMainConfiguration(XWikiContext context)
             return null;
         }
     }
+
+    /**
+     * Everything about a push request which is shared by all the patients pushed in the same request.
+     */
+    private final class ImportSettings
+    {
+        /** The response to send back instead of importing patients, if the request is not valid. */
+        private JSONObject error;
+
+        private XWikiContext context;
+
+        private String userName;
+
+        private User user;
+
+        private String groupName;
+
+        private Group group;
+
+        private boolean requireConsents;
+
+        private Boolean consentsEnabled;
+
+        private String sourceServerName;
+
+        private String remoteAddress;
+
+        User getUser()
+        {
+            if (this.user == null) {
+                this.user = DefaultReceivePatientData.this.userManager.getUser(this.userName);
+            }
+            return this.user;
+        }
+
+        Group getGroup()
+        {
+            if (this.group == null) {
+                this.group = DefaultReceivePatientData.this.groupManager.getGroup(this.groupName);
+            }
+            return this.group;
+        }
+
+        boolean consentsGloballyEnabled()
+        {
+            if (this.consentsEnabled == null) {
+                this.consentsEnabled = DefaultReceivePatientData.this.consentAuthorizer.consentsGloballyEnabled();
+            }
+            return this.consentsEnabled;
+        }
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.receive.internal;
+
+import org.phenotips.data.shareprotocol.ShareProtocol;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONTokener;
+
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiServletRequest;
+
+/**
+ * A push request whose data is sent as a JSON body, optionally gzip-compressed, instead of a form. The servlet
+ * container only decodes the query string of such requests, which holds the protocol parameters, while the credentials
+ * are sent in dedicated headers, so that they never appear in URLs and access logs. Credentials sent in the query
+ * string are ignored.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class JSONPushRequest extends XWikiServletRequest
+{
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    /** The headers used instead of the form parameters for sending credentials. */
+    private static final Map<String, String> CREDENTIAL_HEADERS = new HashMap<>();
+
+    static {
+        CREDENTIAL_HEADERS.put(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME, ShareProtocol.CLIENT_HEADER_NAME_USERNAME);
+        CREDENTIAL_HEADERS.put(ShareProtocol.CLIENT_POST_KEY_NAME_PASSWORD, ShareProtocol.CLIENT_HEADER_NAME_PASSWORD);
+        CREDENTIAL_HEADERS.put(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN,
+            ShareProtocol.CLIENT_HEADER_NAME_USER_TOKEN);
+    }
+
+    private final Map<String, String> credentials = new HashMap<>();
+
+    /**
+     * Decodes the credentials sent in the headers of a request.
+     *
+     * @param request the request to wrap, must be a {@link #isJSONRequest JSON request}
+     * @throws IOException if the credentials are not correctly encoded
+     */
+    JSONPushRequest(XWikiRequest request) throws IOException
+    {
+        super(request);
+        for (Map.Entry<String, String> header : CREDENTIAL_HEADERS.entrySet()) {
+            String value = request.getHeader(header.getValue());
+            if (value != null) {
+                this.credentials.put(header.getKey(), URLDecoder.decode(value, "UTF-8"));
+            }
+        }
+    }
+
+    /**
+     * Checks if the data of a request is sent as a JSON body.
+     *
+     * @param request the request to check
+     * @return {@code true} if the body is JSON, compressed or not
+     */
+    static boolean isJSONRequest(HttpServletRequest request)
+    {
+        return StringUtils.startsWithIgnoreCase(request.getContentType(), JSON_CONTENT_TYPE);
+    }
+
+    /**
+     * Returns a tokener reading the body of a request, decompressed if needed.
+     *
+     * @param request the request to read
+     * @return a tokener over the JSON body
+     * @throws IOException if reading the body fails
+     */
+    static JSONTokener getBody(HttpServletRequest request) throws IOException
+    {
+        InputStream body = request.getInputStream();
+        if ("gzip".equalsIgnoreCase(StringUtils.trim(request.getHeader("Content-Encoding")))) {
+            body = new GZIPInputStream(body);
+        }
+        return new JSONTokener(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String getParameter(String name)
+    {
+        if (CREDENTIAL_HEADERS.containsKey(name)) {
+            return this.credentials.get(name);
+        }
+        return super.getParameter(name);
+    }
+
+    @Override
+    public String[] getParameterValues(String name)
+    {
+        if (CREDENTIAL_HEADERS.containsKey(name)) {
+            String value = this.credentials.get(name);
+            return value == null ? null : new String[] { value };
+        }
+        return super.getParameterValues(name);
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap()
+    {
+        Map<String, String[]> result = new LinkedHashMap<>(super.getParameterMap());
+        result.keySet().removeAll(CREDENTIAL_HEADERS.keySet());
+        for (Map.Entry<String, String> credential : this.credentials.entrySet()) {
+            result.put(credential.getKey(), new String[] { credential.getValue() });
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames()
+    {
+        return Collections.enumeration(getParameterMap().keySet());
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.receive.internal;
+
+import org.phenotips.consents.ConsentManager;
+import org.phenotips.consents.internal.ConsentAuthorizer;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.permissions.EntityAccess;
+import org.phenotips.data.permissions.EntityPermissionsManager;
+import org.phenotips.data.receive.ReceivePatientData;
+import org.phenotips.data.securestorage.LocalLoginToken;
+import org.phenotips.data.securestorage.SecureStorageManager;
+import org.phenotips.data.shareprotocol.ShareProtocol;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletInputStream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.web.XWikiRequest;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultReceivePatientData} component.
+ *
+ * @version $Id$
+ */
+public class DefaultReceivePatientDataTest
+{
+    private static final String REMOTE_ADDRESS = "127.0.0.1";
+
+    private static final DocumentReference USER_PROFILE = new DocumentReference("xwiki", "XWiki", "user");
+
+    @Rule
+    public final MockitoComponentMockingRule<ReceivePatientData> mocker =
+        new MockitoComponentMockingRule<>(DefaultReceivePatientData.class);
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private XWikiRequest request;
+
+    @Mock
+    private XWiki xwiki;
+
+    @Mock
+    private XWikiDocument preferences;
+
+    @Mock
+    private User user;
+
+    @Mock
+    private Patient patient;
+
+    @Mock
+    private XWikiDocument patientDocument;
+
+    @Mock
+    private BaseObject patientObject;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        Execution execution = this.mocker.getInstance(Execution.class);
+        ExecutionContext executionContext = Mockito.mock(ExecutionContext.class);
+        when(execution.getContext()).thenReturn(executionContext);
+        when(executionContext.getProperty(XWikiContext.EXECUTIONCONTEXT_KEY)).thenReturn(this.context);
+        when(this.context.getRequest()).thenReturn(this.request);
+        when(this.context.getWiki()).thenReturn(this.xwiki);
+        when(this.context.getWikiId()).thenReturn("xwiki");
+        when(this.xwiki.getDocument(new DocumentReference("xwiki", "XWiki", "XWikiPreferences"), this.context))
+            .thenReturn(this.preferences);
+
+        when(this.request.getRemoteAddr()).thenReturn(REMOTE_ADDRESS);
+        when(this.request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_PROTOCOLVER))
+            .thenReturn(ShareProtocol.CURRENT_PUSH_PROTOCOL_VERSION);
+
+        SecureStorageManager storage = this.mocker.getInstance(SecureStorageManager.class);
+        when(storage.getLocalLoginToken("user", REMOTE_ADDRESS))
+            .thenReturn(new LocalLoginToken("user", REMOTE_ADDRESS, "token"));
+
+        UserManager users = this.mocker.getInstance(UserManager.class);
+        when(users.getUser("user")).thenReturn(this.user);
+        when(this.user.getProfileDocument()).thenReturn(USER_PROFILE);
+
+        ConsentAuthorizer consents = this.mocker.getInstance(ConsentAuthorizer.class);
+        when(consents.consentsGloballyEnabled()).thenReturn(true);
+        when(consents.authorizeInteraction(Matchers.anySetOf(String.class))).thenReturn(true);
+
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        when(repository.create(USER_PROFILE)).thenReturn(this.patient);
+        when(this.patient.getId()).thenReturn("P0000001");
+        when(this.patient.getXDocument()).thenReturn(this.patientDocument);
+        when(this.patientDocument.getXObject(Matchers.any(EntityReference.class))).thenReturn(this.patientObject);
+        when(this.patientObject.getGuid()).thenReturn("guid1");
+
+        EntityPermissionsManager permissions = this.mocker.getInstance(EntityPermissionsManager.class);
+        when(permissions.getEntityAccess(this.patient)).thenReturn(Mockito.mock(EntityAccess.class));
+    }
+
+    @Test
+    public void compressedPushIsDecoded() throws Exception
+    {
+        JSONObject entry = new JSONObject();
+        entry.put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON, new JSONObject().put("external_id", "E1"));
+        entry.put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE,
+            new JSONObject().put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTSTATE_CONSENTS, new JSONArray().put("c1")));
+        sendJSON(entry.toString(), true);
+        sendCredentials("user", "token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatient();
+
+        Assert.assertTrue(response.toString(), response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertEquals("guid1", response.getString(ShareProtocol.SERVER_JSON_PUSH_KEY_NAME_PATIENTGUID));
+        ArgumentCaptor<JSONObject> data = ArgumentCaptor.forClass(JSONObject.class);
+        Mockito.verify(this.patient).updateFromJSON(data.capture());
+        Assert.assertEquals("E1", data.getValue().getString("external_id"));
+        ConsentManager consentManager = this.mocker.getInstance(ConsentManager.class);
+        Mockito.verify(consentManager).setPatientConsents(this.patient, Collections.singleton("c1"));
+    }
+
+    @Test
+    public void credentialsInTheQueryStringAreIgnoredForJSONPushes() throws Exception
+    {
+        JSONObject entry = new JSONObject();
+        entry.put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON, new JSONObject());
+        sendJSON(entry.toString(), true);
+        when(this.request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME)).thenReturn("user");
+        when(this.request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN)).thenReturn("token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatient();
+
+        Assert.assertFalse(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertTrue(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_LOGINFAILED));
+        Mockito.verify(this.patient, Mockito.never()).updateFromJSON(Matchers.any(JSONObject.class));
+    }
+
+    @Test
+    public void compressedBulkPushIsDecoded() throws Exception
+    {
+        JSONArray entries = new JSONArray();
+        entries.put(new JSONObject().put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON,
+            new JSONObject().put("external_id", "E1")));
+        entries.put(new JSONObject().put("unknown", "no patient data"));
+        entries.put(new JSONObject().put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON,
+            new JSONObject().put("external_id", "E3")));
+        sendJSON(entries.toString(), true);
+        sendCredentials("user", "token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatients();
+
+        Assert.assertTrue(response.toString(), response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertEquals(2, response.getInt(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_IMPORTED));
+        JSONArray results = response.getJSONArray(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_RESULTS);
+        Assert.assertEquals(3, results.length());
+        Assert.assertTrue(results.getJSONObject(0).getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertFalse(results.getJSONObject(1).getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertTrue(results.getJSONObject(2).getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        ArgumentCaptor<JSONObject> data = ArgumentCaptor.forClass(JSONObject.class);
+        Mockito.verify(this.patient, Mockito.times(2)).updateFromJSON(data.capture());
+        Assert.assertEquals("E1", data.getAllValues().get(0).getString("external_id"));
+        Assert.assertEquals("E3", data.getAllValues().get(1).getString("external_id"));
+    }
+
+    @Test
+    public void uncompressedBulkPushIsDecoded() throws Exception
+    {
+        sendJSON("[{\"" + ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON + "\":{}}]", false);
+        sendCredentials("user", "token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatients();
+
+        Assert.assertTrue(response.toString(), response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertEquals(1, response.getInt(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_IMPORTED));
+    }
+
+    @Test
+    public void patientsFromSeveralChunksAreImportedInOrder() throws Exception
+    {
+        JSONArray entries = new JSONArray();
+        for (int i = 0; i < 240; ++i) {
+            entries.put(new JSONObject().put(ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON,
+                new JSONObject().put("external_id", "E" + i)));
+        }
+        sendJSON(entries.toString(), true);
+        sendCredentials("user", "token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatients();
+
+        Assert.assertTrue(response.toString(), response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertEquals(240, response.getInt(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_IMPORTED));
+        Assert.assertEquals(240, response.getJSONArray(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_RESULTS).length());
+        ArgumentCaptor<JSONObject> data = ArgumentCaptor.forClass(JSONObject.class);
+        Mockito.verify(this.patient, Mockito.times(240)).updateFromJSON(data.capture());
+        for (int i = 0; i < 240; ++i) {
+            Assert.assertEquals("E" + i, data.getAllValues().get(i).getString("external_id"));
+        }
+    }
+
+    @Test
+    public void malformedBulkPushReportsThePatientsProcessedSoFar() throws Exception
+    {
+        sendJSON("[{\"" + ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON + "\":{}}, not JSON", true);
+        sendCredentials("user", "token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatients();
+
+        Assert.assertFalse(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertTrue(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MALFORMEDBULK));
+        Assert.assertEquals(0, response.getJSONArray(ShareProtocol.SERVER_JSON_BULK_KEY_NAME_RESULTS).length());
+        Mockito.verify(this.patient, Mockito.never()).updateFromJSON(Matchers.any(JSONObject.class));
+    }
+
+    @Test
+    public void bulkPushWithCredentialsInTheQueryStringIsRejected() throws Exception
+    {
+        sendJSON("[{\"" + ShareProtocol.CLIENT_POST_KEY_NAME_PATIENTJSON + "\":{}}]", true);
+        when(this.request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME)).thenReturn("user");
+        when(this.request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN)).thenReturn("token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatients();
+
+        Assert.assertFalse(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertTrue(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_LOGINFAILED));
+        Mockito.verify(this.patient, Mockito.never()).updateFromJSON(Matchers.any(JSONObject.class));
+    }
+
+    @Test
+    public void bulkPushSentAsFormIsRejected() throws Exception
+    {
+        when(this.request.getContentType()).thenReturn("application/x-www-form-urlencoded");
+        when(this.request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USERNAME)).thenReturn("user");
+        when(this.request.getParameter(ShareProtocol.CLIENT_POST_KEY_NAME_USER_TOKEN)).thenReturn("token");
+
+        JSONObject response = this.mocker.getComponentUnderTest().receivePatients();
+
+        Assert.assertFalse(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_SUCCESS));
+        Assert.assertTrue(response.getBoolean(ShareProtocol.SERVER_JSON_KEY_NAME_ERROR_MALFORMEDBULK));
+        Mockito.verify(this.patient, Mockito.never()).updateFromJSON(Matchers.any(JSONObject.class));
+    }
+
+    private void sendCredentials(String userName, String token)
+    {
+        when(this.request.getHeader(ShareProtocol.CLIENT_HEADER_NAME_USERNAME)).thenReturn(userName);
+        when(this.request.getHeader(ShareProtocol.CLIENT_HEADER_NAME_USER_TOKEN)).thenReturn(token);
+    }
+
+    private void sendJSON(String body, boolean compressed) throws IOException
+    {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        if (compressed) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(buffer)) {
+                out.write(content);
+            }
+            content = buffer.toByteArray();
+            when(this.request.getHeader("Content-Encoding")).thenReturn("gzip");
+        }
+        final InputStream in = new ByteArrayInputStream(content);
+        when(this.request.getContentType()).thenReturn("application/json; charset=UTF-8");
+        when(this.request.getInputStream()).thenReturn(new ServletInputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                return in.read();
+            }
+        });
+    }
+}
@@ -93,6 +93,7 @@
     public static final String CLIENT_POST_ACTIONKEY_VALUE_STATE = "get_patient_state";  // get the state of a patient record
     public static final String CLIENT_POST_ACTIONKEY_VALUE_PUSH  = "push";             // push the patient
     public static final String CLIENT_POST_ACTIONKEY_VALUE_GETID = "get_patient_id";   // get remote ID and remote URL of the patient object with the given GUID
+    public static final String CLIENT_POST_ACTIONKEY_VALUE_PUSH_BULK = "push_bulk";    // push many patients at once, only if the server reports bulk_push_supported
 
     // for the PUSH action the following fields must be set:
     public static final String CLIENT_POST_KEY_NAME_PATIENTJSON  = "patient_json";
@@ -105,6 +106,21 @@
     public static final String CLIENT_POST_KEY_NAME_PATIENTSTATE_CONSENTS = "consents"; // key name which can exist within the patient state JSON
     // for the GETURL action the String CLIENT_POST_KEY_NAME_GUID key must be set
 
+    // a PUSH may instead send its data as a JSON body, with the "application/json" content type, which allows
+    // compressing it (Content-Encoding: gzip); then the PROTOCOLVER, ACTION and optional GROUPNAME are sent in the
+    // query string, the credentials are sent URL-encoded in the following headers, never in the query string,
+    // and the body is a JSON object with a PATIENTJSON JSON object, an optional PATIENTSTATE JSON object and an
+    // optional GUID string:
+    public static final String CLIENT_HEADER_NAME_USERNAME   = "X-PhenoTips-Push-Username";
+    public static final String CLIENT_HEADER_NAME_PASSWORD   = "X-PhenoTips-Push-Password";
+    public static final String CLIENT_HEADER_NAME_USER_TOKEN = "X-PhenoTips-Push-User-Token";
+
+    // the PUSH_BULK action is always sent with a JSON body, like a PUSH with a JSON body: the PROTOCOLVER, ACTION
+    // and optional GROUPNAME are sent in the query string, the credentials in the CLIENT_HEADER_NAME_* headers, and
+    // the request body (with the "application/json" content type, optionally gzip-compressed) is a JSON array
+    // of objects, one for each patient, each with a PATIENTJSON JSON object and optional PATIENTSTATE JSON object
+    // and GUID string
+
     //=========================================================================
 
     // every server response JSON will include the following fields:
@@ -132,12 +148,15 @@
     public static final String SERVER_JSON_KEY_NAME_ERROR_GUIDACCESSDENIED = "guid_access_denied";     // GUID provided in the request represents a document which is not
                                                                                                        //  authored or owned by the user provided
     public static final String SERVER_JSON_KEY_NAME_ERROR_MISSINGCONSENT   = "missing_consent";        // if any of the required consents are missing
+    public static final String SERVER_JSON_KEY_NAME_ERROR_MALFORMEDBULK    = "malformed_bulk_data";    // the body of a PUSH_BULK request is not a JSON array of objects
+    public static final String SERVER_JSON_KEY_NAME_ERROR_BULKTOOLARGE     = "bulk_too_large";         // a PUSH_BULK request contains too many patients
 
     // response to a GETINFO action request will include the following fields (iff successful):
     public static final String SERVER_JSON_GETINFO_KEY_NAME_USERGROUPS     = "user_groups";
     public static final String SERVER_JSON_GETINFO_KEY_NAME_ACCEPTEDFIELDS = "accepted_fields";
     public static final String SERVER_JSON_GETINFO_KEY_NAME_UPDATESENABLED = "updates_enabled";
     public static final String SERVER_JSON_GETINFO_KEY_NAME_CONSENTS       = "consents";
+    public static final String SERVER_JSON_GETINFO_KEY_NAME_BULKSUPPORTED  = "bulk_push_supported";
     // (optional) ...and optionally this as well, if enabled on the server:
     public static final String SERVER_JSON_GETINFO_KEY_NAME_USERTOKEN      = "user_login_token";
 
@@ -147,6 +166,11 @@
     public static final String SERVER_JSON_PUSH_KEY_NAME_PATIENTGUID = "patient_guid";    // GUID of the patient object on the remote server which can be used to link to the
                                                                                           //  patient from the remote server and/or to update the patient later
 
+    // response to a PUSH_BULK action request will include the following fields (iff the batch could be read, even
+    // partially; failures of individual patients do not fail the whole batch):
+    public static final String SERVER_JSON_BULK_KEY_NAME_RESULTS  = "bulk_results";   // array with the PUSH response for each patient, in the order they were sent
+    public static final String SERVER_JSON_BULK_KEY_NAME_IMPORTED = "bulk_imported";  // number of successfully imported patients
+
     /**
      * Helper class describing an incompatibility between serializers in two different PhenoTips versions.
      *
@@ -97,19 +97,19 @@ public Patient loadPatientFromDocument(DocumentModelBridge document)
     }
 
     @Override
-    public synchronized Patient createNewPatient()
+    public Patient createNewPatient()
     {
         return create();
     }
 
     @Override
-    public synchronized Patient createNewPatient(DocumentReference creator)
+    public Patient createNewPatient(DocumentReference creator)
     {
         return create(creator);
     }
 
     @Override
-    public synchronized Patient create(DocumentReference creator)
+    public Patient create(DocumentReference creator)
     {
         try {
             XWikiContext context = this.xcontextProvider.get();
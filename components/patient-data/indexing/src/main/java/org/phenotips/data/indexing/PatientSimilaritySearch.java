@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Finds the patients whose observed phenotypes are most similar to those of a given patient, or to a list of
+ * phenotypes. The similarity between two terms is the information content of their most informative common ancestor in
+ * the HPO (Resnik similarity), where the information content of a term is computed from the number of patients
+ * annotated with that term or one of its descendants. The similarity between two patients is the best-match average
+ * of the similarities between their terms.
+ * <p>
+ * Only the patients that the current user can view are returned.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Role
+public interface PatientSimilaritySearch
+{
+    /**
+     * Finds the patients most similar to a patient. The patient itself is not included in the results.
+     *
+     * @param patient the reference patient, whose observed phenotypes are compared with those of the other patients
+     * @param limit the maximum number of patients to return
+     * @return the identifiers of the most similar patients, as returned by {@link Patient#getId()}, mapped to their
+     *         similarity score, most similar first; an empty map if the patient has no phenotypes
+     */
+    Map<String, Double> findSimilarPatients(Patient patient, int limit);
+
+    /**
+     * Finds the patients most similar to a list of phenotypes.
+     *
+     * @param phenotypes the HPO identifiers of the phenotypes to look for, e.g. {@code HP:0001250}
+     * @param limit the maximum number of patients to return
+     * @return the identifiers of the most similar patients, as returned by {@link Patient#getId()}, mapped to their
+     *         similarity score, most similar first; an empty map if no phenotypes are given
+     */
+    Map<String, Double> findSimilarPatients(Collection<String> phenotypes, int limit);
+}
@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing;
+
+import org.phenotips.data.Patient;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * An in-memory index of the phenotypes of all the patients, answering cohort queries such as "patients with
+ * {@code HP:0001250} or any of its descendants, but without {@code HP:0001263}" without going through the Solr patient
+ * index. Terms are expanded to their ancestors using the HPO, so that a query for a term also matches patients
+ * annotated with a more specific term. Only observed (present) phenotypes are indexed.
+ * <p>
+ * The results are not filtered by access rights, the caller is responsible for checking that the current user may see
+ * the matching patients.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Role
+public interface PhenotypeCohortIndex
+{
+    /**
+     * Finds the patients that have all the required phenotypes, and none of the excluded phenotypes. A patient has a
+     * phenotype if it was annotated with that term or with one of its descendants.
+     *
+     * @param requiredTerms the HPO identifiers of the required phenotypes, e.g. {@code HP:0001250}; if empty, all the
+     *            indexed patients are considered
+     * @param excludedTerms the HPO identifiers of the phenotypes that the patients must not have, may be empty
+     * @return the serialized references to the matching patient documents, as stored in the {@code document} field of
+     *         the Solr patient index; an empty set if no patients match, or if the index could not be built
+     */
+    Set<String> search(Collection<String> requiredTerms, Collection<String> excludedTerms);
+
+    /**
+     * Counts the patients that have all the required phenotypes, and none of the excluded phenotypes. This is
+     * equivalent to, but much faster than, {@code search(requiredTerms, excludedTerms).size()}.
+     *
+     * @param requiredTerms the HPO identifiers of the required phenotypes; if empty, all the indexed patients are
+     *            considered
+     * @param excludedTerms the HPO identifiers of the phenotypes that the patients must not have, may be empty
+     * @return the number of matching patients
+     */
+    int count(Collection<String> requiredTerms, Collection<String> excludedTerms);
+
+    /**
+     * Add (or update) a patient to the index.
+     *
+     * @param patient the patient to index
+     */
+    void index(Patient patient);
+
+    /**
+     * Delete from the index a patient.
+     *
+     * @param patient the patient to delete
+     */
+    void delete(Patient patient);
+
+    /**
+     * Discards the index, which will be rebuilt from the Solr patient index and the HPO the next time it is queried.
+     */
+    void reindex();
+}
@@ -0,0 +1,470 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilaritySearch;
+import org.phenotips.data.permissions.AccessLevel;
+import org.phenotips.data.permissions.EntityPermissionsManager;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Default implementation of the {@link PatientSimilaritySearch}, using the phenotypes of all the patients kept in
+ * memory by the shared {@link PatientPhenotypeIndex}, which is also used by the cohort index and kept up to date as
+ * patients are modified. The information content of the terms is computed from the number of patients having each term
+ * or one of its descendants, and is recomputed before the first search following a modification of the index.
+ * <p>
+ * For each term of a query, a row with the information content of the most informative common ancestor of that term and
+ * each of the indexed terms is computed, and cached until the next modification. Scoring a patient is then only a
+ * matter of looking up the best matches in these rows. Patients that don't share any ancestor at least as informative
+ * as {@link #PRUNING_INFORMATION_CONTENT} with the query can't score higher than that, so they are only scanned when
+ * there aren't enough better matches. Large scans are split between several threads.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultPatientSimilaritySearch implements PatientSimilaritySearch, Disposable
+{
+    /** The minimum information content, in bits, of the shared ancestors of the patients scanned first. */
+    private static final double PRUNING_INFORMATION_CONTENT = 2;
+
+    /** How many more patients than requested are ranked, to make up for the ones that the user can't see. */
+    private static final int OVERFETCH = 4;
+
+    /** Scans of fewer candidates are done in the calling thread. */
+    private static final int PARALLEL_THRESHOLD = 5000;
+
+    private static final int MAX_SCAN_THREADS = 4;
+
+    private static final int MICA_CACHE_SIZE = 256;
+
+    private static final String[] NO_TERMS = new String[0];
+
+    /** Orders the best matches first, breaking ties by patient number so that rankings are stable. */
+    private static final Comparator<ScoredPatient> BEST_FIRST =
+        Comparator.comparingDouble((ScoredPatient p) -> -p.score).thenComparingInt(p -> p.number);
+
+    /** The in-memory index of the patient phenotypes. */
+    @Inject
+    private PatientPhenotypeIndex store;
+
+    @Inject
+    private EntityReferenceSerializer<String> referenceSerializer;
+
+    /** Provides access to the matching patients, for checking that they can be seen by the current user. */
+    @Inject
+    private PatientRepository patientRepository;
+
+    @Inject
+    private EntityPermissionsManager permissions;
+
+    @Inject
+    @Named("view")
+    private AccessLevel viewAccess;
+
+    private ExecutorService executor;
+
+    /** Cached rows of the most informative common ancestor table, for each query term. */
+    private final Map<String, float[]> micaRows = new ConcurrentHashMap<>();
+
+    /** For each term number, its information content in bits, guarded by {@code this}. */
+    private double[] informationContent = new double[0];
+
+    /** The version of the index from which the information content was computed, guarded by {@code this}. */
+    private long informationContentVersion = -1;
+
+    @Override
+    public Map<String, Double> findSimilarPatients(Patient patient, int limit)
+    {
+        if (patient == null) {
+            return Collections.emptyMap();
+        }
+        Set<String> phenotypes = new LinkedHashSet<>();
+        for (Feature phenotype : patient.getFeatures()) {
+            if (phenotype.isPresent() && StringUtils.isNotBlank(phenotype.getId())) {
+                phenotypes.add(phenotype.getId());
+            }
+        }
+        return search(phenotypes, limit, this.referenceSerializer.serialize(patient.getDocumentReference()));
+    }
+
+    @Override
+    public Map<String, Double> findSimilarPatients(Collection<String> phenotypes, int limit)
+    {
+        return search(phenotypes, limit, null);
+    }
+
+    @Override
+    public synchronized void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+
+    private Map<String, Double> search(Collection<String> phenotypes, int limit, String excludedDocument)
+    {
+        if (phenotypes == null || limit <= 0) {
+            return Collections.emptyMap();
+        }
+        List<String[]> query = new ArrayList<>();
+        for (String termId : new LinkedHashSet<>(phenotypes)) {
+            String[] ancestors = StringUtils.isBlank(termId) ? NO_TERMS : this.store.getAncestorsAndSelf(termId);
+            if (ancestors.length > 0) {
+                query.add(ancestors);
+            }
+        }
+        if (query.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Double> result = new LinkedHashMap<>();
+        Set<String> checked = new HashSet<>();
+        checked.add(excludedDocument);
+        int size = (int) Math.min(limit * (long) OVERFETCH, Integer.MAX_VALUE);
+        boolean prune = true;
+        while (result.size() < limit) {
+            Ranking ranking = rank(query, size, prune);
+            boolean belowThreshold = false;
+            for (Map.Entry<String, Double> match : ranking.matches.entrySet()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (ranking.pruned && match.getValue() < PRUNING_INFORMATION_CONTENT) {
+                    // Patients that weren't scanned could be better matches
+                    belowThreshold = true;
+                    break;
+                }
+                if (checked.add(match.getKey())) {
+                    String id = getAccessiblePatientId(match.getKey());
+                    if (id != null) {
+                        result.put(id, match.getValue());
+                    }
+                }
+            }
+            if (result.size() >= limit) {
+                break;
+            } else if (belowThreshold || ranking.pruned && ranking.complete) {
+                prune = false;
+            } else if (ranking.complete) {
+                break;
+            } else {
+                size = (int) Math.min(size * (long) OVERFETCH, Integer.MAX_VALUE);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ranks the indexed patients by their similarity to a query.
+     *
+     * @param query the ancestors of each query term
+     * @param size the maximum number of patients to rank
+     * @param prune whether to only scan the patients sharing informative terms with the query
+     * @return the best matches
+     */
+    private Ranking rank(List<String[]> query, int size, boolean prune)
+    {
+        return this.store.read(() -> {
+            double[] ic = getInformationContent();
+            BitSet indexedPatients = this.store.getIndexedPatients();
+            float[][] rows = new float[query.size()][];
+            BitSet candidates = prune ? new BitSet() : indexedPatients;
+            for (int i = 0; i < rows.length; ++i) {
+                rows[i] = getMicaRow(query.get(i), ic);
+                if (prune) {
+                    addInformativeMatches(query.get(i), ic, candidates);
+                }
+            }
+            boolean pruned = prune && candidates.cardinality() < indexedPatients.cardinality();
+            List<ScoredPatient> best = scan(rows, candidates, size);
+            Map<String, Double> matches = new LinkedHashMap<>();
+            for (ScoredPatient patient : best) {
+                matches.put(this.store.getReference(patient.number), patient.score);
+            }
+            return new Ranking(matches, best.size() < size, pruned);
+        });
+    }
+
+    private List<ScoredPatient> scan(float[][] rows, BitSet candidates, int size)
+    {
+        int end = candidates.length();
+        if (candidates.cardinality() < PARALLEL_THRESHOLD) {
+            return scan(rows, candidates, 0, end, size);
+        }
+
+        int chunks = MAX_SCAN_THREADS * 4;
+        int chunkSize = (end + chunks - 1) / chunks;
+        List<Future<List<ScoredPatient>>> parts = new ArrayList<>(chunks);
+        for (int start = 0; start < end; start += chunkSize) {
+            final int from = start;
+            parts.add(getExecutor().submit(() -> scan(rows, candidates, from, Math.min(from + chunkSize, end), size)));
+        }
+        List<ScoredPatient> result = new ArrayList<>();
+        try {
+            for (Future<List<ScoredPatient>> part : parts) {
+                result.addAll(part.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching for similar patients", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Failed to search for similar patients", ex.getCause());
+        } finally {
+            for (Future<List<ScoredPatient>> part : parts) {
+                part.cancel(true);
+            }
+        }
+        Collections.sort(result, BEST_FIRST);
+        return result.size() > size ? result.subList(0, size) : result;
+    }
+
+    /**
+     * Scores a range of patients, keeping only the best ones.
+     *
+     * @param rows the most informative common ancestor table rows of the query terms
+     * @param candidates the patients to score
+     * @param from the first patient number to score, inclusive
+     * @param to the last patient number to score, exclusive
+     * @param size the maximum number of patients to return
+     * @return the best scoring patients, best first, excluding the ones that share no information with the query
+     */
+    private List<ScoredPatient> scan(float[][] rows, BitSet candidates, int from, int to, int size)
+    {
+        // The worst of the best matches is at the head of the queue
+        PriorityQueue<ScoredPatient> best = new PriorityQueue<>(BEST_FIRST.reversed());
+        for (int i = candidates.nextSetBit(from); i >= 0 && i < to; i = candidates.nextSetBit(i + 1)) {
+            double score = score(rows, this.store.getTerms(i));
+            if (score <= 0) {
+                continue;
+            }
+            ScoredPatient patient = new ScoredPatient(i, score);
+            if (best.size() < size) {
+                best.add(patient);
+            } else if (BEST_FIRST.compare(patient, best.peek()) < 0) {
+                best.poll();
+                best.add(patient);
+            }
+        }
+        List<ScoredPatient> result = new ArrayList<>(best);
+        Collections.sort(result, BEST_FIRST);
+        return result;
+    }
+
+    /**
+     * Computes the best-match average similarity between the query and a patient.
+     *
+     * @param rows the most informative common ancestor table rows of the query terms
+     * @param terms the numbers of the patient's terms
+     * @return the similarity score, {@code 0} if the patient has no terms
+     */
+    private static double score(float[][] rows, int[] terms)
+    {
+        if (terms.length == 0) {
+            return 0;
+        }
+        double queryMatches = 0;
+        for (float[] row : rows) {
+            float best = 0;
+            for (int term : terms) {
+                best = Math.max(best, row[term]);
+            }
+            queryMatches += best;
+        }
+        double patientMatches = 0;
+        for (int term : terms) {
+            float best = 0;
+            for (float[] row : rows) {
+                best = Math.max(best, row[term]);
+            }
+            patientMatches += best;
+        }
+        return (queryMatches / rows.length + patientMatches / terms.length) / 2;
+    }
+
+    /**
+     * Computes, for each term number, the information content of the most informative common ancestor of a query term
+     * and that term. Must be called while reading the index.
+     *
+     * @param ancestors the ancestors of the query term, the term itself first
+     * @param ic the information content of the terms
+     * @return the table row for the query term
+     */
+    private float[] getMicaRow(String[] ancestors, double[] ic)
+    {
+        float[] row = this.micaRows.get(ancestors[0]);
+        if (row != null) {
+            return row;
+        }
+        BitSet common = new BitSet();
+        for (String ancestor : ancestors) {
+            Integer number = this.store.getTermNumber(ancestor);
+            if (number != null) {
+                common.set(number);
+            }
+        }
+        row = new float[this.store.getTermCount()];
+        for (int i = 0; i < row.length; ++i) {
+            int[] termAncestorNumbers = this.store.getAncestors(i);
+            if (termAncestorNumbers == null) {
+                continue;
+            }
+            double best = 0;
+            for (int ancestor : termAncestorNumbers) {
+                if (common.get(ancestor)) {
+                    best = Math.max(best, ic[ancestor]);
+                }
+            }
+            row[i] = (float) best;
+        }
+        if (this.micaRows.size() >= MICA_CACHE_SIZE) {
+            this.micaRows.clear();
+        }
+        this.micaRows.put(ancestors[0], row);
+        return row;
+    }
+
+    private void addInformativeMatches(String[] ancestors, double[] ic, BitSet candidates)
+    {
+        for (String ancestor : ancestors) {
+            Integer number = this.store.getTermNumber(ancestor);
+            if (number != null && ic[number] >= PRUNING_INFORMATION_CONTENT) {
+                candidates.or(this.store.getPatients(number));
+            }
+        }
+    }
+
+    private String getAccessiblePatientId(String document)
+    {
+        Patient patient = this.patientRepository.get(document);
+        if (patient == null || !this.permissions.getEntityAccess(patient).hasAccessLevel(this.viewAccess)) {
+            return null;
+        }
+        return patient.getId();
+    }
+
+    /**
+     * Returns the information content of all the terms, recomputing it if the index was modified since it was last
+     * computed. Must be called while reading the index.
+     *
+     * @return for each term number, its information content in bits
+     */
+    private synchronized double[] getInformationContent()
+    {
+        long version = this.store.getVersion();
+        if (version == this.informationContentVersion) {
+            return this.informationContent;
+        }
+        BitSet indexedPatients = this.store.getIndexedPatients();
+        int annotatedPatients = 0;
+        for (int i = indexedPatients.nextSetBit(0); i >= 0; i = indexedPatients.nextSetBit(i + 1)) {
+            if (this.store.getTerms(i).length > 0) {
+                ++annotatedPatients;
+            }
+        }
+        double[] result = new double[this.store.getTermCount()];
+        for (int i = 0; i < result.length; ++i) {
+            int count = this.store.getPatients(i).cardinality();
+            result[i] = count == 0 ? 0 : -Math.log((double) count / annotatedPatients) / Math.log(2);
+        }
+        this.informationContent = result;
+        this.informationContentVersion = version;
+        this.micaRows.clear();
+        return result;
+    }
+
+    private synchronized ExecutorService getExecutor()
+    {
+        if (this.executor == null) {
+            this.executor = Executors.newFixedThreadPool(
+                Math.min(MAX_SCAN_THREADS, Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread thread = new Thread(r, "Patient similarity search");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        return this.executor;
+    }
+
+    /** A patient number and its similarity score. */
+    private static final class ScoredPatient
+    {
+        private final int number;
+
+        private final double score;
+
+        ScoredPatient(int number, double score)
+        {
+            this.number = number;
+            this.score = score;
+        }
+    }
+
+    /** The result of a scan. */
+    private static final class Ranking
+    {
+        /** The serialized references of the best matches, best first, mapped to their score. */
+        private final Map<String, Double> matches;
+
+        /** Whether all the scanned patients sharing information with the query are included. */
+        private final boolean complete;
+
+        /** Whether the patients not sharing informative terms with the query were skipped. */
+        private final boolean pruned;
+
+        Ranking(Map<String, Double> matches, boolean complete, boolean pruned)
+        {
+            this.matches = matches;
+            this.complete = complete;
+            this.pruned = pruned;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.indexing.PhenotypeCohortIndex;
+
+import org.xwiki.component.annotation.Component;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of the {@link PhenotypeCohortIndex}, querying the shared {@link PatientPhenotypeIndex}, which
+ * keeps, for each term, a bitmap of the patients having that term or one of its descendants, so that a query is just a
+ * few bitmap intersections.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultPhenotypeCohortIndex implements PhenotypeCohortIndex
+{
+    /** The in-memory index of the patient phenotypes. */
+    @Inject
+    private PatientPhenotypeIndex store;
+
+    @Override
+    public Set<String> search(Collection<String> requiredTerms, Collection<String> excludedTerms)
+    {
+        return this.store.read(() -> {
+            BitSet matches = match(requiredTerms, excludedTerms);
+            Set<String> result = new HashSet<>();
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                result.add(this.store.getReference(i));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public int count(Collection<String> requiredTerms, Collection<String> excludedTerms)
+    {
+        return this.store.read(() -> match(requiredTerms, excludedTerms).cardinality());
+    }
+
+    @Override
+    public void index(Patient patient)
+    {
+        this.store.index(patient);
+    }
+
+    @Override
+    public void delete(Patient patient)
+    {
+        this.store.delete(patient);
+    }
+
+    @Override
+    public void reindex()
+    {
+        this.store.reindex();
+    }
+
+    /**
+     * Finds the matching patients. Must be called while reading the index.
+     */
+    private BitSet match(Collection<String> requiredTerms, Collection<String> excludedTerms)
+    {
+        BitSet result = null;
+        if (requiredTerms != null) {
+            for (String termId : requiredTerms) {
+                BitSet patients = getPatients(termId);
+                if (patients == null) {
+                    return new BitSet();
+                }
+                if (result == null) {
+                    result = (BitSet) patients.clone();
+                } else {
+                    result.and(patients);
+                }
+                if (result.isEmpty()) {
+                    return result;
+                }
+            }
+        }
+        if (result == null) {
+            result = (BitSet) this.store.getIndexedPatients().clone();
+        }
+        if (excludedTerms != null) {
+            for (String termId : excludedTerms) {
+                BitSet patients = getPatients(termId);
+                if (patients != null) {
+                    result.andNot(patients);
+                }
+            }
+        }
+        return result;
+    }
+
+    private BitSet getPatients(String termId)
+    {
+        Integer number = this.store.getTermNumber(termId);
+        return number == null ? null : this.store.getPatients(number);
+    }
+}
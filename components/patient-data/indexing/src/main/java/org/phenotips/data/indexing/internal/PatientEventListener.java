@@ -22,6 +22,7 @@
 import org.phenotips.data.events.PatientDeletedEvent;
 import org.phenotips.data.events.PatientEvent;
 import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.indexing.PhenotypeCohortIndex;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.observation.AbstractEventListener;
@@ -32,7 +33,8 @@
 import javax.inject.Singleton;
 
 /**
- * Monitors document changes and submits modified patients to the {@link PatientIndexer indexer}.
+ * Monitors document changes and submits modified patients to the {@link PatientIndexer indexer} and to the
+ * in-memory {@link PhenotypeCohortIndex phenotype index}, also used for similarity searches.
  *
  * @version $Id$
  * @since 1.0M8
@@ -46,6 +48,10 @@ public class PatientEventListener extends AbstractEventListener
     @Inject
     private PatientIndexer indexer;
 
+    /** Keeps the in-memory phenotype index in sync. */
+    @Inject
+    private PhenotypeCohortIndex cohortIndex;
+
     /** Default constructor, sets up the listener name and the list of events to subscribe to. */
     public PatientEventListener()
     {
@@ -58,8 +64,10 @@ public void onEvent(final Event event, final Object source, final Object data)
         Patient patient = ((PatientEvent) event).getPatient();
         if (event instanceof PatientDeletedEvent) {
             this.indexer.delete(patient);
+            this.cohortIndex.delete(patient);
         } else if (patient != null) {
             this.indexer.index(patient);
+            this.cohortIndex.index(patient);
         }
     }
 }
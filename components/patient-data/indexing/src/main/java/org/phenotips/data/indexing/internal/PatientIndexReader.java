@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.vocabulary.SolrCommitPolicy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+
+/**
+ * Reads the observed phenotypes of all the patients from the Solr patient index, page by page, for building the
+ * in-memory indexes. Only the stored fields are read, i.e. the terms selected in the patient records, without their
+ * ancestors.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class PatientIndexReader
+{
+    private static final String DOCUMENT_FIELD = "document";
+
+    private static final String PHENOTYPE_FIELD_SUFFIX = "phenotype";
+
+    private static final String NEGATIVE_FIELD_PREFIX = "negative_";
+
+    private static final int PAGE_SIZE = 1000;
+
+    private PatientIndexReader()
+    {
+        // Utility class, shouldn't be instantiated
+    }
+
+    /**
+     * Reads all the indexed patients. Recently indexed patients are soft-committed first, so that they are visible.
+     *
+     * @param server the Solr client for the patient index
+     * @param commitPolicy the commit policy of the patient index
+     * @param consumer receives the serialized reference of each patient document, and the identifiers of the observed
+     *            phenotypes of that patient, in the order of the index
+     * @throws SolrServerException if querying the index fails
+     * @throws IOException if communicating with the index fails
+     */
+    static void readPhenotypes(SolrClient server, SolrCommitPolicy commitPolicy,
+        BiConsumer<String, List<String>> consumer) throws SolrServerException, IOException
+    {
+        commitPolicy.refresh(server);
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields(DOCUMENT_FIELD, "*" + PHENOTYPE_FIELD_SUFFIX);
+        query.setSort(DOCUMENT_FIELD, SolrQuery.ORDER.asc);
+        query.setRows(PAGE_SIZE);
+        int start = 0;
+        SolrDocumentList page;
+        do {
+            query.setStart(start);
+            page = server.query(query).getResults();
+            for (SolrDocument patient : page) {
+                consumer.accept((String) patient.getFieldValue(DOCUMENT_FIELD), getPhenotypes(patient));
+            }
+            start += page.size();
+        } while (!page.isEmpty() && start < page.getNumFound());
+    }
+
+    private static List<String> getPhenotypes(SolrDocument patient)
+    {
+        List<String> result = new ArrayList<>();
+        for (String field : patient.getFieldNames()) {
+            if (!field.endsWith(PHENOTYPE_FIELD_SUFFIX) || field.startsWith(NEGATIVE_FIELD_PREFIX)) {
+                continue;
+            }
+            for (Object termId : patient.getFieldValues(field)) {
+                if (termId != null && StringUtils.isNotBlank(termId.toString())) {
+                    result.add(termId.toString());
+                }
+            }
+        }
+        return result;
+    }
+}
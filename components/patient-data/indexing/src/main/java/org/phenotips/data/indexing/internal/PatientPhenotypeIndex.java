@@ -0,0 +1,557 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.data.indexing.PatientSimilaritySearch;
+import org.phenotips.data.indexing.PhenotypeCohortIndex;
+import org.phenotips.vocabulary.SolrCommitPolicy;
+import org.phenotips.vocabulary.SolrCoreContainerHandler;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.slf4j.Logger;
+
+/**
+ * In-memory index of the observed phenotypes of all the patients, shared by the {@link PhenotypeCohortIndex cohort
+ * index} and the {@link PatientSimilaritySearch similarity search}. Patients and terms are numbered. For each patient,
+ * the numbers of its selected terms are kept; for each selected term, the numbers of its ancestors; for each term, a
+ * bitmap of the patients having that term or one of its descendants. The numbers of deleted patients are reused.
+ * <p>
+ * The index is built the first time it is read, from the terms stored in the Solr patient index, expanded using the
+ * HPO, and is kept up to date as patients are modified. Readers share a read lock, and must only use the accessors
+ * from within {@link #read(Supplier)}; updates take the write lock. The index is built without holding the lock, so
+ * that updates aren't blocked while Solr and the HPO are queried: patients modified meanwhile are remembered, and
+ * applied to the new contents when they replace the old ones, under the write lock. If the build fails, the index is
+ * empty, and the build is only attempted again after a delay, doubled after each failure. The index is discarded when
+ * the HPO is reindexed, since the ancestors of the terms may have changed.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component(roles = PatientPhenotypeIndex.class)
+@Singleton
+public class PatientPhenotypeIndex implements EventListener, Initializable
+{
+    private static final String[] NO_TERMS = new String[0];
+
+    private static final int[] NO_TERM_NUMBERS = new int[0];
+
+    /** How long to wait, in milliseconds, before building the index again after the first failure. */
+    private static final long MIN_RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    /** The longest delay, in milliseconds, between two attempts to build the index. */
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(30);
+
+    private static final String CORE_NAME = "patients";
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private SolrCoreContainerHandler cores;
+
+    /** Provides access to the HPO ontology. */
+    @Inject
+    @Named("hpo")
+    private Vocabulary ontologyService;
+
+    @Inject
+    private EntityReferenceSerializer<String> referenceSerializer;
+
+    /** Allows registering this object as an event listener. */
+    @Inject
+    private ObservationManager observationManager;
+
+    /** The Solr server instance used for reading the patient index. */
+    private SolrClient server;
+
+    /** Used for making recent changes to the patient index visible before reading it. */
+    private SolrCommitPolicy commitPolicy;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Only one build runs at a time. */
+    private final Object buildLock = new Object();
+
+    /** Cached ancestors of the terms, the term itself first, so that the HPO is only queried once per term. */
+    private final Map<String, String[]> ancestorsCache = new ConcurrentHashMap<>();
+
+    /** The indexed data, replaced when the index is built, guarded by {@link #lock}. */
+    private Contents contents = new Contents();
+
+    /**
+     * The patients modified while the index is being built, mapped to their selected terms, or to {@code null} if they
+     * were deleted; {@code null} when no build is running. Guarded by {@link #lock}.
+     */
+    private Map<String, Collection<String>> pendingChanges;
+
+    /** Incremented each time the index is discarded, so that older builds are dropped, guarded by {@link #lock}. */
+    private long generation;
+
+    /** Incremented after each change, guarded by {@link #lock}. */
+    private long version;
+
+    /** Whether the index was built. */
+    private volatile boolean initialized;
+
+    /** When the index can be built again after a failure, in milliseconds since the epoch. */
+    private volatile long nextBuildAttempt;
+
+    /** How long to wait after the next failure, guarded by {@link #lock}. */
+    private long retryDelay = MIN_RETRY_DELAY;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.server = new EmbeddedSolrServer(this.cores.getContainer(), CORE_NAME);
+        this.commitPolicy = this.cores.getCommitPolicy(CORE_NAME);
+        this.observationManager.addListener(this);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "patient-phenotype-index";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Collections.<Event>singletonList(new VocabularyReindexedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (source != null && source == this.ontologyService) {
+            reindex();
+        }
+    }
+
+    /**
+     * Adds or updates a patient. Nothing is done if the index wasn't built yet, since the patient will be read from
+     * the Solr patient index when it is.
+     *
+     * @param patient the patient to index
+     */
+    public void index(Patient patient)
+    {
+        String document = this.referenceSerializer.serialize(patient.getDocumentReference());
+        Set<String> phenotypes = new LinkedHashSet<>();
+        for (Feature phenotype : patient.getFeatures()) {
+            if (phenotype.isPresent() && StringUtils.isNotBlank(phenotype.getId())) {
+                phenotypes.add(phenotype.getId());
+                // Query the HPO before taking the lock, so that readers aren't blocked while new terms are looked up
+                getAncestorsAndSelf(phenotype.getId());
+            }
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            if (this.pendingChanges != null) {
+                this.pendingChanges.put(document, phenotypes);
+            }
+            if (this.initialized) {
+                this.contents.put(document, phenotypes);
+                ++this.version;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a patient.
+     *
+     * @param patient the patient to remove
+     */
+    public void delete(Patient patient)
+    {
+        String document = this.referenceSerializer.serialize(patient.getDocumentReference());
+        this.lock.writeLock().lock();
+        try {
+            if (this.pendingChanges != null) {
+                this.pendingChanges.put(document, null);
+            }
+            if (this.contents.remove(document)) {
+                ++this.version;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discards the index, which will be rebuilt from the Solr patient index and the HPO at the next read.
+     */
+    public void reindex()
+    {
+        this.lock.writeLock().lock();
+        try {
+            this.contents = new Contents();
+            ++this.version;
+            ++this.generation;
+            this.ancestorsCache.clear();
+            this.initialized = false;
+            this.nextBuildAttempt = 0;
+            this.retryDelay = MIN_RETRY_DELAY;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the index while holding the read lock, building it first if needed and if a previous build didn't fail
+     * recently. The other accessors must only be called by the reader.
+     *
+     * @param reader the code reading the index
+     * @param <T> the type of the result
+     * @return the result of the reader
+     */
+    public <T> T read(Supplier<T> reader)
+    {
+        if (needsBuild()) {
+            build();
+        }
+        this.lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a number changed after each modification of the index, so that readers can tell when the data they
+     *         computed from the index is outdated
+     */
+    public long getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * @param termId the identifier of a term
+     * @return the number of the term, or {@code null} if no indexed patient has that term or one of its descendants
+     */
+    public Integer getTermNumber(String termId)
+    {
+        return this.contents.termNumbers.get(termId);
+    }
+
+    /**
+     * @return the number of terms, all the term numbers are lower
+     */
+    public int getTermCount()
+    {
+        return this.contents.patientsByTerm.size();
+    }
+
+    /**
+     * @param term a term number
+     * @return the numbers of the ancestors of the term, the term itself first, or {@code null} if the term is only
+     *         known as the ancestor of the terms selected for the patients
+     */
+    public int[] getAncestors(int term)
+    {
+        return this.contents.termAncestors.get(term);
+    }
+
+    /**
+     * @param term a term number
+     * @return the numbers of the patients having that term or one of its descendants, not to be modified
+     */
+    public BitSet getPatients(int term)
+    {
+        return this.contents.patientsByTerm.get(term);
+    }
+
+    /**
+     * @return the numbers of all the indexed patients, not to be modified
+     */
+    public BitSet getIndexedPatients()
+    {
+        return this.contents.indexedPatients;
+    }
+
+    /**
+     * @param patient a patient number
+     * @return the distinct numbers of the terms selected for the patient, without their ancestors
+     */
+    public int[] getTerms(int patient)
+    {
+        return this.contents.patientTerms.get(patient);
+    }
+
+    /**
+     * @param patient a patient number
+     * @return the serialized reference to the patient document
+     */
+    public String getReference(int patient)
+    {
+        return this.contents.patientReferences.get(patient);
+    }
+
+    /**
+     * Looks up the ancestors of a term in the HPO. The result is cached until the index is discarded, and can be used
+     * without holding the lock.
+     *
+     * @param termId the identifier of a term
+     * @return the identifiers of the ancestors of the term, the term itself first, or an empty array if the term is
+     *         unknown
+     */
+    public String[] getAncestorsAndSelf(String termId)
+    {
+        String[] result = this.ancestorsCache.get(termId);
+        if (result == null) {
+            VocabularyTerm term = this.ontologyService.getTerm(termId);
+            if (term == null) {
+                // Like in the Solr index, unknown terms can't be searched
+                result = NO_TERMS;
+            } else {
+                Set<String> ancestors = new LinkedHashSet<>();
+                ancestors.add(termId);
+                for (VocabularyTerm ancestor : term.getAncestorsAndSelf()) {
+                    ancestors.add(ancestor.getId());
+                }
+                result = ancestors.toArray(new String[ancestors.size()]);
+            }
+            this.ancestorsCache.put(termId, result);
+        }
+        return result;
+    }
+
+    private boolean needsBuild()
+    {
+        return !this.initialized && System.currentTimeMillis() >= this.nextBuildAttempt;
+    }
+
+    /**
+     * Reads all the patients from the Solr index into new contents, without holding the lock, then replaces the
+     * current contents with them, after applying the changes made meanwhile.
+     */
+    private void build()
+    {
+        synchronized (this.buildLock) {
+            if (!needsBuild()) {
+                return;
+            }
+            long buildGeneration;
+            this.lock.writeLock().lock();
+            try {
+                buildGeneration = this.generation;
+                this.pendingChanges = new LinkedHashMap<>();
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+
+            Contents built = new Contents();
+            Exception failure = null;
+            try {
+                PatientIndexReader.readPhenotypes(this.server, this.commitPolicy, built::put);
+            } catch (SolrServerException | IOException | RuntimeException ex) {
+                failure = ex;
+            }
+
+            long delay = 0;
+            this.lock.writeLock().lock();
+            try {
+                if (buildGeneration != this.generation) {
+                    // Discarded meanwhile, the next read will build it again
+                    failure = null;
+                } else if (failure == null) {
+                    for (Map.Entry<String, Collection<String>> change : this.pendingChanges.entrySet()) {
+                        if (change.getValue() == null) {
+                            built.remove(change.getKey());
+                        } else {
+                            built.put(change.getKey(), change.getValue());
+                        }
+                    }
+                    this.contents = built;
+                    ++this.version;
+                    this.initialized = true;
+                    this.nextBuildAttempt = 0;
+                    this.retryDelay = MIN_RETRY_DELAY;
+                    this.logger.debug("Indexed the phenotypes of [{}] patients, using [{}] terms",
+                        built.patientNumbers.size(), built.termNumbers.size());
+                } else {
+                    delay = this.retryDelay;
+                    this.nextBuildAttempt = System.currentTimeMillis() + delay;
+                    this.retryDelay = Math.min(delay * 2, MAX_RETRY_DELAY);
+                }
+                this.pendingChanges = null;
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+            if (failure != null) {
+                this.logger.warn("Failed to build the patient phenotype index, retrying in [{}] seconds: {}",
+                    TimeUnit.MILLISECONDS.toSeconds(delay), failure.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The numbered patients and terms. Changes to the contents in use must be made while holding the write lock.
+     */
+    private final class Contents
+    {
+        /** The number assigned to each term. */
+        private final Map<String, Integer> termNumbers = new HashMap<>();
+
+        /** For each term number, the numbers of its ancestors, {@code null} for terms only known as ancestors. */
+        private final List<int[]> termAncestors = new ArrayList<>();
+
+        /** For each term number, the numbers of the patients having that term or one of its descendants. */
+        private final List<BitSet> patientsByTerm = new ArrayList<>();
+
+        /** The number assigned to each patient, identified by the serialized reference to its document. */
+        private final Map<String, Integer> patientNumbers = new HashMap<>();
+
+        /** For each patient number, the reference to its document, {@code null} for numbers that aren't in use. */
+        private final List<String> patientReferences = new ArrayList<>();
+
+        /** For each patient number, the distinct numbers of its selected terms. */
+        private final List<int[]> patientTerms = new ArrayList<>();
+
+        /** The patient numbers currently in use. */
+        private final BitSet indexedPatients = new BitSet();
+
+        /**
+         * Replaces the terms of a patient.
+         *
+         * @param document the serialized reference to the patient document
+         * @param phenotypes the identifiers of the terms selected for the patient
+         */
+        void put(String document, Collection<String> phenotypes)
+        {
+            Integer number = this.patientNumbers.get(document);
+            if (number == null) {
+                number = this.indexedPatients.nextClearBit(0);
+                this.patientNumbers.put(document, number);
+                this.indexedPatients.set(number);
+                if (number == this.patientReferences.size()) {
+                    this.patientReferences.add(document);
+                    this.patientTerms.add(NO_TERM_NUMBERS);
+                } else {
+                    this.patientReferences.set(number, document);
+                }
+            } else {
+                clearTerms(number);
+            }
+
+            Set<Integer> terms = new LinkedHashSet<>();
+            for (String termId : phenotypes) {
+                String[] ancestors = getAncestorsAndSelf(termId);
+                if (ancestors.length == 0) {
+                    continue;
+                }
+                int[] ancestorNumbers = new int[ancestors.length];
+                for (int i = 0; i < ancestors.length; ++i) {
+                    ancestorNumbers[i] = addTerm(ancestors[i]);
+                    this.patientsByTerm.get(ancestorNumbers[i]).set(number);
+                }
+                this.termAncestors.set(ancestorNumbers[0], ancestorNumbers);
+                terms.add(ancestorNumbers[0]);
+            }
+            int[] termNumbersArray = new int[terms.size()];
+            int i = 0;
+            for (Integer term : terms) {
+                termNumbersArray[i++] = term;
+            }
+            this.patientTerms.set(number, termNumbersArray);
+        }
+
+        /**
+         * Removes a patient, freeing its number.
+         *
+         * @param document the serialized reference to the patient document
+         * @return {@code true} if the patient was indexed
+         */
+        boolean remove(String document)
+        {
+            Integer number = this.patientNumbers.remove(document);
+            if (number == null) {
+                return false;
+            }
+            clearTerms(number);
+            this.indexedPatients.clear(number);
+            this.patientReferences.set(number, null);
+            return true;
+        }
+
+        private void clearTerms(int patientNumber)
+        {
+            for (int term : this.patientTerms.get(patientNumber)) {
+                for (int ancestor : this.termAncestors.get(term)) {
+                    this.patientsByTerm.get(ancestor).clear(patientNumber);
+                }
+            }
+            this.patientTerms.set(patientNumber, NO_TERM_NUMBERS);
+        }
+
+        private int addTerm(String termId)
+        {
+            Integer number = this.termNumbers.get(termId);
+            if (number == null) {
+                number = this.patientsByTerm.size();
+                this.termNumbers.put(termId, number);
+                this.patientsByTerm.add(new BitSet());
+                this.termAncestors.add(null);
+            }
+            return number;
+        }
+    }
+}
@@ -24,6 +24,7 @@
 import org.phenotips.data.PatientRepository;
 import org.phenotips.data.indexing.PatientIndexer;
 import org.phenotips.data.permissions.EntityPermissionsManager;
+import org.phenotips.vocabulary.SolrCommitPolicy;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
@@ -52,7 +53,9 @@
 import org.slf4j.Logger;
 
 /**
- * Indexes patients in a local Solr core.
+ * Indexes patients in a local Solr core. Changes to a single patient are committed according to the
+ * {@link SolrCoreContainerHandler#getCommitPolicy(String) commit policy} of the core, while reindexing all the patients
+ * ends with a single hard commit.
  *
  * @version $Id$
  * @since 1.0M8
@@ -67,6 +70,8 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
 
     private static final String SOLR_GENE_STATUS_FIELD_POSTFIX = "_genes";
 
+    private static final String CORE_NAME = "patients";
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -77,6 +82,9 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
     /** The Solr server instance used. */
     private SolrClient server;
 
+    /** Decides how changes to the patient index are committed. */
+    private SolrCommitPolicy commitPolicy;
+
     /** Allows querying for patients. */
     @Inject
     private QueryManager qm;
@@ -99,11 +107,58 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
     @Override
     public void initialize() throws InitializationException
     {
-        this.server = new EmbeddedSolrServer(this.cores.getContainer(), "patients");
+        this.server = new EmbeddedSolrServer(this.cores.getContainer(), CORE_NAME);
+        this.commitPolicy = this.cores.getCommitPolicy(CORE_NAME);
     }
 
     @Override
     public void index(Patient patient)
+    {
+        index(patient, true);
+    }
+
+    @Override
+    public void delete(Patient patient)
+    {
+        try {
+            this.commitPolicy.deleteByQuery(this.server, "document:"
+                + ClientUtils.escapeQueryChars(this.referenceSerializer.serialize(patient.getDocumentReference())));
+            this.commitPolicy.publish(this.server);
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to delete from Solr: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Error occurred while deleting Solr documents: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public void reindex()
+    {
+        try {
+            List<String> patientDocs =
+                this.qm.createQuery("from doc.object(PhenoTips.PatientClass) as patient", Query.XWQL).execute();
+            this.server.deleteByQuery("*:*");
+            for (String patientDoc : patientDocs) {
+                this.index(this.patientRepository.get(patientDoc), false);
+            }
+            this.commitPolicy.commit(this.server);
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to reindex patients: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Error occurred while reindexing patients: {}", ex.getMessage());
+        } catch (QueryException ex) {
+            this.logger.warn("Failed to search patients for reindexing: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Sends a patient to the index.
+     *
+     * @param patient the patient to index
+     * @param publish {@code true} if the change must be made visible according to the commit policy, {@code false}
+     *            for bulk changes, which are committed all at once at the end
+     */
+    private void index(Patient patient, boolean publish)
     {
         SolrInputDocument input = new SolrInputDocument();
         input.setField("document", this.referenceSerializer.serialize(patient.getDocumentReference()));
@@ -138,7 +193,12 @@ public void index(Patient patient)
         addGenes(input, patient);
 
         try {
-            this.server.add(input);
+            if (publish) {
+                this.commitPolicy.add(this.server, input);
+                this.commitPolicy.publish(this.server);
+            } else {
+                this.server.add(input);
+            }
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to perform Solr search: {}", ex.getMessage());
         } catch (IOException ex) {
@@ -146,40 +206,6 @@ public void index(Patient patient)
         }
     }
 
-    @Override
-    public void delete(Patient patient)
-    {
-        try {
-            this.server.deleteByQuery("document:"
-                + ClientUtils.escapeQueryChars(this.referenceSerializer.serialize(patient.getDocumentReference())));
-            this.server.commit();
-        } catch (SolrServerException ex) {
-            this.logger.warn("Failed to delete from Solr: {}", ex.getMessage());
-        } catch (IOException ex) {
-            this.logger.warn("Error occurred while deleting Solr documents: {}", ex.getMessage());
-        }
-    }
-
-    @Override
-    public void reindex()
-    {
-        try {
-            List<String> patientDocs =
-                this.qm.createQuery("from doc.object(PhenoTips.PatientClass) as patient", Query.XWQL).execute();
-            this.server.deleteByQuery("*:*");
-            for (String patientDoc : patientDocs) {
-                this.index(this.patientRepository.get(patientDoc));
-            }
-            this.server.commit();
-        } catch (SolrServerException ex) {
-            this.logger.warn("Failed to reindex patients: {}", ex.getMessage());
-        } catch (IOException ex) {
-            this.logger.warn("Error occurred while reindexing patients: {}", ex.getMessage());
-        } catch (QueryException ex) {
-            this.logger.warn("Failed to search patients for reindexing: {}", ex.getMessage());
-        }
-    }
-
     private void addGenes(SolrInputDocument input, Patient patient)
     {
         PatientData<Gene> data = patient.getData(GENES_KEY);
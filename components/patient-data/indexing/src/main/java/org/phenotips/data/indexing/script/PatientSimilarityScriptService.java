@@ -0,0 +1,99 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.script;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilaritySearch;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Finds the patients with the most similar phenotypes. Only the patients that the current user can view are returned.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Component
+@Named("patientSimilarity")
+@Singleton
+public class PatientSimilarityScriptService implements ScriptService
+{
+    /** The maximum number of patients that scripts can request. */
+    private static final int MAX_LIMIT = 1000;
+
+    /** Checks that the reference patient is accessible by the current user. */
+    @Inject
+    @Named("secure")
+    private PatientRepository repository;
+
+    /** Wrapped trusted API, doing the actual work. */
+    @Inject
+    private PatientSimilaritySearch search;
+
+    /**
+     * Finds the patients most similar to a patient.
+     *
+     * @param id the identifier of the reference patient, i.e. the serialized document reference
+     * @param limit the maximum number of patients to return, between 1 and 1000; values outside this range are
+     *            replaced by the nearest bound
+     * @return the identifiers of the most similar patients mapped to their similarity score, most similar first; an
+     *         empty map if the patient does not exist, is not accessible by the current user, or has no phenotypes
+     */
+    public Map<String, Double> findSimilarPatients(String id, int limit)
+    {
+        try {
+            Patient patient = this.repository.get(id);
+            if (patient == null) {
+                return Collections.emptyMap();
+            }
+            return this.search.findSimilarPatients(patient, clamp(limit));
+        } catch (SecurityException | IllegalArgumentException ex) {
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Finds the patients most similar to a list of phenotypes.
+     *
+     * @param phenotypes the HPO identifiers of the phenotypes to look for, e.g. {@code HP:0001250}
+     * @param limit the maximum number of patients to return, between 1 and 1000; values outside this range are
+     *            replaced by the nearest bound
+     * @return the identifiers of the most similar patients mapped to their similarity score, most similar first
+     */
+    public Map<String, Double> findSimilarPatients(Collection<String> phenotypes, int limit)
+    {
+        return this.search.findSimilarPatients(phenotypes, clamp(limit));
+    }
+
+    private static int clamp(int limit)
+    {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
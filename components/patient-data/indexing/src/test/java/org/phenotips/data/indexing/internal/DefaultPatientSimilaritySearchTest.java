@@ -0,0 +1,241 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilaritySearch;
+import org.phenotips.data.permissions.AccessLevel;
+import org.phenotips.data.permissions.EntityAccess;
+import org.phenotips.data.permissions.EntityPermissionsManager;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.DELAY;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.EYE;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.PHENOTYPE;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.SEIZURES;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.UNKNOWN;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.document;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.reference;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.termId;
+
+/**
+ * Tests for the {@link DefaultPatientSimilaritySearch} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPatientSimilaritySearchTest
+{
+    private static final double DELTA = 0.0001;
+
+    @Rule
+    public final MockitoComponentMockingRule<PatientSimilaritySearch> mocker =
+        new MockitoComponentMockingRule<>(DefaultPatientSimilaritySearch.class);
+
+    @Rule
+    public final MockitoComponentMockingRule<PatientPhenotypeIndex> storeMocker =
+        new MockitoComponentMockingRule<>(PatientPhenotypeIndex.class);
+
+    private PatientPhenotypeIndexFixture fixture;
+
+    private SolrClient server;
+
+    private EntityReferenceSerializer<String> serializer;
+
+    private PatientPhenotypeIndex store;
+
+    private Set<String> hiddenPatients = new HashSet<>();
+
+    private PatientSimilaritySearch search;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.fixture = new PatientPhenotypeIndexFixture(this.storeMocker);
+        this.server = this.fixture.getServer();
+        this.store = this.fixture.getIndex();
+        this.search = this.mocker.getComponentUnderTest();
+        ReflectionUtils.setFieldValue(this.search, "store", this.store);
+
+        this.serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        EntityPermissionsManager permissions = this.mocker.getInstance(EntityPermissionsManager.class);
+        AccessLevel view = this.mocker.getInstance(AccessLevel.class, "view");
+        when(repository.get(anyString())).thenAnswer(invocation -> {
+            String id = ((String) invocation.getArguments()[0]).substring(document("").length());
+            Patient patient = mock(Patient.class);
+            when(patient.getId()).thenReturn(id);
+            EntityAccess access = mock(EntityAccess.class);
+            when(access.hasAccessLevel(view)).thenReturn(!this.hiddenPatients.contains(id));
+            when(permissions.getEntityAccess(patient)).thenReturn(access);
+            return patient;
+        });
+
+        this.fixture.addIndexedPatient("P0000000", PHENOTYPE, SEIZURES);
+        this.fixture.addIndexedPatient("P0000001", PHENOTYPE, SEIZURES);
+        this.fixture.addIndexedPatient("P0000002", PHENOTYPE, DELAY);
+        this.fixture.addIndexedPatient("P0000003", "prenatal_phenotype", EYE);
+        this.fixture.addIndexedPatient("P0000004", PHENOTYPE, SEIZURES, EYE);
+        this.fixture.addIndexedPatient("P0000005", "negative_phenotype", SEIZURES);
+    }
+
+    @Test
+    public void patientsAreRankedByBestMatchAverageResnikSimilarity()
+    {
+        Map<String, Double> result = this.search.findSimilarPatients(mockPatient("P0000000", SEIZURES), 10);
+
+        // Five annotated patients, three of which have seizures, four a nervous system abnormality
+        double seizures = log2(5.0 / 3);
+        double nervous = log2(5.0 / 4);
+        Assert.assertEquals(Arrays.asList("P0000001", "P0000004", "P0000002"), new ArrayList<>(result.keySet()));
+        Assert.assertEquals(seizures, result.get("P0000001"), DELTA);
+        Assert.assertEquals((seizures + seizures / 2) / 2, result.get("P0000004"), DELTA);
+        Assert.assertEquals(nervous, result.get("P0000002"), DELTA);
+    }
+
+    @Test
+    public void informativeMatchesAreFoundFirst() throws SolrServerException, IOException
+    {
+        double delay = log2(5);
+        double nervous = log2(5.0 / 4);
+        Map<String, Double> result = this.search.findSimilarPatients(Collections.singleton(DELAY), 1);
+        Assert.assertEquals(Collections.singleton("P0000002"), result.keySet());
+        Assert.assertEquals(delay, result.get("P0000002"), DELTA);
+
+        result = this.search.findSimilarPatients(Arrays.asList(DELAY, UNKNOWN, ""), 3);
+        Assert.assertEquals(Arrays.asList("P0000002", "P0000000", "P0000001"), new ArrayList<>(result.keySet()));
+        Assert.assertEquals(nervous, result.get("P0000000"), DELTA);
+        verify(this.server, times(1)).query(any(SolrParams.class));
+    }
+
+    @Test
+    public void inaccessiblePatientsAreSkipped()
+    {
+        this.hiddenPatients.add("P0000001");
+        Assert.assertEquals(Arrays.asList("P0000004", "P0000002"),
+            new ArrayList<>(this.search.findSimilarPatients(mockPatient("P0000000", SEIZURES), 2).keySet()));
+    }
+
+    @Test
+    public void scoresFollowChangesToTheIndex()
+    {
+        Assert.assertEquals(Collections.singleton("P0000002"),
+            this.search.findSimilarPatients(Collections.singleton(DELAY), 1).keySet());
+
+        this.store.index(this.fixture.mockPatient("P0000003", DELAY));
+        this.store.delete(this.fixture.mockPatient("P0000002"));
+        Map<String, Double> result = this.search.findSimilarPatients(Collections.singleton(DELAY), 1);
+        Assert.assertEquals(Collections.singleton("P0000003"), result.keySet());
+        // Four annotated patients left, only one with developmental delay
+        Assert.assertEquals(2, result.get("P0000003"), DELTA);
+    }
+
+    @Test
+    public void largeLimitsAreSupported()
+    {
+        Map<String, Double> result = this.search.findSimilarPatients(Collections.singleton(DELAY), Integer.MAX_VALUE);
+        Assert.assertEquals(Arrays.asList("P0000002", "P0000000", "P0000001", "P0000004"),
+            new ArrayList<>(result.keySet()));
+    }
+
+    @Test
+    public void emptyQueriesReturnNothing() throws SolrServerException, IOException
+    {
+        Assert.assertTrue(this.search.findSimilarPatients(mockPatient("P0000005"), 10).isEmpty());
+        Assert.assertTrue(this.search.findSimilarPatients(Collections.singleton(UNKNOWN), 10).isEmpty());
+        Assert.assertTrue(this.search.findSimilarPatients(Collections.singleton(SEIZURES), 0).isEmpty());
+        Assert.assertTrue(this.search.findSimilarPatients((Patient) null, 10).isEmpty());
+        verify(this.server, never()).query(any(SolrParams.class));
+    }
+
+    @Test
+    public void nothingIsFoundWhenSolrFails() throws SolrServerException, IOException
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("failed"));
+        Assert.assertTrue(this.search.findSimilarPatients(Collections.singleton(SEIZURES), 10).isEmpty());
+    }
+
+    /** Benchmark-style check that searches in a large cohort are fast, and use several threads. */
+    @Test(timeout = 60000)
+    public void largeCohortsAreSearchedQuickly()
+    {
+        this.fixture.addTermTree();
+        this.fixture.clearIndexedPatients();
+        Random random = new Random(42);
+        int patients = 100000;
+        for (int i = 0; i < patients; ++i) {
+            String[] features = new String[8];
+            for (int j = 0; j < features.length; ++j) {
+                features[j] = termId(64 + random.nextInt(960));
+            }
+            this.fixture.addIndexedPatient(String.format("P%07d", i), PHENOTYPE, features);
+        }
+
+        for (int i = 0; i < 100; ++i) {
+            List<String> query = new ArrayList<>();
+            for (int j = 0; j < 5; ++j) {
+                query.add(termId(32 + random.nextInt(992)));
+            }
+            List<Double> scores = new ArrayList<>(this.search.findSimilarPatients(query, 20).values());
+            Assert.assertEquals(20, scores.size());
+            for (int j = 1; j < scores.size(); ++j) {
+                Assert.assertTrue(scores.get(j - 1) >= scores.get(j));
+            }
+        }
+    }
+
+    private double log2(double value)
+    {
+        return Math.log(value) / Math.log(2);
+    }
+
+    private Patient mockPatient(String id, String... terms)
+    {
+        Patient patient = this.fixture.mockPatient(id, terms);
+        when(this.serializer.serialize(reference(id))).thenReturn(document(id));
+        return patient;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.indexing.PhenotypeCohortIndex;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.DELAY;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.EYE;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.NERVOUS;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.PHENOTYPE;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.ROOT;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.SEIZURES;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.UNKNOWN;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.document;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.termId;
+
+/**
+ * Tests for the {@link DefaultPhenotypeCohortIndex} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPhenotypeCohortIndexTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<PhenotypeCohortIndex> mocker =
+        new MockitoComponentMockingRule<>(DefaultPhenotypeCohortIndex.class);
+
+    @Rule
+    public final MockitoComponentMockingRule<PatientPhenotypeIndex> storeMocker =
+        new MockitoComponentMockingRule<>(PatientPhenotypeIndex.class);
+
+    private PatientPhenotypeIndexFixture fixture;
+
+    private SolrClient server;
+
+    private PhenotypeCohortIndex index;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.fixture = new PatientPhenotypeIndexFixture(this.storeMocker);
+        this.server = this.fixture.getServer();
+        this.index = this.mocker.getComponentUnderTest();
+        ReflectionUtils.setFieldValue(this.index, "store", this.fixture.getIndex());
+
+        this.fixture.addIndexedPatient("P0000001", PHENOTYPE, SEIZURES);
+        this.fixture.addIndexedPatient("P0000002", PHENOTYPE, DELAY, EYE);
+        this.fixture.addIndexedPatient("P0000003", "prenatal_phenotype", EYE);
+        this.fixture.addIndexedPatient("P0000004", "negative_phenotype", SEIZURES);
+    }
+
+    @Test
+    public void searchesMatchDescendantsAndSkipExcludedTerms()
+    {
+        Assert.assertEquals(new HashSet<>(Arrays.asList(document("P0000001"), document("P0000002"))),
+            this.index.search(Collections.singleton(NERVOUS), null));
+        Assert.assertEquals(Collections.singleton(document("P0000001")),
+            this.index.search(Collections.singleton(NERVOUS), Collections.singleton(EYE)));
+        Assert.assertEquals(Collections.singleton(document("P0000002")),
+            this.index.search(Arrays.asList(NERVOUS, EYE), Collections.<String>emptySet()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(document("P0000003"), document("P0000004"))),
+            this.index.search(null, Collections.singleton(NERVOUS)));
+        Assert.assertTrue(this.index.search(Arrays.asList(SEIZURES, DELAY), null).isEmpty());
+        Assert.assertTrue(this.index.search(Collections.singleton(UNKNOWN), null).isEmpty());
+
+        Assert.assertEquals(4, this.index.count(null, null));
+        Assert.assertEquals(3, this.index.count(Collections.singleton(ROOT), null));
+        Assert.assertEquals(1, this.index.count(Collections.singleton(SEIZURES), Collections.singleton(UNKNOWN)));
+        Assert.assertEquals(0, this.index.count(Collections.singleton(UNKNOWN), null));
+    }
+
+    @Test
+    public void reindexDiscardsTheIndex() throws SolrServerException, IOException
+    {
+        Assert.assertEquals(4, this.index.count(null, null));
+        verify(this.server, times(1)).query(any(SolrParams.class));
+
+        this.index.reindex();
+        this.fixture.removeIndexedPatient(0);
+        Assert.assertEquals(3, this.index.count(null, null));
+        verify(this.server, times(2)).query(any(SolrParams.class));
+    }
+
+    @Test
+    public void changesAreForwardedToTheIndex()
+    {
+        this.index.count(null, null);
+        this.index.index(this.fixture.mockPatient("P0000003", EYE, SEIZURES));
+        this.index.delete(this.fixture.mockPatient("P0000001"));
+        Assert.assertEquals(Collections.singleton(document("P0000003")),
+            this.index.search(Collections.singleton(SEIZURES), null));
+    }
+
+    @Test
+    public void nothingIsFoundWhenSolrFails() throws SolrServerException, IOException
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("failed"));
+        Assert.assertTrue(this.index.search(Collections.singleton(ROOT), null).isEmpty());
+        Assert.assertEquals(0, this.index.count(null, null));
+    }
+
+    /** Benchmark-style check that cohort queries on a large number of patients are fast. */
+    @Test(timeout = 30000)
+    public void largeCohortsAreQueriedQuickly()
+    {
+        this.fixture.addTermTree();
+        this.fixture.clearIndexedPatients();
+        Random random = new Random(42);
+        int patients = 50000;
+        for (int i = 0; i < patients; ++i) {
+            String[] features = new String[10];
+            for (int j = 0; j < features.length; ++j) {
+                features[j] = termId(512 + random.nextInt(512));
+            }
+            this.fixture.addIndexedPatient(String.format("P%07d", i), PHENOTYPE, features);
+        }
+
+        Assert.assertEquals(patients, this.index.count(Collections.singleton(termId(1)), null));
+        for (int i = 0; i < 10000; ++i) {
+            List<String> required = Arrays.asList(termId(2 + random.nextInt(1022)), termId(2 + random.nextInt(1022)));
+            Set<String> excluded = Collections.singleton(termId(2 + random.nextInt(1022)));
+            int count = this.index.count(required, excluded);
+            if (i % 100 == 0) {
+                Assert.assertEquals(count, this.index.search(required, excluded).size());
+            }
+        }
+    }
+}
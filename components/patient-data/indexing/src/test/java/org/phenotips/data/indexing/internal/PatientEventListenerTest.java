@@ -21,6 +21,7 @@
 import org.phenotips.data.events.PatientDeletedEvent;
 import org.phenotips.data.events.PatientEvent;
 import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.indexing.PhenotypeCohortIndex;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.observation.EventListener;
@@ -46,6 +47,8 @@
     @Mock
     private PatientIndexer patientIndexer;
 
+    private PhenotypeCohortIndex cohortIndex;
+
     @Mock
     private Patient patient;
 
@@ -58,6 +61,7 @@ public void setUp() throws ComponentLookupException
 
         this.eventListener = this.mocker.getComponentUnderTest();
         this.patientIndexer = this.mocker.getInstance(PatientIndexer.class);
+        this.cohortIndex = this.mocker.getInstance(PhenotypeCohortIndex.class);
     }
 
     @Test
@@ -68,6 +72,7 @@ public void deletePatientTest()
 
         this.eventListener.onEvent(patientDeleteEvent, mock(Object.class), mock(Object.class));
         verify(this.patientIndexer).delete(this.patient);
+        verify(this.cohortIndex).delete(this.patient);
     }
 
     @Test
@@ -78,5 +83,6 @@ public void indexPatientTest()
 
         this.eventListener.onEvent(patientEvent, mock(Object.class), mock(Object.class));
         verify(this.patientIndexer).index(this.patient);
+        verify(this.cohortIndex).index(this.patient);
     }
 }
@@ -0,0 +1,238 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.vocabulary.SolrCommitPolicy;
+import org.phenotips.vocabulary.SolrCoreContainerHandler;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.core.CoreContainer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A {@link PatientPhenotypeIndex} built from a mocked patient Solr core and a small mocked HPO, shared by the tests of
+ * the index and of the components querying it.
+ *
+ * @version $Id$
+ */
+final class PatientPhenotypeIndexFixture
+{
+    static final String ROOT = "HP:0000001";
+
+    static final String ABNORMALITY = "HP:0000118";
+
+    static final String NERVOUS = "HP:0000707";
+
+    static final String SEIZURES = "HP:0001250";
+
+    static final String DELAY = "HP:0001263";
+
+    static final String EYE = "HP:0000478";
+
+    static final String UNKNOWN = "HP:9999999";
+
+    static final String PHENOTYPE = "phenotype";
+
+    private final SolrClient server = mock(SolrClient.class);
+
+    private final QueryResponse response = mock(QueryResponse.class);
+
+    private final SolrDocumentList indexedPatients = new SolrDocumentList();
+
+    private final Map<String, VocabularyTerm> terms = new HashMap<>();
+
+    private final PatientPhenotypeIndex index;
+
+    private final Vocabulary hpo;
+
+    private final EntityReferenceSerializer<String> serializer;
+
+    /**
+     * Sets up the index under test in the given mocker, with no indexed patients and the terms of a few branches of
+     * the HPO, from {@link #ROOT} down to {@link #SEIZURES}, {@link #DELAY} and {@link #EYE}.
+     *
+     * @param mocker the mocker of the index
+     * @throws Exception if the mocked components can't be set up
+     */
+    PatientPhenotypeIndexFixture(MockitoComponentMockingRule<PatientPhenotypeIndex> mocker) throws Exception
+    {
+        SolrCoreContainerHandler cores = mocker.getInstance(SolrCoreContainerHandler.class);
+        doReturn(mock(CoreContainer.class)).when(cores).getContainer();
+        doReturn(new SolrCommitPolicy(-1, true)).when(cores).getCommitPolicy("patients");
+        this.index = mocker.getComponentUnderTest();
+        ReflectionUtils.setFieldValue(this.index, "server", this.server);
+        when(this.server.query(any(SolrParams.class))).thenReturn(this.response);
+        when(this.response.getResults()).thenReturn(this.indexedPatients);
+
+        this.serializer = mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        this.hpo = mocker.getInstance(Vocabulary.class, "hpo");
+        addTerm(ROOT, null);
+        addTerm(ABNORMALITY, ROOT);
+        addTerm(NERVOUS, ABNORMALITY);
+        addTerm(SEIZURES, NERVOUS);
+        addTerm(DELAY, NERVOUS);
+        addTerm(EYE, ABNORMALITY);
+    }
+
+    PatientPhenotypeIndex getIndex()
+    {
+        return this.index;
+    }
+
+    SolrClient getServer()
+    {
+        return this.server;
+    }
+
+    QueryResponse getResponse()
+    {
+        return this.response;
+    }
+
+    Vocabulary getVocabulary()
+    {
+        return this.hpo;
+    }
+
+    /**
+     * Adds a term to the mocked HPO.
+     *
+     * @param id the identifier of the new term
+     * @param parentId the identifier of its parent, already added, or {@code null} for a root term
+     */
+    void addTerm(String id, String parentId)
+    {
+        VocabularyTerm term = mock(VocabularyTerm.class);
+        when(term.getId()).thenReturn(id);
+        Set<VocabularyTerm> ancestors = new LinkedHashSet<>();
+        ancestors.add(term);
+        if (parentId != null) {
+            ancestors.addAll(this.terms.get(parentId).getAncestorsAndSelf());
+        }
+        when(term.getAncestorsAndSelf()).thenReturn(ancestors);
+        when(this.hpo.getTerm(id)).thenReturn(term);
+        this.terms.put(id, term);
+    }
+
+    /**
+     * Adds a binary tree of 1023 terms, 10 levels deep, numbered from 1 like a heap and identified by
+     * {@link #termId(int)}.
+     */
+    void addTermTree()
+    {
+        for (int i = 1; i < 1024; ++i) {
+            addTerm(termId(i), i == 1 ? null : termId(i / 2));
+        }
+    }
+
+    /**
+     * Adds a patient to the mocked Solr core, read the next time the index is built.
+     *
+     * @param id the identifier of the patient
+     * @param field the phenotype field holding the terms
+     * @param terms the identifiers of the terms stored in that field
+     */
+    void addIndexedPatient(String id, String field, String... terms)
+    {
+        SolrDocument patient = new SolrDocument();
+        patient.setField("document", document(id));
+        patient.setField(field, Arrays.asList(terms));
+        this.indexedPatients.add(patient);
+        this.indexedPatients.setNumFound(this.indexedPatients.size());
+    }
+
+    /**
+     * Removes a patient from the mocked Solr core.
+     *
+     * @param position the position of the patient, in the order they were added
+     */
+    void removeIndexedPatient(int position)
+    {
+        this.indexedPatients.remove(position);
+        this.indexedPatients.setNumFound(this.indexedPatients.size());
+    }
+
+    void clearIndexedPatients()
+    {
+        this.indexedPatients.clear();
+        this.indexedPatients.setNumFound(0);
+    }
+
+    /**
+     * Mocks a patient whose document reference is serialized the way the index expects.
+     *
+     * @param id the identifier of the patient
+     * @param terms the identifiers of the observed terms
+     * @return the mocked patient
+     */
+    Patient mockPatient(String id, String... terms)
+    {
+        Patient patient = mock(Patient.class);
+        DocumentReference reference = reference(id);
+        when(patient.getDocumentReference()).thenReturn(reference);
+        when(this.serializer.serialize(reference)).thenReturn(document(id));
+        Set<Feature> features = new HashSet<>();
+        for (String term : terms) {
+            Feature feature = mock(Feature.class);
+            when(feature.getId()).thenReturn(term);
+            when(feature.isPresent()).thenReturn(true);
+            features.add(feature);
+        }
+        doReturn(features).when(patient).getFeatures();
+        return patient;
+    }
+
+    static DocumentReference reference(String id)
+    {
+        return new DocumentReference("xwiki", "data", id);
+    }
+
+    static String document(String id)
+    {
+        return "xwiki:data." + id;
+    }
+
+    static String termId(int number)
+    {
+        return String.format("HP:%07d", number);
+    }
+}
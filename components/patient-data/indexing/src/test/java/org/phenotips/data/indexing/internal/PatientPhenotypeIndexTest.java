@@ -0,0 +1,350 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.SolrParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.ABNORMALITY;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.DELAY;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.EYE;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.NERVOUS;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.PHENOTYPE;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.ROOT;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.SEIZURES;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.UNKNOWN;
+import static org.phenotips.data.indexing.internal.PatientPhenotypeIndexFixture.document;
+
+/**
+ * Tests for the {@link PatientPhenotypeIndex} component.
+ *
+ * @version $Id$
+ */
+public class PatientPhenotypeIndexTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<PatientPhenotypeIndex> mocker =
+        new MockitoComponentMockingRule<>(PatientPhenotypeIndex.class);
+
+    private PatientPhenotypeIndexFixture fixture;
+
+    private SolrClient server;
+
+    private QueryResponse response;
+
+    private Vocabulary hpo;
+
+    private PatientPhenotypeIndex index;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.fixture = new PatientPhenotypeIndexFixture(this.mocker);
+        this.index = this.fixture.getIndex();
+        this.server = this.fixture.getServer();
+        this.response = this.fixture.getResponse();
+        this.hpo = this.fixture.getVocabulary();
+
+        this.fixture.addIndexedPatient("P0000001", PHENOTYPE, SEIZURES);
+        this.fixture.addIndexedPatient("P0000002", PHENOTYPE, DELAY, EYE);
+        this.fixture.addIndexedPatient("P0000003", "prenatal_phenotype", EYE);
+        this.fixture.addIndexedPatient("P0000004", "negative_phenotype", SEIZURES);
+        this.fixture.addIndexedPatient("P0000005", PHENOTYPE, UNKNOWN);
+    }
+
+    @Test
+    public void patientsAndTermsAreNumbered()
+    {
+        this.index.read(() -> {
+            Assert.assertEquals(5, this.index.getIndexedPatients().cardinality());
+            Assert.assertEquals(6, this.index.getTermCount());
+            Assert.assertNull(this.index.getTermNumber(UNKNOWN));
+
+            int seizures = this.index.getTermNumber(SEIZURES);
+            int nervous = this.index.getTermNumber(NERVOUS);
+            int root = this.index.getTermNumber(ROOT);
+            Assert.assertEquals(document("P0000001"), this.index.getReference(0));
+            Assert.assertArrayEquals(new int[] { seizures }, this.index.getTerms(0));
+            Assert.assertEquals(2, this.index.getTerms(1).length);
+            Assert.assertEquals(0, this.index.getTerms(3).length);
+            Assert.assertEquals(0, this.index.getTerms(4).length);
+
+            // Selected terms come first in their list of ancestors, terms only known as ancestors have no such list
+            int[] ancestors = this.index.getAncestors(seizures);
+            Assert.assertEquals(4, ancestors.length);
+            Assert.assertEquals(seizures, ancestors[0]);
+            Assert.assertTrue(Arrays.stream(ancestors).anyMatch(term -> term == root));
+            Assert.assertNull(this.index.getAncestors(nervous));
+
+            Assert.assertEquals(bits(0, 1), this.index.getPatients(nervous));
+            Assert.assertEquals(bits(0, 1, 2), this.index.getPatients(root));
+            return null;
+        });
+    }
+
+    @Test
+    public void indexIsBuiltOnceFromTheSolrIndex() throws SolrServerException, IOException
+    {
+        Assert.assertEquals(5, count());
+        Assert.assertEquals(5, count());
+        verify(this.server, times(1)).query(any(SolrParams.class));
+        verify(this.hpo, times(1)).getTerm(SEIZURES);
+
+        this.index.reindex();
+        this.fixture.removeIndexedPatient(0);
+        Assert.assertEquals(4, count());
+        verify(this.server, times(2)).query(any(SolrParams.class));
+        // The ancestors are looked up again, since they may have changed
+        verify(this.hpo, times(2)).getTerm(SEIZURES);
+    }
+
+    @Test
+    public void ancestorsAreLookedUpOnce()
+    {
+        Assert.assertArrayEquals(new String[] { DELAY, NERVOUS, ABNORMALITY, ROOT },
+            this.index.getAncestorsAndSelf(DELAY));
+        Assert.assertArrayEquals(new String[0], this.index.getAncestorsAndSelf(UNKNOWN));
+        this.index.getAncestorsAndSelf(DELAY);
+        this.index.getAncestorsAndSelf(UNKNOWN);
+        verify(this.hpo, times(1)).getTerm(DELAY);
+        verify(this.hpo, times(1)).getTerm(UNKNOWN);
+    }
+
+    @Test
+    public void changesAreTracked()
+    {
+        Patient patient = this.fixture.mockPatient("P0000003", EYE, SEIZURES);
+        // Changes made before the index is built are read from the Solr index
+        this.index.index(patient);
+        Assert.assertEquals(bits(0), this.index.read(() -> this.index.getPatients(this.index.getTermNumber(SEIZURES))));
+
+        this.index.index(patient);
+        long version = this.index.read(() -> {
+            Assert.assertEquals(bits(0, 2), this.index.getPatients(this.index.getTermNumber(SEIZURES)));
+            Assert.assertEquals(2, this.index.getTerms(2).length);
+            return this.index.getVersion();
+        });
+
+        // Unknown patients don't modify the index
+        this.index.delete(this.fixture.mockPatient("P0000009"));
+        Assert.assertEquals(version, (long) this.index.read(this.index::getVersion));
+
+        this.index.index(this.fixture.mockPatient("P0000002", EYE));
+        this.index.delete(this.fixture.mockPatient("P0000001"));
+        this.index.read(() -> {
+            Assert.assertTrue(this.index.getPatients(this.index.getTermNumber(DELAY)).isEmpty());
+            Assert.assertEquals(bits(2), this.index.getPatients(this.index.getTermNumber(SEIZURES)));
+            Assert.assertEquals(bits(1, 2, 3, 4), this.index.getIndexedPatients());
+            Assert.assertNull(this.index.getReference(0));
+            return null;
+        });
+        Assert.assertNotEquals(version, (long) this.index.read(this.index::getVersion));
+
+        // The number of the deleted patient is reused
+        this.index.index(this.fixture.mockPatient("P0000006", DELAY));
+        this.index.read(() -> {
+            Assert.assertEquals(document("P0000006"), this.index.getReference(0));
+            Assert.assertEquals(bits(0), this.index.getPatients(this.index.getTermNumber(DELAY)));
+            return null;
+        });
+    }
+
+    @Test
+    public void indexIsEmptyWhenSolrFails() throws SolrServerException, IOException
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("failed"));
+        Assert.assertEquals(0, count());
+        Assert.assertNull(this.index.read(() -> this.index.getTermNumber(ROOT)));
+        verify(this.mocker.getMockedLogger()).warn(anyString(), eq(30L), eq("failed"));
+    }
+
+    @Test
+    public void failedBuildsAreRetriedAfterADelay() throws Exception
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("failed"))
+            .thenReturn(this.response);
+        Assert.assertEquals(0, count());
+        // Readers don't try to build the index again right away
+        Assert.assertEquals(0, count());
+        verify(this.server, times(1)).query(any(SolrParams.class));
+
+        ReflectionUtils.setFieldValue(this.index, "nextBuildAttempt", 0L);
+        Assert.assertEquals(5, count());
+        verify(this.server, times(2)).query(any(SolrParams.class));
+    }
+
+    @Test
+    public void retryDelayIsDoubledAfterEachFailure() throws Exception
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("failed"));
+        for (int i = 0; i < 8; ++i) {
+            ReflectionUtils.setFieldValue(this.index, "nextBuildAttempt", 0L);
+            count();
+        }
+        verify(this.mocker.getMockedLogger()).warn(anyString(), eq(30L), eq("failed"));
+        verify(this.mocker.getMockedLogger()).warn(anyString(), eq(60L), eq("failed"));
+        verify(this.mocker.getMockedLogger()).warn(anyString(), eq(960L), eq("failed"));
+        verify(this.mocker.getMockedLogger(), times(2)).warn(anyString(), eq(1800L), eq("failed"));
+    }
+
+    @Test
+    public void explicitReindexRetriesRightAway() throws Exception
+    {
+        when(this.server.query(any(SolrParams.class))).thenThrow(new SolrServerException("failed"))
+            .thenReturn(this.response);
+        Assert.assertEquals(0, count());
+
+        this.index.reindex();
+        Assert.assertEquals(5, count());
+        verify(this.server, times(2)).query(any(SolrParams.class));
+    }
+
+    @Test
+    public void indexIsDiscardedWhenTheHPOIsReindexed() throws Exception
+    {
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        verify(observationManager).addListener(this.index);
+        Assert.assertEquals("patient-phenotype-index", this.index.getName());
+        Assert.assertEquals(1, this.index.getEvents().size());
+        Assert.assertTrue(this.index.getEvents().get(0).matches(new VocabularyReindexedEvent("hpo")));
+
+        Assert.assertEquals(5, count());
+        verify(this.hpo, times(1)).getTerm(SEIZURES);
+
+        // Other vocabularies don't influence the index
+        this.index.onEvent(new VocabularyReindexedEvent("omim"), mock(Vocabulary.class), null);
+        this.index.onEvent(new VocabularyReindexedEvent("omim"), null, null);
+        Assert.assertEquals(5, count());
+        verify(this.server, times(1)).query(any(SolrParams.class));
+
+        // The terms may have new ancestors, so they are looked up again
+        this.index.onEvent(new VocabularyReindexedEvent("hpo"), this.hpo, null);
+        Assert.assertEquals(5, count());
+        verify(this.server, times(2)).query(any(SolrParams.class));
+        verify(this.hpo, times(2)).getTerm(SEIZURES);
+    }
+
+    @Test(timeout = 10000)
+    public void changesMadeWhileBuildingAreNotBlockedAndAreKept() throws Exception
+    {
+        Patient added = this.fixture.mockPatient("P0000006", DELAY);
+        Patient deleted = this.fixture.mockPatient("P0000001");
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        blockBuild(building, release);
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> firstCount = reader.submit(this::count);
+            building.await();
+            // The build is waiting for Solr, updates must not wait for it
+            this.index.index(added);
+            this.index.delete(deleted);
+            release.countDown();
+
+            Assert.assertEquals(5, (int) firstCount.get());
+            this.index.read(() -> {
+                Assert.assertTrue(this.index.getPatients(this.index.getTermNumber(SEIZURES)).isEmpty());
+                BitSet delay = this.index.getPatients(this.index.getTermNumber(DELAY));
+                Assert.assertEquals(2, delay.cardinality());
+                String addedDocument = document("P0000006");
+                Assert.assertTrue(delay.stream().anyMatch(i -> addedDocument.equals(this.index.getReference(i))));
+                return null;
+            });
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void buildsDiscardedMeanwhileAreDropped() throws Exception
+    {
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        blockBuild(building, release);
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> firstCount = reader.submit(this::count);
+            building.await();
+            this.index.reindex();
+            release.countDown();
+
+            Assert.assertEquals(0, (int) firstCount.get());
+            Assert.assertEquals(5, count());
+            verify(this.server, times(2)).query(any(SolrParams.class));
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    /**
+     * Makes the first Solr query wait until it is released.
+     */
+    private void blockBuild(CountDownLatch building, CountDownLatch release) throws Exception
+    {
+        when(this.server.query(any(SolrParams.class))).then(invocation -> {
+            building.countDown();
+            release.await();
+            return this.response;
+        }).thenReturn(this.response);
+    }
+
+    private int count()
+    {
+        return this.index.read(() -> this.index.getIndexedPatients().cardinality());
+    }
+
+    private BitSet bits(int... numbers)
+    {
+        BitSet result = new BitSet();
+        for (int number : numbers) {
+            result.set(number);
+        }
+        return result;
+    }
+}
@@ -30,6 +30,7 @@
 import org.phenotips.data.permissions.Visibility;
 import org.phenotips.data.permissions.internal.DefaultEntityAccess;
 import org.phenotips.data.permissions.internal.visibility.PublicVisibility;
+import org.phenotips.vocabulary.SolrCommitPolicy;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
@@ -84,6 +85,7 @@
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -138,6 +140,7 @@ public void setUp() throws Exception
 
         SolrCoreContainerHandler cores = this.mocker.getInstance(SolrCoreContainerHandler.class);
         doReturn(mock(CoreContainer.class)).when(cores).getContainer();
+        doReturn(new SolrCommitPolicy(-1, true)).when(cores).getCommitPolicy("patients");
 
         Utils.setComponentManager(this.cm);
         ReflectionUtils.setFieldValue(new ComponentManagerRegistry(), "cmProvider", this.mockProvider);
@@ -379,14 +382,15 @@ public void deleteDefaultBehaviourTest() throws IOException, SolrServerException
         this.patientIndexer.delete(this.patient);
         verify(this.server).deleteByQuery("document:"
             + ClientUtils.escapeQueryChars(this.patientDocReference.toString()));
-        verify(this.server).commit();
+        verify(this.server).commit(true, true, true);
+        verify(this.server, never()).commit();
     }
 
     @Test
     public void deleteThrowsSolrException() throws IOException, SolrServerException
     {
         doReturn(this.patientDocReference).when(this.patient).getDocumentReference();
-        doThrow(new SolrServerException("commit failed")).when(this.server).commit();
+        doThrow(new SolrServerException("commit failed")).when(this.server).commit(true, true, true);
         this.patientIndexer.delete(this.patient);
         verify(this.logger).warn("Failed to delete from Solr: {}", "commit failed");
     }
@@ -395,7 +399,7 @@ public void deleteThrowsSolrException() throws IOException, SolrServerException
     public void deleteThrowsIOException() throws IOException, SolrServerException
     {
         doReturn(this.patientDocReference).when(this.patient).getDocumentReference();
-        doThrow(new IOException("commit failed")).when(this.server).commit();
+        doThrow(new IOException("commit failed")).when(this.server).commit(true, true, true);
         this.patientIndexer.delete(this.patient);
         verify(this.logger).warn("Error occurred while deleting Solr documents: {}", "commit failed");
     }
@@ -432,7 +436,9 @@ public void reindexDefaultBehaviour() throws QueryException, IOException, SolrSe
         this.patientIndexer.reindex();
 
         verify(this.server).deleteByQuery("*:*");
+        verify(this.server).add(any(SolrInputDocument.class));
         verify(this.server).commit();
+        verify(this.server, never()).commit(true, true, true);
 
     }
 
@@ -0,0 +1,108 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.script;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilaritySearch;
+
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PatientSimilarityScriptService} component.
+ *
+ * @version $Id$
+ */
+public class PatientSimilarityScriptServiceTest
+{
+    private static final String ID = "data.P0000001";
+
+    private static final Collection<String> PHENOTYPES = Collections.singleton("HP:0001250");
+
+    @Rule
+    public final MockitoComponentMockingRule<ScriptService> mocker =
+        new MockitoComponentMockingRule<>(PatientSimilarityScriptService.class);
+
+    private PatientSimilarityScriptService service;
+
+    private PatientRepository repository;
+
+    private PatientSimilaritySearch search;
+
+    private Patient patient = mock(Patient.class);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.service = (PatientSimilarityScriptService) this.mocker.getComponentUnderTest();
+        this.repository = this.mocker.getInstance(PatientRepository.class, "secure");
+        this.search = this.mocker.getInstance(PatientSimilaritySearch.class);
+        when(this.repository.get(ID)).thenReturn(this.patient);
+    }
+
+    @Test
+    public void searchesAreForwarded()
+    {
+        Map<String, Double> matches = Collections.singletonMap("P0000002", 1.5);
+        when(this.search.findSimilarPatients(this.patient, 20)).thenReturn(matches);
+        when(this.search.findSimilarPatients(PHENOTYPES, 20)).thenReturn(matches);
+        Assert.assertEquals(matches, this.service.findSimilarPatients(ID, 20));
+        Assert.assertEquals(matches, this.service.findSimilarPatients(PHENOTYPES, 20));
+    }
+
+    @Test
+    public void limitIsClamped()
+    {
+        this.service.findSimilarPatients(ID, Integer.MAX_VALUE);
+        verify(this.search).findSimilarPatients(this.patient, 1000);
+        this.service.findSimilarPatients(ID, -5);
+        verify(this.search).findSimilarPatients(this.patient, 1);
+
+        this.service.findSimilarPatients(PHENOTYPES, 1001);
+        verify(this.search).findSimilarPatients(PHENOTYPES, 1000);
+        this.service.findSimilarPatients(PHENOTYPES, 0);
+        verify(this.search).findSimilarPatients(PHENOTYPES, 1);
+    }
+
+    @Test
+    public void inaccessiblePatientsAreNotSearched()
+    {
+        when(this.repository.get("data.P0000009")).thenReturn(null);
+        when(this.repository.get("data.P0000010")).thenThrow(new SecurityException());
+        when(this.repository.get("wrong")).thenThrow(new IllegalArgumentException());
+        Assert.assertTrue(this.service.findSimilarPatients("data.P0000009", 10).isEmpty());
+        Assert.assertTrue(this.service.findSimilarPatients("data.P0000010", 10).isEmpty());
+        Assert.assertTrue(this.service.findSimilarPatients("wrong", 10).isEmpty());
+        verifyZeroInteractions(this.search);
+    }
+}
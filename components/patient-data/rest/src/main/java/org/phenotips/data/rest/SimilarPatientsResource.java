@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.rest;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.Relation;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Resource for finding the patients with the most similar phenotypes to a patient, using the
+ * {@link org.phenotips.data.indexing.PatientSimilaritySearch similarity search}.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Path("/patients/{entity-id}/similar")
+@ParentResource(PatientResource.class)
+@Relation("https://phenotips.org/rel/similarPatients")
+public interface SimilarPatientsResource
+{
+    /**
+     * Lists the patients most similar to a patient, among the patients that the current user can view. The response
+     * is a JSON object with the identifier of the reference patient in {@code id}, and the similar patients, most
+     * similar first, in the {@code similarPatients} array, each one with its {@code id} and similarity {@code score}.
+     *
+     * @param id the reference patient's internal identifier, see {@link org.phenotips.data.Patient#getId()}
+     * @param limit the maximum number of patients to return, between 1 and 1000
+     * @return the similar patients, {@code 404 Not Found} if the patient doesn't exist, {@code 403 Forbidden} if the
+     *         current user can't view it, or {@code 400 Bad Request} if the limit is not valid
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    Response getSimilarPatients(@PathParam("entity-id") String id,
+        @QueryParam("limit") @DefaultValue("20") int limit);
+}
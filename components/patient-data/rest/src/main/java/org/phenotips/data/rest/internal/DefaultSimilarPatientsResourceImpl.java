@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.rest.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilaritySearch;
+import org.phenotips.data.rest.SimilarPatientsResource;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation for {@link SimilarPatientsResource} using XWiki's support for REST resources.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("org.phenotips.data.rest.internal.DefaultSimilarPatientsResourceImpl")
+@Singleton
+public class DefaultSimilarPatientsResourceImpl extends XWikiResource implements SimilarPatientsResource
+{
+    /** The maximum number of patients that can be requested at once. */
+    private static final int MAX_LIMIT = 1000;
+
+    private static final String ID = "id";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private PatientRepository repository;
+
+    @Inject
+    private AuthorizationService access;
+
+    @Inject
+    private UserManager users;
+
+    @Inject
+    private PatientSimilaritySearch similaritySearch;
+
+    @Override
+    public Response getSimilarPatients(String id, int limit)
+    {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        Patient patient = this.repository.get(id);
+        if (patient == null) {
+            this.logger.debug("No such patient record: [{}]", id);
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        User currentUser = this.users.getCurrentUser();
+        if (!this.access.hasAccess(currentUser, Right.VIEW, patient.getDocumentReference())) {
+            this.logger.debug("View access denied to user [{}] on patient record [{}]", currentUser, id);
+            return Response.status(Status.FORBIDDEN).build();
+        }
+
+        JSONArray similarPatients = new JSONArray();
+        for (Map.Entry<String, Double> match : this.similaritySearch.findSimilarPatients(patient, limit).entrySet()) {
+            similarPatients.put(new JSONObject().put(ID, match.getKey()).put("score", match.getValue()));
+        }
+        JSONObject result = new JSONObject();
+        result.put(ID, patient.getId());
+        result.put("similarPatients", similarPatients);
+        return Response.ok(result, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+}
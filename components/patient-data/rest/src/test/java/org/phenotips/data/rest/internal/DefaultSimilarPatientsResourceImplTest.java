@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.rest.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.data.indexing.PatientSimilaritySearch;
+import org.phenotips.data.rest.SimilarPatientsResource;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultSimilarPatientsResourceImpl} component.
+ */
+public class DefaultSimilarPatientsResourceImplTest
+{
+    private static final String PATIENT_ID = "P0000001";
+
+    @Rule
+    public MockitoComponentMockingRule<SimilarPatientsResource> mocker =
+        new MockitoComponentMockingRule<>(DefaultSimilarPatientsResourceImpl.class);
+
+    @Mock
+    private User currentUser;
+
+    @Mock
+    private Patient patient;
+
+    private AuthorizationService access;
+
+    private PatientSimilaritySearch search;
+
+    private DocumentReference patientDocument;
+
+    private SimilarPatientsResource resource;
+
+    @Before
+    public void setUp() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+
+        Execution execution = mock(Execution.class);
+        ExecutionContext executionContext = mock(ExecutionContext.class);
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        doReturn(executionContext).when(execution).getContext();
+        doReturn(mock(XWikiContext.class)).when(executionContext).getProperty("xwikicontext");
+        this.resource = this.mocker.getComponentUnderTest();
+
+        this.access = this.mocker.getInstance(AuthorizationService.class);
+        this.search = this.mocker.getInstance(PatientSimilaritySearch.class);
+        UserManager users = this.mocker.getInstance(UserManager.class);
+        doReturn(this.currentUser).when(users).getCurrentUser();
+
+        this.patientDocument = new DocumentReference("wiki", "data", PATIENT_ID);
+        PatientRepository repository = this.mocker.getInstance(PatientRepository.class);
+        when(repository.get(PATIENT_ID)).thenReturn(this.patient);
+        when(this.patient.getDocumentReference()).thenReturn(this.patientDocument);
+        when(this.patient.getId()).thenReturn(PATIENT_ID);
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.patientDocument)).thenReturn(true);
+    }
+
+    @Test
+    public void similarPatientsAreListedInOrder()
+    {
+        Map<String, Double> matches = new LinkedHashMap<>();
+        matches.put("P0000003", 2.5);
+        matches.put("P0000002", 1.25);
+        when(this.search.findSimilarPatients(this.patient, 5)).thenReturn(matches);
+
+        Response response = this.resource.getSimilarPatients(PATIENT_ID, 5);
+
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        JSONObject json = (JSONObject) response.getEntity();
+        Assert.assertEquals(PATIENT_ID, json.getString("id"));
+        JSONArray similarPatients = json.getJSONArray("similarPatients");
+        Assert.assertEquals(2, similarPatients.length());
+        Assert.assertEquals("P0000003", similarPatients.getJSONObject(0).getString("id"));
+        Assert.assertEquals(2.5, similarPatients.getJSONObject(0).getDouble("score"), 0);
+        Assert.assertEquals("P0000002", similarPatients.getJSONObject(1).getString("id"));
+    }
+
+    @Test
+    public void missingPatientsAreNotFound()
+    {
+        Assert.assertEquals(Status.NOT_FOUND.getStatusCode(),
+            this.resource.getSimilarPatients("P0000009", 5).getStatus());
+        verify(this.search, never()).findSimilarPatients(any(Patient.class), anyInt());
+    }
+
+    @Test
+    public void inaccessiblePatientsAreForbidden()
+    {
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.patientDocument)).thenReturn(false);
+        Assert.assertEquals(Status.FORBIDDEN.getStatusCode(),
+            this.resource.getSimilarPatients(PATIENT_ID, 5).getStatus());
+        verify(this.search, never()).findSimilarPatients(any(Patient.class), anyInt());
+    }
+
+    @Test
+    public void invalidLimitsAreRejected()
+    {
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(),
+            this.resource.getSimilarPatients(PATIENT_ID, 0).getStatus());
+        Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(),
+            this.resource.getSimilarPatients(PATIENT_ID, 1001).getStatus());
+    }
+}
@@ -76,6 +76,95 @@
      */
     double standardDeviationToValue(boolean male, float ageInMonths, double targetDeviation);
 
+    /**
+     * Get the percentiles for several measured values at once.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the age of each measurement, in months
+     * @param values the measured values, usually in centimeters or kilograms, in the same order as the ages
+     * @return the percentile of each measurement, as returned by {@link #valueToPercentile(boolean, float, double)}
+     * @throws IllegalArgumentException if the number of ages and values differ
+     * @since 1.4
+     */
+    default int[] valuesToPercentiles(boolean male, float[] agesInMonths, double[] values)
+    {
+        if (agesInMonths.length != values.length) {
+            throw new IllegalArgumentException("Expected as many ages as values");
+        }
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = valueToPercentile(male, agesInMonths[i], values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the standard deviations for several measured values at once.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param agesInMonths the age of each measurement, in months
+     * @param values the measured values, usually in centimeters or kilograms, in the same order as the ages
+     * @return the standard deviation of each measurement, as returned by
+     *         {@link #valueToStandardDeviation(boolean, float, double)}
+     * @throws IllegalArgumentException if the number of ages and values differ
+     * @since 1.4
+     */
+    default double[] valuesToStandardDeviations(boolean male, float[] agesInMonths, double[] values)
+    {
+        if (agesInMonths.length != values.length) {
+            throw new IllegalArgumentException("Expected as many ages as values");
+        }
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = valueToStandardDeviation(male, agesInMonths[i], values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the measurements that correspond to a percentile at each age tick of a chart, from its
+     * {@link MeasurementsChartConfiguration#getLowerAgeLimit() lower age limit} to its
+     * {@link MeasurementsChartConfiguration#getUpperAgeLimit() upper age limit}, every
+     * {@link MeasurementsChartConfiguration#getAgeTickStep() age tick step}.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param targetPercentile a number between 0 and 100 (inclusive) specifying the target percentile
+     * @param chart the chart whose age ticks should be used
+     * @return the measurement at each age tick, as returned by {@link #percentileToValue(boolean, float, int)}
+     * @since 1.4
+     */
+    default double[] getPercentileCurve(boolean male, int targetPercentile, MeasurementsChartConfiguration chart)
+    {
+        int step = chart.getAgeTickStep();
+        double[] result = new double[(chart.getUpperAgeLimit() - chart.getLowerAgeLimit()) / step + 1];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = percentileToValue(male, chart.getLowerAgeLimit() + i * step, targetPercentile);
+        }
+        return result;
+    }
+
+    /**
+     * Get the measurements that correspond to a standard deviation at each age tick of a chart, like
+     * {@link #getPercentileCurve(boolean, int, MeasurementsChartConfiguration)}.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @param targetDeviation a number specifying the target deviation
+     * @param chart the chart whose age ticks should be used
+     * @return the measurement at each age tick, as returned by
+     *         {@link #standardDeviationToValue(boolean, float, double)}
+     * @since 1.4
+     */
+    default double[] getStandardDeviationCurve(boolean male, double targetDeviation,
+        MeasurementsChartConfiguration chart)
+    {
+        int step = chart.getAgeTickStep();
+        double[] result = new double[(chart.getUpperAgeLimit() - chart.getLowerAgeLimit()) / step + 1];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = standardDeviationToValue(male, chart.getLowerAgeLimit() + i * step, targetDeviation);
+        }
+        return result;
+    }
+
     /**
      * Some measurements should be taken on both sides of the body, since they can differ, for example different left
      * and right ear lengths. This method is used to indicate those measurements.
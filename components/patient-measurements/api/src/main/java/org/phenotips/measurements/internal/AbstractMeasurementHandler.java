@@ -47,6 +47,9 @@ public abstract class AbstractMeasurementHandler implements MeasurementHandler,
     /** Tool used for computing the percentile corresponding to a given z-score. */
     private static final NormalDistribution NORMAL = new NormalDistribution();
 
+    /** The average number of days in a month, used for converting ages in months into indexes in the LMS tables. */
+    private static final double DAYS_PER_MONTH = 30.4375;
+
     /**
      * Triplet storing the median (M), the generalized coefficient of variation (S), and the power in the Box-Cox
      * transformation (L) values used to compute the percentile corresponding to a given value.
@@ -83,6 +86,84 @@ public String toString()
         }
     }
 
+    /**
+     * The LMS triplets for each day of the normal development, stored as three parallel arrays of primitive values.
+     * Days without data between two known days are filled in by linear interpolation when the table is built, so
+     * that looking up a triplet neither searches for neighbours nor allocates a new object.
+     */
+    private static final class LMSTable
+    {
+        /** L values, the power, indexed by day. */
+        private final double[] l;
+
+        /** M values, the median, indexed by day. */
+        private final double[] m;
+
+        /** S values, the generalized coefficient of variation, indexed by day. */
+        private final double[] s;
+
+        /** The first day with data, triplets aren't known before it. */
+        private final int firstDay;
+
+        /**
+         * Builds the dense table from a sparse list of triplets.
+         *
+         * @param list triplets indexed by day, with {@code null} for the days without data
+         */
+        LMSTable(List<LMS> list)
+        {
+            int size = list.size();
+            this.l = new double[size];
+            this.m = new double[size];
+            this.s = new double[size];
+            int first = size;
+            int lowerDay = -1;
+            for (int day = 0; day < size; ++day) {
+                LMS upper = list.get(day);
+                if (upper == null) {
+                    continue;
+                }
+                if (lowerDay < 0) {
+                    first = day;
+                } else {
+                    LMS lower = list.get(lowerDay);
+                    for (int gap = lowerDay + 1; gap < day; ++gap) {
+                        double delta = ((double) gap - lowerDay) / (day - lowerDay);
+                        this.l[gap] = lower.l + (upper.l - lower.l) * delta;
+                        this.m[gap] = lower.m + (upper.m - lower.m) * delta;
+                        this.s[gap] = lower.s + (upper.s - lower.s) * delta;
+                    }
+                }
+                this.l[day] = upper.l;
+                this.m[day] = upper.m;
+                this.s[day] = upper.s;
+                lowerDay = day;
+            }
+            this.firstDay = first;
+        }
+
+        /**
+         * Finds the day whose triplet should be used for a given age, following the same rules as
+         * {@link AbstractMeasurementHandler#getLMSForAge(List, float)}.
+         *
+         * @param ageInMonths the target age, in months
+         * @return an index in the table, or {@code -1} if there is no data for the requested age
+         */
+        int getDay(float ageInMonths)
+        {
+            int day = (int) Math.round(ageInMonths * DAYS_PER_MONTH);
+            if (day >= this.l.length) {
+                day = this.l.length - 1;
+            }
+            return (day < 0 || day < this.firstDay) ? -1 : day;
+        }
+
+        boolean isEmpty()
+        {
+            return this.firstDay >= this.l.length;
+        }
+    }
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -103,6 +184,12 @@ public String toString()
      */
     private List<LMS> measurementsForAgeGirls;
 
+    /** The {@link #measurementsForAgeBoys boys data}, as a dense table. */
+    private LMSTable tableForBoys;
+
+    /** The {@link #measurementsForAgeGirls girls data}, as a dense table. */
+    private LMSTable tableForGirls;
+
     /** The list of chart settings configured for this measurement. */
     private List<MeasurementsChartConfiguration> chartConfigurations;
 
@@ -116,35 +203,52 @@ public String toString()
     @Override
     public int valueToPercentile(boolean male, float ageInMonths, double value)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
-        return valueToPercentile(value, lms);
+        LMSTable table = getLMSTable(male);
+        int day = table.getDay(ageInMonths);
+        if (day < 0) {
+            return -1;
+        }
+        return valueToPercentile(value, table.m[day], table.l[day], table.s[day]);
     }
 
     @Override
     public double valueToStandardDeviation(boolean male, float ageInMonths, double value)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
-        return valueToStandardDeviation(value, lms);
+        LMSTable table = getLMSTable(male);
+        int day = table.getDay(ageInMonths);
+        if (day < 0) {
+            return Double.NaN;
+        }
+        return valueToStandardDeviation(value, table.m[day], table.l[day], table.s[day]);
     }
 
     @Override
     public double percentileToValue(boolean male, float ageInMonths, int targetPercentile)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
-        if (lms == null) {
+        LMSTable table = getLMSTable(male);
+        int day = table.getDay(ageInMonths);
+        if (day < 0) {
             return Double.NaN;
         }
-        return percentileToValue(targetPercentile, lms.m, lms.l, lms.s);
+        return percentileToValue(targetPercentile, table.m[day], table.l[day], table.s[day]);
     }
 
     @Override
     public double standardDeviationToValue(boolean male, float ageInMonths, double targetDeviation)
     {
-        LMS lms = getLMSForAge(getLMSList(male), ageInMonths);
-        if (lms == null) {
+        LMSTable table = getLMSTable(male);
+        int day = table.getDay(ageInMonths);
+        if (day < 0) {
             return Double.NaN;
         }
-        return standardDeviationToValue(targetDeviation, lms.m, lms.l, lms.s);
+        return standardDeviationToValue(targetDeviation, table.m[day], table.l[day], table.s[day]);
+    }
+
+    @Override
+    public double[] getPercentileCurve(boolean male, int targetPercentile, MeasurementsChartConfiguration chart)
+    {
+        // All the points of a percentile curve share the same z-score, only compute it once
+        return getStandardDeviationCurve(male, percentileToStandardDeviation(targetPercentile), chart);
     }
 
     @Override
@@ -215,6 +319,8 @@ private void readData() throws InitializationException
             // This shouldn't happen
             this.logger.error("Failed to read data table [{}]: {}", new Object[] { filename, ex.getMessage(), ex });
         }
+        this.tableForBoys = new LMSTable(this.measurementsForAgeBoys);
+        this.tableForGirls = new LMSTable(this.measurementsForAgeGirls);
     }
 
     /**
@@ -231,7 +337,7 @@ private void readData() throws InitializationException
     protected LMS getLMSForAge(List<LMS> list, float ageInMonths)
     {
         // LMS data is stored per day, currently but input is given as a float for months
-        int ageInDays = (int) Math.round(ageInMonths * 30.4375);
+        int ageInDays = (int) Math.round(ageInMonths * DAYS_PER_MONTH);
         if (ageInDays < 0) {
             return null;
         } else if (ageInDays >= list.size()) {
@@ -338,6 +444,20 @@ protected double valueToStandardDeviation(double x, double m, double l, double s
      * @return a positive number specifying the expected measurement for the target percentile
      */
     protected double percentileToValue(int percentile, double m, double l, double s)
+    {
+        double z = percentileToStandardDeviation(percentile);
+        double x = (l != 0) ? Math.pow(z * l * s + 1, 1 / l) * m : Math.exp(z * s) * m;
+        return x;
+    }
+
+    /**
+     * Compute the z-score corresponding to a target percentile of the standard normal distribution.
+     *
+     * @param percentile the target percentile, a number between 0 and 100 (inclusive); the open ended 0 and 100
+     *            percentiles are replaced by the 0.25, respectively 99.75 percentage
+     * @return the z-score of the target percentile
+     */
+    private static double percentileToStandardDeviation(int percentile)
     {
         double correctedPercentile = percentile;
         if (percentile <= 0) {
@@ -345,9 +465,7 @@ protected double percentileToValue(int percentile, double m, double l, double s)
         } else if (percentile >= 100) {
             correctedPercentile = 99.75;
         }
-        double z = NORMAL.inverseCumulativeProbability(correctedPercentile / 100.0);
-        double x = (l != 0) ? Math.pow(z * l * s + 1, 1 / l) * m : Math.exp(z * s) * m;
-        return x;
+        return NORMAL.inverseCumulativeProbability(correctedPercentile / 100.0);
     }
 
     /**
@@ -379,4 +497,18 @@ protected List<LMS> getLMSList(boolean male)
         }
         return this.measurementsForAgeBoys;
     }
+
+    /**
+     * Choose between the girls and boys measurements table, following the same rules as {@link #getLMSList(boolean)}.
+     *
+     * @param male {@code true} for boys, {@code false} for girls
+     * @return a dense table of LMS triplets
+     */
+    private LMSTable getLMSTable(boolean male)
+    {
+        if (!male && !this.tableForGirls.isEmpty()) {
+            return this.tableForGirls;
+        }
+        return this.tableForBoys;
+    }
 }
@@ -18,6 +18,7 @@
 package org.phenotips.measurements.internal;
 
 import org.phenotips.measurements.MeasurementHandler;
+import org.phenotips.measurements.MeasurementsChartConfiguration;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
@@ -26,6 +27,9 @@
 import org.junit.Rule;
 import org.junit.Test;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 /**
  * Tests for the {@link WeightMeasurementHandler} component.
  *
@@ -106,4 +110,74 @@ public void testIsDoubleSided() throws ComponentLookupException
     {
         Assert.assertFalse(this.mocker.getComponentUnderTest().isDoubleSided());
     }
+
+    @Test
+    public void testTablesMatchInterpolatedValues() throws ComponentLookupException
+    {
+        AbstractMeasurementHandler handler = (AbstractMeasurementHandler) this.mocker.getComponentUnderTest();
+        for (boolean male : new boolean[] { true, false }) {
+            for (float age = -1; age < 300; age += 0.07f) {
+                AbstractMeasurementHandler.LMS lms = handler.getLMSForAge(handler.getLMSList(male), age);
+                Assert.assertEquals(handler.valueToStandardDeviation(10.0, lms),
+                    handler.valueToStandardDeviation(male, age, 10.0), 0);
+                Assert.assertEquals(handler.valueToPercentile(10.0, lms), handler.valueToPercentile(male, age, 10.0));
+            }
+        }
+    }
+
+    @Test
+    public void testBulkConversions() throws ComponentLookupException
+    {
+        MeasurementHandler handler = this.mocker.getComponentUnderTest();
+        float[] ages = new float[] { 0, 0, 349, 1000, -1 };
+        double[] values = new double[] { 3.35, 0, 67.0, 71.9, 4.0 };
+        Assert.assertArrayEquals(new int[] { 50, 0, 32, 50, -1 }, handler.valuesToPercentiles(true, ages, values));
+
+        double[] deviations = handler.valuesToStandardDeviations(false, ages, values);
+        for (int i = 0; i < ages.length; ++i) {
+            Assert.assertEquals(handler.valueToStandardDeviation(false, ages[i], values[i]), deviations[i], 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkConversionsRequireMatchingArrays() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().valuesToPercentiles(true, new float[2], new double[3]);
+    }
+
+    @Test
+    public void testCurves() throws ComponentLookupException
+    {
+        MeasurementHandler handler = this.mocker.getComponentUnderTest();
+        MeasurementsChartConfiguration chart = mock(MeasurementsChartConfiguration.class);
+        when(chart.getLowerAgeLimit()).thenReturn(24);
+        when(chart.getUpperAgeLimit()).thenReturn(240);
+        when(chart.getAgeTickStep()).thenReturn(12);
+
+        double[] percentiles = handler.getPercentileCurve(false, 97, chart);
+        double[] deviations = handler.getStandardDeviationCurve(true, -2, chart);
+        Assert.assertEquals(19, percentiles.length);
+        Assert.assertEquals(19, deviations.length);
+        for (int i = 0; i < percentiles.length; ++i) {
+            Assert.assertEquals(handler.percentileToValue(false, 24 + i * 12, 97), percentiles[i], 1.0E-9);
+            Assert.assertEquals(handler.standardDeviationToValue(true, 24 + i * 12, -2), deviations[i], 1.0E-9);
+        }
+    }
+
+    /** Benchmark-style check that recomputing percentiles for many measurements doesn't search or allocate. */
+    @Test(timeout = 10000)
+    public void testBulkConversionsAreFast() throws ComponentLookupException
+    {
+        MeasurementHandler handler = this.mocker.getComponentUnderTest();
+        int count = 1000000;
+        float[] ages = new float[count];
+        double[] values = new double[count];
+        for (int i = 0; i < count; ++i) {
+            ages[i] = (i % 2400) / 10f;
+            values[i] = 3 + (i % 70);
+        }
+        int[] percentiles = handler.valuesToPercentiles(true, ages, values);
+        Assert.assertEquals(count, percentiles.length);
+        Assert.assertEquals(handler.valueToPercentile(true, ages[12345], values[12345]), percentiles[12345]);
+    }
 }
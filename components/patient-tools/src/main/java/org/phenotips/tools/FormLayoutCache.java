@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.tools;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
+
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.text.WordUtils;
+
+/**
+ * The parts of the phenotype form layout that only depend on the vocabulary: the default top sections, the categories
+ * each term belongs to, and whether a term can be expanded into more specific terms. These are computed once and
+ * reused by all the forms displayed until the vocabulary is reindexed; the owner of the cache must register it as an
+ * event listener, so that it is notified when that happens. Safe for concurrent use.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class FormLayoutCache implements EventListener
+{
+    private static final String PHENOTYPIC_ABNORMALITY = "HP:0000118";
+
+    private static final String INDEXED_PARENT_KEY = "is_a";
+
+    private final Vocabulary vocabulary;
+
+    private volatile Layout layout = new Layout();
+
+    /**
+     * Simple constructor.
+     *
+     * @param vocabulary the vocabulary used in the forms, HPO
+     */
+    FormLayoutCache(Vocabulary vocabulary)
+    {
+        this.vocabulary = vocabulary;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "phenotype-form-layout-cache";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Collections.<Event>singletonList(new VocabularyReindexedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (source == this.vocabulary) {
+            this.layout = new Layout();
+        }
+    }
+
+    /**
+     * The sections that are displayed by default: the direct children of "Phenotypic abnormality", "Death", and the
+     * catch-all root term.
+     *
+     * @return an unmodifiable map, in display order, from the category of each section to its title
+     */
+    Map<String, String> getTopSections()
+    {
+        Layout current = this.layout;
+        Map<String, String> result = current.topSections;
+        if (result == null) {
+            List<String> sectionIds = new LinkedList<>();
+            for (VocabularyTerm section : this.vocabulary
+                .search(Collections.singletonMap(INDEXED_PARENT_KEY, PHENOTYPIC_ABNORMALITY))) {
+                sectionIds.add(section.getId());
+            }
+            // Explicitly add Death, since it's not part of the "Phenotypic abnormality" branch of HPO, but still makes
+            // sense as a patient feature
+            sectionIds.add("HP:0011420");
+            // Catch-all, in case someone wants to add a qualifier
+            sectionIds.add("HP:0000001");
+
+            Map<String, String> sections = new LinkedHashMap<>();
+            for (String sectionId : sectionIds) {
+                VocabularyTerm term = this.vocabulary.getTerm(sectionId);
+                if (term != null && !sections.containsKey(sectionId)) {
+                    String title = term.getName().replace("Abnormality of the ", "").replace("Abnormality of ", "");
+                    sections.put(sectionId, WordUtils.capitalizeFully(title));
+                }
+            }
+            result = Collections.unmodifiableMap(sections);
+            current.topSections = result;
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a term has more specific terms in the vocabulary.
+     *
+     * @param id the identifier of the term to check
+     * @return {@code true} if the term has at least one child
+     */
+    boolean hasDescendants(String id)
+    {
+        return this.layout.expandable.computeIfAbsent(id,
+            key -> this.vocabulary.count(Collections.singletonMap(INDEXED_PARENT_KEY, key)) > 0);
+    }
+
+    /**
+     * Lists the indexed categories, i.e. the ancestors, of a term.
+     *
+     * @param id the identifier of the term
+     * @return an unmodifiable list of category identifiers, empty if the term is unknown
+     */
+    List<String> getCategories(String id)
+    {
+        Layout current = this.layout;
+        List<String> result = current.categories.get(id);
+        if (result == null) {
+            VocabularyTerm term = this.vocabulary.getTerm(id);
+            Object categories = term == null ? null : term.get(PropertyDisplayer.INDEXED_CATEGORY_KEY);
+            if (categories instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<String> categoryIds = (List<String>) categories;
+                result = Collections.unmodifiableList(new LinkedList<>(categoryIds));
+            } else {
+                result = Collections.emptyList();
+            }
+            current.categories.put(id, result);
+        }
+        return result;
+    }
+
+    /** Everything computed from the current vocabulary index. */
+    private static final class Layout
+    {
+        private final Map<String, Boolean> expandable = new ConcurrentHashMap<>();
+
+        private final Map<String, List<String>> categories = new ConcurrentHashMap<>();
+
+        private volatile Map<String, String> topSections;
+    }
+}
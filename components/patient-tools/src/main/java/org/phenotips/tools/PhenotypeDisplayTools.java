@@ -21,7 +21,10 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.context.Execution;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.script.service.ScriptService;
 
 import java.util.Collection;
@@ -47,7 +50,7 @@
 @Component
 @Named("phenotype")
 @Singleton
-public class PhenotypeDisplayTools implements ScriptService
+public class PhenotypeDisplayTools implements ScriptService, Initializable
 {
     private static final String CONTEXT_KEY = "pdt.data";
 
@@ -63,6 +66,20 @@ public class PhenotypeDisplayTools implements ScriptService
     @Named("hpo")
     private Vocabulary ontologyService;
 
+    /** Used for discarding the {@link #layoutCache} when the vocabulary is reindexed. */
+    @Inject
+    private ObservationManager observationManager;
+
+    /** Vocabulary data reused across all the displayed forms. */
+    private FormLayoutCache layoutCache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.layoutCache = new FormLayoutCache(this.ontologyService);
+        this.observationManager.addListener(this.layoutCache);
+    }
+
     public void use(String prefix, String name)
     {
         getFormData().setPositivePropertyName(name);
@@ -121,7 +138,7 @@ public String display(Collection<Map<String, ?>> template)
     {
         try {
             FormData formData = this.replaceOldTerms(this.getFormData());
-            return new PropertyDisplayer(template, formData, this.ontologyService).display();
+            return new PropertyDisplayer(template, formData, this.ontologyService, this.layoutCache).display();
         } catch (Exception ex) {
             this.logger.error("An error has occurred while trying to display phenotypes. {}", ex.getMessage(), ex);
             return "";
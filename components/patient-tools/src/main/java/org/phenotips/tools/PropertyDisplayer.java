@@ -27,6 +27,7 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -35,7 +36,6 @@
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.WordUtils;
 
 import com.xpn.xwiki.api.Property;
 
@@ -65,8 +65,6 @@
 
     public static final String INDEXED_CATEGORY_KEY = "term_category";
 
-    private static final String INDEXED_PARENT_KEY = "is_a";
-
     protected Vocabulary ontologyService;
 
     private final FormData data;
@@ -79,10 +77,23 @@
 
     private List<FormSection> sections = new LinkedList<>();
 
+    /** Vocabulary data shared between all the displayed forms. */
+    private final FormLayoutCache layoutCache;
+
+    /** The terms already looked up while building this form; unknown terms are mapped to {@code null}. */
+    private final Map<String, VocabularyTerm> terms = new HashMap<>();
+
     PropertyDisplayer(Collection<Map<String, ?>> template, FormData data, Vocabulary ontologyService)
+    {
+        this(template, data, ontologyService, new FormLayoutCache(ontologyService));
+    }
+
+    PropertyDisplayer(Collection<Map<String, ?>> template, FormData data, Vocabulary ontologyService,
+        FormLayoutCache layoutCache)
     {
         this.data = data;
         this.ontologyService = ontologyService;
+        this.layoutCache = layoutCache;
         this.fieldNames = new String[2];
         this.fieldNames[0] = data.getPositiveFieldName();
         this.fieldNames[1] = data.getNegativeFieldName();
@@ -98,6 +109,13 @@
         }
 
         template = replaceOtherWithTopSections(template);
+        Set<String> usedTerms = new HashSet<>();
+        usedTerms.add(ROOT_ID);
+        usedTerms.addAll(customYesSelected);
+        usedTerms.addAll(customNoSelected);
+        collectTermIds(template, usedTerms);
+        resolveTerms(usedTerms);
+
         for (Map<String, ?> sectionTemplate : template) {
             if (isSection(sectionTemplate)) {
                 this.sections.add(generateSection(sectionTemplate, customYesSelected, customNoSelected));
@@ -110,9 +128,9 @@
     protected void putTermsInSections(List<String> selectedTerms, Map<String, List<String>> customCategories,
         boolean positive)
     {
+        VocabularyTerm root = getTerm(ROOT_ID);
         for (String value : selectedTerms) {
-            VocabularyTerm term = this.ontologyService.getTerm(value);
-            VocabularyTerm root = this.ontologyService.getTerm(ROOT_ID);
+            VocabularyTerm term = getTerm(value);
             List<String> categories = new LinkedList<>();
             categories.addAll(this.getCategoriesFromOntology(value));
             categories.addAll(this.getCategoriesFromCustomMapping(value, customCategories));
@@ -154,8 +172,83 @@ protected void putTermsInSections(List<String> selectedTerms, Map<String, List<S
      */
     private VocabularyTerm getCategoryTerm(final String categoryId)
     {
-        final VocabularyTerm categoryTerm = this.ontologyService.getTerm(categoryId);
-        return categoryTerm != null ? categoryTerm : this.ontologyService.getTerm(ROOT_ID);
+        final VocabularyTerm categoryTerm = getTerm(categoryId);
+        return categoryTerm != null ? categoryTerm : getTerm(ROOT_ID);
+    }
+
+    /**
+     * Looks up a term, remembering it for the rest of the form.
+     *
+     * @param id the identifier of the term
+     * @return the term, or {@code null} if it isn't found in the vocabulary
+     */
+    private VocabularyTerm getTerm(String id)
+    {
+        if (this.terms.containsKey(id)) {
+            return this.terms.get(id);
+        }
+        VocabularyTerm term = this.ontologyService.getTerm(id);
+        this.terms.put(id, term);
+        return term;
+    }
+
+    /**
+     * Looks up all the terms needed for building the form with a single vocabulary query. Terms which aren't found
+     * this way, for example because they are referenced by an alternative identifier, will be looked up individually
+     * when needed.
+     *
+     * @param ids the identifiers of the needed terms
+     */
+    private void resolveTerms(Set<String> ids)
+    {
+        Set<String> vocabularyIds = new HashSet<>();
+        for (String id : ids) {
+            if (StringUtils.startsWith(id, "HP:") && !this.terms.containsKey(id)) {
+                vocabularyIds.add(id);
+            }
+        }
+        if (vocabularyIds.isEmpty()) {
+            return;
+        }
+        Set<VocabularyTerm> resolved = this.ontologyService.getTerms(vocabularyIds);
+        if (resolved != null) {
+            for (VocabularyTerm term : resolved) {
+                if (term != null) {
+                    this.terms.put(term.getId(), term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the identifiers of all the terms mentioned in a template: field and subsection identifiers, and section
+     * categories.
+     *
+     * @param template the template items to inspect
+     * @param ids where to add the found identifiers
+     */
+    private void collectTermIds(Collection<?> template, Set<String> ids)
+    {
+        for (Object item : template) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> map = (Map<?, ?>) item;
+            if (map.get(ID_KEY) instanceof String) {
+                ids.add((String) map.get(ID_KEY));
+            }
+            Object categories = map.get(CATEGORIES_KEY);
+            if (categories instanceof String) {
+                ids.add((String) categories);
+            } else if (categories instanceof Collection) {
+                for (Object category : (Collection<?>) categories) {
+                    ids.add(String.valueOf(category));
+                }
+            }
+            if (map.get(DATA_KEY) instanceof Collection) {
+                collectTermIds((Collection<?>) map.get(DATA_KEY), ids);
+            }
+        }
     }
 
     public String display()
@@ -186,18 +279,8 @@ public String display()
         List<Map<String, ?>> template = new LinkedList<>();
         template.addAll(originalTemplate);
 
-        Map<String, String> m = new HashMap<>();
-        m.put("is_a", "HP:0000118");
-        List<VocabularyTerm> topSections = this.ontologyService.search(m);
-        Set<String> topSectionsId = new LinkedHashSet<>();
-        for (VocabularyTerm section : topSections) {
-            topSectionsId.add(section.getId());
-        }
-        // Explicitly add Death, since it's not part of the "Phenotypic abnormality" branch of HPO, but still makes
-        // sense as a patient feature
-        topSectionsId.add("HP:0011420");
-        // Catch-all, in case someone wants to add a qualifier
-        topSectionsId.add("HP:0000001");
+        Map<String, String> topSections = this.layoutCache.getTopSections();
+        Set<String> topSectionsId = new LinkedHashSet<>(topSections.keySet());
 
         for (Map<String, ?> sectionTemplate : template) {
             try {
@@ -228,17 +311,9 @@ public String display()
             }
         }
         for (String sectionId : topSectionsId) {
-            VocabularyTerm term = this.ontologyService.getTerm(sectionId);
-            if (term == null) {
-                continue;
-            }
             Map<String, Object> templateSection = new HashMap<>();
-
-            String title = term.getName();
-            title = title.replace("Abnormality of the ", "").replace("Abnormality of ", "");
-            title = WordUtils.capitalizeFully(title);
             templateSection.put(TYPE_KEY, ITEM_TYPE_SECTION);
-            templateSection.put(TITLE_KEY, title);
+            templateSection.put(TITLE_KEY, topSections.get(sectionId));
             templateSection.put(CATEGORIES_KEY, Arrays.asList(sectionId));
             templateSection.put(DATA_KEY, new ArrayList<Map<String, String>>());
 
@@ -367,7 +442,7 @@ private String getLabelFromOntology(String id)
         if (!id.startsWith("HP:")) {
             return id;
         }
-        VocabularyTerm phObj = this.ontologyService.getTerm(id);
+        VocabularyTerm phObj = getTerm(id);
         if (phObj != null) {
             return phObj.getTranslatedName();
         }
@@ -379,23 +454,15 @@ private boolean hasDescendantsInOntology(String id)
         if (!id.startsWith("HP:")) {
             return false;
         }
-        Map<String, String> params = new HashMap<>();
-        params.put(INDEXED_PARENT_KEY, id);
-        return (this.ontologyService.count(params) > 0);
+        return this.layoutCache.hasDescendants(id);
     }
 
-    @SuppressWarnings("unchecked")
     private List<String> getCategoriesFromOntology(String value)
     {
         if (!value.startsWith("HP:")) {
             return Collections.emptyList();
         }
-        VocabularyTerm termObj = this.ontologyService.getTerm(value);
-        if (termObj != null && termObj.get(INDEXED_CATEGORY_KEY) != null
-            && List.class.isAssignableFrom(termObj.get(INDEXED_CATEGORY_KEY).getClass())) {
-            return (List<String>) termObj.get(INDEXED_CATEGORY_KEY);
-        }
-        return new LinkedList<>();
+        return this.layoutCache.getCategories(value);
     }
 
     private List<String> getCategoriesFromCustomMapping(String value, Map<String, List<String>> customCategories)
@@ -0,0 +1,114 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.tools;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+/**
+ * Tests for the {@link FormLayoutCache}.
+ *
+ * @version $Id$
+ */
+public class FormLayoutCacheTest
+{
+    private Vocabulary vocabulary;
+
+    private FormLayoutCache cache;
+
+    @Before
+    public void setUp()
+    {
+        this.vocabulary = Mockito.mock(Vocabulary.class);
+        VocabularyTerm eye = mockTerm("HP:0000478", "Abnormality of the eye");
+        mockTerm("HP:0011420", "Death");
+        mockTerm("HP:0000001", "All");
+        Mockito.doReturn(Arrays.asList(eye)).when(this.vocabulary)
+            .search(Matchers.anyMapOf(String.class, Object.class));
+        this.cache = new FormLayoutCache(this.vocabulary);
+    }
+
+    @Test
+    public void topSectionsAreComputedOnce()
+    {
+        Map<String, String> sections = this.cache.getTopSections();
+        Assert.assertEquals(Arrays.asList("HP:0000478", "HP:0011420", "HP:0000001"),
+            Arrays.asList(sections.keySet().toArray()));
+        Assert.assertEquals("Eye", sections.get("HP:0000478"));
+        Assert.assertEquals("Death", sections.get("HP:0011420"));
+        Assert.assertSame(sections, this.cache.getTopSections());
+        Mockito.verify(this.vocabulary, Mockito.times(1)).search(Matchers.anyMapOf(String.class, Object.class));
+    }
+
+    @Test
+    public void descendantsAreCountedOnce()
+    {
+        Mockito.when(this.vocabulary.count(Collections.singletonMap("is_a", "HP:0000478"))).thenReturn(3L);
+        Assert.assertTrue(this.cache.hasDescendants("HP:0000478"));
+        Assert.assertTrue(this.cache.hasDescendants("HP:0000478"));
+        Assert.assertFalse(this.cache.hasDescendants("HP:0011420"));
+        Mockito.verify(this.vocabulary, Mockito.times(1)).count(Collections.singletonMap("is_a", "HP:0000478"));
+    }
+
+    @Test
+    public void categoriesAreLookedUpOnce()
+    {
+        VocabularyTerm term = mockTerm("HP:0000505", "Visual impairment");
+        Mockito.when(term.get(PropertyDisplayer.INDEXED_CATEGORY_KEY))
+            .thenReturn(Arrays.asList("HP:0000478", "HP:0000118"));
+        Assert.assertEquals(Arrays.asList("HP:0000478", "HP:0000118"), this.cache.getCategories("HP:0000505"));
+        Assert.assertEquals(Arrays.asList("HP:0000478", "HP:0000118"), this.cache.getCategories("HP:0000505"));
+        Assert.assertTrue(this.cache.getCategories("HP:9999999").isEmpty());
+        Mockito.verify(this.vocabulary, Mockito.times(1)).getTerm("HP:0000505");
+    }
+
+    @Test
+    public void layoutIsComputedAgainAfterTheVocabularyIsReindexed()
+    {
+        Map<String, String> sections = this.cache.getTopSections();
+        Assert.assertTrue(this.cache.getEvents().get(0).matches(new VocabularyReindexedEvent("hpo")));
+
+        this.cache.onEvent(new VocabularyReindexedEvent("omim"), Mockito.mock(Vocabulary.class), null);
+        Assert.assertSame(sections, this.cache.getTopSections());
+
+        this.cache.onEvent(new VocabularyReindexedEvent("hpo"), this.vocabulary, null);
+        Assert.assertNotSame(sections, this.cache.getTopSections());
+        Assert.assertEquals(sections, this.cache.getTopSections());
+        Mockito.verify(this.vocabulary, Mockito.times(2)).search(Matchers.anyMapOf(String.class, Object.class));
+    }
+
+    private VocabularyTerm mockTerm(String id, String name)
+    {
+        VocabularyTerm term = Mockito.mock(VocabularyTerm.class);
+        Mockito.when(term.getId()).thenReturn(id);
+        Mockito.when(term.getName()).thenReturn(name);
+        Mockito.when(this.vocabulary.getTerm(id)).thenReturn(term);
+        return term;
+    }
+}
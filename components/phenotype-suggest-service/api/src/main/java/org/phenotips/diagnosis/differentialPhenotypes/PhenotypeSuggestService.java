@@ -22,8 +22,14 @@
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 import org.xwiki.script.service.ScriptService;
 
 import java.io.IOException;
@@ -34,6 +40,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -46,7 +53,6 @@
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CommonParams;
-import org.apache.solr.common.util.SimpleOrderedMap;
 import org.slf4j.Logger;
 
 /**
@@ -54,11 +60,18 @@
  *
  * @version $Id$
  */
-@Component
+@Component(roles = ScriptService.class)
 @Named("phenotypeSuggest")
 @Singleton
-public class PhenotypeSuggestService implements ScriptService
+public class PhenotypeSuggestService implements ScriptService, EventListener, Initializable
 {
+    /** The root of the HPO terms that describe phenotypes, the only ones worth suggesting. */
+    private static final String PHENOTYPIC_ABNORMALITY = "HP:0000118";
+
+    private static final String SYMPTOMS_FIELD = "actual_symptom";
+
+    private static final String SCORE_FIELD = "score";
+
     /** Provides access to the HPO ontology, for converting IDs into names and for getting all term ancestors. */
     @Inject
     @Named("hpo")
@@ -71,6 +84,39 @@ public class PhenotypeSuggestService implements ScriptService
     @Inject
     private Logger logger;
 
+    /** Allows registering this object as an event listener. */
+    @Inject
+    private ObservationManager observationManager;
+
+    /** Ancestors and phenotypic abnormality membership of the HPO terms seen so far, until HPO is reindexed. */
+    private volatile TermCache termCache = new TermCache();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.observationManager.addListener(this);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "phenotype-suggest-term-cache";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Collections.<Event>singletonList(new VocabularyReindexedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (source == this.hpo) {
+            this.termCache = new TermCache();
+        }
+    }
+
     /**
      * Compute a list of phenotypes to investigate, which maximize the probability of getting more accurate automatic
      * diagnosis suggestions.
@@ -91,26 +137,28 @@ public List<SuggestedPhenotype> getDifferentialPhenotypes(Collection<String> phe
             this.logger.warn("Failed to query OMIM index: {}", ex.getMessage());
             return result;
         }
+        TermCache cache = this.termCache;
         SolrDocumentList matchingDisorders = response.getResults();
-        Map<?, ?> explanations = response.getExplainMap();
         SumMap<String> cummulativeScore = new SumMap<>();
         CounterMap<String> matchCounter = new CounterMap<>();
-        Set<String> allAncestors = new HashSet<>();
+        Set<String> excluded = new HashSet<>(nphenotypes);
         for (String phenotype : phenotypes) {
-            allAncestors.addAll(this.getAllAncestorsAndSelfIDs(phenotype));
+            excluded.addAll(getAncestorsAndSelf(phenotype, cache));
         }
         for (SolrDocument disorder : matchingDisorders) {
-            String omimId = (String) disorder.getFieldValue("id");
-            @SuppressWarnings("unchecked")
-            SimpleOrderedMap<Float> omimTerm = (SimpleOrderedMap<Float>) explanations.get(omimId);
-            float score = omimTerm.get("value");
-            for (Object hpoId : disorder.getFieldValues("actual_symptom")) {
-                if (allAncestors.contains(hpoId) || nphenotypes.contains(hpoId)
-                    || !this.getAllAncestorsAndSelfIDs((String) hpoId).contains("HP:0000118")) {
+            Collection<Object> symptoms = disorder.getFieldValues(SYMPTOMS_FIELD);
+            if (symptoms == null) {
+                continue;
+            }
+            Object score = disorder.getFieldValue(SCORE_FIELD);
+            double disorderScore = score instanceof Number ? ((Number) score).doubleValue() : 0;
+            for (Object symptom : symptoms) {
+                String hpoId = String.valueOf(symptom);
+                if (excluded.contains(hpoId) || !isPhenotypicAbnormality(hpoId, cache)) {
                     continue;
                 }
-                cummulativeScore.addTo((String) hpoId, (double) score);
-                matchCounter.addTo((String) hpoId);
+                cummulativeScore.addTo(hpoId, disorderScore);
+                matchCounter.addTo(hpoId);
             }
         }
         if (matchCounter.getMinValue() <= matchingDisorders.size() / 2) {
@@ -129,7 +177,8 @@ public List<SuggestedPhenotype> getDifferentialPhenotypes(Collection<String> phe
 
     /**
      * Prepare the map of parameters that can be passed to a Solr query, in order to get a list of diseases matching the
-     * selected positive and negative phenotypes.
+     * selected positive and negative phenotypes. Only the fields needed for computing suggestions are requested,
+     * including the relevance score, so that Solr doesn't have to compute a full explanation of each match.
      *
      * @param phenotypes the list of already selected phenotypes
      * @param nphenotypes phenotypes that are not observed in the patient
@@ -146,8 +195,7 @@ private SolrQuery prepareParams(Collection<String> phenotypes, Collection<String
         result.set(CommonParams.Q, q.replaceAll("HP:", "HP\\\\:"));
         result.set(CommonParams.ROWS, "100");
         result.set(CommonParams.START, "0");
-        result.set(CommonParams.DEBUG_QUERY, Boolean.toString(true));
-        result.set(CommonParams.EXPLAIN_STRUCT, Boolean.toString(true));
+        result.set(CommonParams.FL, "id," + SYMPTOMS_FIELD + ',' + SCORE_FIELD);
 
         return result;
     }
@@ -160,12 +208,43 @@ private SolrQuery prepareParams(Collection<String> phenotypes, Collection<String
      */
     public Set<String> getAllAncestorsAndSelfIDs(final String id)
     {
-        Set<String> parents = new HashSet<>();
-        VocabularyTerm crt = this.hpo.getTerm(id);
-        Set<VocabularyTerm> ancenstors = crt.getAncestorsAndSelf();
-        for (VocabularyTerm term : ancenstors) {
-            parents.add(term.getId());
+        return new HashSet<>(getAncestorsAndSelf(id, this.termCache));
+    }
+
+    private Set<String> getAncestorsAndSelf(String id, TermCache cache)
+    {
+        Set<String> result = cache.ancestors.get(id);
+        if (result == null) {
+            result = new HashSet<>();
+            VocabularyTerm crt = this.hpo.getTerm(id);
+            if (crt != null) {
+                for (VocabularyTerm term : crt.getAncestorsAndSelf()) {
+                    result.add(term.getId());
+                }
+            }
+            result = Collections.unmodifiableSet(result);
+            cache.ancestors.put(id, result);
         }
-        return parents;
+        return result;
+    }
+
+    private boolean isPhenotypicAbnormality(String id, TermCache cache)
+    {
+        Boolean result = cache.abnormalities.get(id);
+        if (result == null) {
+            result = getAncestorsAndSelf(id, cache).contains(PHENOTYPIC_ABNORMALITY);
+            cache.abnormalities.put(id, result);
+        }
+        return result;
+    }
+
+    /** Term data computed from the current HPO index. */
+    private static final class TermCache
+    {
+        /** Ancestors-or-self IDs, indexed by term ID. */
+        private final Map<String, Set<String>> ancestors = new ConcurrentHashMap<>();
+
+        /** Whether a term is a descendant of {@link #PHENOTYPIC_ABNORMALITY}, indexed by term ID. */
+        private final Map<String, Boolean> abnormalities = new ConcurrentHashMap<>();
     }
 }
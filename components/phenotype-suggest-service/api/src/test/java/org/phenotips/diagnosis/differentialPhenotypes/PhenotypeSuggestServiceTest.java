@@ -0,0 +1,192 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.diagnosis.differentialPhenotypes;
+
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
+
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PhenotypeSuggestService} component.
+ *
+ * @version $Id$
+ */
+public class PhenotypeSuggestServiceTest
+{
+    private static final String ABNORMALITY = "HP:0000118";
+
+    private static final String SELECTED = "HP:0000001";
+
+    private static final String SUGGESTED = "HP:0000002";
+
+    private static final String INHERITANCE = "HP:0000003";
+
+    private static final String OTHER = "HP:0000004";
+
+    private static final String RARE = "HP:0000005";
+
+    @Rule
+    public final MockitoComponentMockingRule<ScriptService> mocker =
+        new MockitoComponentMockingRule<>(PhenotypeSuggestService.class);
+
+    private PhenotypeSuggestService service;
+
+    private Vocabulary hpo;
+
+    private SolrClient omim;
+
+    private VocabularyTerm suggested;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.service = (PhenotypeSuggestService) this.mocker.getComponentUnderTest();
+        this.hpo = this.mocker.getInstance(Vocabulary.class, "hpo");
+        mockTerm(SELECTED, ABNORMALITY);
+        this.suggested = mockTerm(SUGGESTED, ABNORMALITY);
+        mockTerm(INHERITANCE);
+        mockTerm(OTHER, ABNORMALITY);
+        mockTerm(RARE, ABNORMALITY);
+
+        this.omim = mock(SolrClient.class);
+        SolrVocabularyResourceManager solrManager = this.mocker.getInstance(SolrVocabularyResourceManager.class);
+        when(solrManager.getSolrConnection("omim")).thenReturn(this.omim);
+        SolrDocumentList disorders = new SolrDocumentList();
+        disorders.add(mockDisorder(8f, SELECTED, SUGGESTED, INHERITANCE));
+        disorders.add(mockDisorder(2f, SUGGESTED, OTHER));
+        disorders.add(mockDisorder(1f, RARE));
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(disorders);
+        when(this.omim.query(any(SolrQuery.class))).thenReturn(response);
+    }
+
+    @Test
+    public void suggestionsAreScoredUsingTheScoreField() throws Exception
+    {
+        List<SuggestedPhenotype> result =
+            this.service.getDifferentialPhenotypes(Collections.singleton(SELECTED), Collections.emptySet(), 5);
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(SUGGESTED, result.get(0).getId());
+        Assert.assertEquals(2.5, result.get(0).getScore(), 0.0001);
+        Assert.assertEquals(OTHER, result.get(1).getId());
+        Assert.assertEquals(2, result.get(1).getScore(), 0.0001);
+        Assert.assertEquals(RARE, result.get(2).getId());
+
+        ArgumentCaptor<SolrQuery> query = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(this.omim).query(query.capture());
+        Assert.assertNull(query.getValue().get(CommonParams.DEBUG_QUERY));
+        Assert.assertTrue(query.getValue().get(CommonParams.FL).contains("score"));
+    }
+
+    @Test
+    public void excludedAndNonPhenotypeTermsAreNotSuggested()
+    {
+        List<SuggestedPhenotype> result =
+            this.service.getDifferentialPhenotypes(Collections.singleton(SELECTED), Collections.singleton(OTHER), 1);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(SUGGESTED, result.get(0).getId());
+    }
+
+    @Test
+    public void ancestorsAreComputedOnlyOnce()
+    {
+        this.service.getDifferentialPhenotypes(Collections.singleton(SELECTED), Collections.emptySet(), 5);
+        this.service.getDifferentialPhenotypes(Collections.singleton(SELECTED), Collections.emptySet(), 5);
+        verify(this.suggested, times(1)).getAncestorsAndSelf();
+        Assert.assertEquals(new HashSet<>(Arrays.asList(SUGGESTED, ABNORMALITY)),
+            this.service.getAllAncestorsAndSelfIDs(SUGGESTED));
+        Assert.assertTrue(this.service.getAllAncestorsAndSelfIDs("HP:9999999").isEmpty());
+    }
+
+    @Test
+    public void ancestorsAreComputedAgainAfterHPOIsReindexed()
+    {
+        this.service.getAllAncestorsAndSelfIDs(SUGGESTED);
+        this.service.onEvent(new VocabularyReindexedEvent("omim"), mock(Vocabulary.class), null);
+        this.service.getAllAncestorsAndSelfIDs(SUGGESTED);
+        verify(this.suggested, times(1)).getAncestorsAndSelf();
+
+        this.service.onEvent(new VocabularyReindexedEvent("hpo"), this.hpo, null);
+        this.service.getAllAncestorsAndSelfIDs(SUGGESTED);
+        verify(this.suggested, times(2)).getAncestorsAndSelf();
+    }
+
+    @Test
+    public void listensToVocabularyReindexing() throws Exception
+    {
+        Assert.assertTrue(this.service.getEvents().get(0).matches(new VocabularyReindexedEvent("hpo")));
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        verify(observationManager).addListener(this.service);
+    }
+
+    private VocabularyTerm mockTerm(String id, String... ancestors)
+    {
+        VocabularyTerm term = mock(VocabularyTerm.class);
+        when(term.getId()).thenReturn(id);
+        when(term.get("name")).thenReturn("Name of " + id);
+        Set<VocabularyTerm> ancestorsAndSelf = new HashSet<>();
+        ancestorsAndSelf.add(term);
+        for (String ancestor : ancestors) {
+            VocabularyTerm ancestorTerm = mock(VocabularyTerm.class);
+            when(ancestorTerm.getId()).thenReturn(ancestor);
+            ancestorsAndSelf.add(ancestorTerm);
+        }
+        when(term.getAncestorsAndSelf()).thenReturn(ancestorsAndSelf);
+        when(this.hpo.getTerm(id)).thenReturn(term);
+        return term;
+    }
+
+    private SolrDocument mockDisorder(float score, String... symptoms)
+    {
+        SolrDocument disorder = new SolrDocument();
+        disorder.setField("score", score);
+        for (String symptom : symptoms) {
+            disorder.addField("actual_symptom", symptom);
+        }
+        return disorder;
+    }
+}
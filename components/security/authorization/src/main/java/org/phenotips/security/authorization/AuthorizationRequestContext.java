@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.authorization;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.stability.Unstable;
+
+import java.util.function.Function;
+
+/**
+ * Data shared by all the {@link AuthorizationModule}s while checking access rights during the current request. A page
+ * usually checks the rights on the same entities many times, and several modules need the same data about the target
+ * entity, such as the primary entity stored in a document, so instead of each module computing it on each call, they
+ * can share it through this context. Everything is forgotten when the request ends, or when a document is modified.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Role
+public interface AuthorizationRequestContext
+{
+    /**
+     * Returns the value of a certain type associated with an entity, computing it if this is the first time it is
+     * requested during the current request. Outside a request, the value is computed each time.
+     *
+     * @param <T> the type of the value
+     * @param entity the target entity of an access check
+     * @param type the type of the value, used for distinguishing between different data associated with the same entity
+     * @param loader computes the value if needed; it may return {@code null}, which is also remembered
+     * @return the value, may be {@code null}
+     */
+    <T> T get(EntityReference entity, Class<T> type, Function<EntityReference, T> loader);
+
+    /**
+     * Forgets everything that was computed during the current request, including the access decisions.
+     */
+    void clear();
+}
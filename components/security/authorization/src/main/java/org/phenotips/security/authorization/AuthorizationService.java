@@ -23,6 +23,8 @@
 import org.xwiki.stability.Unstable;
 import org.xwiki.users.User;
 
+import java.util.Map;
+
 /**
  * Service which checks if a specific operation on an entity should be granted or not. The default implementation
  * forwards the decision to implementations of the {@link AuthorizationModule} role, in descending order of their
@@ -44,4 +46,16 @@
      * @return {@code true} if access is granted, {@code false} if access is denied
      */
     boolean hasAccess(User user, Right access, EntityReference entity);
+
+    /**
+     * Lists how much each {@link AuthorizationModule} was used since the start of the application, which helps
+     * identify the modules that slow down access checks.
+     *
+     * @return the counters for each module, indexed by the module class name; the counters are {@code calls},
+     *         {@code decisions}, {@code errors}, {@code totalMicros} and {@code averageMicros}, while the special
+     *         {@code cache} entry counts the decisions that were answered from the per-request cache, as {@code hits}
+     *         and {@code misses}
+     * @since 1.4
+     */
+    Map<String, Map<String, Long>> getModuleStatistics();
 }
@@ -0,0 +1,134 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.authorization.internal;
+
+import org.phenotips.security.authorization.AuthorizationModule;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.security.authorization.Right;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything remembered about access checks during a request, stored in the {@link ExecutionContext execution
+ * context}, so it is automatically discarded at the end of the request.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class AuthorizationRequestState
+{
+    /** Stands for {@code null} values, which can't be stored in the maps. */
+    static final Object NULL = new Object();
+
+    private static final String PROPERTY_NAME = "phenotips.authorization.requestState";
+
+    /** The decisions taken so far, indexed by user, right and entity. */
+    private final Map<List<Object>, Boolean> decisions = new ConcurrentHashMap<>();
+
+    /** The data shared between modules, indexed by entity and type. */
+    private final Map<List<Object>, Object> values = new ConcurrentHashMap<>();
+
+    /** The sorted list of modules, looked up once per request. */
+    private volatile List<AuthorizationModule> modules;
+
+    /**
+     * @return the decisions taken so far, indexed by {@link #decisionKey user, right and entity}
+     */
+    Map<List<Object>, Boolean> getDecisions()
+    {
+        return this.decisions;
+    }
+
+    /**
+     * @return the data shared between modules, indexed by entity and type, with {@link #NULL} standing for
+     *         {@code null} values
+     */
+    Map<List<Object>, Object> getValues()
+    {
+        return this.values;
+    }
+
+    /**
+     * @return the sorted list of modules, or {@code null} if not looked up yet during this request
+     */
+    List<AuthorizationModule> getModules()
+    {
+        return this.modules;
+    }
+
+    /**
+     * @param modules the sorted list of modules to use for the rest of the request
+     */
+    void setModules(List<AuthorizationModule> modules)
+    {
+        this.modules = modules;
+    }
+
+    /**
+     * Retrieves the state of the current request.
+     *
+     * @param execution provides access to the execution context
+     * @return the current state, created if needed, or {@code null} if there is no current request
+     */
+    static AuthorizationRequestState get(Execution execution)
+    {
+        ExecutionContext context = execution.getContext();
+        if (context == null) {
+            return null;
+        }
+        AuthorizationRequestState state = (AuthorizationRequestState) context.getProperty(PROPERTY_NAME);
+        if (state == null) {
+            state = new AuthorizationRequestState();
+            context.setProperty(PROPERTY_NAME, state);
+        }
+        return state;
+    }
+
+    /**
+     * Discards the state of the current request, if any.
+     *
+     * @param execution provides access to the execution context
+     */
+    static void clear(Execution execution)
+    {
+        ExecutionContext context = execution.getContext();
+        if (context != null) {
+            context.removeProperty(PROPERTY_NAME);
+        }
+    }
+
+    /**
+     * Builds the key under which a decision is remembered.
+     *
+     * @param user the profile of the user whose rights are checked, {@code null} for guests
+     * @param access the requested right
+     * @param entity the target entity
+     * @return a key that can be used in {@link #getDecisions()}
+     */
+    static List<Object> decisionKey(DocumentReference user, Right access, EntityReference entity)
+    {
+        return Arrays.asList(user, access, entity);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.authorization.internal;
+
+import org.phenotips.security.authorization.AuthorizationRequestContext;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of the {@link AuthorizationRequestContext} component, storing the shared data in the current
+ * execution context.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultAuthorizationRequestContext implements AuthorizationRequestContext
+{
+    @Inject
+    private Execution execution;
+
+    @Override
+    public <T> T get(EntityReference entity, Class<T> type, Function<EntityReference, T> loader)
+    {
+        AuthorizationRequestState state = AuthorizationRequestState.get(this.execution);
+        if (state == null || entity == null) {
+            return loader.apply(entity);
+        }
+        List<Object> key = Arrays.asList(entity, type);
+        Object value = state.getValues().get(key);
+        if (value == null) {
+            T computed = loader.apply(entity);
+            value = computed == null ? AuthorizationRequestState.NULL : computed;
+            state.getValues().put(key, value);
+        }
+        return value == AuthorizationRequestState.NULL ? null : type.cast(value);
+    }
+
+    @Override
+    public void clear()
+    {
+        AuthorizationRequestState.clear(this.execution);
+    }
+}
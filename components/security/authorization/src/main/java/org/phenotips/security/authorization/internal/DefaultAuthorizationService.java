@@ -21,11 +21,18 @@
 import org.phenotips.security.authorization.AuthorizationService;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.User;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -35,7 +42,8 @@
 
 /**
  * The default authorization service implementation, which queries all the individual {@link AuthorizationModule}s, in
- * descending order of priority, until one responds with a non-null decision.
+ * descending order of priority, until one responds with a non-null decision. Decisions are remembered until the end of
+ * the current request, or until a document is modified.
  *
  * @version $Id$
  * @since 1.0M13
@@ -52,16 +60,75 @@ public class DefaultAuthorizationService implements AuthorizationService
     @Inject
     private Provider<List<AuthorizationModule>> modules;
 
+    /** Used for remembering decisions during a request. */
+    @Inject
+    private Execution execution;
+
+    /** Usage counters for each module, indexed by the module class name. */
+    private final Map<String, ModuleStatistics> statistics = new ConcurrentHashMap<>();
+
+    /** How many decisions were answered from the per-request cache. */
+    private final LongAdder cacheHits = new LongAdder();
+
+    /** How many decisions had to be computed by the modules. */
+    private final LongAdder cacheMisses = new LongAdder();
+
     @Override
     public boolean hasAccess(User user, Right access, EntityReference entity)
     {
-        for (AuthorizationModule service : this.modules.get()) {
+        AuthorizationRequestState state = AuthorizationRequestState.get(this.execution);
+        // Users without a profile, such as the superadmin, can't be told apart, so their decisions aren't remembered
+        if (state == null || (user != null && user.getProfileDocument() == null)) {
+            return decide(user, access, entity, this.modules.get());
+        }
+
+        List<Object> key =
+            AuthorizationRequestState.decisionKey(user == null ? null : user.getProfileDocument(), access, entity);
+        Boolean decision = state.getDecisions().get(key);
+        if (decision != null) {
+            this.cacheHits.increment();
+            return decision;
+        }
+        this.cacheMisses.increment();
+
+        List<AuthorizationModule> requestModules = state.getModules();
+        if (requestModules == null) {
+            requestModules = this.modules.get();
+            state.setModules(requestModules);
+        }
+        boolean result = decide(user, access, entity, requestModules);
+        state.getDecisions().put(key, result);
+        return result;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getModuleStatistics()
+    {
+        Map<String, Map<String, Long>> result = new TreeMap<>();
+        for (Map.Entry<String, ModuleStatistics> module : this.statistics.entrySet()) {
+            result.put(module.getKey(), module.getValue().toMap());
+        }
+        Map<String, Long> cache = new LinkedHashMap<>();
+        cache.put("hits", this.cacheHits.sum());
+        cache.put("misses", this.cacheMisses.sum());
+        result.put("cache", cache);
+        return result;
+    }
+
+    private boolean decide(User user, Right access, EntityReference entity, List<AuthorizationModule> modules)
+    {
+        for (AuthorizationModule service : modules) {
+            ModuleStatistics moduleStatistics =
+                this.statistics.computeIfAbsent(service.getClass().getName(), name -> new ModuleStatistics());
+            long start = System.nanoTime();
             try {
                 Boolean decision = service.hasAccess(user, access, entity);
+                moduleStatistics.record(System.nanoTime() - start, decision != null, false);
                 if (decision != null) {
                     return decision;
                 }
             } catch (Exception ex) {
+                moduleStatistics.record(System.nanoTime() - start, false, true);
                 // Don't fail because of bad authorization modules
                 this.logger.warn("Failed to invoke authorization service [{}]: {}",
                     service.getClass().getCanonicalName(), ex.getMessage());
@@ -70,4 +137,41 @@ public boolean hasAccess(User user, Right access, EntityReference entity)
 
         return false;
     }
+
+    /** Usage counters for one module. */
+    private static final class ModuleStatistics
+    {
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder decisions = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        void record(long duration, boolean decided, boolean failed)
+        {
+            this.calls.increment();
+            this.nanos.add(duration);
+            if (decided) {
+                this.decisions.increment();
+            }
+            if (failed) {
+                this.errors.increment();
+            }
+        }
+
+        Map<String, Long> toMap()
+        {
+            long count = this.calls.sum();
+            long micros = TimeUnit.NANOSECONDS.toMicros(this.nanos.sum());
+            Map<String, Long> result = new LinkedHashMap<>();
+            result.put("calls", count);
+            result.put("decisions", this.decisions.sum());
+            result.put("errors", this.errors.sum());
+            result.put("totalMicros", micros);
+            result.put("averageMicros", count == 0 ? 0 : micros / count);
+            return result;
+        }
+    }
 }
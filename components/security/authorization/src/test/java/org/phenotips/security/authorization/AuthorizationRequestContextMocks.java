@@ -0,0 +1,52 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.authorization;
+
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.function.Function;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Helpers for tests of {@link AuthorizationModule}s using a mocked {@link AuthorizationRequestContext}.
+ *
+ * @version $Id$
+ */
+public final class AuthorizationRequestContextMocks
+{
+    private AuthorizationRequestContextMocks()
+    {
+        // Utility class
+    }
+
+    /**
+     * Makes a mocked request context compute the requested values each time, the way it behaves outside a request.
+     *
+     * @param context the mocked context
+     */
+    @SuppressWarnings("unchecked")
+    public static void computeEachTime(AuthorizationRequestContext context)
+    {
+        when(context.get(any(), any(), any())).then(invocation -> {
+            Function<EntityReference, Object> loader = (Function<EntityReference, Object>) invocation.getArguments()[2];
+            return loader.apply((EntityReference) invocation.getArguments()[0]);
+        });
+    }
+}
@@ -22,6 +22,8 @@
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
@@ -31,6 +33,7 @@
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Provider;
 
@@ -45,6 +48,8 @@
 
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -180,6 +185,65 @@ public void exceptionsInModulesAreIgnored() throws Exception
         Assert.assertTrue(this.mocker.getComponentUnderTest().hasAccess(this.user, this.access, this.document));
     }
 
+    @Test
+    public void decisionsAreRememberedDuringTheRequest() throws Exception
+    {
+        this.moduleList = Arrays.asList(this.moduleOne, this.moduleTwo);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.user.getProfileDocument()).thenReturn(this.document);
+        ExecutionContext context = new ExecutionContext();
+        when(this.mocker.<Execution>getInstance(Execution.class).getContext()).thenReturn(context);
+        when(this.moduleTwo.hasAccess(this.user, this.access, this.document)).thenReturn(true);
+
+        AuthorizationService service = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(service.hasAccess(this.user, this.access, this.document));
+        Assert.assertTrue(service.hasAccess(this.user, this.access, this.document));
+        verify(this.moduleOne, times(1)).hasAccess(this.user, this.access, this.document);
+        verify(this.moduleTwo, times(1)).hasAccess(this.user, this.access, this.document);
+        verify(this.modules, times(1)).get();
+
+        Map<String, Map<String, Long>> statistics = service.getModuleStatistics();
+        Assert.assertEquals(Long.valueOf(1), statistics.get("cache").get("hits"));
+        Assert.assertEquals(Long.valueOf(1), statistics.get("cache").get("misses"));
+
+        // Modifying a document discards everything remembered so far
+        AuthorizationRequestState.clear(this.mocker.getInstance(Execution.class));
+        Assert.assertTrue(service.hasAccess(this.user, this.access, this.document));
+        verify(this.moduleTwo, times(2)).hasAccess(this.user, this.access, this.document);
+    }
+
+    @Test
+    public void decisionsAreNotRememberedOutsideRequests() throws Exception
+    {
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.user.getProfileDocument()).thenReturn(this.document);
+        when(this.moduleOne.hasAccess(this.user, this.access, this.document)).thenReturn(true);
+
+        AuthorizationService service = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(service.hasAccess(this.user, this.access, this.document));
+        Assert.assertTrue(service.hasAccess(this.user, this.access, this.document));
+        verify(this.moduleOne, times(2)).hasAccess(this.user, this.access, this.document);
+    }
+
+    @Test
+    public void moduleCallsAreCounted() throws Exception
+    {
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.hasAccess(this.user, this.access, this.document)).thenThrow(new NullPointerException());
+
+        AuthorizationService service = this.mocker.getComponentUnderTest();
+        service.hasAccess(this.user, this.access, this.document);
+        service.hasAccess(this.user, this.access, this.document);
+
+        Map<String, Map<String, Long>> statistics = service.getModuleStatistics();
+        Map<String, Long> module = statistics.get(this.moduleOne.getClass().getName());
+        Assert.assertEquals(Long.valueOf(2), module.get("calls"));
+        Assert.assertEquals(Long.valueOf(2), module.get("errors"));
+        Assert.assertEquals(Long.valueOf(0), module.get("decisions"));
+    }
+
     private void resetMocks()
     {
         Mockito.reset(this.moduleOne, this.moduleTwo, this.moduleThree);
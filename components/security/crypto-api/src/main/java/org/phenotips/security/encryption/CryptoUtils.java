@@ -46,6 +46,21 @@
      */
     String decryptWithSystemKey(String encryptedMessage);
 
+    /**
+     * Check if a message was encrypted using an older, slower format, and should be encrypted again with
+     * {@link #encryptWithSystemKey(String)}. Older formats can still be {@link #decryptWithSystemKey(String)
+     * decrypted}. Encrypting a message again is one-way: versions that only know the older format can't decrypt the
+     * result.
+     *
+     * @param encryptedMessage an encrypted message; may be {@code null}
+     * @return {@code true} if the message is not null and uses an older format, {@code false} otherwise
+     * @since 1.4
+     */
+    default boolean isLegacyEncryption(String encryptedMessage)
+    {
+        return false;
+    }
+
     /**
      * Compute a strong digest (one-way hash) of a message.
      *
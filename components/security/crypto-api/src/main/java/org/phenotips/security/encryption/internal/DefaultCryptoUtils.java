@@ -23,15 +23,46 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.jasypt.digest.StandardStringDigester;
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
 import org.jasypt.util.text.StrongTextEncryptor;
 
 /**
- * The straight-forward implementation of the {@link CryptoUtils} role.
+ * The straight-forward implementation of the {@link CryptoUtils} role. Messages are encrypted with AES-GCM, using a key
+ * derived from the system password. Messages encrypted with the older Jasypt format, which derived the key again for
+ * each message, can still be decrypted.
+ * <p>
+ * The key is derived with a random salt generated at startup, and each message starts with the salt used for it, so
+ * that messages can be decrypted with nothing else than the system password, even after a restart or on another
+ * instance. Keys derived for the salts of older messages are remembered. Messages encrypted by earlier 1.4 snapshots
+ * stored the salt in the {@code crypto/system-key.salt} file of the permanent directory instead; that file is only
+ * read, never created, and these messages are reported as {@link #isLegacyEncryption(String) legacy} so that they are
+ * encrypted again with their salt.
+ * </p>
  *
  * @version $Id$
  * @since 1.3M2
@@ -40,18 +71,73 @@
 @Singleton
 public class DefaultCryptoUtils implements CryptoUtils, Initializable
 {
+    /** Prepended to messages encrypted with the current format; the Base64 output of Jasypt never contains a colon. */
+    private static final String CURRENT_FORMAT_MARKER = "g2:";
+
+    /** Prepended to messages encrypted with a key derived from the salt stored in {@link #SALT_FILE}. */
+    private static final String SALT_FILE_FORMAT_MARKER = "g1:";
+
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_LENGTH = 128;
+
+    private static final String KEY_DERIVATION_ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    private static final String SALT_FILE = "crypto/system-key.salt";
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int KEY_ITERATIONS = 100000;
+
+    private static final int KEY_LENGTH = 256;
+
+    /** The number of keys derived for the salts of older messages which are remembered. */
+    private static final int MAX_CACHED_KEYS = 64;
+
     @Inject
     private SystemPasswordConfiguration passwordConfig;
 
-    private StrongTextEncryptor encryptor;
+    @Inject
+    private Environment environment;
+
+    /** Only used for decrypting messages in the older format. */
+    private StrongTextEncryptor legacyEncryptor;
+
+    private String password;
+
+    /** The salt used for encrypting messages, generated at startup. */
+    private byte[] salt;
+
+    /** The encryption key, derived from the system password and {@link #salt} at startup. */
+    private SecretKey key;
+
+    /** Keys derived for the salts of older messages, indexed by the Base64 encoded salt. */
+    private final Map<String, SecretKey> keys = new ConcurrentHashMap<>();
+
+    /** The key used for messages in the salt file format, derived the first time such a message is decrypted. */
+    private SecretKey saltFileKey;
+
+    private final SecureRandom random = new SecureRandom();
 
     private StandardStringDigester digester;
 
     @Override
     public void initialize() throws InitializationException
     {
-        this.encryptor = new StrongTextEncryptor();
-        this.encryptor.setPassword(this.passwordConfig.getSystemPassword());
+        this.password = this.passwordConfig.getSystemPassword();
+
+        this.legacyEncryptor = new StrongTextEncryptor();
+        this.legacyEncryptor.setPassword(this.password);
+
+        this.salt = new byte[SALT_LENGTH];
+        this.random.nextBytes(this.salt);
+        try {
+            this.key = deriveKey(this.salt);
+        } catch (GeneralSecurityException ex) {
+            throw new InitializationException("Failed to derive the system encryption key: " + ex.getMessage(), ex);
+        }
 
         this.digester = new StandardStringDigester();
         this.digester.setAlgorithm("SHA-512");
@@ -63,13 +149,123 @@ public void initialize() throws InitializationException
     @Override
     public String encryptWithSystemKey(String message)
     {
-        return this.encryptor.encrypt(message);
+        if (message == null) {
+            return null;
+        }
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            this.random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH, iv));
+            byte[] encrypted = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer result = ByteBuffer.allocate(SALT_LENGTH + IV_LENGTH + encrypted.length);
+            result.put(this.salt).put(iv).put(encrypted);
+            return CURRENT_FORMAT_MARKER + Base64.getEncoder().encodeToString(result.array());
+        } catch (GeneralSecurityException ex) {
+            throw new EncryptionOperationNotPossibleException(ex);
+        }
     }
 
     @Override
     public String decryptWithSystemKey(String encryptedMessage)
     {
-        return this.encryptor.decrypt(encryptedMessage);
+        if (encryptedMessage == null) {
+            return null;
+        }
+        try {
+            if (encryptedMessage.startsWith(CURRENT_FORMAT_MARKER)) {
+                byte[] input = decode(encryptedMessage, CURRENT_FORMAT_MARKER, SALT_LENGTH + IV_LENGTH);
+                return decrypt(getKey(Arrays.copyOf(input, SALT_LENGTH)), input, SALT_LENGTH);
+            } else if (encryptedMessage.startsWith(SALT_FILE_FORMAT_MARKER)) {
+                return decrypt(getSaltFileKey(), decode(encryptedMessage, SALT_FILE_FORMAT_MARKER, IV_LENGTH), 0);
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            throw new EncryptionOperationNotPossibleException(ex);
+        }
+        return this.legacyEncryptor.decrypt(encryptedMessage);
+    }
+
+    private byte[] decode(String encryptedMessage, String marker, int headerLength)
+    {
+        byte[] input = Base64.getDecoder().decode(encryptedMessage.substring(marker.length()));
+        if (input.length < headerLength) {
+            throw new EncryptionOperationNotPossibleException();
+        }
+        return input;
+    }
+
+    private String decrypt(SecretKey decryptionKey, byte[] input, int offset) throws GeneralSecurityException
+    {
+        Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, decryptionKey, new GCMParameterSpec(TAG_LENGTH, input, offset, IV_LENGTH));
+        int start = offset + IV_LENGTH;
+        return new String(cipher.doFinal(input, start, input.length - start), StandardCharsets.UTF_8);
+    }
+
+    private SecretKey deriveKey(byte[] keySalt) throws GeneralSecurityException
+    {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(KEY_DERIVATION_ALGORITHM);
+        byte[] keyBytes = factory
+            .generateSecret(new PBEKeySpec(this.password.toCharArray(), keySalt, KEY_ITERATIONS, KEY_LENGTH))
+            .getEncoded();
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+
+    /**
+     * Returns the key derived with the salt of a message, deriving it if this is the first message with that salt.
+     *
+     * @param messageSalt the salt read from the message
+     * @return the decryption key
+     * @throws GeneralSecurityException if the key cannot be derived
+     */
+    private SecretKey getKey(byte[] messageSalt) throws GeneralSecurityException
+    {
+        if (Arrays.equals(messageSalt, this.salt)) {
+            return this.key;
+        }
+        String cacheKey = Base64.getEncoder().encodeToString(messageSalt);
+        SecretKey result = this.keys.get(cacheKey);
+        if (result == null) {
+            result = deriveKey(messageSalt);
+            if (this.keys.size() >= MAX_CACHED_KEYS) {
+                this.keys.clear();
+            }
+            this.keys.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key for messages in the salt file format, reading the salt from the permanent directory. A missing
+     * salt file is reported as an error: generating a new salt would make these messages impossible to decrypt.
+     *
+     * @return the decryption key
+     * @throws GeneralSecurityException if the salt file is missing or invalid, or the key cannot be derived
+     */
+    private synchronized SecretKey getSaltFileKey() throws GeneralSecurityException
+    {
+        if (this.saltFileKey == null) {
+            File saltFile = new File(this.environment.getPermanentDirectory(), SALT_FILE);
+            byte[] fileSalt;
+            try {
+                fileSalt = Base64.getDecoder().decode(new String(Files.readAllBytes(saltFile.toPath()),
+                    StandardCharsets.US_ASCII).trim());
+            } catch (IOException | IllegalArgumentException ex) {
+                throw new GeneralSecurityException("Failed to read the encryption salt from "
+                    + saltFile.getAbsolutePath() + ": " + ex.getMessage(), ex);
+            }
+            if (fileSalt.length < SALT_LENGTH) {
+                throw new GeneralSecurityException("Invalid encryption salt in " + saltFile.getAbsolutePath());
+            }
+            this.saltFileKey = deriveKey(fileSalt);
+        }
+        return this.saltFileKey;
+    }
+
+    @Override
+    public boolean isLegacyEncryption(String encryptedMessage)
+    {
+        return encryptedMessage != null && !StringUtils.startsWith(encryptedMessage, CURRENT_FORMAT_MARKER);
     }
 
     @Override
@@ -0,0 +1,219 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.encryption.internal;
+
+import org.phenotips.security.encryption.CryptoUtils;
+import org.phenotips.security.encryption.SystemPasswordConfiguration;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jasypt.exceptions.EncryptionOperationNotPossibleException;
+import org.jasypt.util.text.StrongTextEncryptor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import static org.mockito.Mockito.when;
+
+public class DefaultCryptoUtilsTest
+{
+    private static final String PASSWORD = "system password";
+
+    private static final String MESSAGE = "Sensitive data \u00e9\u00e8";
+
+    private static final String SALT_FILE = "crypto/system-key.salt";
+
+    @Rule
+    public final MockitoComponentMockingRule<CryptoUtils> mocker =
+        new MockitoComponentMockingRule<>(DefaultCryptoUtils.class);
+
+    @Rule
+    public final TemporaryFolder permanentDirectory = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        SystemPasswordConfiguration passwordConfig = this.mocker.getInstance(SystemPasswordConfiguration.class);
+        when(passwordConfig.getSystemPassword()).thenReturn(PASSWORD);
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory.getRoot());
+    }
+
+    @Test
+    public void encryptedMessagesAreDecrypted() throws Exception
+    {
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        String encrypted = crypto.encryptWithSystemKey(MESSAGE);
+        Assert.assertNotEquals(MESSAGE, encrypted);
+        Assert.assertFalse(crypto.isLegacyEncryption(encrypted));
+        Assert.assertEquals(MESSAGE, crypto.decryptWithSystemKey(encrypted));
+    }
+
+    @Test
+    public void encryptionIsRandomized() throws Exception
+    {
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        Assert.assertNotEquals(crypto.encryptWithSystemKey(MESSAGE), crypto.encryptWithSystemKey(MESSAGE));
+    }
+
+    @Test
+    public void nullMessagesAreNotEncrypted() throws Exception
+    {
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        Assert.assertNull(crypto.encryptWithSystemKey(null));
+        Assert.assertNull(crypto.decryptWithSystemKey(null));
+        Assert.assertFalse(crypto.isLegacyEncryption(null));
+    }
+
+    @Test
+    public void legacyMessagesAreDecrypted() throws Exception
+    {
+        StrongTextEncryptor legacy = new StrongTextEncryptor();
+        legacy.setPassword(PASSWORD);
+        String encrypted = legacy.encrypt(MESSAGE);
+
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(crypto.isLegacyEncryption(encrypted));
+        Assert.assertEquals(MESSAGE, crypto.decryptWithSystemKey(encrypted));
+    }
+
+    @Test(expected = EncryptionOperationNotPossibleException.class)
+    public void tamperedMessagesAreRejected() throws Exception
+    {
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        String encrypted = crypto.encryptWithSystemKey(MESSAGE);
+        String prefix = encrypted.substring(0, encrypted.indexOf(':') + 1);
+        byte[] raw = Base64.getDecoder().decode(encrypted.substring(prefix.length()));
+        raw[raw.length - 1] ^= 1;
+        crypto.decryptWithSystemKey(prefix + Base64.getEncoder().encodeToString(raw));
+    }
+
+    @Test(expected = EncryptionOperationNotPossibleException.class)
+    public void truncatedMessagesAreRejected() throws Exception
+    {
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        String encrypted = crypto.encryptWithSystemKey(MESSAGE);
+        crypto.decryptWithSystemKey(encrypted.substring(0, 8));
+    }
+
+    @Test(expected = EncryptionOperationNotPossibleException.class)
+    public void messagesEncryptedWithAnotherPasswordAreRejected() throws Exception
+    {
+        String encrypted = this.mocker.getComponentUnderTest().encryptWithSystemKey(MESSAGE);
+        createInstance("another password", this.permanentDirectory.getRoot()).decryptWithSystemKey(encrypted);
+    }
+
+    @Test
+    public void messagesAreDecryptedByOtherInstances() throws Exception
+    {
+        String encrypted = this.mocker.getComponentUnderTest().encryptWithSystemKey(MESSAGE);
+        CryptoUtils other = createInstance(PASSWORD, this.permanentDirectory.newFolder());
+        Assert.assertEquals(MESSAGE, other.decryptWithSystemKey(encrypted));
+        Assert.assertEquals(MESSAGE, other.decryptWithSystemKey(other.encryptWithSystemKey(MESSAGE)));
+        Assert.assertFalse(new File(this.permanentDirectory.getRoot(), SALT_FILE).exists());
+    }
+
+    @Test
+    public void saltFileMessagesAreDecrypted() throws Exception
+    {
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        File saltFile = new File(this.permanentDirectory.getRoot(), SALT_FILE);
+        saltFile.getParentFile().mkdirs();
+        Files.write(saltFile.toPath(), Base64.getEncoder().encode(salt));
+        String encrypted = encryptWithSaltFileFormat(salt);
+
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(crypto.isLegacyEncryption(encrypted));
+        Assert.assertEquals(MESSAGE, crypto.decryptWithSystemKey(encrypted));
+    }
+
+    @Test
+    public void saltFileMessagesAreRejectedWithoutTheSaltFile() throws Exception
+    {
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        String encrypted = encryptWithSaltFileFormat(salt);
+
+        try {
+            this.mocker.getComponentUnderTest().decryptWithSystemKey(encrypted);
+            Assert.fail("A message was decrypted without its salt");
+        } catch (EncryptionOperationNotPossibleException ex) {
+            // Expected
+        }
+        // A new salt must not be generated in place of the lost one
+        Assert.assertFalse(new File(this.permanentDirectory.getRoot(), SALT_FILE).exists());
+    }
+
+    @Test
+    public void digestsAreValidated() throws Exception
+    {
+        CryptoUtils crypto = this.mocker.getComponentUnderTest();
+        String digest = crypto.digest(MESSAGE);
+        Assert.assertTrue(crypto.validateDigest(MESSAGE, digest));
+        Assert.assertFalse(crypto.validateDigest("other", digest));
+        Assert.assertFalse(crypto.validateDigest(MESSAGE, null));
+    }
+
+    private String encryptWithSaltFileFormat(byte[] salt) throws Exception
+    {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        SecretKey key = new SecretKeySpec(
+            factory.generateSecret(new PBEKeySpec(PASSWORD.toCharArray(), salt, 100000, 256)).getEncoded(), "AES");
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal(MESSAGE.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer result = ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted);
+        return "g1:" + Base64.getEncoder().encodeToString(result.array());
+    }
+
+    private CryptoUtils createInstance(String password, File directory) throws Exception
+    {
+        SystemPasswordConfiguration passwordConfig = Mockito.mock(SystemPasswordConfiguration.class);
+        when(passwordConfig.getSystemPassword()).thenReturn(password);
+        Environment environment = Mockito.mock(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(directory);
+
+        DefaultCryptoUtils result = new DefaultCryptoUtils();
+        ReflectionUtils.setFieldValue(result, "passwordConfig", passwordConfig);
+        ReflectionUtils.setFieldValue(result, "environment", environment);
+        result.initialize();
+        return result;
+    }
+}
@@ -40,12 +40,21 @@ public class EncryptedProperty extends BaseStringProperty
     /** Will be pre-pended to the values of the encrypted properties to identify that they are indeed encrypted. */
     private static final String ENCRYPTED_IDENTIFIER = "e:";
 
+    /** The last value decrypted or encrypted by this property, so that repeated reads don't decrypt it again. */
+    private transient volatile DecryptedValue decrypted;
+
     @Override
     public String getValue()
     {
         String value = super.getValue();
         if (isEncrypted(value)) {
-            return decrypt(value);
+            DecryptedValue cached = this.decrypted;
+            if (cached != null && value.equals(cached.encrypted)) {
+                return cached.plain;
+            }
+            String plain = decrypt(value);
+            this.decrypted = new DecryptedValue(value, plain);
+            return plain;
         }
         return value;
     }
@@ -61,10 +70,31 @@ public void setValue(Object value)
         if (isEncrypted(strValue)) {
             super.setValue(value);
         } else {
-            super.setValue(encrypt(strValue));
+            String encrypted = encrypt(strValue);
+            super.setValue(encrypted);
+            this.decrypted = new DecryptedValue(encrypted, strValue);
         }
     }
 
+    /**
+     * Encrypts the value again if it was stored using an older encryption format, so that future reads are faster.
+     *
+     * @return {@code true} if the stored value was changed, {@code false} if it already used the current format
+     * @see CryptoUtils#isLegacyEncryption(String)
+     */
+    boolean upgradeEncryption()
+    {
+        String value = super.getValue();
+        if (value == null || !isEncrypted(value) || !getCryptoUtils().isLegacyEncryption(getRawValue(value))) {
+            return false;
+        }
+        String plain = getValue();
+        String encrypted = encrypt(plain);
+        super.setValue(encrypted);
+        this.decrypted = new DecryptedValue(encrypted, plain);
+        return true;
+    }
+
     /**
      * Check if a value is already encrypted or not. This is determined by the presence of the
      * {@link #ENCRYPTED_IDENTIFIER} prefix.
@@ -116,4 +146,18 @@ private CryptoUtils getCryptoUtils()
     {
         return Utils.getComponent(CryptoUtils.class);
     }
+
+    /** A pair of encrypted and decrypted texts, kept together so that they can be replaced atomically. */
+    private static final class DecryptedValue
+    {
+        private final String encrypted;
+
+        private final String plain;
+
+        DecryptedValue(String encrypted, String plain)
+        {
+            this.encrypted = encrypted;
+            this.plain = plain;
+        }
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.encryption.internal;
+
+import org.xwiki.bridge.event.DocumentCreatingEvent;
+import org.xwiki.bridge.event.DocumentUpdatingEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Lazily migrates {@link EncryptedProperty encrypted properties} stored with an older, slower encryption format: when
+ * a document is saved, its encrypted values are encrypted again with the current format.
+ * <p>
+ * The rewrite is one-way: the older format remains readable by this version, but values encrypted again can no longer
+ * be read by versions that only know the older format, so downgrading after documents were saved is not possible
+ * without restoring a backup of the database. The values also depend on the per-instance salt stored next to the
+ * system key, see {@link DefaultCryptoUtils}.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("phenotips-encrypted-xproperty-upgrader")
+@Singleton
+public class EncryptedPropertyUpgrader extends AbstractEventListener
+{
+    @Inject
+    private Logger logger;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public EncryptedPropertyUpgrader()
+    {
+        super("phenotips-encrypted-xproperty-upgrader", new DocumentCreatingEvent(), new DocumentUpdatingEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument doc = (XWikiDocument) source;
+        int upgraded = 0;
+        for (List<BaseObject> objects : doc.getXObjects().values()) {
+            for (BaseObject object : objects) {
+                if (object == null) {
+                    continue;
+                }
+                for (Object property : object.getProperties()) {
+                    if (property instanceof EncryptedProperty && ((EncryptedProperty) property).upgradeEncryption()) {
+                        ++upgraded;
+                    }
+                }
+            }
+        }
+        if (upgraded > 0) {
+            this.logger.debug("Encrypted again [{}] values of [{}]", upgraded, doc.getDocumentReference());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.encryption.internal;
+
+import org.phenotips.security.encryption.CryptoUtils;
+
+import org.xwiki.bridge.event.DocumentUpdatingEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.StringProperty;
+import com.xpn.xwiki.web.Utils;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EncryptedPropertyUpgraderTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<>(EncryptedPropertyUpgrader.class);
+
+    private CryptoUtils crypto;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.crypto = this.mocker.registerMockComponent(CryptoUtils.class);
+        Utils.setComponentManager(this.mocker);
+        when(this.crypto.isLegacyEncryption("legacy")).thenReturn(true);
+        when(this.crypto.decryptWithSystemKey("legacy")).thenReturn("plain");
+        when(this.crypto.decryptWithSystemKey("g1:current")).thenReturn("plain");
+        when(this.crypto.encryptWithSystemKey("plain")).thenReturn("g1:current");
+    }
+
+    @Test
+    public void legacyValuesAreEncryptedAgain() throws Exception
+    {
+        EncryptedProperty property = new EncryptedProperty();
+        property.setValue("e:legacy");
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatingEvent(), mockDocument(property), null);
+
+        Assert.assertEquals("plain", property.getValue());
+        verify(this.crypto).encryptWithSystemKey("plain");
+        verify(this.crypto, Mockito.times(1)).decryptWithSystemKey("legacy");
+    }
+
+    @Test
+    public void currentValuesAreNotChanged() throws Exception
+    {
+        EncryptedProperty property = new EncryptedProperty();
+        property.setValue("e:g1:current");
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatingEvent(), mockDocument(property), null);
+
+        Assert.assertEquals("plain", property.getValue());
+        verify(this.crypto, never()).encryptWithSystemKey(anyString());
+    }
+
+    @Test
+    public void otherPropertiesAreIgnored() throws Exception
+    {
+        StringProperty property = new StringProperty();
+        property.setValue("e:legacy");
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatingEvent(), mockDocument(property), null);
+
+        Assert.assertEquals("e:legacy", property.getValue());
+        verify(this.crypto, never()).encryptWithSystemKey(anyString());
+        verify(this.crypto, never()).decryptWithSystemKey(anyString());
+    }
+
+    private XWikiDocument mockDocument(Object property)
+    {
+        BaseObject object = Mockito.mock(BaseObject.class);
+        when(object.getProperties()).thenReturn(new Object[] { property });
+        Map<DocumentReference, List<BaseObject>> objects = Collections.singletonMap(
+            new DocumentReference("wiki", "Space", "Class"), Arrays.asList(null, object));
+        XWikiDocument doc = Mockito.mock(XWikiDocument.class);
+        when(doc.getXObjects()).thenReturn(objects);
+        return doc;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.phenotips.storage.migrators.internal;
 
+import org.phenotips.context.ContextPropagator;
 import org.phenotips.storage.migrators.DataReader;
 import org.phenotips.storage.migrators.DataTypeMigrator;
 import org.phenotips.storage.migrators.DataWriter;
@@ -30,15 +31,24 @@
 import java.lang.reflect.Type;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 
+import org.slf4j.Logger;
+
 /**
  * Implementation for the {@link DataTypeMigrator} role, which tries to use all available {@link DataReader}s that
  * {@link DataReader#hasData() have data} and {@link DataWriter#storeEntity(Object) write} the retrieved data to the
- * currently enabled {@link DataWriter storage engine}.
+ * currently enabled {@link DataWriter storage engine}. Entities are read one at a time, and can be written by several
+ * threads in parallel, as configured by the {@code phenotips.storage.migration.threads} setting in
+ * {@code xwiki.properties}.
  *
  * @param <T> the type of data managed by this migrator, one of the classes from the data model
  * @version $Id$
@@ -49,6 +59,13 @@
     /** The current default storage engine assumed by XWiki if no specific store is enabled. */
     private static final String DEFAULT_STORE = "hibernate";
 
+    /** The {@code xwiki.properties} setting holding the number of threads writing entities in parallel. */
+    private static final String THREADS_CONFIGURATION_KEY = "phenotips.storage.migration.threads";
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
     /** Provides access tot the configuration file where the storage engines are configured. */
     @Inject
     @Named("legacy")
@@ -58,6 +75,15 @@
     @Inject
     private Provider<ComponentManager> cm;
 
+    /** Provides the number of writer threads. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource properties;
+
+    /** Runs the writer tasks in a copy of the context of the thread starting the migration. */
+    @Inject
+    private ContextPropagator contextPropagator;
+
     @Override
     public boolean migrate()
     {
@@ -79,17 +105,85 @@ public boolean migrate()
                 continue;
             }
 
+            MigrationProgress progress = new MigrationProgress(this.logger, getDataType());
+            int threads = getThreads();
+            if (threads > 1) {
+                allDataMigrated = migrateInParallel(reader, writer, progress, threads) && allDataMigrated;
+            } else {
+                Iterator<T> data = reader.getData();
+                while (data.hasNext()) {
+                    migrate(data.next(), reader, writer, progress);
+                }
+            }
+            progress.report();
+            allDataMigrated = allDataMigrated && progress.getFailed() == 0;
+        }
+        return allDataMigrated;
+    }
+
+    /**
+     * Reads entities on the current thread, and writes them using a pool of threads. To keep memory usage bounded,
+     * reading waits while all the writer threads are busy and another entity per thread is already waiting.
+     *
+     * @param reader the store to read from
+     * @param writer the store to write to
+     * @param progress where to record the outcome of each entity
+     * @param threads the number of writer threads
+     * @return {@code false} if the migration was interrupted, {@code true} otherwise
+     */
+    private boolean migrateInParallel(DataReader<T> reader, DataWriter<T> writer, MigrationProgress progress,
+        int threads)
+    {
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, getDataType() + " migration " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(2 * threads);
+        try {
             Iterator<T> data = reader.getData();
             while (data.hasNext()) {
                 T item = data.next();
-                if (writer.storeEntity(item)) {
-                    reader.discardEntity(item);
-                } else {
-                    allDataMigrated = false;
-                }
+                inFlight.acquire();
+                Runnable task = this.contextPropagator.wrap(() -> migrate(item, reader, writer, progress));
+                pool.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
             }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            return true;
+        } catch (InterruptedException ex) {
+            this.logger.warn("Interrupted while migrating {}, the remaining data will be migrated later",
+                getDataType());
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            return false;
         }
-        return allDataMigrated;
+    }
+
+    private void migrate(T item, DataReader<T> reader, DataWriter<T> writer, MigrationProgress progress)
+    {
+        boolean success = false;
+        try {
+            // A null item means that the reader failed to retrieve it, leave it in place
+            success = item != null && writer.storeEntity(item) && reader.discardEntity(item);
+        } catch (RuntimeException ex) {
+            this.logger.error("Unexpected failure while migrating {}: {}", getDataType(), ex.getMessage(), ex);
+        } finally {
+            progress.record(success);
+        }
+    }
+
+    private int getThreads()
+    {
+        Integer threads = this.properties.getProperty(THREADS_CONFIGURATION_KEY, Integer.class);
+        return threads == null ? 1 : threads;
     }
 
     private DataWriter<T> getCurrentWriter()
@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.storage.migrators.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+/**
+ * Keeps track of how many entities were moved from one store to another, periodically logging the progress. Since
+ * migrated entities are removed from the old store as soon as they are safely written, an interrupted migration
+ * resumes with the remaining entities the next time it runs; only failed entities are attempted again. Safe for
+ * concurrent use.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class MigrationProgress
+{
+    /** How many processed entities between two progress reports. */
+    private static final int REPORT_INTERVAL = 100;
+
+    private final Logger logger;
+
+    private final String description;
+
+    private final long start = System.nanoTime();
+
+    private final LongAdder migrated = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Simple constructor.
+     *
+     * @param logger where to report the progress
+     * @param description what is being migrated, used in the log messages
+     */
+    MigrationProgress(Logger logger, String description)
+    {
+        this.logger = logger;
+        this.description = description;
+    }
+
+    /**
+     * Records the outcome of migrating one entity.
+     *
+     * @param success {@code true} if the entity was written to the new store and removed from the old one
+     */
+    void record(boolean success)
+    {
+        if (success) {
+            this.migrated.increment();
+        } else {
+            this.failed.increment();
+        }
+        if (getProcessed() % REPORT_INTERVAL == 0) {
+            report();
+        }
+    }
+
+    /** @return the number of entities successfully migrated so far */
+    long getMigrated()
+    {
+        return this.migrated.sum();
+    }
+
+    /** @return the number of entities that could not be migrated so far */
+    long getFailed()
+    {
+        return this.failed.sum();
+    }
+
+    /** Logs the current progress. */
+    void report()
+    {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - this.start));
+        this.logger.info("Migrated [{}] {} in [{}] seconds, [{}] per second; [{}] failed", getMigrated(),
+            this.description, seconds, getMigrated() / seconds, getFailed());
+    }
+
+    private long getProcessed()
+    {
+        return this.migrated.sum() + this.failed.sum();
+    }
+}
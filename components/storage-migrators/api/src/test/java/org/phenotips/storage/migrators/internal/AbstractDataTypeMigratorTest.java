@@ -0,0 +1,160 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.storage.migrators.internal;
+
+import org.phenotips.context.ContextPropagator;
+import org.phenotips.storage.migrators.DataReader;
+import org.phenotips.storage.migrators.DataWriter;
+import org.phenotips.storage.migrators.Type;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.slf4j.Logger;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link AbstractDataTypeMigrator} base class.
+ *
+ * @version $Id$
+ */
+public class AbstractDataTypeMigratorTest
+{
+    private static final String FAILING_ITEM = "item 13";
+
+    private AbstractDataTypeMigrator<String> migrator = new AbstractDataTypeMigrator<String>()
+    {
+        @Override
+        public String getDataType()
+        {
+            return "items";
+        }
+
+        @Override
+        protected String getStoreConfigurationKey()
+        {
+            return "xwiki.store.item.hint";
+        }
+    };
+
+    private DataReader<String> reader;
+
+    private ConfigurationSource properties;
+
+    private ContextPropagator contextPropagator;
+
+    private Set<String> written = ConcurrentHashMap.newKeySet();
+
+    private List<String> items = new ArrayList<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception
+    {
+        for (int i = 0; i < 250; ++i) {
+            this.items.add("item " + i);
+        }
+
+        this.reader = mock(DataReader.class);
+        when(this.reader.getType()).thenReturn(new Type("items", "hibernate"));
+        when(this.reader.hasData()).thenReturn(true);
+        when(this.reader.getData()).then(invocation -> this.items.iterator());
+        when(this.reader.discardEntity(Matchers.anyString())).thenReturn(true);
+
+        DataWriter<String> writer = mock(DataWriter.class);
+        when(writer.getType()).thenReturn(new Type("items", "file"));
+        when(writer.storeEntity(Matchers.anyString())).then(invocation -> {
+            String item = (String) invocation.getArguments()[0];
+            return !FAILING_ITEM.equals(item) && this.written.add(item);
+        });
+
+        ComponentManager cm = mock(ComponentManager.class);
+        doReturn(writer).when(cm).getInstance(Matchers.any(java.lang.reflect.Type.class), Matchers.eq("items/file"));
+        doReturn(Collections.singletonMap("items/hibernate", this.reader)).when(cm)
+            .getInstanceMap(Matchers.any(java.lang.reflect.Type.class));
+        Provider<ComponentManager> cmProvider = mock(Provider.class);
+        when(cmProvider.get()).thenReturn(cm);
+
+        ConfigurationSource config = mock(ConfigurationSource.class);
+        when(config.getProperty("xwiki.store.item.hint", "hibernate")).thenReturn("file");
+        this.properties = mock(ConfigurationSource.class);
+
+        this.contextPropagator = mock(ContextPropagator.class);
+        when(this.contextPropagator.wrap(Matchers.any(Runnable.class)))
+            .then(invocation -> invocation.getArguments()[0]);
+
+        ReflectionUtils.setFieldValue(this.migrator, "cm", cmProvider);
+        ReflectionUtils.setFieldValue(this.migrator, "config", config);
+        ReflectionUtils.setFieldValue(this.migrator, "properties", this.properties);
+        ReflectionUtils.setFieldValue(this.migrator, "contextPropagator", this.contextPropagator);
+        ReflectionUtils.setFieldValue(this.migrator, "logger", mock(Logger.class));
+    }
+
+    @Test
+    public void allItemsAreMigratedSerially()
+    {
+        this.items.remove(FAILING_ITEM);
+        Assert.assertTrue(this.migrator.migrate());
+        Assert.assertEquals(250 - 1, this.written.size());
+        verify(this.reader).discardEntity("item 0");
+        verify(this.reader).discardEntity("item 249");
+    }
+
+    @Test
+    public void allItemsAreMigratedInParallel()
+    {
+        when(this.properties.getProperty("phenotips.storage.migration.threads", Integer.class)).thenReturn(4);
+        this.items.remove(FAILING_ITEM);
+        Assert.assertTrue(this.migrator.migrate());
+        Assert.assertEquals(250 - 1, this.written.size());
+        for (String item : this.items) {
+            verify(this.reader).discardEntity(item);
+        }
+        verify(this.contextPropagator, times(250 - 1)).wrap(Matchers.any(Runnable.class));
+    }
+
+    @Test
+    public void failedItemsAreKeptInTheOldStore()
+    {
+        when(this.properties.getProperty("phenotips.storage.migration.threads", Integer.class)).thenReturn(4);
+        this.items.add(null);
+        Assert.assertFalse(this.migrator.migrate());
+        Assert.assertEquals(250 - 1, this.written.size());
+        verify(this.reader, never()).discardEntity(FAILING_ITEM);
+        verify(this.reader, never()).discardEntity(null);
+    }
+}
@@ -25,9 +25,7 @@
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -64,6 +62,11 @@ public class HibernateAttachmentsReader implements DataReader<XWikiAttachment>
         "select d.fullName, a.filename from XWikiDocument d, XWikiAttachment a, XWikiAttachmentContent c"
             + " where a.docId = d.id and c.id = a.id";
 
+    /** The same as {@link #DATA_RETRIEVE_QUERY}, but also selecting the identifier, for paging. */
+    private static final String DATA_PAGE_QUERY =
+        "select a.id, d.fullName, a.filename from XWikiDocument d, XWikiAttachment a, XWikiAttachmentContent c"
+            + " where a.docId = d.id and c.id = a.id and a.id > ? order by a.id";
+
     @Inject
     private Logger logger;
 
@@ -106,26 +109,13 @@ public boolean hasData()
     @Override
     public Iterator<EntityReference> listData()
     {
-        try {
-            List<Object[]> data = this.docStore.search(DATA_RETRIEVE_QUERY, 0, 0, this.context.get());
-            return new ReferenceIterator(data);
-        } catch (XWikiException ex) {
-            this.logger.warn("Failed to list the database attachments: {}", ex.getMessage());
-            return Collections.emptyIterator();
-        }
+        return new ReferenceIterator(getRows());
     }
 
     @Override
     public Iterator<XWikiAttachment> getData()
     {
-        try {
-            List<Object[]> data = this.docStore.search(DATA_RETRIEVE_QUERY, 0, 0, this.context.get());
-            this.logger.debug("Found [{}] attachments in the database", data.size());
-            return new AttachmentIterator(data);
-        } catch (XWikiException ex) {
-            this.logger.warn("Failed to get the list of database attachments: {}", ex.getMessage());
-            return Collections.emptyIterator();
-        }
+        return new AttachmentIterator(getRows());
     }
 
     @Override
@@ -169,13 +159,19 @@ public boolean discardAllData()
         return true;
     }
 
+    private Iterator<Object[]> getRows()
+    {
+        return new PagedQueryIterator<Object[]>(this.docStore, DATA_PAGE_QUERY, row -> (Long) row[0], this.context,
+            this.logger);
+    }
+
     private class ReferenceIterator implements Iterator<EntityReference>
     {
         private Iterator<Object[]> data;
 
-        ReferenceIterator(List<Object[]> data)
+        ReferenceIterator(Iterator<Object[]> data)
         {
-            this.data = data.iterator();
+            this.data = data;
         }
 
         @Override
@@ -188,8 +184,8 @@ public boolean hasNext()
         public EntityReference next()
         {
             Object[] item = this.data.next();
-            return new AttachmentReference(String.valueOf(item[1]),
-                HibernateAttachmentsReader.this.resolver.resolve(String.valueOf(item[0])));
+            return new AttachmentReference(String.valueOf(item[2]),
+                HibernateAttachmentsReader.this.resolver.resolve(String.valueOf(item[1])));
         }
 
         @Override
@@ -203,9 +199,9 @@ private class AttachmentIterator implements Iterator<XWikiAttachment>
     {
         private Iterator<Object[]> data;
 
-        AttachmentIterator(List<Object[]> data)
+        AttachmentIterator(Iterator<Object[]> data)
         {
-            this.data = data.iterator();
+            this.data = data;
         }
 
         @Override
@@ -220,8 +216,8 @@ public XWikiAttachment next()
             Object[] item = this.data.next();
             try {
                 XWikiDocument doc =
-                    new XWikiDocument(HibernateAttachmentsReader.this.resolver.resolve(String.valueOf(item[0])));
-                XWikiAttachment att = new XWikiAttachment(doc, String.valueOf(item[1]));
+                    new XWikiDocument(HibernateAttachmentsReader.this.resolver.resolve(String.valueOf(item[1])));
+                XWikiAttachment att = new XWikiAttachment(doc, String.valueOf(item[2]));
                 HibernateAttachmentsReader.this.store.loadAttachmentContent(att,
                     HibernateAttachmentsReader.this.context.get(), true);
                 HibernateAttachmentsReader.this.archiveStore.loadArchive(att,
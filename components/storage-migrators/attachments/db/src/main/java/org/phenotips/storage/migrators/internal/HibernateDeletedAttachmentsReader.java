@@ -25,9 +25,7 @@
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -60,7 +58,10 @@ public class HibernateDeletedAttachmentsReader implements DataReader<DeletedAtta
 
     private static final String DATA_RETRIEVE_QUERY = "select a.id from DeletedAttachment a";
 
-    private static final String DATA_REFERENCE_QUERY = "select a.docName, a.filename from DeletedAttachment a";
+    private static final String DATA_PAGE_QUERY = "select a.id from DeletedAttachment a where a.id > ? order by a.id";
+
+    private static final String DATA_REFERENCE_QUERY =
+        "select a.id, a.docName, a.filename from DeletedAttachment a where a.id > ? order by a.id";
 
     @Inject
     private Logger logger;
@@ -100,26 +101,15 @@ public boolean hasData()
     @Override
     public Iterator<EntityReference> listData()
     {
-        try {
-            List<Object[]> data = this.docStore.search(DATA_REFERENCE_QUERY, 0, 0, this.context.get());
-            return new ReferenceIterator(data);
-        } catch (XWikiException ex) {
-            this.logger.warn("Failed to list the database deleted attachments: {}", ex.getMessage());
-            return Collections.emptyIterator();
-        }
+        return new ReferenceIterator(new PagedQueryIterator<Object[]>(this.docStore, DATA_REFERENCE_QUERY,
+            row -> (Long) row[0], this.context, this.logger));
     }
 
     @Override
     public Iterator<DeletedAttachment> getData()
     {
-        try {
-            List<Long> data = this.docStore.search(DATA_RETRIEVE_QUERY, 0, 0, this.context.get());
-            this.logger.debug("Found [{}] deleted attachments in the database trash", data.size());
-            return new DeletedAttachmentIterator(data);
-        } catch (XWikiException ex) {
-            this.logger.warn("Failed to get the list of database deleted attachments: {}", ex.getMessage());
-            return Collections.emptyIterator();
-        }
+        return new DeletedAttachmentIterator(
+            new PagedQueryIterator<Long>(this.docStore, DATA_PAGE_QUERY, id -> id, this.context, this.logger));
     }
 
     @Override
@@ -167,9 +157,9 @@ private class ReferenceIterator implements Iterator<EntityReference>
     {
         private Iterator<Object[]> data;
 
-        ReferenceIterator(List<Object[]> data)
+        ReferenceIterator(Iterator<Object[]> data)
         {
-            this.data = data.iterator();
+            this.data = data;
         }
 
         @Override
@@ -183,8 +173,8 @@ public boolean hasNext()
         public EntityReference next()
         {
             Object[] item = this.data.next();
-            return new AttachmentReference(String.valueOf(item[1]),
-                HibernateDeletedAttachmentsReader.this.resolver.resolve(String.valueOf(item[0])));
+            return new AttachmentReference(String.valueOf(item[2]),
+                HibernateDeletedAttachmentsReader.this.resolver.resolve(String.valueOf(item[1])));
         }
 
         @Override
@@ -198,9 +188,9 @@ private class DeletedAttachmentIterator implements Iterator<DeletedAttachment>
     {
         private Iterator<Long> data;
 
-        DeletedAttachmentIterator(List<Long> data)
+        DeletedAttachmentIterator(Iterator<Long> data)
         {
-            this.data = data.iterator();
+            this.data = data;
         }
 
         @Override
@@ -0,0 +1,123 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.storage.migrators.internal;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import javax.inject.Provider;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+
+/**
+ * Iterates over the results of a database query one page at a time, so that huge stores can be traversed without
+ * loading the whole result list in memory. Pages are fetched by key instead of by offset, which means that rows deleted
+ * while iterating, such as already migrated entities, don't cause other rows to be skipped. The query must have a
+ * single parameter, {@code ?}, used as {@code key > ?}, and must be ordered by that key.
+ *
+ * @param <R> the type of the query result rows
+ * @version $Id$
+ * @since 1.4
+ */
+final class PagedQueryIterator<R> implements Iterator<R>
+{
+    /** The number of rows fetched at once. */
+    static final int PAGE_SIZE = 100;
+
+    private final XWikiStoreInterface store;
+
+    private final String query;
+
+    private final Function<R, Long> key;
+
+    private final Provider<XWikiContext> context;
+
+    private final Logger logger;
+
+    private Iterator<R> page = Collections.emptyIterator();
+
+    private Long lastKey = Long.MIN_VALUE;
+
+    private boolean exhausted;
+
+    /**
+     * Simple constructor.
+     *
+     * @param store the store to query
+     * @param query the query to run, with a {@code key > ?} condition and ordered by that key
+     * @param key extracts the key from a result row
+     * @param context provides the context needed for running the query
+     * @param logger where to report failures
+     */
+    PagedQueryIterator(XWikiStoreInterface store, String query, Function<R, Long> key,
+        Provider<XWikiContext> context, Logger logger)
+    {
+        this.store = store;
+        this.query = query;
+        this.key = key;
+        this.context = context;
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (!this.page.hasNext() && !this.exhausted) {
+            fetchNextPage();
+        }
+        return this.page.hasNext();
+    }
+
+    @Override
+    public R next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.page.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    private void fetchNextPage()
+    {
+        try {
+            List<R> rows = this.store.search(this.query, PAGE_SIZE, 0, Collections.singletonList(this.lastKey),
+                this.context.get());
+            this.exhausted = rows.size() < PAGE_SIZE;
+            if (!rows.isEmpty()) {
+                this.lastKey = this.key.apply(rows.get(rows.size() - 1));
+            }
+            this.page = rows.iterator();
+        } catch (XWikiException ex) {
+            this.logger.warn("Failed to retrieve the next page of [{}]: {}", this.query, ex.getMessage());
+            this.exhausted = true;
+        }
+    }
+}
@@ -22,6 +22,11 @@
 
 import org.xwiki.component.annotation.Component;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
@@ -36,7 +41,9 @@
 
 /**
  * {@link DataWriter} that can write {@link XWikiAttachment attachments} (content and archive) into the filesystem
- * storage engine.
+ * storage engine. After writing, the stored content is read back and its checksum compared with the original, so that
+ * the original is only discarded once the copy is known to be complete. Contents are compared as streams, without
+ * holding a second copy of the attachment in memory.
  *
  * @version $Id$
  * @since 1.0RC1
@@ -48,6 +55,10 @@ public class FilesystemAttachmentsWriter implements DataWriter<XWikiAttachment>
 {
     private static final Type TYPE = new Type("attachments", "file");
 
+    private static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     @Inject
     private Logger logger;
 
@@ -84,11 +95,58 @@ public boolean storeEntity(XWikiAttachment entity)
         try {
             this.store.saveAttachmentContent(entity, false, this.context.get(), false);
             // The archive is also automatically stored by the call above, no need to explicitly store the archive
-            this.logger.debug("Imported attachment [{}] into the filesystem store", entity.getReference());
-            return true;
         } catch (XWikiException ex) {
             this.logger.error("Failed to store attachment into the filesystem store: {}", ex.getMessage(), ex);
             return false;
         }
+        if (!isCopyIdentical(entity)) {
+            discardCopy(entity);
+            return false;
+        }
+        this.logger.debug("Imported attachment [{}] into the filesystem store", entity.getReference());
+        return true;
+    }
+
+    private boolean isCopyIdentical(XWikiAttachment entity)
+    {
+        XWikiAttachment stored = new XWikiAttachment(entity.getDoc(), entity.getFilename());
+        try {
+            this.store.loadAttachmentContent(stored, this.context.get(), false);
+            if (MessageDigest.isEqual(checksum(entity.getContentInputStream(this.context.get())),
+                checksum(stored.getContentInputStream(this.context.get())))) {
+                return true;
+            }
+            this.logger.error("The filesystem copy of attachment [{}] is different from the original",
+                entity.getReference());
+        } catch (XWikiException | IOException | NoSuchAlgorithmException ex) {
+            this.logger.error("Failed to verify the filesystem copy of attachment [{}]: {}", entity.getReference(),
+                ex.getMessage(), ex);
+        }
+        return false;
+    }
+
+    private void discardCopy(XWikiAttachment entity)
+    {
+        // Otherwise the next migration attempt would assume that the attachment was already imported
+        try {
+            this.store.deleteXWikiAttachment(new XWikiAttachment(entity.getDoc(), entity.getFilename()), false,
+                this.context.get(), false);
+        } catch (XWikiException ex) {
+            this.logger.error("Failed to remove the invalid filesystem copy of attachment [{}]: {}",
+                entity.getReference(), ex.getMessage(), ex);
+        }
+    }
+
+    private static byte[] checksum(InputStream content) throws IOException, NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        try (InputStream input = content) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
     }
 }
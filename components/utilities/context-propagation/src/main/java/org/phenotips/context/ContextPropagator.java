@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.context;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Prepares tasks to be run by other threads in the context of the current request. The XWiki context of the thread
+ * wrapping a task is captured, and the wrapped task runs in a new execution context holding a copy of it, so that it
+ * can access documents, translations and the current user like the request itself. The copy doesn't include the
+ * database session, since sessions are bound to the thread that opened them: each task opens its own.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Role
+public interface ContextPropagator
+{
+    /**
+     * Wraps a task so that it runs in a copy of the current XWiki context. Must be called in the thread whose context
+     * should be used, usually the thread submitting the task to a pool.
+     *
+     * @param task the task to wrap
+     * @return a task running {@code task} in a copy of the current context, or {@code task} itself if the current
+     *         thread has no XWiki context
+     */
+    Runnable wrap(Runnable task);
+
+    /**
+     * Wraps a task so that it runs in a copy of the current XWiki context. Must be called in the thread whose context
+     * should be used, usually the thread submitting the task to a pool.
+     *
+     * @param <T> the type of result returned by the task
+     * @param task the task to wrap
+     * @return a task running {@code task} in a copy of the current context, or {@code task} itself if the current
+     *         thread has no XWiki context
+     */
+    <T> Callable<T> wrap(Callable<T> task);
+}
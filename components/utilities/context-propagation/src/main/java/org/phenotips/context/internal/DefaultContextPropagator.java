@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.context.internal;
+
+import org.phenotips.context.ContextPropagator;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Default implementation of the {@link ContextPropagator} role. The XWiki context is copied when the task starts, in
+ * the thread running it.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultContextPropagator implements ContextPropagator
+{
+    /** The keys under which the database session and transaction of a thread are stored in its XWiki context. */
+    private static final String[] DATABASE_SESSION_KEYS = { "hibsession", "hibtransaction" };
+
+    @Inject
+    private Execution execution;
+
+    @Override
+    public Runnable wrap(Runnable task)
+    {
+        XWikiContext callerContext = getCurrentContext();
+        if (callerContext == null) {
+            return task;
+        }
+        return () -> {
+            enterCopyOf(callerContext);
+            try {
+                task.run();
+            } finally {
+                this.execution.removeContext();
+            }
+        };
+    }
+
+    @Override
+    public <T> Callable<T> wrap(Callable<T> task)
+    {
+        XWikiContext callerContext = getCurrentContext();
+        if (callerContext == null) {
+            return task;
+        }
+        return () -> {
+            enterCopyOf(callerContext);
+            try {
+                return task.call();
+            } finally {
+                this.execution.removeContext();
+            }
+        };
+    }
+
+    private XWikiContext getCurrentContext()
+    {
+        ExecutionContext context = this.execution.getContext();
+        return context == null ? null : (XWikiContext) context.getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
+    }
+
+    private void enterCopyOf(XWikiContext callerContext)
+    {
+        XWikiContext copy = callerContext.clone();
+        for (String key : DATABASE_SESSION_KEYS) {
+            copy.remove(key);
+        }
+        ExecutionContext context = new ExecutionContext();
+        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, copy);
+        this.execution.setContext(context);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.context.internal;
+
+import org.phenotips.context.ContextPropagator;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultContextPropagator} component.
+ *
+ * @version $Id$
+ */
+public class DefaultContextPropagatorTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<ContextPropagator> mocker =
+        new MockitoComponentMockingRule<>(DefaultContextPropagator.class);
+
+    @Mock
+    private XWikiContext callerContext;
+
+    @Mock
+    private XWikiContext copiedContext;
+
+    private Execution execution;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+        this.execution = this.mocker.getInstance(Execution.class);
+        ExecutionContext context = new ExecutionContext();
+        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, this.callerContext);
+        when(this.execution.getContext()).thenReturn(context);
+        when(this.callerContext.clone()).thenReturn(this.copiedContext);
+    }
+
+    @Test
+    public void runnablesRunInACopyOfTheCallerContextWithoutItsDatabaseSession() throws Exception
+    {
+        Runnable task = Mockito.mock(Runnable.class);
+        Runnable wrapped = this.mocker.getComponentUnderTest().wrap(task);
+        // Nothing is copied until the task runs
+        Mockito.verify(this.callerContext, Mockito.never()).clone();
+
+        wrapped.run();
+
+        InOrder order = Mockito.inOrder(this.execution, task);
+        ArgumentCaptor<ExecutionContext> context = ArgumentCaptor.forClass(ExecutionContext.class);
+        order.verify(this.execution).setContext(context.capture());
+        order.verify(task).run();
+        order.verify(this.execution).removeContext();
+        Assert.assertSame(this.copiedContext, context.getValue().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY));
+        Mockito.verify(this.copiedContext).remove("hibsession");
+        Mockito.verify(this.copiedContext).remove("hibtransaction");
+        Mockito.verify(this.callerContext, Mockito.never()).remove(Mockito.anyString());
+    }
+
+    @Test
+    public void callablesReturnTheTaskResult() throws Exception
+    {
+        Callable<String> wrapped = this.mocker.getComponentUnderTest().wrap(() -> "result");
+        Assert.assertEquals("result", wrapped.call());
+        Mockito.verify(this.execution).setContext(Mockito.any(ExecutionContext.class));
+        Mockito.verify(this.execution).removeContext();
+    }
+
+    @Test
+    public void contextIsRemovedWhenTheTaskFails() throws Exception
+    {
+        Callable<String> failing = () -> {
+            throw new IllegalStateException();
+        };
+        Callable<String> wrapped = this.mocker.getComponentUnderTest().wrap(failing);
+        try {
+            wrapped.call();
+            Assert.fail("The failure of the task must be propagated");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        Mockito.verify(this.execution).removeContext();
+    }
+
+    @Test
+    public void tasksAreNotWrappedWithoutACallerContext() throws Exception
+    {
+        when(this.execution.getContext()).thenReturn(null);
+        Runnable task = Mockito.mock(Runnable.class);
+        Assert.assertSame(task, this.mocker.getComponentUnderTest().wrap(task));
+
+        when(this.execution.getContext()).thenReturn(new ExecutionContext());
+        Callable<Object> callable = () -> null;
+        Assert.assertSame(callable, this.mocker.getComponentUnderTest().wrap(callable));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, least recently used cache for the results of expensive requests, such as vocabulary searches or
+ * suggestions built from vocabulary terms. Concurrent requests for the same key are merged, so that only one of them
+ * computes the result and the others wait for it. The cache must be {@link #clear() cleared} whenever the cached
+ * results may have changed, for example when a vocabulary is reindexed; results computed before clearing the cache
+ * are returned to their callers, but not stored. Safe for concurrent use.
+ *
+ * @param <V> the type of the cached results
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+public class ResultCache<V>
+{
+    private final Map<String, V> entries;
+
+    private final ConcurrentMap<String, CompletableFuture<V>> pending = new ConcurrentHashMap<>();
+
+    /** Incremented each time the cache is cleared, so that stale results are not stored. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder merged = new LongAdder();
+
+    /**
+     * Simple constructor.
+     *
+     * @param capacity the maximum number of results to keep
+     */
+    public ResultCache(final int capacity)
+    {
+        this.entries = new LinkedHashMap<String, V>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a request, or computes it if needed. If the same request is already being computed
+     * by another thread, its result is awaited instead of computing it again.
+     *
+     * @param key identifies the request, including all the parameters that may influence its result
+     * @param computation computes the actual result, must not return {@code null}
+     * @return the result of the request; results are shared with other callers and must not be modified
+     * @throws Exception if the computation fails; failures are not cached
+     */
+    public V get(String key, Callable<V> computation) throws Exception
+    {
+        V result = getCached(key);
+        if (result != null) {
+            this.hits.increment();
+            return result;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = this.pending.putIfAbsent(key, future);
+        if (running != null) {
+            this.merged.increment();
+            return await(running);
+        }
+        try {
+            // Another thread may have finished the same computation between the two checks
+            result = getCached(key);
+            if (result == null) {
+                this.misses.increment();
+                long startGeneration = this.generation.get();
+                result = computation.call();
+                synchronized (this.entries) {
+                    if (startGeneration == this.generation.get()) {
+                        this.entries.put(key, result);
+                    }
+                }
+            } else {
+                this.hits.increment();
+            }
+            future.complete(result);
+            return result;
+        } catch (Exception | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            this.pending.remove(key, future);
+        }
+    }
+
+    /** Forgets all the cached results. */
+    public void clear()
+    {
+        synchronized (this.entries) {
+            this.generation.incrementAndGet();
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * @return a snapshot of the cache counters; the hit ratio is a percentage of the requests that didn't need to
+     *         compute their result, either because it was cached, or because it was shared with a concurrent request
+     */
+    public Map<String, Long> getStatistics()
+    {
+        long cacheHits = this.hits.sum();
+        long cacheMisses = this.misses.sum();
+        long mergedRequests = this.merged.sum();
+        long total = cacheHits + cacheMisses + mergedRequests;
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        synchronized (this.entries) {
+            result.put("size", (long) this.entries.size());
+        }
+        result.put("hits", cacheHits);
+        result.put("misses", cacheMisses);
+        result.put("merged", mergedRequests);
+        result.put("hitRatioPercent", total == 0 ? 0 : (cacheHits + mergedRequests) * 100 / total);
+        return Collections.unmodifiableMap(result);
+    }
+
+    private V getCached(String key)
+    {
+        synchronized (this.entries) {
+            return this.entries.get(key);
+        }
+    }
+
+    private V await(CompletableFuture<V> running) throws Exception
+    {
+        try {
+            return running.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+}
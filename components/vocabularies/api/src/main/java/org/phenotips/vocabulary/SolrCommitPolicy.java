@@ -0,0 +1,214 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import org.xwiki.stability.Unstable;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Decides when changes sent to a Solr core are committed, and keeps track of the commits performed. Incremental
+ * changes, like indexing or deleting a single document, are made visible either by letting Solr commit them within a
+ * configured delay ({@code commitWithin}), or by an explicit soft or hard commit. Bulk jobs send all their documents
+ * without committing, and then perform a single {@link #commit(SolrClient) hard commit} at the end. Soft commits only
+ * make changes visible to searches, durability is left to the {@code autoCommit} configured for the core. Safe for
+ * concurrent use.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+public class SolrCommitPolicy
+{
+    private final int commitWithin;
+
+    private final boolean softCommit;
+
+    private final LongAdder hardCommits = new LongAdder();
+
+    private final LongAdder softCommits = new LongAdder();
+
+    private final LongAdder deferredCommits = new LongAdder();
+
+    private final LongAdder failedCommits = new LongAdder();
+
+    private final LongAdder totalLatency = new LongAdder();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * Simple constructor.
+     *
+     * @param commitWithin the maximum delay, in milliseconds, before Solr commits incremental changes by itself; zero
+     *            or negative values disable {@code commitWithin}, and incremental changes are committed explicitly
+     * @param softCommit whether explicit commits of incremental changes are soft commits, which only make changes
+     *            visible, or hard commits, which also flush them to the disk
+     */
+    public SolrCommitPolicy(int commitWithin, boolean softCommit)
+    {
+        this.commitWithin = commitWithin;
+        this.softCommit = softCommit;
+    }
+
+    /**
+     * @return the maximum delay, in milliseconds, before incremental changes are committed by Solr, or a zero or
+     *         negative value if {@code commitWithin} isn't used
+     */
+    public int getCommitWithin()
+    {
+        return this.commitWithin;
+    }
+
+    /**
+     * @return {@code true} if incremental changes are made visible with soft commits
+     */
+    public boolean isSoftCommit()
+    {
+        return this.softCommit;
+    }
+
+    /**
+     * Sends an incremental change to a core. The change will only be visible after {@link #publish(SolrClient)}.
+     *
+     * @param client the target core
+     * @param document the document to add or replace
+     * @throws SolrServerException if the change is refused by Solr
+     * @throws IOException if communicating with Solr fails
+     */
+    public void add(SolrClient client, SolrInputDocument document) throws SolrServerException, IOException
+    {
+        if (this.commitWithin > 0) {
+            client.add(document, this.commitWithin);
+        } else {
+            client.add(document);
+        }
+    }
+
+    /**
+     * Deletes the documents matching a query. The change will only be visible after {@link #publish(SolrClient)}.
+     *
+     * @param client the target core
+     * @param query the query selecting the documents to delete
+     * @throws SolrServerException if the change is refused by Solr
+     * @throws IOException if communicating with Solr fails
+     */
+    public void deleteByQuery(SolrClient client, String query) throws SolrServerException, IOException
+    {
+        if (this.commitWithin > 0) {
+            client.deleteByQuery(query, this.commitWithin);
+        } else {
+            client.deleteByQuery(query);
+        }
+    }
+
+    /**
+     * Makes the incremental changes sent to a core visible. With {@code commitWithin} nothing is done, since Solr will
+     * commit the changes by itself, otherwise a soft or a hard commit is performed.
+     *
+     * @param client the target core
+     * @throws SolrServerException if the commit fails
+     * @throws IOException if communicating with Solr fails
+     */
+    public void publish(SolrClient client) throws SolrServerException, IOException
+    {
+        if (this.commitWithin > 0) {
+            this.deferredCommits.increment();
+        } else {
+            timedCommit(client, this.softCommit);
+        }
+    }
+
+    /**
+     * Makes all the pending changes visible right away with a soft commit, even with {@code commitWithin}. This is
+     * meant for readers that need to see all the changes sent so far, for example before loading a whole core.
+     *
+     * @param client the target core
+     * @throws SolrServerException if the commit fails
+     * @throws IOException if communicating with Solr fails
+     */
+    public void refresh(SolrClient client) throws SolrServerException, IOException
+    {
+        timedCommit(client, true);
+    }
+
+    /**
+     * Performs a hard commit, flushing all the pending changes to the disk and making them visible. This is meant to
+     * be called once, at the end of bulk jobs.
+     *
+     * @param client the target core
+     * @throws SolrServerException if the commit fails
+     * @throws IOException if communicating with Solr fails
+     */
+    public void commit(SolrClient client) throws SolrServerException, IOException
+    {
+        timedCommit(client, false);
+    }
+
+    /**
+     * @return a snapshot of the commit counters; latencies are in milliseconds, and only include explicit commits
+     */
+    public Map<String, Long> getStatistics()
+    {
+        long commits = this.hardCommits.sum() + this.softCommits.sum() + this.failedCommits.sum();
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(this.totalLatency.sum());
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("hardCommits", this.hardCommits.sum());
+        result.put("softCommits", this.softCommits.sum());
+        result.put("deferredCommits", this.deferredCommits.sum());
+        result.put("failedCommits", this.failedCommits.sum());
+        result.put("totalCommitMillis", latencyMillis);
+        result.put("averageCommitMillis", commits == 0 ? 0 : latencyMillis / commits);
+        result.put("maxCommitMillis", TimeUnit.NANOSECONDS.toMillis(this.maxLatency.get()));
+        return result;
+    }
+
+    private void timedCommit(SolrClient client, boolean soft) throws SolrServerException, IOException
+    {
+        long start = System.nanoTime();
+        boolean successful = false;
+        try {
+            if (soft) {
+                client.commit(true, true, true);
+            } else {
+                client.commit();
+            }
+            successful = true;
+        } finally {
+            long latency = System.nanoTime() - start;
+            this.totalLatency.add(latency);
+            this.maxLatency.accumulateAndGet(latency, Math::max);
+            if (!successful) {
+                this.failedCommits.increment();
+            } else if (soft) {
+                this.softCommits.increment();
+            } else {
+                this.hardCommits.increment();
+            }
+        }
+    }
+}
@@ -38,4 +38,15 @@
      * @return a loaded core container instance
      */
     CoreContainer getContainer();
+
+    /**
+     * Gets the policy deciding how changes to a core are committed, configured in {@code xwiki.properties} with the
+     * {@code phenotips.solr.<coreName>.commitWithin} and {@code phenotips.solr.<coreName>.softCommit} properties. The
+     * same policy instance is returned for a core, so that its statistics cover all the commits done on that core.
+     *
+     * @param coreName the name of the target core
+     * @return the commit policy for the core
+     * @since 1.4
+     */
+    SolrCommitPolicy getCommitPolicy(String coreName);
 }
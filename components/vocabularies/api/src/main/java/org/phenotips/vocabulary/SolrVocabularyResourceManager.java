@@ -88,4 +88,15 @@
      * @since 1.4
      */
     void discardReplacementCore(String vocabularyId);
+
+    /**
+     * Get the policy deciding how changes to the Solr core of a vocabulary are committed. The same policy is used for
+     * the {@link #getReplacementSolrConnection(String) temporary core} used during reindexing.
+     *
+     * @param vocabularyId the identifier of the target vocabulary
+     * @return the commit policy for the vocabulary core
+     * @since 1.4
+     * @see SolrCoreContainerHandler#getCommitPolicy(String)
+     */
+    SolrCommitPolicy getCommitPolicy(String vocabularyId);
 }
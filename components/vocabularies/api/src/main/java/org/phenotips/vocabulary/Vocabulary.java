@@ -262,4 +262,27 @@ default String getSourceLocation()
      * @return the list of vocabulary extensions.
      */
     List<VocabularyExtension> getExtensions();
+
+    /**
+     * Get statistics about the cache of recent search results, such as its size and hit ratio.
+     *
+     * @return a map of counter names to their current values, empty if this vocabulary doesn't cache searches
+     * @since 1.4
+     */
+    default Map<String, Long> getSearchCacheStatistics()
+    {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Get statistics about the commits performed on the index of this vocabulary, such as their number and latency.
+     *
+     * @return a map of counter names to their current values, as returned by {@link SolrCommitPolicy#getStatistics()},
+     *         empty if this vocabulary isn't stored in a Solr index
+     * @since 1.4
+     */
+    default Map<String, Long> getCommitStatistics()
+    {
+        return Collections.emptyMap();
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.events;
+
+import org.phenotips.vocabulary.Vocabulary;
+
+import org.xwiki.observation.event.Event;
+import org.xwiki.stability.Unstable;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * An event that is fired after a vocabulary was successfully reindexed, when its new content is already available.
+ * Components caching data computed from a vocabulary should discard it when receiving this event. The event source is
+ * the reindexed {@link Vocabulary}.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+public class VocabularyReindexedEvent implements Event
+{
+    /** The identifier of the reindexed vocabulary. */
+    protected final String vocabularyId;
+
+    /**
+     * Constructor initializing the required fields.
+     *
+     * @param vocabularyId the {@link Vocabulary#getIdentifier() identifier} of the reindexed vocabulary, or
+     *            {@code null} to match all the vocabularies when listening to events
+     */
+    public VocabularyReindexedEvent(String vocabularyId)
+    {
+        this.vocabularyId = vocabularyId;
+    }
+
+    /** Default constructor, to be used for declaring that a listener wants to observe all the vocabularies. */
+    public VocabularyReindexedEvent()
+    {
+        this(null);
+    }
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        if (otherEvent instanceof VocabularyReindexedEvent) {
+            VocabularyReindexedEvent otherReindexEvent = (VocabularyReindexedEvent) otherEvent;
+            return this.vocabularyId == null
+                || StringUtils.equals(otherReindexEvent.getVocabularyId(), this.vocabularyId);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the identifier of the reindexed vocabulary.
+     *
+     * @return the {@link Vocabulary#getIdentifier() identifier} of the reindexed vocabulary, or {@code null} if this
+     *         isn't an actual event on a vocabulary
+     */
+    public String getVocabularyId()
+    {
+        return this.vocabularyId;
+    }
+}
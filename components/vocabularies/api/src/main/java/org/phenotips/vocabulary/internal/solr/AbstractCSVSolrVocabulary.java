@@ -86,7 +86,7 @@ protected int index(String sourceUrl)
             while (dataIterator.hasNext()) {
                 /* Resetting when the batch fills */
                 if (batchCounter == getSolrDocsPerBatch()) {
-                    commitTerms(termBatch);
+                    addTerms(termBatch);
                     termBatch = new HashSet<>();
                     batchCounter = 0;
                 }
@@ -95,7 +95,7 @@ protected int index(String sourceUrl)
                 termBatch.add(item);
                 batchCounter++;
             }
-            commitTerms(termBatch);
+            addTerms(termBatch);
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index vocabulary: {}", ex.getMessage());
@@ -114,7 +114,7 @@ protected int index(String sourceUrl)
             while (dataIterator.hasNext()) {
                 /* Resetting when the batch fills */
                 if (batchCounter == getSolrDocsPerBatch()) {
-                    commitTerms(termBatch);
+                    addTerms(termBatch);
                     termBatch = new HashSet<>();
                     batchCounter = 0;
                 }
@@ -130,7 +130,7 @@ protected int index(String sourceUrl)
                 termBatch.add(doc);
                 batchCounter++;
             }
-            commitTerms(termBatch);
+            addTerms(termBatch);
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index vocabulary: {}", ex.getMessage());
@@ -143,7 +143,7 @@ protected int index(@Nullable final String sourceUrl)
                 int batchCounter = 0;
                 while (subClasses.hasNext()) {
                     if (batchCounter == getSolrDocsPerBatch()) {
-                        commitTerms(termBatch);
+                        addTerms(termBatch);
                         termBatch = new HashSet<>();
                         batchCounter = 0;
                     }
@@ -153,7 +153,7 @@ protected int index(@Nullable final String sourceUrl)
                 }
                 subClasses.close();
             }
-            commitTerms(termBatch);
+            addTerms(termBatch);
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index ontology: {}", ex.getMessage());
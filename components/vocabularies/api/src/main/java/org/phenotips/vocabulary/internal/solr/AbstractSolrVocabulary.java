@@ -17,15 +17,18 @@
  */
 package org.phenotips.vocabulary.internal.solr;
 
+import org.phenotips.vocabulary.ResultCache;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyExtension;
 import org.phenotips.vocabulary.VocabularyInputTerm;
 import org.phenotips.vocabulary.VocabularySourceRelocationService;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.ObservationManager;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -68,6 +71,12 @@ public abstract class AbstractSolrVocabulary implements Vocabulary
      */
     private static final VocabularyTerm EMPTY_MARKER = new SolrVocabularyTerm(null, null);
 
+    /** The maximum number of search results cached for each vocabulary. */
+    private static final int SEARCH_CACHE_CAPACITY = 1000;
+
+    /** Searches asking for more results than this, usually bulk queries rather than suggestions, aren't cached. */
+    private static final int MAX_CACHED_ROWS = 100;
+
     /** Logging helper object. */
     @Inject
     protected Logger logger;
@@ -83,6 +92,13 @@ public abstract class AbstractSolrVocabulary implements Vocabulary
     @Inject
     protected VocabularySourceRelocationService relocationService;
 
+    /** Notifies the other components that the vocabulary was reindexed. */
+    @Inject
+    protected ObservationManager observationManager;
+
+    /** Results of recent searches, shared by all requests until the vocabulary is reindexed. */
+    private final ResultCache<SolrDocumentList> searchCache = new ResultCache<>(SEARCH_CACHE_CAPACITY);
+
     // Dilemma:
     // In an ideal world there should be a getter methods for server and cache instances.
     // However the point of splitting up the server was to lessen the number of imports
@@ -202,9 +218,14 @@ public int reindex(String sourceUrl)
                     }
                 }
             }
+            if (retval == 0) {
+                retval = commitReplacementCore();
+            }
             if (retval == 0) {
                 this.externalServicesAccess.replaceCore(getCoreName());
                 this.externalServicesAccess.getTermCache(getCoreName()).removeAll();
+                this.searchCache.clear();
+                this.observationManager.notify(new VocabularyReindexedEvent(getIdentifier()), this);
             }
             return retval;
         } catch (InitializationException ex) {
@@ -266,12 +287,26 @@ public List<VocabularyExtension> getExtensions()
         return result;
     }
 
+    @Override
+    public Map<String, Long> getSearchCacheStatistics()
+    {
+        return this.searchCache.getStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getCommitStatistics()
+    {
+        return this.externalServicesAccess.getCommitPolicy(getCoreName()).getStatistics();
+    }
+
     /**
      * Perform a search, falling back on the suggested spellchecked query if the original query fails to return any
-     * results.
+     * results. Searches for a limited number of results, such as suggestions, are cached until the vocabulary is
+     * reindexed.
      *
      * @param query the Solr query to use, should contain at least a value for the "q" parameter
-     * @return the list of matching documents, empty if there are no matching terms
+     * @return the list of matching documents, empty if there are no matching terms; the list may be shared with other
+     *         callers and must not be modified
      */
     protected SolrDocumentList search(SolrQuery query)
     {
@@ -287,21 +322,12 @@ protected SolrDocumentList search(SolrQuery query)
                     }
                 }
             }
-            this.logger.debug("Searching [{}] with query [{}]", getCoreName(), query);
-            QueryResponse response = this.externalServicesAccess.getSolrConnection(getCoreName()).query(query);
-            SolrDocumentList results = response.getResults();
-            if (response.getSpellCheckResponse() != null && !response.getSpellCheckResponse().isCorrectlySpelled()
-                && StringUtils.isNotEmpty(response.getSpellCheckResponse().getCollatedResult())) {
-                SolrQueryUtils.applySpellcheckSuggestion(query,
-                    response.getSpellCheckResponse().getCollatedResult());
-                this.logger.debug("Searching [{}] with spellchecked query [{}]", getCoreName(), query);
-                SolrDocumentList spellcheckResults =
-                    this.externalServicesAccess.getSolrConnection(getCoreName()).query(query).getResults();
-                if (results.getMaxScore() < spellcheckResults.getMaxScore()) {
-                    results = spellcheckResults;
-                }
+            Integer rows = query.getRows();
+            if (rows != null && rows <= MAX_CACHED_ROWS) {
+                // The key is computed after extending the query, since extensions may depend on the current request
+                return this.searchCache.get(query.toString(), () -> searchSolr(query));
             }
-            return results;
+            return searchSolr(query);
         } catch (Exception ex) {
             this.logger.error("Failed to search: {}", ex.getMessage(), ex);
         }
@@ -381,13 +407,25 @@ protected void extendTerm(VocabularyInputTerm term)
     }
 
     /**
-     * Commits the batch of newly-processed documents.
+     * Sends the batch of newly-processed documents to the temporary core. The documents are not committed yet, a
+     * single hard commit is performed once all the terms are indexed.
      */
-    protected void commitTerms(Collection<SolrInputDocument> batch)
+    protected void addTerms(Collection<SolrInputDocument> batch)
         throws SolrServerException, IOException, OutOfMemoryError
     {
         this.externalServicesAccess.getReplacementSolrConnection(getCoreName()).add(batch);
-        this.externalServicesAccess.getReplacementSolrConnection(getCoreName()).commit();
+    }
+
+    private int commitReplacementCore()
+    {
+        try {
+            this.externalServicesAccess.getCommitPolicy(getCoreName())
+                .commit(this.externalServicesAccess.getReplacementSolrConnection(getCoreName()));
+            return 0;
+        } catch (SolrServerException | IOException ex) {
+            this.logger.warn("Failed to commit the reindexed vocabulary: {}", ex.getMessage());
+        }
+        return 1;
     }
 
     private VocabularyTerm cacheTerm(String id, SolrDocument doc)
@@ -400,4 +438,23 @@ private VocabularyTerm cacheTerm(String id, SolrDocument doc)
         }
         return term;
     }
+
+    private SolrDocumentList searchSolr(SolrQuery query) throws SolrServerException, IOException
+    {
+        this.logger.debug("Searching [{}] with query [{}]", getCoreName(), query);
+        QueryResponse response = this.externalServicesAccess.getSolrConnection(getCoreName()).query(query);
+        SolrDocumentList results = response.getResults();
+        if (response.getSpellCheckResponse() != null && !response.getSpellCheckResponse().isCorrectlySpelled()
+            && StringUtils.isNotEmpty(response.getSpellCheckResponse().getCollatedResult())) {
+            SolrQueryUtils.applySpellcheckSuggestion(query,
+                response.getSpellCheckResponse().getCollatedResult());
+            this.logger.debug("Searching [{}] with spellchecked query [{}]", getCoreName(), query);
+            SolrDocumentList spellcheckResults =
+                this.externalServicesAccess.getSolrConnection(getCoreName()).query(query).getResults();
+            if (results.getMaxScore() < spellcheckResults.getMaxScore()) {
+                results = spellcheckResults;
+            }
+        }
+        return results;
+    }
 }
@@ -29,7 +29,6 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -145,9 +144,8 @@ public AbstractSolrVocabularyTerm(SolrDocumentBase<? extends Object, ? extends S
     protected void initialize()
     {
         if (!isNull()) {
-            this.removeSelfFromAncestors();
             this.parents = new LazySolrTermSet(getValues(PARENTS_KEY), this.vocabulary);
-            this.ancestors = new LazySolrTermSet(getValues(ANCESTORS_KEY), this.vocabulary);
+            this.ancestors = new LazySolrTermSet(getAncestorIds(), this.vocabulary);
             this.ancestorsAndSelf = getUncachedAncestorsAndSelf();
         }
     }
@@ -427,17 +425,20 @@ protected Object getFirstValue(String key)
     /**
      * The field "term_category" in {@code this.doc} can contain the term itself. It appears that this only happens with
      * HPO. To avoid this problem, and to avoid writing a separate implementation for HPO specifically, this method
-     * checks for existence of the term in the term_category and takes it out.
+     * returns the identifiers in the term_category without the term itself. The document is left unchanged, since it
+     * may be shared with other terms built from the same cached search results.
+     *
+     * @return the identifiers of the ancestors of this term, may be empty
      */
-    private void removeSelfFromAncestors()
+    private Collection<Object> getAncestorIds()
     {
-        Object value = getFirstValue(ANCESTORS_KEY);
-        if (!(value instanceof List)) {
-            return;
+        Collection<Object> values = getValues(ANCESTORS_KEY);
+        if (CollectionUtils.isEmpty(values)) {
+            return values;
         }
-        @SuppressWarnings("unchecked")
-        List<String> listValue = (List<String>) value;
-        listValue.remove(this.getId());
+        Collection<Object> result = new LinkedHashSet<>(values);
+        result.remove(this.getId());
+        return result;
     }
 
     /**
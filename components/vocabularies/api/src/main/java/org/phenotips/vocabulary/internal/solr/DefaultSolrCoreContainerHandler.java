@@ -17,23 +17,30 @@
  */
 package org.phenotips.vocabulary.internal.solr;
 
+import org.phenotips.vocabulary.SolrCommitPolicy;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.environment.Environment;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.core.CoreContainer;
 
 /**
  * Default implementation of {@link SolrCoreContainerHandler}, looking for the Solr configuration in a subdirectory of
- * the permanent directory called {@code solr}.
+ * the permanent directory called {@code solr}. Unless configured otherwise, incremental changes are made visible with
+ * soft commits, without {@code commitWithin}.
  *
  * @version $Id$
  * @since 1.2M4 (under a different package since 1.0M13)
@@ -41,13 +48,26 @@
 @Component
 public class DefaultSolrCoreContainerHandler implements SolrCoreContainerHandler, Initializable, Disposable
 {
+    private static final String CONFIGURATION_PREFIX = "phenotips.solr.";
+
+    /** The suffix of the temporary cores used while reindexing, which share the policy of the main core. */
+    private static final String TEMPORARY_CORE_SUFFIX = "_temp";
+
     /** Provides access to the configured permanent directory. */
     @Inject
     private Environment environment;
 
+    /** Provides the commit settings for each core. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
     /** The initialized core container. */
     private CoreContainer cores;
 
+    /** The commit policies already created, one for each core. */
+    private final ConcurrentMap<String, SolrCommitPolicy> commitPolicies = new ConcurrentHashMap<>();
+
     @Override
     public void initialize()
     {
@@ -62,6 +82,16 @@ public CoreContainer getContainer()
         return this.cores;
     }
 
+    @Override
+    public SolrCommitPolicy getCommitPolicy(String coreName)
+    {
+        return this.commitPolicies.computeIfAbsent(StringUtils.removeEnd(coreName, TEMPORARY_CORE_SUFFIX), name -> {
+            int commitWithin = this.configuration.getProperty(CONFIGURATION_PREFIX + name + ".commitWithin", -1);
+            boolean softCommit = this.configuration.getProperty(CONFIGURATION_PREFIX + name + ".softCommit", true);
+            return new SolrCommitPolicy(commitWithin, softCommit);
+        });
+    }
+
     @Override
     public void dispose() throws ComponentLifecycleException
     {
@@ -17,6 +17,7 @@
  */
 package org.phenotips.vocabulary.internal.solr;
 
+import org.phenotips.vocabulary.SolrCommitPolicy;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.VocabularyTerm;
@@ -232,4 +233,10 @@ public void discardReplacementCore(String vocabularyId)
             this.caches.remove(vocabularyId + TEMP);
         }
     }
+
+    @Override
+    public SolrCommitPolicy getCommitPolicy(String vocabularyId)
+    {
+        return this.coreContainer.getCommitPolicy(vocabularyId);
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.common.SolrDocumentList;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ResultCache} class.
+ *
+ * @version $Id$
+ */
+public class ResultCacheTest
+{
+    private final AtomicInteger searches = new AtomicInteger();
+
+    @Test
+    public void resultsAreCached() throws Exception
+    {
+        ResultCache<SolrDocumentList> cache = new ResultCache<>(10);
+        SolrDocumentList result = cache.get("q=seiz", this::search);
+        Assert.assertSame(result, cache.get("q=seiz", this::search));
+        Assert.assertNotSame(result, cache.get("q=hypoton", this::search));
+        Assert.assertEquals(2, this.searches.get());
+
+        Map<String, Long> statistics = cache.getStatistics();
+        Assert.assertEquals(2L, (long) statistics.get("size"));
+        Assert.assertEquals(1L, (long) statistics.get("hits"));
+        Assert.assertEquals(2L, (long) statistics.get("misses"));
+        Assert.assertEquals(33L, (long) statistics.get("hitRatioPercent"));
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsAreEvicted() throws Exception
+    {
+        ResultCache<SolrDocumentList> cache = new ResultCache<>(2);
+        SolrDocumentList first = cache.get("a", this::search);
+        cache.get("b", this::search);
+        cache.get("a", this::search);
+        cache.get("c", this::search);
+        Assert.assertSame(first, cache.get("a", this::search));
+        cache.get("b", this::search);
+        Assert.assertEquals(4, this.searches.get());
+    }
+
+    @Test
+    public void clearingForgetsResults() throws Exception
+    {
+        ResultCache<SolrDocumentList> cache = new ResultCache<>(10);
+        SolrDocumentList result = cache.get("q=seiz", this::search);
+        cache.clear();
+        Assert.assertNotSame(result, cache.get("q=seiz", this::search));
+        Assert.assertEquals(2, this.searches.get());
+    }
+
+    @Test
+    public void resultsStartedBeforeClearingAreNotStored() throws Exception
+    {
+        ResultCache<SolrDocumentList> cache = new ResultCache<>(10);
+        cache.get("q=seiz", () -> {
+            cache.clear();
+            return search();
+        });
+        cache.get("q=seiz", this::search);
+        Assert.assertEquals(2, this.searches.get());
+    }
+
+    @Test
+    public void failuresAreNotCached() throws Exception
+    {
+        ResultCache<SolrDocumentList> cache = new ResultCache<>(10);
+        try {
+            cache.get("q=seiz", () -> {
+                throw new IllegalStateException("Solr is down");
+            });
+            Assert.fail("The failure should have been propagated");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        Assert.assertNotNull(cache.get("q=seiz", this::search));
+        Assert.assertEquals(1, this.searches.get());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentIdenticalSearchesAreMerged() throws Exception
+    {
+        ResultCache<SolrDocumentList> cache = new ResultCache<>(10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<SolrDocumentList> leader = executor.submit(() -> cache.get("q=seiz", () -> {
+                started.countDown();
+                release.await();
+                return search();
+            }));
+            started.await();
+            Future<?>[] followers = new Future<?>[3];
+            for (int i = 0; i < followers.length; ++i) {
+                followers[i] = executor.submit(() -> cache.get("q=seiz", this::search));
+            }
+            // Give the followers time to join the running search
+            while (cache.getStatistics().get("merged") < followers.length) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<?> follower : followers) {
+                Assert.assertSame(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, this.searches.get());
+            Assert.assertEquals(75L, (long) cache.getStatistics().get("hitRatioPercent"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void failuresAreSharedWithMergedSearches() throws Exception
+    {
+        ResultCache<SolrDocumentList> cache = new ResultCache<>(10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<SolrDocumentList> leader = executor.submit(() -> cache.get("q=seiz", () -> {
+                started.countDown();
+                release.await();
+                throw new IOException("Solr is down");
+            }));
+            started.await();
+            Future<SolrDocumentList> follower = executor.submit(() -> cache.get("q=seiz", this::search));
+            while (cache.getStatistics().get("merged") < 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<SolrDocumentList> request : Arrays.asList(leader, follower)) {
+                try {
+                    request.get(5, TimeUnit.SECONDS);
+                    Assert.fail("The failure should have been propagated");
+                } catch (ExecutionException ex) {
+                    Assert.assertTrue(ex.getCause() instanceof IOException);
+                }
+            }
+            Assert.assertEquals(0, this.searches.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SolrDocumentList search()
+    {
+        this.searches.incrementAndGet();
+        return new SolrDocumentList();
+    }
+}
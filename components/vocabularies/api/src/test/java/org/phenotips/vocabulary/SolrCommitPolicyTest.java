@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link SolrCommitPolicy} class.
+ *
+ * @version $Id$
+ */
+public class SolrCommitPolicyTest
+{
+    private final SolrClient client = mock(SolrClient.class);
+
+    private final SolrInputDocument document = new SolrInputDocument();
+
+    @Test
+    public void incrementalChangesAreSoftCommitted() throws SolrServerException, IOException
+    {
+        SolrCommitPolicy policy = new SolrCommitPolicy(-1, true);
+        policy.add(this.client, this.document);
+        policy.deleteByQuery(this.client, "id:1");
+        policy.publish(this.client);
+
+        verify(this.client).add(this.document);
+        verify(this.client).deleteByQuery("id:1");
+        verify(this.client).commit(true, true, true);
+        verifyNoMoreInteractions(this.client);
+
+        Map<String, Long> statistics = policy.getStatistics();
+        Assert.assertEquals(0L, (long) statistics.get("hardCommits"));
+        Assert.assertEquals(1L, (long) statistics.get("softCommits"));
+        Assert.assertEquals(0L, (long) statistics.get("deferredCommits"));
+    }
+
+    @Test
+    public void incrementalChangesAreHardCommittedWhenSoftCommitsAreDisabled() throws SolrServerException, IOException
+    {
+        SolrCommitPolicy policy = new SolrCommitPolicy(0, false);
+        policy.add(this.client, this.document);
+        policy.publish(this.client);
+
+        verify(this.client).add(this.document);
+        verify(this.client).commit();
+        verifyNoMoreInteractions(this.client);
+        Assert.assertEquals(1L, (long) policy.getStatistics().get("hardCommits"));
+    }
+
+    @Test
+    public void commitWithinDefersCommitsToSolr() throws SolrServerException, IOException
+    {
+        SolrCommitPolicy policy = new SolrCommitPolicy(1000, true);
+        policy.add(this.client, this.document);
+        policy.deleteByQuery(this.client, "id:1");
+        policy.publish(this.client);
+
+        verify(this.client).add(this.document, 1000);
+        verify(this.client).deleteByQuery("id:1", 1000);
+        verifyNoMoreInteractions(this.client);
+
+        Map<String, Long> statistics = policy.getStatistics();
+        Assert.assertEquals(0L, (long) statistics.get("softCommits"));
+        Assert.assertEquals(1L, (long) statistics.get("deferredCommits"));
+    }
+
+    @Test
+    public void refreshingAlwaysSoftCommits() throws SolrServerException, IOException
+    {
+        SolrCommitPolicy policy = new SolrCommitPolicy(1000, false);
+        policy.refresh(this.client);
+
+        verify(this.client).commit(true, true, true);
+        verifyNoMoreInteractions(this.client);
+        Assert.assertEquals(1L, (long) policy.getStatistics().get("softCommits"));
+    }
+
+    @Test
+    public void bulkCommitsAreAlwaysHard() throws SolrServerException, IOException
+    {
+        SolrCommitPolicy policy = new SolrCommitPolicy(1000, true);
+        policy.commit(this.client);
+
+        verify(this.client).commit();
+        verifyNoMoreInteractions(this.client);
+        Assert.assertEquals(1L, (long) policy.getStatistics().get("hardCommits"));
+    }
+
+    @Test
+    public void failedCommitsAreCounted() throws SolrServerException, IOException
+    {
+        SolrCommitPolicy policy = new SolrCommitPolicy(-1, true);
+        when(this.client.commit(true, true, true)).thenThrow(new SolrServerException("failed"));
+        try {
+            policy.publish(this.client);
+            Assert.fail("The commit failure should be propagated");
+        } catch (SolrServerException ex) {
+            // Expected
+        }
+
+        Map<String, Long> statistics = policy.getStatistics();
+        Assert.assertEquals(0L, (long) statistics.get("softCommits"));
+        Assert.assertEquals(1L, (long) statistics.get("failedCommits"));
+        verify(this.client).commit(true, true, true);
+    }
+}
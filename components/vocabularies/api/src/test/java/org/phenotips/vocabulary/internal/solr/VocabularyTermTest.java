@@ -26,6 +26,7 @@
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.localization.LocalizationContext;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -226,4 +227,27 @@ public void translatedPropertiesCascadeDownLocaleParts() throws ComponentLookupE
         when(this.lc.getCurrentLocale()).thenReturn(new Locale("fr"));
         Assert.assertEquals("Term", term.toJSON().get("name_translated"));
     }
+
+    @Test
+    public void selfIsExcludedFromAncestorsWithoutChangingTheDocument()
+    {
+        Vocabulary vocabulary = mock(Vocabulary.class);
+
+        SolrDocument doc = new SolrDocument();
+        doc.setField("id", "T2");
+        doc.setField("is_a", Collections.singleton("T1"));
+        doc.setField("term_category", new ArrayList<>(Arrays.asList("T2", "T1", "T0")));
+        VocabularyTerm term = new SolrVocabularyTerm(doc, vocabulary);
+
+        Assert.assertEquals(2, term.getAncestors().size());
+        Assert.assertTrue(term.getAncestors().contains("T1"));
+        Assert.assertTrue(term.getAncestors().contains("T0"));
+        Assert.assertFalse(term.getAncestors().contains("T2"));
+        Assert.assertEquals(3, term.getAncestorsAndSelf().size());
+        // The document may be shared through the search cache, and must not be modified
+        Assert.assertEquals(Arrays.asList("T2", "T1", "T0"), doc.getFieldValues("term_category"));
+
+        VocabularyTerm sameTerm = new SolrVocabularyTerm(doc, vocabulary);
+        Assert.assertEquals(2, sameTerm.getAncestors().size());
+    }
 }
@@ -17,6 +17,7 @@
  */
 package org.phenotips.vocabulary.internal.solr;
 
+import org.phenotips.vocabulary.SolrCommitPolicy;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
@@ -76,6 +77,7 @@ public void setUpOntology()
         this.server = mock(SolrClient.class);
         when(externalServicesAccess.getReplacementSolrConnection("chebi")).thenReturn(this.server);
         when(externalServicesAccess.getSolrConnection("chebi")).thenReturn(this.server);
+        when(externalServicesAccess.getCommitPolicy("chebi")).thenReturn(new SolrCommitPolicy(-1, true));
         this.ontologyService = this.mocker.getComponentUnderTest();
         this.ontologyServiceResult =
             this.ontologyService.reindex(this.getClass().getResource("/chebi-test.obo").toString());
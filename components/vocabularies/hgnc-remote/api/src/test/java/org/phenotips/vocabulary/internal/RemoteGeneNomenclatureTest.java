@@ -19,6 +19,7 @@
 
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
+import org.phenotips.vocabulary.events.VocabularyReindexedEvent;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
@@ -29,6 +30,7 @@
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.IOException;
@@ -299,11 +301,15 @@ public void getVersionWithErrorReturnsEmptyString() throws ComponentLookupExcept
     }
 
     @Test
-    public void reindexInvalidatesCache() throws ComponentLookupException
+    public void reindexInvalidatesCache() throws Exception
     {
-        Assert.assertEquals(0, this.mocker.getComponentUnderTest().reindex(null));
+        Vocabulary vocabulary = this.mocker.getComponentUnderTest();
+        Assert.assertEquals(0, vocabulary.reindex(null));
         Mockito.verify(this.cache).removeAll();
         Mockito.verifyNoMoreInteractions(this.client);
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        Mockito.verify(observationManager).notify(Matchers.any(VocabularyReindexedEvent.class),
+            Matchers.same(vocabulary));
     }
 
     @Test
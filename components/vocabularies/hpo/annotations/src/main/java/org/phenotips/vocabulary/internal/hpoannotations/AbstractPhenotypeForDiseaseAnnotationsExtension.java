@@ -26,7 +26,9 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
@@ -57,10 +59,37 @@ public abstract class AbstractPhenotypeForDiseaseAnnotationsExtension extends Ab
     private static final Collection<String> TARGET_VOCABULARIES =
         Collections.unmodifiableList(Arrays.asList("omim", "ordo", "decipher"));
 
+    /** Diseases only have the two fields filled in by this extension. */
+    private static final int FIELDS_PER_DISEASE = 2;
+
+    /** The typical number of phenotypes, including ancestors, listed for a disease. */
+    private static final int PHENOTYPES_PER_FIELD = 16;
+
     /** The vocabulary manager for easy access to various vocabularies. */
     @Inject
     private VocabularyManager vocabularyManager;
 
+    /**
+     * The IDs of each phenotype and its ancestors, memoized while parsing the annotations, since the same phenotypes
+     * are listed for many diseases.
+     */
+    private Map<String, Collection<String>> selfAndAncestors = new HashMap<>();
+
+    /** Canonical instances of the identifiers read from the annotations, so that repeated identifiers share memory. */
+    private Map<String, String> identifiers = new HashMap<>();
+
+    @Override
+    public void indexingStarted(@Nonnull final Vocabulary vocabulary)
+    {
+        try {
+            super.indexingStarted(vocabulary);
+        } finally {
+            // Only needed while parsing, and the HPO may change before the next reindex
+            this.selfAndAncestors = new HashMap<>();
+            this.identifiers = new HashMap<>();
+        }
+    }
+
     @Override
     protected Collection<String> getTargetVocabularyIds()
     {
@@ -75,13 +104,14 @@ protected void processCSVRecordRow(@Nonnull final CSVRecord row, @Nonnull final
         final String dbName = getRowItem(row, VOCABULARY_ID_COLUMN);
         if (StringUtils.isNotBlank(dbName)) {
             String diseaseId = getRowItem(row, TERM_ID_COLUMN);
-            final String symptomId = getRowItem(row, PHENOTYPE_COLUMN);
+            String symptomId = getRowItem(row, PHENOTYPE_COLUMN);
             if (StringUtils.isNotBlank(diseaseId) && StringUtils.isNotBlank(symptomId)) {
                 diseaseId = vocabularyIdToTermPrefix(dbName) + diseaseId;
+                symptomId = intern(symptomId);
                 MultiValuedMap<String, String> termData = this.data.get(diseaseId);
                 if (termData == null) {
-                    termData = new HashSetValuedHashMap<>();
-                    this.data.put(diseaseId, termData);
+                    termData = new HashSetValuedHashMap<>(FIELDS_PER_DISEASE, PHENOTYPES_PER_FIELD);
+                    this.data.put(intern(diseaseId), termData);
                 }
 
                 termData.put(getDirectPhenotypesLabel(), symptomId);
@@ -109,29 +139,47 @@ private String vocabularyIdToTermPrefix(String vocabularyId)
     }
 
     /**
-     * Returns a set with {@code termId} and the IDs of its ancestor terms.
+     * Returns a set with {@code termId} and the IDs of its ancestor terms. The vocabulary is only queried the first
+     * time a term is encountered.
      *
      * @param termId the term ID
-     * @return a set with {@code termId} and the IDs of all its ancestor terms
+     * @return an unmodifiable set with {@code termId} and the IDs of all its ancestor terms
      */
     private Collection<String> getSelfAndAncestorTermIds(@Nonnull final String termId)
     {
-        // The collection that will contain termId and the IDs of its ancestors.
-        final Collection<String> ancestors = new HashSet<>();
-        ancestors.add(termId);
-
-        // Find the term in the vocabulary, and if it exists, retrieve its ancestors, if any.
-        final VocabularyTerm vocabularyTerm = this.vocabularyManager.resolveTerm(termId);
-        if (vocabularyTerm != null) {
-            for (VocabularyTerm ancestor : vocabularyTerm.getAncestors()) {
-                ancestors.add(ancestor.getId());
+        Collection<String> ancestors = this.selfAndAncestors.get(termId);
+        if (ancestors == null) {
+            // The collection that will contain termId and the IDs of its ancestors.
+            ancestors = new HashSet<>();
+            ancestors.add(termId);
+
+            // Find the term in the vocabulary, and if it exists, retrieve its ancestors, if any.
+            final VocabularyTerm vocabularyTerm = this.vocabularyManager.resolveTerm(termId);
+            if (vocabularyTerm != null) {
+                for (VocabularyTerm ancestor : vocabularyTerm.getAncestors()) {
+                    ancestors.add(intern(ancestor.getId()));
+                }
+            } else {
+                this.logger.warn("Could not find term with ID: {} in indexed vocabularies.", termId);
             }
-        } else {
-            this.logger.warn("Could not find term with ID: {} in indexed vocabularies.", termId);
+            ancestors = Collections.unmodifiableCollection(ancestors);
+            this.selfAndAncestors.put(termId, ancestors);
         }
         return ancestors;
     }
 
+    /**
+     * Returns the canonical instance of an identifier, to avoid storing many copies of the same string.
+     *
+     * @param identifier the identifier to intern
+     * @return an identifier equal to the given one, the same instance for all equal identifiers
+     */
+    private String intern(final String identifier)
+    {
+        final String existing = this.identifiers.putIfAbsent(identifier, identifier);
+        return existing == null ? identifier : existing;
+    }
+
     /**
      * Gets the label for the field that contains phenotypes obtained directly from {@link #getAnnotationSource()}.
      *
@@ -170,6 +170,22 @@ public void extendTermVocabularyTermThatHasAssociatedPhenotypeDataIsModified() t
         verifyNoMoreInteractions(this.inputTerm);
     }
 
+    @Test
+    public void ancestorsAreResolvedOncePerPhenotype() throws Exception
+    {
+        // Parse the same annotations again, as if the phenotypes were listed for more diseases
+        createRowsData();
+        final VocabularyManager vocabularyManager = this.mocker.getInstance(VocabularyManager.class);
+        verify(vocabularyManager, times(1)).resolveTerm("HP:0003155");
+        verify(vocabularyManager, times(1)).resolveTerm("HP:0003162");
+        verify(vocabularyManager, times(1)).resolveTerm("HP:0004359");
+
+        when(this.inputTerm.getId()).thenReturn("ORDO:263455");
+        this.extension.extendTerm(this.inputTerm, this.vocabulary);
+        verify(this.inputTerm, times(1)).set(ALL_ANCESTOR_PHENOTYPES_LABEL,
+            new HashSet<>(Arrays.asList("HP:0003155", "HP:0003162", "HP:0004359", "HP:0003117", "HP:0000818")));
+    }
+
     @Test
     public void isVocabularySupported() throws Exception
     {
@@ -17,6 +17,7 @@
  */
 package org.phenotips.vocabulary.internal.solr;
 
+import org.phenotips.vocabulary.SolrCommitPolicy;
 import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyTerm;
@@ -27,6 +28,7 @@
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -82,6 +84,7 @@ public void setUpOntology()
         this.server = mock(SolrClient.class);
         when(externalServicesAccess.getReplacementSolrConnection("hpo")).thenReturn(this.server);
         when(externalServicesAccess.getSolrConnection("hpo")).thenReturn(this.server);
+        when(externalServicesAccess.getCommitPolicy("hpo")).thenReturn(new SolrCommitPolicy(-1, true));
         this.ontologyService = this.mocker.getComponentUnderTest();
         this.ontologyServiceResult =
             this.ontologyService.reindex(this.getClass().getResource("/hpo-test.obo").toString());
@@ -98,6 +101,15 @@ public void testHumanPhenotypeOntologyReindex()
         Assert.assertTrue(this.ontologyServiceResult == 0);
     }
 
+    @Test
+    public void testHumanPhenotypeOntologyCommitStatistics()
+    {
+        Map<String, Long> statistics = this.ontologyService.getCommitStatistics();
+        Assert.assertEquals(Long.valueOf(1), statistics.get("hardCommits"));
+        Assert.assertEquals(Long.valueOf(0), statistics.get("softCommits"));
+        Assert.assertEquals(Long.valueOf(0), statistics.get("failedCommits"));
+    }
+
     @Test
     public void testHumanPhenotypeOntologyVersion() throws SolrServerException, IOException
     {
@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.Relation;
+
+import org.xwiki.stability.Unstable;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Resource for resolving many {@link org.phenotips.vocabulary.VocabularyTerm terms} at once, possibly from different
+ * vocabularies. The requested term identifiers are passed in the repeated {@code term-id} parameter, in the format
+ * {@code <vocabulary prefix>:<term id>}, for example {@code term-id=HP:0002066&term-id=MIM:162200}. The response is a
+ * JSON array with the terms that could be resolved, grouped by vocabulary; identifiers that can't be resolved are
+ * skipped. Responses carry an {@code ETag} that only changes when the requested vocabularies are reindexed, or when
+ * the terms are requested in a different language, so clients can send conditional requests with
+ * {@code If-None-Match}.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable("New API introduced in 1.4")
+@Path("/vocabularies/terms")
+@ParentResource(VocabulariesResource.class)
+@Relation("https://phenotips.org/rel/vocabularyTerms")
+public interface VocabularyTermsResolveResource
+{
+    /**
+     * Retrieves a JSON array with the requested terms, listed in the query string.
+     *
+     * @return the requested terms, {@code 304 Not Modified} if the client's copy is still valid, or
+     *         {@code 400 Bad Request} if no terms, or too many terms, are requested
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    Response resolveTerms();
+
+    /**
+     * Retrieves a JSON array with the requested terms, listed in a form submitted in the request body, for requests
+     * too long to fit in a URL.
+     *
+     * @return the requested terms, {@code 304 Not Modified} if the client's copy is still valid, or
+     *         {@code 400 Bad Request} if no terms, or too many terms, are requested
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response resolveSubmittedTerms();
+}
@@ -0,0 +1,263 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest.internal;
+
+import org.phenotips.vocabularies.rest.VocabularyTermsResolveResource;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.container.Container;
+import org.xwiki.localization.LocalizationContext;
+import org.xwiki.rest.XWikiResource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONWriter;
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the {@link VocabularyTermsResolveResource}.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("org.phenotips.vocabularies.rest.internal.DefaultVocabularyTermsResolveResource")
+@Singleton
+public class DefaultVocabularyTermsResolveResource extends XWikiResource implements VocabularyTermsResolveResource
+{
+    private static final String TERM_ID_PARAMETER = "term-id";
+
+    /** The maximum number of terms that can be requested at once. */
+    private static final int MAX_TERMS = 1000;
+
+    @Inject
+    private VocabularyManager vm;
+
+    @Inject
+    private Container container;
+
+    @Inject
+    private LocalizationContext localizationContext;
+
+    @Context
+    private HttpHeaders headers;
+
+    @Inject
+    private Logger logger;
+
+    @Override
+    public Response resolveTerms()
+    {
+        Set<String> termIds = new LinkedHashSet<>();
+        for (Object value : this.container.getRequest().getProperties(TERM_ID_PARAMETER)) {
+            if (value != null && StringUtils.isNotBlank(value.toString())) {
+                termIds.add(value.toString().trim());
+            }
+        }
+        if (termIds.isEmpty() || termIds.size() > MAX_TERMS) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+
+        Map<Vocabulary, List<String>> termIdsByVocabulary = groupByVocabulary(termIds);
+        Locale locale = this.localizationContext.getCurrentLocale();
+        EntityTag tag = getEntityTag(termIds, termIdsByVocabulary.keySet(), locale);
+        Response.ResponseBuilder response;
+        if (tag != null && matches(this.headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH), tag)) {
+            response = Response.notModified(tag);
+        } else {
+            StreamingOutput body = output -> writeTerms(termIdsByVocabulary, output);
+            response = Response.ok(body, MediaType.APPLICATION_JSON_TYPE);
+            if (tag != null) {
+                response.tag(tag);
+            }
+        }
+        // Terms are translated in the language of the request, so the same tag can't be reused for other languages
+        return response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE).build();
+    }
+
+    @Override
+    public Response resolveSubmittedTerms()
+    {
+        return resolveTerms();
+    }
+
+    /**
+     * Groups term identifiers by their vocabulary, identified by the prefix of each term identifier. Terms from unknown
+     * vocabularies are ignored.
+     *
+     * @param termIds the requested term identifiers
+     * @return the term identifiers for each vocabulary, in the order of the request
+     */
+    private Map<Vocabulary, List<String>> groupByVocabulary(Set<String> termIds)
+    {
+        Map<String, Vocabulary> vocabularies = new HashMap<>();
+        Map<Vocabulary, List<String>> result = new LinkedHashMap<>();
+        for (String termId : termIds) {
+            String prefix = StringUtils.substringBefore(termId, ":");
+            if (StringUtils.isBlank(prefix)) {
+                continue;
+            }
+            Vocabulary vocabulary = vocabularies.computeIfAbsent(prefix, this.vm::getVocabulary);
+            if (vocabulary != null) {
+                result.computeIfAbsent(vocabulary, v -> new ArrayList<>()).add(termId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes an entity tag identifying the response, which depends on the requested terms, on the versions of the
+     * vocabularies they come from, and on the language the terms are translated in.
+     *
+     * @param termIds the requested term identifiers
+     * @param vocabularies the vocabularies of the requested terms
+     * @param locale the locale used for translating the terms, may be {@code null}
+     * @return an entity tag, or {@code null} if the version of one of the vocabularies is not known
+     */
+    private EntityTag getEntityTag(Set<String> termIds, Set<Vocabulary> vocabularies, Locale locale)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String termId : new TreeSet<>(termIds)) {
+                digest.update(termId.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            Set<String> versions = new TreeSet<>();
+            for (Vocabulary vocabulary : vocabularies) {
+                String version = vocabulary.getVersion();
+                if (version == null) {
+                    return null;
+                }
+                versions.add(vocabulary.getIdentifier() + '@' + version);
+            }
+            for (String version : versions) {
+                digest.update(version.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update(String.valueOf(locale).getBytes(StandardCharsets.UTF_8));
+            StringBuilder tag = new StringBuilder();
+            for (byte b : digest.digest()) {
+                tag.append(String.format("%02x", b));
+            }
+            return new EntityTag(tag.toString());
+        } catch (NoSuchAlgorithmException ex) {
+            this.logger.warn("Failed to compute the entity tag: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private boolean matches(List<String> ifNoneMatch, EntityTag tag)
+    {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String header : ifNoneMatch) {
+            for (String candidate : StringUtils.split(StringUtils.defaultString(header), ',')) {
+                String value = StringUtils.removeStart(candidate.trim(), "W/");
+                if ("*".equals(value) || StringUtils.equals(value, '"' + tag.getValue() + '"')) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a JSON array with the requested terms, resolving the terms of each vocabulary with a single request.
+     *
+     * @param termIdsByVocabulary the requested term identifiers, grouped by vocabulary
+     * @param output where to write the response
+     * @throws IOException if writing the response fails
+     */
+    private void writeTerms(Map<Vocabulary, List<String>> termIdsByVocabulary, OutputStream output)
+        throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        JSONWriter json = new JSONWriter(writer);
+        json.array();
+        for (Map.Entry<Vocabulary, List<String>> group : termIdsByVocabulary.entrySet()) {
+            for (VocabularyTerm term : resolve(group.getKey(), group.getValue())) {
+                json.value(term.toJSON());
+            }
+            writer.flush();
+        }
+        json.endArray();
+        writer.flush();
+    }
+
+    /**
+     * Resolves the terms of one vocabulary. Identifiers not found by the batch request, for example because the
+     * vocabulary doesn't store the prefix in its identifiers, are looked up individually.
+     *
+     * @param vocabulary the vocabulary holding the terms
+     * @param termIds the identifiers of the requested terms
+     * @return the resolved terms, without duplicates
+     */
+    private Set<VocabularyTerm> resolve(Vocabulary vocabulary, List<String> termIds)
+    {
+        Set<VocabularyTerm> result = new LinkedHashSet<>();
+        Set<String> found = new LinkedHashSet<>();
+        try {
+            for (VocabularyTerm term : vocabulary.getTerms(termIds)) {
+                result.add(term);
+                found.add(term.getId());
+            }
+        } catch (Exception ex) {
+            this.logger.warn("Failed to resolve terms from [{}]: {}", vocabulary.getIdentifier(), ex.getMessage());
+        }
+        for (String termId : termIds) {
+            if (!found.contains(termId)) {
+                VocabularyTerm term = vocabulary.getTerm(termId);
+                if (term != null) {
+                    result.add(term);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest.internal;
+
+import org.phenotips.vocabularies.rest.VocabularyTermsResolveResource;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.container.Container;
+import org.xwiki.container.Request;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.localization.LocalizationContext;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasValue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultVocabularyTermsResolveResource} class.
+ */
+public class DefaultVocabularyTermsResolveResourceTest
+{
+    private static final String TERM_ID_PARAMETER = "term-id";
+
+    private static final String HPO_TERM_ID = "HP:0000001";
+
+    private static final String OMIM_TERM_ID = "MIM:162200";
+
+    @Rule
+    public MockitoComponentMockingRule<VocabularyTermsResolveResource> mocker =
+        new MockitoComponentMockingRule<>(DefaultVocabularyTermsResolveResource.class);
+
+    @Mock
+    private Vocabulary hpo;
+
+    @Mock
+    private Vocabulary omim;
+
+    @Mock
+    private VocabularyTerm hpoTerm;
+
+    @Mock
+    private VocabularyTerm omimTerm;
+
+    @Mock
+    private Request request;
+
+    @Mock
+    private HttpHeaders headers;
+
+    private VocabularyTermsResolveResource component;
+
+    private LocalizationContext localizationContext;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        final Execution execution = mock(Execution.class);
+        final ExecutionContext executionContext = mock(ExecutionContext.class);
+        final ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        when(execution.getContext()).thenReturn(executionContext);
+        when(executionContext.getProperty("xwikicontext")).thenReturn(mock(XWikiContext.class));
+
+        this.component = this.mocker.getComponentUnderTest();
+        ReflectionUtils.setFieldValue(this.component, "headers", this.headers);
+
+        Container container = this.mocker.getInstance(Container.class);
+        when(container.getRequest()).thenReturn(this.request);
+        this.localizationContext = this.mocker.getInstance(LocalizationContext.class);
+        when(this.localizationContext.getCurrentLocale()).thenReturn(Locale.ENGLISH);
+
+        VocabularyManager vm = this.mocker.getInstance(VocabularyManager.class);
+        when(vm.getVocabulary("HP")).thenReturn(this.hpo);
+        when(vm.getVocabulary("MIM")).thenReturn(this.omim);
+        when(this.hpo.getIdentifier()).thenReturn("hpo");
+        when(this.hpo.getVersion()).thenReturn("2017-10-05");
+        when(this.omim.getIdentifier()).thenReturn("omim");
+        when(this.omim.getVersion()).thenReturn("2017-10-01");
+
+        when(this.hpoTerm.getId()).thenReturn(HPO_TERM_ID);
+        when(this.hpoTerm.toJSON()).thenReturn(new JSONObject().put("id", HPO_TERM_ID));
+        when(this.omimTerm.getId()).thenReturn(OMIM_TERM_ID);
+        when(this.omimTerm.toJSON()).thenReturn(new JSONObject().put("id", OMIM_TERM_ID));
+        when(this.hpo.getTerms(Collections.singletonList(HPO_TERM_ID)))
+            .thenReturn(Collections.singleton(this.hpoTerm));
+        when(this.omim.getTerms(Collections.singletonList(OMIM_TERM_ID)))
+            .thenReturn(Collections.singleton(this.omimTerm));
+    }
+
+    @Test
+    public void requestedTermsAreReturnedWithTagAndVary() throws Exception
+    {
+        requestTerms(HPO_TERM_ID, OMIM_TERM_ID);
+
+        Response response = this.component.resolveTerms();
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertNotNull(getTag(response));
+        Assert.assertThat(response.getMetadata(), hasValue(hasItem(HttpHeaders.ACCEPT_LANGUAGE)));
+        JSONArray terms = readBody(response);
+        Assert.assertEquals(2, terms.length());
+        Assert.assertEquals(HPO_TERM_ID, terms.getJSONObject(0).getString("id"));
+        Assert.assertEquals(OMIM_TERM_ID, terms.getJSONObject(1).getString("id"));
+    }
+
+    @Test
+    public void matchingTagReturnsNotModified()
+    {
+        requestTerms(HPO_TERM_ID, OMIM_TERM_ID);
+        EntityTag tag = getTag(this.component.resolveTerms());
+
+        when(this.headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH))
+            .thenReturn(Collections.singletonList('"' + tag.getValue() + '"'));
+        Response response = this.component.resolveTerms();
+
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        Assert.assertEquals(tag, getTag(response));
+        Assert.assertThat(response.getMetadata(), hasValue(hasItem(HttpHeaders.ACCEPT_LANGUAGE)));
+        verify(this.hpo, never()).getTerms(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void weakAndListedTagsAreMatched()
+    {
+        requestTerms(HPO_TERM_ID);
+        EntityTag tag = getTag(this.component.resolveTerms());
+
+        when(this.headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH))
+            .thenReturn(Collections.singletonList("\"other\", W/\"" + tag.getValue() + '"'));
+
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(),
+            this.component.resolveTerms().getStatus());
+    }
+
+    @Test
+    public void wildcardTagIsMatched()
+    {
+        requestTerms(HPO_TERM_ID);
+        when(this.headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(Collections.singletonList("*"));
+
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(),
+            this.component.resolveTerms().getStatus());
+    }
+
+    @Test
+    public void tagDoesNotDependOnTheOrderOfTheTerms()
+    {
+        requestTerms(HPO_TERM_ID, OMIM_TERM_ID);
+        EntityTag tag = getTag(this.component.resolveTerms());
+
+        requestTerms(OMIM_TERM_ID, HPO_TERM_ID);
+        Assert.assertEquals(tag, getTag(this.component.resolveTerms()));
+    }
+
+    @Test
+    public void tagChangesWithTheLanguage()
+    {
+        requestTerms(HPO_TERM_ID);
+        EntityTag englishTag = getTag(this.component.resolveTerms());
+
+        when(this.localizationContext.getCurrentLocale()).thenReturn(Locale.FRENCH);
+        when(this.headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH))
+            .thenReturn(Collections.singletonList('"' + englishTag.getValue() + '"'));
+        Response response = this.component.resolveTerms();
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertNotEquals(englishTag, getTag(response));
+    }
+
+    @Test
+    public void tagChangesWhenTheVocabularyIsReindexed()
+    {
+        requestTerms(HPO_TERM_ID);
+        EntityTag tag = getTag(this.component.resolveTerms());
+
+        when(this.hpo.getVersion()).thenReturn("2018-01-01");
+        when(this.headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH))
+            .thenReturn(Collections.singletonList('"' + tag.getValue() + '"'));
+        Response response = this.component.resolveTerms();
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertNotEquals(tag, getTag(response));
+    }
+
+    @Test
+    public void noTagWhenTheVocabularyVersionIsUnknown()
+    {
+        requestTerms(HPO_TERM_ID);
+        when(this.hpo.getVersion()).thenReturn(null);
+        when(this.headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(Collections.singletonList("*"));
+
+        Response response = this.component.resolveTerms();
+
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertNull(getTag(response));
+    }
+
+    @Test
+    public void termsMissingFromBatchAreResolvedIndividually() throws Exception
+    {
+        requestTerms(HPO_TERM_ID);
+        when(this.hpo.getTerms(Collections.singletonList(HPO_TERM_ID))).thenReturn(Collections.emptySet());
+        when(this.hpo.getTerm(HPO_TERM_ID)).thenReturn(this.hpoTerm);
+
+        JSONArray terms = readBody(this.component.resolveTerms());
+
+        Assert.assertEquals(1, terms.length());
+        Assert.assertEquals(HPO_TERM_ID, terms.getJSONObject(0).getString("id"));
+    }
+
+    @Test
+    public void unknownVocabulariesAndBlankIdentifiersAreSkipped() throws Exception
+    {
+        requestTerms(HPO_TERM_ID, " ", "UNKNOWN:1", ":2");
+
+        JSONArray terms = readBody(this.component.resolveTerms());
+
+        Assert.assertEquals(1, terms.length());
+    }
+
+    @Test
+    public void submittedTermsAreResolved() throws Exception
+    {
+        requestTerms(OMIM_TERM_ID);
+
+        JSONArray terms = readBody(this.component.resolveSubmittedTerms());
+
+        Assert.assertEquals(1, terms.length());
+        Assert.assertEquals(OMIM_TERM_ID, terms.getJSONObject(0).getString("id"));
+    }
+
+    @Test
+    public void missingTermsAreRejected()
+    {
+        when(this.request.getProperties(TERM_ID_PARAMETER)).thenReturn(Collections.emptyList());
+
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), this.component.resolveTerms().getStatus());
+    }
+
+    @Test
+    public void tooManyTermsAreRejected()
+    {
+        List<Object> termIds = new ArrayList<>();
+        for (int i = 0; i <= 1000; ++i) {
+            termIds.add("HP:" + i);
+        }
+        when(this.request.getProperties(TERM_ID_PARAMETER)).thenReturn(termIds);
+
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), this.component.resolveTerms().getStatus());
+    }
+
+    private void requestTerms(String... termIds)
+    {
+        when(this.request.getProperties(TERM_ID_PARAMETER)).thenReturn(new ArrayList<>(Arrays.asList(termIds)));
+    }
+
+    private EntityTag getTag(Response response)
+    {
+        for (List<Object> values : response.getMetadata().values()) {
+            for (Object value : values) {
+                if (value instanceof EntityTag) {
+                    return (EntityTag) value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private JSONArray readBody(Response response) throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return new JSONArray(new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+}